@@ -54,6 +54,8 @@ protected void attachBaseContext(Context base) {
         super.onCreate();
         instance = this;
 
+        tn.eluea.kgpt.util.Logger.installCoreSink();
+
         // Initialize SPManager to ensure we can read prefs
         tn.eluea.kgpt.SPManager.init(this);
 
@@ -63,6 +65,9 @@ protected void attachBaseContext(Context base) {
         // Sync component state (ProcessTextActivity) with preferences
         syncComponentState();
 
+        // Publish user formatting styles to the keyboard process
+        syncFormattingStyles();
+
         // Initialize Update Checker (WorkManager for periodic checks)
         initializeUpdateChecker();
 
@@ -160,6 +165,27 @@ protected void attachBaseContext(Context base) {
         }
     }
 
+    /**
+     * The keyboard can't read this app's files, so the style files in
+     * files/formatting are handed over through the config provider.
+     */
+    private void syncFormattingStyles() {
+        try {
+            java.io.File dir = new java.io.File(getFilesDir(),
+                    tn.eluea.kgpt.text.transform.format.ExternalFormattingReader.STYLES_DIR);
+            String styles = tn.eluea.kgpt.text.transform.format.ExternalFormattingReader.readDirectoryText(dir);
+            tn.eluea.kgpt.provider.ConfigClient configClient = new tn.eluea.kgpt.provider.ConfigClient(this);
+            String key = tn.eluea.kgpt.text.transform.format.ExternalFormattingReader.PREF_FORMAT_STYLES;
+            if (!styles.equals(configClient.getString(key, ""))) {
+                configClient.putString(key, styles);
+                tn.eluea.kgpt.util.Logger.log("KGPTApplication: formatting styles updated");
+            }
+            configClient.destroy();
+        } catch (Exception e) {
+            tn.eluea.kgpt.util.Logger.error("KGPTApplication: Failed to sync formatting styles: " + e.getMessage());
+        }
+    }
+
     /**
      * Initialize the update checker.
      * Schedules periodic update checks using WorkManager based on user settings.
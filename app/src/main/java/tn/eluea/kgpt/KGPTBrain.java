@@ -11,15 +11,18 @@
  */
 package tn.eluea.kgpt;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
 
 import tn.eluea.kgpt.core.ai.AiResponseManager;
-import tn.eluea.kgpt.core.dispatcher.BrainDispatcher;
-import tn.eluea.kgpt.instruction.command.CommandManager;
+import tn.eluea.kgpt.core.di.ServiceLocator;
 import tn.eluea.kgpt.listener.DialogDismissListener;
 import tn.eluea.kgpt.listener.InputEventListener;
 import tn.eluea.kgpt.llm.GenerativeAIController;
 import tn.eluea.kgpt.provider.XposedConfigReader;
+import tn.eluea.kgpt.text.ParseWorker;
 import tn.eluea.kgpt.text.TextParser;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
 import tn.eluea.kgpt.text.parse.result.AIParseResult;
@@ -32,93 +35,95 @@ import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
 
 public class KGPTBrain implements InputEventListener, DialogDismissListener {
 
-    private long lastConfigReload = 0;
-    private static final long CONFIG_RELOAD_INTERVAL = 5000; // Reload config every 5 seconds
+    private static final String PREF_INLINE_ASK_PREFIX = "inline_ask_prefix";
 
-    private final GenerativeAIController mAIController; // Kept for reference if needed
-    private final CommandManager mCommandManager;
+    private final Context mContext;
+    private final ServiceLocator mLocator;
     private final TextParser mTextParser;
+    private final ParseWorker mParseWorker;
     private final SPUpdater mSPUpdater;
     private final AppTriggerManager mAppTriggerManager;
-    private final SelectionHandler mSelectionHandler;
-
-    private final android.os.Handler mConfigHandler;
-    private final android.os.HandlerThread mConfigHandlerThread;
-
-    // Decomposed Components
-    private final AiResponseManager aiResponseManager;
-    private final BrainDispatcher brainDispatcher;
+    // Created on the first selection change with text actions enabled
+    private volatile SelectionHandler mSelectionHandler;
+    private final ComponentCallbacks2 mMemoryCallbacks;
 
     public KGPTBrain(Context context) {
+        long start = SystemClock.elapsedRealtime();
+        mContext = context;
         IMSController.getInstance().addListener(this);
         UiInteractor.getInstance().registerOnDismissListener(this);
 
-        // Initialize Background Config Handler
-        mConfigHandlerThread = new android.os.HandlerThread("KGPT_ConfigLoader");
-        mConfigHandlerThread.start();
-        mConfigHandler = new android.os.Handler(mConfigHandlerThread.getLooper());
-
-        // Initialize Dependency Injection
-        tn.eluea.kgpt.core.di.ServiceLocator locator = tn.eluea.kgpt.core.di.ServiceLocator.getInstance();
-
-        mAIController = locator.getGenerativeAIController();
-        mCommandManager = locator.getCommandManager();
-        mTextParser = locator.getTextParser();
-        mSPUpdater = locator.getSpUpdater();
-
-        // Use singletons from locator
-        aiResponseManager = locator.getAiResponseManager();
-        brainDispatcher = locator.getBrainDispatcher();
+        // The AI stack (controller, response manager, commands, dispatcher) is left to the
+        // locator to create on the first trigger; only what the keystroke path needs is
+        // set up here
+        mLocator = ServiceLocator.getInstance();
+        mTextParser = mLocator.getTextParser();
+        // Saves the settings the app broadcasts, so it has to listen from the start
+        mSPUpdater = mLocator.getSpUpdater();
 
         // Initialize App Trigger Manager via Factory
-        mAppTriggerManager = locator.createAppTriggerManager(context);
+        mAppTriggerManager = mLocator.createAppTriggerManager(context);
         mTextParser.setAppTriggerManager(mAppTriggerManager);
 
-        // Initialize Selection Handler for Text Actions
-        mSelectionHandler = new SelectionHandler(context, this::onTextActionRequested);
+        // Trigger parsing runs off the main thread; only the final edit comes back to it
+        mParseWorker = new ParseWorker(mTextParser, this::onTextParsed);
+        // Read only as much text around the cursor as the configured triggers need
+        IMSController.getInstance().setExtractionWindow(mTextParser::getWindowBefore, mTextParser::getWindowAfter);
 
-        // Load inline ask prefix from config
+        // Load inline ask prefix from config; changes are pushed by the provider
         loadInlineAskPrefix();
+        SPManager.getInstance().getConfigClient().registerListener(PREF_INLINE_ASK_PREFIX,
+                (key, newValue) -> loadInlineAskPrefix());
+
+        // The keyboard's heap is not ours: give back caches when it runs short
+        mMemoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                mLocator.onTrimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                mLocator.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        };
+        context.registerComponentCallbacks(mMemoryCallbacks);
 
-        tn.eluea.kgpt.util.Logger.log("KGPTBrain initialized (Refactored)");
+        tn.eluea.kgpt.util.Logger.log("KGPTBrain initialized in " + (SystemClock.elapsedRealtime() - start)
+                + " ms: " + mLocator.getInitCosts());
         tn.eluea.kgpt.util.Logger.log("XSharedPreferences available: " + XposedConfigReader.isAvailable());
     }
 
     /**
-     * Load inline ask prefix from XSharedPreferences
+     * Load inline ask prefix from the config snapshot (XSharedPreferences if the provider
+     * can't be reached)
      */
     private void loadInlineAskPrefix() {
-        String prefix = XposedConfigReader.getString("inline_ask_prefix",
+        String prefix = SPManager.getInstance().getConfigClient().getString(PREF_INLINE_ASK_PREFIX,
                 tn.eluea.kgpt.instruction.command.InlineAskCommand.DEFAULT_PREFIX);
         tn.eluea.kgpt.instruction.command.InlineAskCommand.setPrefix(prefix);
         tn.eluea.kgpt.util.Logger.log("Loaded inline_ask_prefix: " + prefix);
     }
 
-    /**
-     * Periodically reload config from XSharedPreferences to pick up changes
-     */
-    private void reloadConfigIfNeeded() {
-        long now = System.currentTimeMillis();
-        if (now - lastConfigReload > CONFIG_RELOAD_INTERVAL) {
-            lastConfigReload = now;
-            // Force XSharedPreferences to reload
-            XposedConfigReader.forceReload();
-            // Reload app triggers
-            if (mAppTriggerManager != null) {
-                mAppTriggerManager.reloadTriggers();
-            }
-            // Reload inline ask prefix
-            loadInlineAskPrefix();
-        }
-    }
-
     @Override
     public void onTextUpdate(String text, int cursor) {
-        // SOLVED: Offload config check to background thread
-        mConfigHandler.post(this::reloadConfigIfNeeded);
+        mParseWorker.submit(text, cursor);
+    }
 
+    /**
+     * Main thread, with the editor still holding the parsed text: delete the trigger and
+     * dispatch the result.
+     */
+    private void onTextParsed(String text, int cursor, ParseResult result) {
         IMSController imsController = UiInteractor.getInstance().getIMSController();
-        ParseResult result = mTextParser.parse(text, cursor);
+        if (result != null && needsWiderText(text, result) && imsController.requestWiderText()) {
+            // The wider text is parsed again and comes back here
+            return;
+        }
         if (result != null) {
             // Some editors keep a trailing newline/whitespace in extracted text.
             // Java regex '$' can match *before* a final newline, making indexEnd < cursor.
@@ -148,7 +153,7 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
                 try {
                     boolean isAiSingleLine =
                             (result instanceof AIParseResult)
-                                    && !SPManager.getInstance().getAiTriggerMultilineEnabled();
+                                    && !mTextParser.isAiTriggerMultiline();
 
                     if (isAiSingleLine) {
                         // Delete only the current cursor line (without touching the previous line)
@@ -162,10 +167,14 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
                         else next = Math.max(n1, n2);
                         if (next >= 0) lineEnd = next;
 
+                        // The text is a window of the document; deleteRange() takes absolute offsets
                         boolean ok = false;
-                        try {
-                            ok = imsController.deleteRange(result.indexStart, lineEnd);
-                        } catch (Throwable ignored) {}
+                        int origin = imsController.getTextOrigin();
+                        if (origin >= 0) {
+                            try {
+                                ok = imsController.deleteRange(origin + result.indexStart, origin + lineEnd);
+                            } catch (Throwable ignored) {}
+                        }
 
                         if (!ok) {
                             int after = Math.max(0, lineEnd - cur);
@@ -187,16 +196,35 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
         }
     }
 
+    /**
+     * True if {@code result} may have been cut short by the window of text IMSController read:
+     * the match starts right at the window start, or a single-line AI prompt has no line end
+     * in view.
+     */
+    private boolean needsWiderText(String text, ParseResult result) {
+        IMSController imsController = UiInteractor.getInstance().getIMSController();
+        if (result.indexStart <= 0 && !imsController.isTextFromDocStart()) {
+            return true;
+        }
+        if (result instanceof AIParseResult && !mTextParser.isAiTriggerMultiline()
+                && !imsController.isTextToDocEnd()) {
+            int from = Math.min(result.indexEnd, text.length());
+            return text.indexOf('\n', from) < 0 && text.indexOf('\r', from) < 0;
+        }
+        return false;
+    }
+
     public void processParsedText(String text, ParseResult parseResult) {
-        brainDispatcher.dispatch(parseResult);
+        mLocator.getBrainDispatcher().dispatch(parseResult);
     }
 
     @Override
     public void onDismiss(boolean isPrompt, boolean isCommand, boolean isPattern) {
         if (isPrompt) {
+            GenerativeAIController aiController = mLocator.getGenerativeAIController();
             UiInteractor.getInstance().post(() -> {
-                UiInteractor.getInstance().toastShort("Selected " + mAIController.getLanguageModel()
-                        + " (" + mAIController.getModelClient().getSubModel() + ")");
+                UiInteractor.getInstance().toastShort("Selected " + aiController.getLanguageModel()
+                        + " (" + aiController.getModelClient().getSubModel() + ")");
             });
         } else if (isCommand) {
             UiInteractor.getInstance().post(() -> {
@@ -215,6 +243,7 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
     private void onTextActionRequested(TextAction action, String selectedText) {
         tn.eluea.kgpt.util.Logger.log("Text action requested: " + action.name());
 
+        AiResponseManager aiResponseManager = mLocator.getAiResponseManager();
         // Set text action mode to replace selected text with result
         aiResponseManager.setTextActionMode(true, selectedText);
 
@@ -227,10 +256,20 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
     }
 
     /**
-     * Get the selection handler for external access.
+     * Get the selection handler for external access: null while text actions are off and
+     * no handler was ever needed, so a disabled feature registers no receiver.
      */
     public SelectionHandler getSelectionHandler() {
-        return mSelectionHandler;
+        SelectionHandler handler = mSelectionHandler;
+        if (handler == null && SelectionHandler.isFeatureEnabled()) {
+            synchronized (this) {
+                if (mSelectionHandler == null) {
+                    mSelectionHandler = new SelectionHandler(mContext, this::onTextActionRequested);
+                }
+                handler = mSelectionHandler;
+            }
+        }
+        return handler;
     }
     
     /**
@@ -246,10 +285,14 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
         if (mSelectionHandler != null) {
             mSelectionHandler.destroy();
         }
+
+        try {
+            mContext.unregisterComponentCallbacks(mMemoryCallbacks);
+        } catch (Throwable ignored) {
+        }
         
-        // Stop the config handler thread
-        if (mConfigHandlerThread != null) {
-            mConfigHandlerThread.quitSafely();
+        if (mParseWorker != null) {
+            mParseWorker.quit();
         }
         
         tn.eluea.kgpt.util.Logger.log("KGPTBrain destroyed");
@@ -33,9 +33,12 @@ import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import de.robv.android.xposed.callbacks.XC_LoadPackage;
+import tn.eluea.kgpt.features.floatingball.FloatingBallKeys;
 import tn.eluea.kgpt.hook.HookManager;
+import tn.eluea.kgpt.hook.HostHookScope;
 import tn.eluea.kgpt.hook.MethodHook;
 import tn.eluea.kgpt.hook.TextSelectionHook;
+import tn.eluea.kgpt.features.textactions.SelectionHandler;
 import tn.eluea.kgpt.hook.ClipboardHook;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 import tn.eluea.kgpt.ui.IMSController;
@@ -52,10 +55,11 @@ public class MainHook implements IXposedHookLoadPackage {
 
     private Class<?> inputMethodServiceClass = null;
     
-    // Performance optimization: Cache to avoid redundant re-hooking
-    private Class<?> lastHookedInputConnectionClass = null;
-    private long lastHookTime = 0;
-    private static final long MIN_HOOK_INTERVAL_MS = 500; // Minimum interval between hooks
+    // InputConnection classes already hooked in this process. Hooks stay installed for the
+    // life of the process, so a class seen before (e.g. on returning to an app) is not
+    // looked up or hooked again.
+    private static final Set<Class<?>> sHookedInputConnectionClasses =
+            Collections.synchronizedSet(new HashSet<>());
 
     // Some IMEs run in secondary processes or override onCreate without calling super().
     // Use multiple entry points and guard to avoid duplicate init/hook.
@@ -77,7 +81,6 @@ public class MainHook implements IXposedHookLoadPackage {
     // ===== Host app IME metrics (does NOT require the module to be enabled for the keyboard/IME package) =====
     private static final java.util.Map<android.view.View, android.view.ViewTreeObserver.OnGlobalLayoutListener>
             sHostImeLayoutListeners = java.util.Collections.synchronizedMap(new java.util.WeakHashMap<>());
-    private static volatile boolean sHostImeHooksInstalled = false;
 
 
     private void installImeLayoutListener(InputMethodService ims) {
@@ -132,46 +135,86 @@ public class MainHook implements IXposedHookLoadPackage {
     // visible display frame (fallback). This avoids requiring the module to be enabled for the IME
     // package itself.
     private void hookHostImeInsetsIfNeeded() {
-        if (sHostImeHooksInstalled) return;
-        sHostImeHooksInstalled = true;
+        // Only the floating pad follows the keyboard, so apps pay for these hooks (and the
+        // layout listener on every activity) only while it is enabled
+        HostHookScope.add(new HostHookScope.Family("HostImeInsets", FloatingBallKeys.KEY_PAD_ENABLED, false) {
+            @Override
+            protected java.util.Collection<XC_MethodHook.Unhook> install() {
+                return installHostImeHooks(this);
+            }
+
+            @Override
+            protected void release() {
+                releaseHostImeLayoutListeners();
+            }
+        });
+    }
 
+    private java.util.Collection<XC_MethodHook.Unhook> installHostImeHooks(HostHookScope.Family family) {
+        java.util.List<XC_MethodHook.Unhook> hooks = new java.util.ArrayList<>();
         try {
             // Activity hooks are in the boot classloader; hookAllMethods is safe.
-            XposedBridge.hookAllMethods(android.app.Activity.class, "onResume", new XC_MethodHook() {
+            hooks.addAll(XposedBridge.hookAllMethods(android.app.Activity.class, "onResume", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    long start = System.nanoTime();
                     try {
                         android.app.Activity a = (android.app.Activity) param.thisObject;
                         if (a == null) return;
                         ensureInitialized(a.getApplicationContext());
                         installHostImeLayoutListener(a);
-                    } catch (Throwable ignored) {}
+                    } catch (Throwable ignored) {
+                    } finally {
+                        family.recordCall(start);
+                    }
                 }
-            });
+            }));
 
-            XposedBridge.hookAllMethods(android.app.Activity.class, "onPause", new XC_MethodHook() {
+            hooks.addAll(XposedBridge.hookAllMethods(android.app.Activity.class, "onPause", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    long start = System.nanoTime();
                     try {
                         android.app.Activity a = (android.app.Activity) param.thisObject;
                         if (a == null) return;
                         // Best effort: when activity pauses, stop showing the pad.
                         sendImeMetricsFromApp(a.getApplicationContext(), false, -1, -1);
-                    } catch (Throwable ignored) {}
+                    } catch (Throwable ignored) {
+                    } finally {
+                        family.recordCall(start);
+                    }
                 }
-            });
+            }));
 
-            XposedBridge.hookAllMethods(android.app.Activity.class, "onDestroy", new XC_MethodHook() {
+            hooks.addAll(XposedBridge.hookAllMethods(android.app.Activity.class, "onDestroy", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    long start = System.nanoTime();
                     try {
                         android.app.Activity a = (android.app.Activity) param.thisObject;
                         if (a == null) return;
                         uninstallHostImeLayoutListener(a);
-                    } catch (Throwable ignored) {}
+                    } catch (Throwable ignored) {
+                    } finally {
+                        family.recordCall(start);
+                    }
                 }
-            });
+            }));
         } catch (Throwable ignored) {}
+        return hooks;
+    }
+
+    // Detach every host layout listener once the hooks that placed them are gone.
+    private void releaseHostImeLayoutListeners() {
+        synchronized (sHostImeLayoutListeners) {
+            for (java.util.Map.Entry<android.view.View, android.view.ViewTreeObserver.OnGlobalLayoutListener> e
+                    : sHostImeLayoutListeners.entrySet()) {
+                try {
+                    e.getKey().getViewTreeObserver().removeOnGlobalLayoutListener(e.getValue());
+                } catch (Throwable ignored) {}
+            }
+            sHostImeLayoutListeners.clear();
+        }
     }
 
     private void installHostImeLayoutListener(android.app.Activity a) {
@@ -360,6 +403,7 @@ private void sendImeMetrics(InputMethodService ims, boolean visible) {
 
     @Override
     public void handleLoadPackage(XC_LoadPackage.LoadPackageParam lpparam) throws Throwable {
+        tn.eluea.kgpt.util.Logger.installCoreSink();
 if (lpparam.packageName.equals("tn.eluea.kgpt")) {
             MainHook.log("Hooking own module for status check");
             // Hook the module status check method
@@ -388,6 +432,10 @@ if (lpparam.packageName.equals("tn.eluea.kgpt")) {
         MainHook.log("XSharedPreferences available: " + XposedConfigReader.isAvailable());
         MainHook.log(XposedConfigReader.getDebugInfo());
 
+        // Hook families below are installed only while their feature is on, and follow
+        // toggles once the app is up
+        HostHookScope.start();
+
         // Hook text selection for AI actions (works in any app)
         TextSelectionHook.hook(lpparam);
 
@@ -468,10 +516,6 @@ private void hookKeyboard(XC_LoadPackage.LoadPackageParam lpparam) {
                     brain.destroy();
                     brain = null;
                 }
-                
-                // Reset hook cache
-                lastHookedInputConnectionClass = null;
-                lastHookTime = 0;
             }
         });
 
@@ -517,8 +561,10 @@ private void hookKeyboard(XC_LoadPackage.LoadPackageParam lpparam) {
                             (int) param.args[5]);
 
                     // Notify SelectionHandler for text actions
-                    if (brain != null && brain.getSelectionHandler() != null) {
-                        brain.getSelectionHandler().onSelectionChanged(
+                    // (created here the first time text actions are on, never while they are off)
+                    SelectionHandler selectionHandler = brain != null ? brain.getSelectionHandler() : null;
+                    if (selectionHandler != null) {
+                        selectionHandler.onSelectionChanged(
                                 ims, oldSelStart, oldSelEnd, newSelStart, newSelEnd);
                     }
                 }));
@@ -526,43 +572,60 @@ private void hookKeyboard(XC_LoadPackage.LoadPackageParam lpparam) {
         hookManager.hook(inputMethodServiceClass, "onStartInput",
                 new Class<?>[] { EditorInfo.class, boolean.class }, MethodHook.after(param -> {
                     InputMethodService ims = (InputMethodService) param.thisObject;
-                        
-                    // Performance optimization: Skip if InputConnection hasn't changed
-                    if (ims.getCurrentInputConnection() == null) {
-                        return;
+
+                    // Bind generations to the new field before anything else can bail out
+                    try {
+                        IMSController.getInstance().onStartInput((EditorInfo) param.args[0]);
+                    } catch (Throwable ignored) {
                     }
-                    
-                    Class<?> newInputConnectionClass = ims.getCurrentInputConnection().getClass();
-                    long currentTime = System.currentTimeMillis();
-                    
-                    // Skip re-hooking if same class and within minimum interval
-                    if (newInputConnectionClass.equals(lastHookedInputConnectionClass) 
-                            && (currentTime - lastHookTime) < MIN_HOOK_INTERVAL_MS) {
+                        
+                    android.view.inputmethod.InputConnection ic = ims.getCurrentInputConnection();
+                    if (ic == null) {
                         return;
                     }
-                    
-                    // Only unhook and rehook if the class actually changed
-                    if (!newInputConnectionClass.equals(lastHookedInputConnectionClass)) {
-                        hookManager.unhook(m -> m.getClass().equals(inputConnectionClass));
-                        
+
+                    // Hooks persist, so only a class this process hasn't seen needs hooking
+                    Class<?> newInputConnectionClass = ic.getClass();
+                    if (sHookedInputConnectionClasses.add(newInputConnectionClass)) {
                         MainHook.log("InputMethodService onStartInput");
                         inputMethodServiceClass = ims.getClass();
                         inputConnectionClass = newInputConnectionClass;
-                        lastHookedInputConnectionClass = newInputConnectionClass;
                         MainHook.log("InputMethodService InputConnection : " + inputConnectionClass.getName());
-                        
+
                         hookInputConnection();
                     }
-                    
-                    lastHookTime = currentTime;
                 }));
 
+        try {
+            hookManager.hook(inputMethodServiceClass, "onFinishInput",
+                    new Class<?>[] {}, MethodHook.after(param -> {
+                        try {
+                            IMSController.getInstance().onFinishInput();
+                        } catch (Throwable ignored) {
+                        }
+                    }));
+        } catch (Throwable ignored) {
+        }
+
         // ===== IME window visibility/metrics for floating pad =====
         try {
             hookManager.hook(inputMethodServiceClass, "onWindowShown",
                     new Class<?>[] {}, MethodHook.after(param -> {
                         final InputMethodService ims = (InputMethodService) param.thisObject;
                         installImeLayoutListener(ims);
+                        if (brain != null) {
+                            try {
+                                // Only a local model needs warming; anything else leaves the
+                                // AI stack to be created by the first trigger
+                                tn.eluea.kgpt.core.di.ServiceLocator locator =
+                                        tn.eluea.kgpt.core.di.ServiceLocator.getInstance();
+                                if (!locator.isLowMemory() && SPManager.getInstance().getLanguageModel()
+                                        == tn.eluea.kgpt.llm.LanguageModel.LocalServer) {
+                                    locator.getGenerativeAIController().preloadLocalModelIfNeeded();
+                                }
+                            } catch (Throwable ignored) {
+                            }
+                        }
                         try {
                             final Handler h = new Handler(Looper.getMainLooper());
                             Runnable r = () -> sendImeMetrics(ims, true);
@@ -618,81 +681,89 @@ private void hookKeyboard(XC_LoadPackage.LoadPackageParam lpparam) {
 
     @SuppressLint("ObsoleteSdkInt")
     private void hookInputConnection() {
-        XC_MethodHook gateOnly = new MethodHook(param -> {
+        // While a generation holds the field, the keyboard's own edits are dropped
+        java.util.function.Consumer<XC_MethodHook.MethodHookParam> gate = param -> {
             if (IMSController.getInstance().isInputLocked()) {
                 param.setResult(false);
             }
-        }, null);
+        };
+
+        XC_MethodHook gateOnly = new MethodHook(gate, param -> {
+            if (!IMSController.getInstance().isInputLocked()) {
+                IMSController.getInstance().onInputEventUntracked();
+            }
+        });
 
         // Trigger parsing directly from InputConnection events.
         // Some keyboards override InputMethodService.onUpdateSelection() without calling super(),
         // so relying only on onUpdateSelection can break keyword triggers (AI 触发器).
-        XC_MethodHook gateAndUpdate = new MethodHook(param -> {
-            if (IMSController.getInstance().isInputLocked()) {
-                param.setResult(false);
-            }
-        }, param -> {
-            if (IMSController.getInstance().isInputLocked()) {
-                return;
-            }
-try {
-    String m = param.method.getName();
-    if ("commitText".equals(m) || "setComposingText".equals(m)) {
-        CharSequence cs = (CharSequence) param.args[0];
-        boolean composing = "setComposingText".equals(m);
-        IMSController.getInstance().onInputEventText(cs, composing);
-    } else if ("finishComposingText".equals(m)) {
-        IMSController.getInstance().onInputEventFinishComposing();
-    } else if ("deleteSurroundingText".equals(m) || "deleteSurroundingTextInCodePoints".equals(m)) {
-        int before = (int) param.args[0];
-        int after = (int) param.args[1];
-        IMSController.getInstance().onInputEventDelete(before, after);
-    } else if (Build.VERSION.SDK_INT >= 34 && "replaceText".equals(m)) {
-        int start = (int) param.args[0];
-        int end = (int) param.args[1];
-        CharSequence cs = (CharSequence) param.args[2];
-        IMSController.getInstance().onInputEventReplace(start, end, cs);
-    }
-
-    IMSController.getInstance().requestTextUpdateFromInputEvent(
-            (android.view.inputmethod.InputConnection) param.thisObject);
-} catch (Throwable ignored) {
-}
-        });
+        // One callback per method, so a keystroke goes straight to its handler without looking
+        // at the method name.
+        XC_MethodHook commitText = gateAndUpdate(gate, param -> IMSController.getInstance()
+                .onInputEventText((CharSequence) param.args[0], false, (int) param.args[1]));
+        XC_MethodHook setComposingText = gateAndUpdate(gate, param -> IMSController.getInstance()
+                .onInputEventText((CharSequence) param.args[0], true, (int) param.args[1]));
+        XC_MethodHook finishComposingText = gateAndUpdate(gate,
+                param -> IMSController.getInstance().onInputEventFinishComposing());
+        XC_MethodHook deleteSurroundingText = gateAndUpdate(gate, param -> IMSController.getInstance()
+                .onInputEventDelete((int) param.args[0], (int) param.args[1], false));
+        XC_MethodHook deleteSurroundingTextInCodePoints = gateAndUpdate(gate, param -> IMSController.getInstance()
+                .onInputEventDelete((int) param.args[0], (int) param.args[1], true));
+        XC_MethodHook replaceText = gateAndUpdate(gate, param -> IMSController.getInstance()
+                .onInputEventReplace((int) param.args[0], (int) param.args[1],
+                        (CharSequence) param.args[2], (int) param.args[3]));
 
         hookManager.hook(inputConnectionClass, "commitText",
-                new Class<?>[] { CharSequence.class, int.class }, gateAndUpdate);
+                new Class<?>[] { CharSequence.class, int.class }, commitText);
         hookManager.hook(inputConnectionClass, "commitCorrection",
                 new Class<?>[] { android.view.inputmethod.CorrectionInfo.class }, gateOnly);
         hookManager.hook(inputConnectionClass, "commitCompletion",
                 new Class<?>[] { android.view.inputmethod.CompletionInfo.class }, gateOnly);
         hookManager.hook(inputConnectionClass, "setComposingText",
-                new Class<?>[] { CharSequence.class, int.class }, gateAndUpdate);
+                new Class<?>[] { CharSequence.class, int.class }, setComposingText);
         hookManager.hook(inputConnectionClass, "finishComposingText",
-                new Class<?>[] {}, gateAndUpdate);
+                new Class<?>[] {}, finishComposingText);
         hookManager.hook(inputConnectionClass, "deleteSurroundingText",
-                new Class<?>[] { int.class, int.class }, gateAndUpdate);
+                new Class<?>[] { int.class, int.class }, deleteSurroundingText);
 
 if (Build.VERSION.SDK_INT >= 24) {
             hookManager.hook(inputConnectionClass, "deleteSurroundingTextInCodePoints",
-                    new Class<?>[] { int.class, int.class }, gateAndUpdate);
+                    new Class<?>[] { int.class, int.class }, deleteSurroundingTextInCodePoints);
         }
         if (Build.VERSION.SDK_INT >= 33) {
             hookManager.hook(inputConnectionClass, "commitText",
                     new Class<?>[] { CharSequence.class, int.class,
                             android.view.inputmethod.TextAttribute.class },
-                    gateAndUpdate);
+                    commitText);
         }
         if (Build.VERSION.SDK_INT >= 34) {
             hookManager.hook(inputConnectionClass, "replaceText",
                     new Class<?>[] { int.class, int.class, CharSequence.class, int.class,
                             android.view.inputmethod.TextAttribute.class },
-                    gateAndUpdate);
+                    replaceText);
         }
 
         MainHook.log("Done hooking InputConnection : " + inputConnectionClass.getName());
     }
 
+    // Gated like every InputConnection hook; afterwards, unless the field is locked, mirror the
+    // edit with {@code track} and schedule the debounced text read.
+    private static XC_MethodHook gateAndUpdate(java.util.function.Consumer<XC_MethodHook.MethodHookParam> gate,
+            java.util.function.Consumer<XC_MethodHook.MethodHookParam> track) {
+        return new MethodHook(gate, param -> {
+            IMSController controller = IMSController.getInstance();
+            if (controller.isInputLocked()) {
+                return;
+            }
+            try {
+                track.accept(param);
+                controller.requestTextUpdateFromInputEvent(
+                        (android.view.inputmethod.InputConnection) param.thisObject);
+            } catch (Throwable ignored) {
+            }
+        });
+    }
+
     // Flag to check if we're in Xposed context
     private static final boolean IS_XPOSED_CONTEXT;
     static {
@@ -16,6 +16,7 @@ import android.os.Bundle;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -23,6 +24,8 @@ import java.util.HashSet;
 import java.util.Collections;
 import java.util.List;
 
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.StringListCodec;
 import tn.eluea.kgpt.instruction.command.Commands;
 import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
 import tn.eluea.kgpt.llm.LanguageModel;
@@ -84,8 +87,19 @@ public class SPManager implements ConfigInfoProvider {
 
     private void initializeDefaultCommands() {
         String existing = mClient.getString(PREF_GEN_AI_COMMANDS, null);
-        if (existing == null || existing.equals("[]")) {
+        List<GenerativeAICommand> commands;
+        try {
+            commands = existing != null ? Commands.CODEC.decode(existing) : null;
+        } catch (BlobCodec.DecodeException e) {
+            // Unreadable, not empty: keep the user's commands rather than reset them
+            tn.eluea.kgpt.util.Logger.log("initializeDefaultCommands: keeping unreadable commands: " + e.getMessage());
+            return;
+        }
+        if (commands == null || commands.isEmpty()) {
             setGenerativeAICommands(Commands.getDefaultCommands());
+        } else if (!BlobCodec.isBinary(existing)) {
+            // Stored as JSON by an older build; rewrite it in the binary form once
+            setGenerativeAICommands(commands);
         }
     }
 
@@ -100,7 +114,7 @@ public class SPManager implements ConfigInfoProvider {
         // Migration: ensure any newly added PatternType entries exist in the saved list.
         // This keeps updates compatible without forcing users to reset their patterns.
         try {
-            List<ParsePattern> patterns = ParsePattern.decode(existing);
+            List<ParsePattern> patterns = ParsePattern.CODEC.decode(existing);
             if (patterns == null) patterns = new ArrayList<>();
             boolean changed = false;
 
@@ -112,18 +126,19 @@ public class SPManager implements ConfigInfoProvider {
                 }
                 if (!found) {
                     ParsePattern p = new ParsePattern(type, type.defaultPattern);
-                    p.setEnabled(true);
+                    p.setEnabled(type.enabledByDefault);
                     patterns.add(p);
                     changed = true;
                 }
             }
 
-            if (changed) {
+            // Also rewrites a list an older build stored as JSON in the binary form
+            if (changed || !BlobCodec.isBinary(existing)) {
                 setParsePatterns(patterns);
             }
-        } catch (Throwable t) {
-            // If parsing fails for any reason, fall back to defaults (better than crashing).
-            setParsePatterns(ParsePattern.getDefaultPatterns());
+        } catch (BlobCodec.DecodeException e) {
+            // Unreadable, not empty: keep the user's patterns rather than reset them
+            tn.eluea.kgpt.util.Logger.log("initializeDefaultPatterns: keeping unreadable patterns: " + e.getMessage());
         }
     }
 
@@ -197,6 +212,8 @@ public class SPManager implements ConfigInfoProvider {
 // ===== Cached Models (for Model Switch) =====
 private static final String PREF_CACHED_MODELS_JSON = "cached_models.%s.json";
 private static final String PREF_CACHED_MODELS_BASEURL = "cached_models.%s.base_url";
+private static final StringListCodec MODEL_LIST_CODEC =
+        new StringListCodec(BlobCodec.SCHEMA_MODEL_LIST, "ModelList");
 
 public void setCachedModels(LanguageModel model, String baseUrl, List<String> models) {
     if (model == null) return;
@@ -204,7 +221,7 @@ public void setCachedModels(LanguageModel model, String baseUrl, List<String> mo
     String keyJson = String.format(PREF_CACHED_MODELS_JSON, model.name());
     String keyUrl  = String.format(PREF_CACHED_MODELS_BASEURL, model.name());
 
-    JSONArray arr = new JSONArray();
+    ArrayList<String> unique = new ArrayList<>();
     HashSet<String> seen = new HashSet<>();
 
     if (models != null) {
@@ -212,11 +229,11 @@ public void setCachedModels(LanguageModel model, String baseUrl, List<String> mo
             if (s == null) continue;
             String v = s.trim();
             if (v.isEmpty()) continue;
-            if (seen.add(v)) arr.put(v);
+            if (seen.add(v)) unique.add(v);
         }
     }
 
-    mClient.putString(keyJson, arr.toString());
+    mClient.putString(keyJson, MODEL_LIST_CODEC.encode(unique));
     if (baseUrl != null) mClient.putString(keyUrl, baseUrl.trim());
 }
 
@@ -227,16 +244,7 @@ public List<String> getCachedModels(LanguageModel model) {
     String raw = mClient.getString(keyJson, null);
     if (raw == null || raw.trim().isEmpty()) return Collections.emptyList();
 
-    ArrayList<String> out = new ArrayList<>();
-    try {
-        JSONArray arr = new JSONArray(raw);
-        for (int i = 0; i < arr.length(); i++) {
-            String s = arr.optString(i, "");
-            if (s != null && !s.trim().isEmpty()) out.add(s.trim());
-        }
-    } catch (JSONException ignored) {}
-
-    return out;
+    return MODEL_LIST_CODEC.decodeOrEmpty(raw);
 }
 
 public String getCachedModelsBaseUrl(LanguageModel model) {
@@ -477,55 +485,58 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
      * This allows restoring previous states later (master switch ON).
      */
     public void disableAllInvocationTriggersWithBackup() {
-        try {
-            // IMPORTANT:
-            // Do not overwrite the backup snapshot if the master switch is already OFF.
-            // Otherwise, repeated "disable" calls can save an "all disabled" snapshot,
-            // and later restore will keep everything disabled.
-            boolean masterWasEnabled = true;
-            try { masterWasEnabled = getInvocationTriggersEnabled(); } catch (Throwable ignored) {}
-
-            List<ParsePattern> ps = getParsePatterns();
-            if (ps == null) {
-                setInvocationTriggersEnabled(false);
-                return;
-            }
+        // One batch: the snapshot, the patterns and the master switch land together
+        mClient.runInTransaction(() -> {
+            try {
+                // IMPORTANT:
+                // Do not overwrite the backup snapshot if the master switch is already OFF.
+                // Otherwise, repeated "disable" calls can save an "all disabled" snapshot,
+                // and later restore will keep everything disabled.
+                boolean masterWasEnabled = true;
+                try { masterWasEnabled = getInvocationTriggersEnabled(); } catch (Throwable ignored) {}
+
+                List<ParsePattern> ps = getParsePatterns();
+                if (ps == null) {
+                    setInvocationTriggersEnabled(false);
+                    return;
+                }
 
-            // Already disabled: never overwrite the existing snapshot (if any).
-            // If there is no snapshot, we still avoid creating an "all disabled" snapshot.
-            if (!masterWasEnabled) {
-                boolean changed = false;
+                // Already disabled: never overwrite the existing snapshot (if any).
+                // If there is no snapshot, we still avoid creating an "all disabled" snapshot.
+                if (!masterWasEnabled) {
+                    boolean changed = false;
+                    for (ParsePattern p : ps) {
+                        if (p == null) continue;
+                        if (p.isEnabled()) {
+                            p.setEnabled(false);
+                            changed = true;
+                        }
+                    }
+                    if (changed) setParsePatterns(ps);
+                    setInvocationTriggersEnabled(false);
+                    return;
+                }
+                // Save snapshot
+                JSONArray arr = new JSONArray();
+                for (ParsePattern p : ps) {
+                    if (p == null || p.getType() == null) continue;
+                    org.json.JSONObject o = new org.json.JSONObject();
+                    o.put("type", p.getType().name());
+                    o.put("enabled", p.isEnabled());
+                    arr.put(o);
+                }
+                mClient.putString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, arr.toString());
+                // Disable all
                 for (ParsePattern p : ps) {
                     if (p == null) continue;
-                    if (p.isEnabled()) {
-                        p.setEnabled(false);
-                        changed = true;
-                    }
+                    p.setEnabled(false);
                 }
-                if (changed) setParsePatterns(ps);
+                setParsePatterns(ps);
+                // Keep the UI switch state
                 setInvocationTriggersEnabled(false);
-                return;
-            }
-            // Save snapshot
-            JSONArray arr = new JSONArray();
-            for (ParsePattern p : ps) {
-                if (p == null || p.getType() == null) continue;
-                org.json.JSONObject o = new org.json.JSONObject();
-                o.put("type", p.getType().name());
-                o.put("enabled", p.isEnabled());
-                arr.put(o);
-            }
-            mClient.putString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, arr.toString());
-            // Disable all
-            for (ParsePattern p : ps) {
-                if (p == null) continue;
-                p.setEnabled(false);
+            } catch (Throwable ignored) {
             }
-            setParsePatterns(ps);
-            // Keep the UI switch state
-            setInvocationTriggersEnabled(false);
-        } catch (Throwable ignored) {
-        }
+        });
     }
 
     /**
@@ -533,74 +544,77 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
      * If there is no snapshot, it simply marks the master switch as enabled.
      */
     public void restoreInvocationTriggersFromBackup() {
-        try {
-            String raw = mClient.getString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, null);
-            List<ParsePattern> ps = getParsePatterns();
-            if (ps == null) {
-                setInvocationTriggersEnabled(true);
-                return;
-            }
-            java.util.HashMap<String, Boolean> map = new java.util.HashMap<>();
-            if (raw != null && !raw.isEmpty()) {
-                JSONArray arr = new JSONArray(raw);
-                for (int i = 0; i < arr.length(); i++) {
-                    try {
-                        org.json.JSONObject o = arr.getJSONObject(i);
-                        String type = o.optString("type", null);
-                        if (type == null) continue;
-                        map.put(type, o.optBoolean("enabled", true));
-                    } catch (Throwable ignored) {}
+        // One batch, like disableAllInvocationTriggersWithBackup()
+        mClient.runInTransaction(() -> {
+            try {
+                String raw = mClient.getString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, null);
+                List<ParsePattern> ps = getParsePatterns();
+                if (ps == null) {
+                    setInvocationTriggersEnabled(true);
+                    return;
                 }
-            }
-
-            // Heuristic recovery:
-            // If the snapshot exists but ALL saved values are "false", it is very likely the snapshot
-            // was overwritten while everything was already disabled (a known bug scenario).
-            // Treat this as "no snapshot" so we can recover to a usable state.
-            if (!map.isEmpty()) {
-                boolean anyTrue = false;
-                for (Boolean b : map.values()) {
-                    if (b != null && b) { anyTrue = true; break; }
+                java.util.HashMap<String, Boolean> map = new java.util.HashMap<>();
+                if (raw != null && !raw.isEmpty()) {
+                    JSONArray arr = new JSONArray(raw);
+                    for (int i = 0; i < arr.length(); i++) {
+                        try {
+                            org.json.JSONObject o = arr.getJSONObject(i);
+                            String type = o.optString("type", null);
+                            if (type == null) continue;
+                            map.put(type, o.optBoolean("enabled", true));
+                        } catch (Throwable ignored) {}
+                    }
                 }
-                if (!anyTrue) {
-                    map.clear();
+
+                // Heuristic recovery:
+                // If the snapshot exists but ALL saved values are "false", it is very likely the snapshot
+                // was overwritten while everything was already disabled (a known bug scenario).
+                // Treat this as "no snapshot" so we can recover to a usable state.
+                if (!map.isEmpty()) {
+                    boolean anyTrue = false;
+                    for (Boolean b : map.values()) {
+                        if (b != null && b) { anyTrue = true; break; }
+                    }
+                    if (!anyTrue) {
+                        map.clear();
+                    }
                 }
-            }
-            boolean restoredAny = false;
-            if (!map.isEmpty()) {
-                for (ParsePattern p : ps) {
-                    if (p == null || p.getType() == null) continue;
-                    Boolean en = map.get(p.getType().name());
-                    if (en != null) {
-                        p.setEnabled(en);
-                        restoredAny = true;
+                boolean restoredAny = false;
+                if (!map.isEmpty()) {
+                    for (ParsePattern p : ps) {
+                        if (p == null || p.getType() == null) continue;
+                        Boolean en = map.get(p.getType().name());
+                        if (en != null) {
+                            p.setEnabled(en);
+                            restoredAny = true;
+                        }
                     }
+                    if (restoredAny) setParsePatterns(ps);
                 }
-                if (restoredAny) setParsePatterns(ps);
-            }
 
-            // Fallback: if we have no snapshot (or it was empty) and ALL patterns are disabled,
-            // re-enable them to avoid leaving the user in a "stuck" state.
-            if (!restoredAny) {
-                boolean anyEnabled = false;
-                for (ParsePattern p : ps) {
-                    if (p == null) continue;
-                    if (p.isEnabled()) { anyEnabled = true; break; }
-                }
-                if (!anyEnabled) {
+                // Fallback: if we have no snapshot (or it was empty) and ALL patterns are disabled,
+                // re-enable them to avoid leaving the user in a "stuck" state.
+                if (!restoredAny) {
+                    boolean anyEnabled = false;
                     for (ParsePattern p : ps) {
                         if (p == null) continue;
-                        p.setEnabled(true);
+                        if (p.isEnabled()) { anyEnabled = true; break; }
+                    }
+                    if (!anyEnabled) {
+                        for (ParsePattern p : ps) {
+                            if (p == null) continue;
+                            p.setEnabled(true);
+                        }
+                        setParsePatterns(ps);
                     }
-                    setParsePatterns(ps);
                 }
+                // Clear snapshot after restore
+                mClient.putString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, "");
+                setInvocationTriggersEnabled(true);
+            } catch (Throwable ignored) {
+                try { setInvocationTriggersEnabled(true); } catch (Throwable ignored2) {}
             }
-            // Clear snapshot after restore
-            mClient.putString(PREF_INVOCATION_TRIGGERS_ENABLED_STATES_BACKUP, "");
-            setInvocationTriggersEnabled(true);
-        } catch (Throwable ignored) {
-            try { setInvocationTriggersEnabled(true); } catch (Throwable ignored2) {}
-        }
+        });
     }
 
 
@@ -708,6 +722,11 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
         setOtherSetting(OtherSettingsType.UpdateCheckInterval, hours);
     }
 
+    public int getStreamLatencyCeilingMs() {
+        Integer v = (Integer) getOtherSetting(OtherSettingsType.StreamLatencyCeiling);
+        return v == null ? 80 : Math.max(0, Math.min(v, 1000));
+    }
+
     public String getUpdateDownloadPath() {
         return (String) getOtherSetting(OtherSettingsType.UpdateDownloadPath);
     }
@@ -855,5 +874,80 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
         mClient.putString(PREF_AI_CLIPBOARD_GROUPS_JSON, arr.toString());
     }
 
+    // ===== Multi-model compare =====
+    private static final String PREF_COMPARE_MODELS = "compare.models.v1";
+    private static final String PREF_COMPARE_METRICS_JSON = "compare.metrics.json.v1";
+    public static final int COMPARE_MAX_MODELS = 4;
+    private static final int COMPARE_MAX_RUNS = 50;
+
+    /**
+     * Models used by compare mode. Falls back to every model with an API key (current model
+     * first) when the user hasn't picked any.
+     */
+    public List<LanguageModel> getCompareModels() {
+        ArrayList<LanguageModel> out = new ArrayList<>();
+        String raw = mClient.getString(PREF_COMPARE_MODELS, "");
+        if (raw != null && !raw.trim().isEmpty()) {
+            for (String name : raw.split(",")) {
+                try {
+                    LanguageModel m = LanguageModel.valueOf(name.trim());
+                    if (!out.contains(m)) out.add(m);
+                } catch (IllegalArgumentException ignored) {}
+                if (out.size() >= COMPARE_MAX_MODELS) break;
+            }
+            if (!out.isEmpty()) return out;
+        }
+
+        if (hasLanguageModel()) {
+            LanguageModel current = getLanguageModel();
+            String key = getApiKey(current);
+            if (!current.requiresApiKey || (key != null && !key.trim().isEmpty())) out.add(current);
+        }
+        for (LanguageModel m : LanguageModel.values()) {
+            if (out.size() >= COMPARE_MAX_MODELS) break;
+            if (out.contains(m)) continue;
+            String key = getApiKey(m);
+            if (!m.requiresApiKey || (key != null && !key.trim().isEmpty())) out.add(m);
+        }
+        return out;
+    }
+
+    public void setCompareModels(List<LanguageModel> models) {
+        StringBuilder sb = new StringBuilder();
+        int n = 0;
+        if (models != null) {
+            for (LanguageModel m : models) {
+                if (m == null) continue;
+                if (n++ >= COMPARE_MAX_MODELS) break;
+                if (sb.length() > 0) sb.append(',');
+                sb.append(m.name());
+            }
+        }
+        mClient.putString(PREF_COMPARE_MODELS, sb.toString());
+    }
+
+    /** Appends one compare run (array of per-model metrics) and keeps the latest 50 runs. */
+    public void appendCompareRun(JSONObject run) {
+        if (run == null) return;
+        JSONArray arr;
+        try {
+            arr = new JSONArray(mClient.getString(PREF_COMPARE_METRICS_JSON, "[]"));
+        } catch (JSONException | NullPointerException e) {
+            arr = new JSONArray();
+        }
+        arr.put(run);
+        if (arr.length() > COMPARE_MAX_RUNS) {
+            JSONArray trimmed = new JSONArray();
+            for (int i = arr.length() - COMPARE_MAX_RUNS; i < arr.length(); i++) {
+                trimmed.put(arr.opt(i));
+            }
+            arr = trimmed;
+        }
+        mClient.putString(PREF_COMPARE_METRICS_JSON, arr.toString());
+    }
+
+    public String getCompareRunsJson() {
+        return mClient.getString(PREF_COMPARE_METRICS_JSON, "[]");
+    }
 
-}
\ No newline at end of file
+}
@@ -58,24 +58,27 @@ public class SPUpdater implements ConfigChangeListener {
 
     @Override
     public void onOtherSettingsChange(Bundle otherSettings) {
-        for (String key : otherSettings.keySet()) {
-            Object value = otherSettings.get(key);
-
-            // Handle ProcessTextActivity enabling/disabling
-            if ("text_actions_enabled".equals(key)) {
-                updateProcessTextActivityState((Boolean) value);
-                continue;
-            }
-
-            try {
-                OtherSettingsType type = OtherSettingsType.valueOf(key);
-                tn.eluea.kgpt.util.Logger.log("Updating key " + key + " with value " + value);
-                mSPManager.setOtherSetting(type, value);
-            } catch (IllegalArgumentException e) {
-                // Ignore keys that are not part of OtherSettingsType enum
-                tn.eluea.kgpt.util.Logger.log("Ignoring generic setting key: " + key);
+        // Every setting in the bundle goes to the provider as one batch
+        mSPManager.getConfigClient().runInTransaction(() -> {
+            for (String key : otherSettings.keySet()) {
+                Object value = otherSettings.get(key);
+
+                // Handle ProcessTextActivity enabling/disabling
+                if ("text_actions_enabled".equals(key)) {
+                    updateProcessTextActivityState((Boolean) value);
+                    continue;
+                }
+
+                try {
+                    OtherSettingsType type = OtherSettingsType.valueOf(key);
+                    tn.eluea.kgpt.util.Logger.log("Updating key " + key + " with value " + value);
+                    mSPManager.setOtherSetting(type, value);
+                } catch (IllegalArgumentException e) {
+                    // Ignore keys that are not part of OtherSettingsType enum
+                    tn.eluea.kgpt.util.Logger.log("Ignoring generic setting key: " + key);
+                }
             }
-        }
+        });
     }
 
     private void updateProcessTextActivityState(boolean enabled) {
@@ -26,9 +26,12 @@ import java.util.Locale;
 import java.util.Set;
 
 import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.instruction.command.Commands;
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.provider.ConfigClient;
 import tn.eluea.kgpt.settings.OtherSettingsType;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTrigger;
 import tn.eluea.kgpt.features.textactions.domain.TextAction;
 
 public class BackupManager {
@@ -71,7 +74,8 @@ public class BackupManager {
         this.context = context;
         this.spManager = SPManager.getInstance();
         this.uiPrefs = context.getSharedPreferences("keyboard_gpt_ui", Context.MODE_PRIVATE);
-        this.configClient = new ConfigClient(context);
+        // SPManager's client, so its setters and ours share one transaction on restore
+        this.configClient = spManager.getConfigClient();
     }
 
     public String createBackup() throws JSONException {
@@ -84,14 +88,15 @@ public class BackupManager {
         JSONArray includedSections = new JSONArray();
 
         if (options.isSelected(BackupOptions.Option.COMMANDS)) {
-            backup.put(KEY_COMMANDS, spManager.getGenerativeAICommandsRaw());
+            // Backups carry the JSON form, whatever form the config holds
+            backup.put(KEY_COMMANDS, Commands.CODEC.toJson(spManager.getGenerativeAICommandsRaw()));
             includedSections.put(BackupOptions.Option.COMMANDS.key);
         }
 
         if (options.isSelected(BackupOptions.Option.PATTERNS)) {
             String patternsRaw = spManager.getParsePatternsRaw();
             if (patternsRaw != null)
-                backup.put(KEY_PATTERNS, patternsRaw);
+                backup.put(KEY_PATTERNS, ParsePattern.CODEC.toJson(patternsRaw));
             includedSections.put(BackupOptions.Option.PATTERNS.key);
         }
 
@@ -157,7 +162,7 @@ public class BackupManager {
         if (options.isSelected(BackupOptions.Option.APP_TRIGGERS)) {
             String appTriggersRaw = configClient.getString("app_triggers", null);
             if (appTriggersRaw != null)
-                backup.put(KEY_APP_TRIGGERS, appTriggersRaw);
+                backup.put(KEY_APP_TRIGGERS, AppTrigger.CODEC.toJson(appTriggersRaw));
             backup.put(KEY_APP_TRIGGERS_ENABLED, configClient.getBoolean("app_triggers_enabled", false));
             includedSections.put(BackupOptions.Option.APP_TRIGGERS.key);
         }
@@ -170,10 +175,9 @@ public class BackupManager {
             backup.put(KEY_TEXT_ACTIONS_SHOW_LABELS, configClient.getBoolean("text_actions_show_labels", true));
 
             JSONObject actionPrompts = new JSONObject();
-            SharedPreferences mainPrefs = context.getSharedPreferences("keyboard_gpt", Context.MODE_PRIVATE);
             for (TextAction action : TextAction.values()) {
                 String key = "text_action_prompt_" + action.name();
-                String prompt = mainPrefs.getString(key, null);
+                String prompt = configClient.getString(key, null);
                 if (prompt != null)
                     actionPrompts.put(action.name(), prompt);
             }
@@ -241,213 +245,218 @@ public class BackupManager {
     }
 
     public RestoreResult restoreBackup(String backupJson, BackupOptions options) {
+        RestoreResult[] result = new RestoreResult[1];
         try {
             JSONObject backup = new JSONObject(backupJson);
-            int restoredCount = 0;
-            List<String> restoredItems = new ArrayList<>();
+            // Everything restored reaches the provider as one batch, and a backup that
+            // turns out to be malformed halfway through writes nothing
+            configClient.runInTransaction(() -> result[0] = restoreSections(backup, options));
+        } catch (JSONException e) {
+            return new RestoreResult(false, 0, new ArrayList<>(), "Invalid backup file: " + e.getMessage());
+        }
+        return result[0];
+    }
 
-            if (options.isSelected(BackupOptions.Option.COMMANDS) && backup.has(KEY_COMMANDS)) {
-                spManager.setGenerativeAICommandsRaw(backup.getString(KEY_COMMANDS));
-                restoredCount++;
-                restoredItems.add("AI Commands");
-            }
+    private RestoreResult restoreSections(JSONObject backup, BackupOptions options) throws JSONException {
+        int restoredCount = 0;
+        List<String> restoredItems = new ArrayList<>();
 
-            if (options.isSelected(BackupOptions.Option.PATTERNS) && backup.has(KEY_PATTERNS)) {
-                spManager.setParsePatternsRaw(backup.getString(KEY_PATTERNS));
-                restoredCount++;
-                restoredItems.add("Trigger Patterns");
-            }
+        if (options.isSelected(BackupOptions.Option.COMMANDS) && backup.has(KEY_COMMANDS)) {
+            spManager.setGenerativeAICommandsRaw(Commands.CODEC.fromJson(backup.getString(KEY_COMMANDS)));
+            restoredCount++;
+            restoredItems.add("AI Commands");
+        }
 
-            if (options.isSelected(BackupOptions.Option.LANGUAGE_MODEL)) {
-                if (backup.has(KEY_LANGUAGE_MODEL)) {
-                    try {
-                        LanguageModel model = LanguageModel.valueOf(backup.getString(KEY_LANGUAGE_MODEL));
-                        spManager.setLanguageModel(model);
-                        restoredCount++;
-                    } catch (IllegalArgumentException ignored) {
-                    }
+        if (options.isSelected(BackupOptions.Option.PATTERNS) && backup.has(KEY_PATTERNS)) {
+            spManager.setParsePatternsRaw(ParsePattern.CODEC.fromJson(backup.getString(KEY_PATTERNS)));
+            restoredCount++;
+            restoredItems.add("Trigger Patterns");
+        }
+
+        if (options.isSelected(BackupOptions.Option.LANGUAGE_MODEL)) {
+            if (backup.has(KEY_LANGUAGE_MODEL)) {
+                try {
+                    LanguageModel model = LanguageModel.valueOf(backup.getString(KEY_LANGUAGE_MODEL));
+                    spManager.setLanguageModel(model);
+                    restoredCount++;
+                } catch (IllegalArgumentException ignored) {
                 }
-                if (backup.has(KEY_SUB_MODELS)) {
-                    JSONObject subModels = backup.getJSONObject(KEY_SUB_MODELS);
-                    for (LanguageModel model : LanguageModel.values()) {
-                        if (subModels.has(model.name())) {
-                            spManager.setSubModel(model, subModels.getString(model.name()));
-                        }
+            }
+            if (backup.has(KEY_SUB_MODELS)) {
+                JSONObject subModels = backup.getJSONObject(KEY_SUB_MODELS);
+                for (LanguageModel model : LanguageModel.values()) {
+                    if (subModels.has(model.name())) {
+                        spManager.setSubModel(model, subModels.getString(model.name()));
                     }
-                    restoredItems.add("AI Model Settings");
                 }
+                restoredItems.add("AI Model Settings");
             }
+        }
 
-            if (options.isSelected(BackupOptions.Option.SENSITIVE_DATA) && backup.has(KEY_SENSITIVE_DATA)) {
-                JSONObject sensitiveData = backup.getJSONObject(KEY_SENSITIVE_DATA);
-                Iterator<String> modelKeys = sensitiveData.keys();
-                while (modelKeys.hasNext()) {
-                    String modelName = modelKeys.next();
-                    try {
-                        LanguageModel model = LanguageModel.valueOf(modelName);
-                        JSONObject modelConfig = sensitiveData.getJSONObject(modelName);
-                        Iterator<String> fieldKeys = modelConfig.keys();
-                        while (fieldKeys.hasNext()) {
-                            String fieldName = fieldKeys.next();
-                            try {
-                                tn.eluea.kgpt.llm.LanguageModelField field = tn.eluea.kgpt.llm.LanguageModelField
-                                        .valueOf(fieldName);
-                                String value = modelConfig.getString(fieldName);
-                                spManager.setLanguageModelField(model, field, value);
-                            } catch (IllegalArgumentException | JSONException ignored) {
-                                // Skip invalid fields
-                            }
+        if (options.isSelected(BackupOptions.Option.SENSITIVE_DATA) && backup.has(KEY_SENSITIVE_DATA)) {
+            JSONObject sensitiveData = backup.getJSONObject(KEY_SENSITIVE_DATA);
+            Iterator<String> modelKeys = sensitiveData.keys();
+            while (modelKeys.hasNext()) {
+                String modelName = modelKeys.next();
+                try {
+                    LanguageModel model = LanguageModel.valueOf(modelName);
+                    JSONObject modelConfig = sensitiveData.getJSONObject(modelName);
+                    Iterator<String> fieldKeys = modelConfig.keys();
+                    while (fieldKeys.hasNext()) {
+                        String fieldName = fieldKeys.next();
+                        try {
+                            tn.eluea.kgpt.llm.LanguageModelField field = tn.eluea.kgpt.llm.LanguageModelField
+                                    .valueOf(fieldName);
+                            String value = modelConfig.getString(fieldName);
+                            spManager.setLanguageModelField(model, field, value);
+                        } catch (IllegalArgumentException | JSONException ignored) {
+                            // Skip invalid fields
                         }
-                    } catch (IllegalArgumentException ignored) {
-                        // Skip invalid models
                     }
+                } catch (IllegalArgumentException ignored) {
+                    // Skip invalid models
                 }
-                restoredCount++;
-                restoredItems.add("API Keys/Configs");
             }
+            restoredCount++;
+            restoredItems.add("API Keys/Configs");
+        }
 
-            if (options.isSelected(BackupOptions.Option.APPEARANCE)) {
-                boolean restored = false;
-                SharedPreferences.Editor editor = uiPrefs.edit();
-                if (backup.has(KEY_THEME)) {
-                    editor.putBoolean("theme_mode", backup.getBoolean(KEY_THEME));
-                    restored = true;
-                }
-                if (backup.has(KEY_AMOLED)) {
-                    editor.putBoolean("amoled_mode", backup.getBoolean(KEY_AMOLED));
-                    restored = true;
-                }
-                editor.apply();
-                if (backup.has(KEY_MATERIAL_YOU_ENABLED)) {
-                    spManager.setOtherSetting(OtherSettingsType.MaterialYouEnabled,
-                            backup.getBoolean(KEY_MATERIAL_YOU_ENABLED));
-                    restored = true;
-                }
-                if (backup.has(KEY_MATERIAL_YOU_USE_WALLPAPER)) {
-                    spManager.setOtherSetting(OtherSettingsType.MaterialYouUseWallpaper,
-                            backup.getBoolean(KEY_MATERIAL_YOU_USE_WALLPAPER));
-                    restored = true;
-                }
-                if (backup.has(KEY_MATERIAL_YOU_SEED_COLOR)) {
-                    spManager.setOtherSetting(OtherSettingsType.MaterialYouSeedColor,
-                            backup.getInt(KEY_MATERIAL_YOU_SEED_COLOR));
-                    restored = true;
-                }
-                if (backup.has(KEY_MATERIAL_YOU_SINGLE_TONE)) {
-                    spManager.setOtherSetting(OtherSettingsType.MaterialYouSingleTone,
-                            backup.getBoolean(KEY_MATERIAL_YOU_SINGLE_TONE));
-                    restored = true;
-                }
-                if (restored) {
-                    restoredCount++;
-                    restoredItems.add("Appearance");
-                }
+        if (options.isSelected(BackupOptions.Option.APPEARANCE)) {
+            boolean restored = false;
+            SharedPreferences.Editor editor = uiPrefs.edit();
+            if (backup.has(KEY_THEME)) {
+                editor.putBoolean("theme_mode", backup.getBoolean(KEY_THEME));
+                restored = true;
+            }
+            if (backup.has(KEY_AMOLED)) {
+                editor.putBoolean("amoled_mode", backup.getBoolean(KEY_AMOLED));
+                restored = true;
+            }
+            editor.apply();
+            if (backup.has(KEY_MATERIAL_YOU_ENABLED)) {
+                spManager.setOtherSetting(OtherSettingsType.MaterialYouEnabled,
+                        backup.getBoolean(KEY_MATERIAL_YOU_ENABLED));
+                restored = true;
+            }
+            if (backup.has(KEY_MATERIAL_YOU_USE_WALLPAPER)) {
+                spManager.setOtherSetting(OtherSettingsType.MaterialYouUseWallpaper,
+                        backup.getBoolean(KEY_MATERIAL_YOU_USE_WALLPAPER));
+                restored = true;
+            }
+            if (backup.has(KEY_MATERIAL_YOU_SEED_COLOR)) {
+                spManager.setOtherSetting(OtherSettingsType.MaterialYouSeedColor,
+                        backup.getInt(KEY_MATERIAL_YOU_SEED_COLOR));
+                restored = true;
+            }
+            if (backup.has(KEY_MATERIAL_YOU_SINGLE_TONE)) {
+                spManager.setOtherSetting(OtherSettingsType.MaterialYouSingleTone,
+                        backup.getBoolean(KEY_MATERIAL_YOU_SINGLE_TONE));
+                restored = true;
             }
+            if (restored) {
+                restoredCount++;
+                restoredItems.add("Appearance");
+            }
+        }
 
-            if (options.isSelected(BackupOptions.Option.BLUR_SETTINGS)) {
-                boolean restored = false;
-                SharedPreferences.Editor editor = uiPrefs.edit();
-                if (backup.has(KEY_BLUR_ENABLED)) {
-                    editor.putBoolean("blur_enabled", backup.getBoolean(KEY_BLUR_ENABLED));
-                    restored = true;
-                }
-                if (backup.has(KEY_BLUR_MATERIAL_YOU)) {
-                    editor.putBoolean("material_you_blur", backup.getBoolean(KEY_BLUR_MATERIAL_YOU));
-                    restored = true;
-                }
-                if (backup.has(KEY_BLUR_INTENSITY)) {
-                    editor.putInt("blur_intensity", backup.getInt(KEY_BLUR_INTENSITY));
-                    restored = true;
-                }
-                if (backup.has(KEY_BLUR_TINT_COLOR)) {
-                    editor.putInt("blur_tint_color", backup.getInt(KEY_BLUR_TINT_COLOR));
-                    restored = true;
-                }
-                editor.apply();
-                if (restored) {
-                    restoredCount++;
-                    restoredItems.add("Blur Settings");
-                }
+        if (options.isSelected(BackupOptions.Option.BLUR_SETTINGS)) {
+            boolean restored = false;
+            SharedPreferences.Editor editor = uiPrefs.edit();
+            if (backup.has(KEY_BLUR_ENABLED)) {
+                editor.putBoolean("blur_enabled", backup.getBoolean(KEY_BLUR_ENABLED));
+                restored = true;
+            }
+            if (backup.has(KEY_BLUR_MATERIAL_YOU)) {
+                editor.putBoolean("material_you_blur", backup.getBoolean(KEY_BLUR_MATERIAL_YOU));
+                restored = true;
             }
+            if (backup.has(KEY_BLUR_INTENSITY)) {
+                editor.putInt("blur_intensity", backup.getInt(KEY_BLUR_INTENSITY));
+                restored = true;
+            }
+            if (backup.has(KEY_BLUR_TINT_COLOR)) {
+                editor.putInt("blur_tint_color", backup.getInt(KEY_BLUR_TINT_COLOR));
+                restored = true;
+            }
+            editor.apply();
+            if (restored) {
+                restoredCount++;
+                restoredItems.add("Blur Settings");
+            }
+        }
 
-            if (options.isSelected(BackupOptions.Option.GENERAL_SETTINGS)) {
-                boolean restored = false;
-                if (backup.has(KEY_SEARCH_ENGINE)) {
-                    spManager.setSearchEngine(backup.getString(KEY_SEARCH_ENGINE));
-                    restored = true;
-                }
-                if (backup.has(KEY_ENABLE_LOGS)) {
-                    spManager.setOtherSetting(OtherSettingsType.EnableLogs, backup.getBoolean(KEY_ENABLE_LOGS));
-                    restored = true;
-                }
-                if (backup.has(KEY_EXTERNAL_INTERNET)) {
-                    spManager.setOtherSetting(OtherSettingsType.EnableExternalInternet,
-                            backup.getBoolean(KEY_EXTERNAL_INTERNET));
-                    restored = true;
-                }
-                if (restored) {
-                    restoredCount++;
-                    restoredItems.add("General Settings");
-                }
+        if (options.isSelected(BackupOptions.Option.GENERAL_SETTINGS)) {
+            boolean restored = false;
+            if (backup.has(KEY_SEARCH_ENGINE)) {
+                spManager.setSearchEngine(backup.getString(KEY_SEARCH_ENGINE));
+                restored = true;
             }
+            if (backup.has(KEY_ENABLE_LOGS)) {
+                spManager.setOtherSetting(OtherSettingsType.EnableLogs, backup.getBoolean(KEY_ENABLE_LOGS));
+                restored = true;
+            }
+            if (backup.has(KEY_EXTERNAL_INTERNET)) {
+                spManager.setOtherSetting(OtherSettingsType.EnableExternalInternet,
+                        backup.getBoolean(KEY_EXTERNAL_INTERNET));
+                restored = true;
+            }
+            if (restored) {
+                restoredCount++;
+                restoredItems.add("General Settings");
+            }
+        }
 
-            if (options.isSelected(BackupOptions.Option.APP_TRIGGERS)) {
-                boolean restored = false;
-                if (backup.has(KEY_APP_TRIGGERS)) {
-                    configClient.putString("app_triggers", backup.getString(KEY_APP_TRIGGERS));
-                    restored = true;
-                }
-                if (backup.has(KEY_APP_TRIGGERS_ENABLED)) {
-                    configClient.putBoolean("app_triggers_enabled", backup.getBoolean(KEY_APP_TRIGGERS_ENABLED));
-                    restored = true;
-                }
-                if (restored) {
-                    restoredCount++;
-                    restoredItems.add("App Triggers");
-                }
+        if (options.isSelected(BackupOptions.Option.APP_TRIGGERS)) {
+            boolean restored = false;
+            if (backup.has(KEY_APP_TRIGGERS)) {
+                configClient.putString("app_triggers", AppTrigger.CODEC.fromJson(backup.getString(KEY_APP_TRIGGERS)));
+                restored = true;
+            }
+            if (backup.has(KEY_APP_TRIGGERS_ENABLED)) {
+                configClient.putBoolean("app_triggers_enabled", backup.getBoolean(KEY_APP_TRIGGERS_ENABLED));
+                restored = true;
             }
+            if (restored) {
+                restoredCount++;
+                restoredItems.add("App Triggers");
+            }
+        }
 
-            if (options.isSelected(BackupOptions.Option.TEXT_ACTIONS)) {
-                boolean restored = false;
-                if (backup.has(KEY_TEXT_ACTIONS_ENABLED)) {
-                    configClient.putBoolean("text_actions_enabled", backup.getBoolean(KEY_TEXT_ACTIONS_ENABLED));
-                    restored = true;
-                }
-                if (backup.has(KEY_TEXT_ACTIONS_LIST)) {
-                    configClient.putString("text_actions_list", backup.getString(KEY_TEXT_ACTIONS_LIST));
-                    restored = true;
-                }
-                if (backup.has(KEY_TEXT_ACTIONS_SHOW_LABELS)) {
-                    configClient.putBoolean("text_actions_show_labels",
-                            backup.getBoolean(KEY_TEXT_ACTIONS_SHOW_LABELS));
-                    restored = true;
-                }
-                if (backup.has(KEY_TEXT_ACTION_PROMPTS)) {
-                    JSONObject prompts = backup.getJSONObject(KEY_TEXT_ACTION_PROMPTS);
-                    SharedPreferences mainPrefs = context.getSharedPreferences("keyboard_gpt", Context.MODE_PRIVATE);
-                    SharedPreferences.Editor editor = mainPrefs.edit();
-                    Iterator<String> keys = prompts.keys();
-                    while (keys.hasNext()) {
-                        String actionName = keys.next();
-                        editor.putString("text_action_prompt_" + actionName, prompts.getString(actionName));
-                    }
-                    editor.apply();
-                    restored = true;
-                }
-                if (backup.has(KEY_CUSTOM_TEXT_ACTIONS)) {
-                    configClient.putString("custom_text_actions", backup.getString(KEY_CUSTOM_TEXT_ACTIONS));
-                    restored = true;
-                }
-                if (restored) {
-                    restoredCount++;
-                    restoredItems.add("Text Actions");
+        if (options.isSelected(BackupOptions.Option.TEXT_ACTIONS)) {
+            boolean restored = false;
+            if (backup.has(KEY_TEXT_ACTIONS_ENABLED)) {
+                configClient.putBoolean("text_actions_enabled", backup.getBoolean(KEY_TEXT_ACTIONS_ENABLED));
+                restored = true;
+            }
+            if (backup.has(KEY_TEXT_ACTIONS_LIST)) {
+                configClient.putString("text_actions_list", backup.getString(KEY_TEXT_ACTIONS_LIST));
+                restored = true;
+            }
+            if (backup.has(KEY_TEXT_ACTIONS_SHOW_LABELS)) {
+                configClient.putBoolean("text_actions_show_labels",
+                        backup.getBoolean(KEY_TEXT_ACTIONS_SHOW_LABELS));
+                restored = true;
+            }
+            if (backup.has(KEY_TEXT_ACTION_PROMPTS)) {
+                JSONObject prompts = backup.getJSONObject(KEY_TEXT_ACTION_PROMPTS);
+                Iterator<String> keys = prompts.keys();
+                while (keys.hasNext()) {
+                    String actionName = keys.next();
+                    configClient.putString("text_action_prompt_" + actionName, prompts.getString(actionName));
                 }
+                restored = true;
+            }
+            if (backup.has(KEY_CUSTOM_TEXT_ACTIONS)) {
+                configClient.putString("custom_text_actions", backup.getString(KEY_CUSTOM_TEXT_ACTIONS));
+                restored = true;
+            }
+            if (restored) {
+                restoredCount++;
+                restoredItems.add("Text Actions");
             }
-
-            return new RestoreResult(true, restoredCount, restoredItems, null);
-        } catch (JSONException e) {
-            return new RestoreResult(false, 0, new ArrayList<>(), "Invalid backup file: " + e.getMessage());
         }
+
+        return new RestoreResult(true, restoredCount, restoredItems, null);
     }
 
     public boolean saveToFile(Uri uri, String backupJson) {
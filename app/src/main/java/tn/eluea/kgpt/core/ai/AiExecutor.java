@@ -0,0 +1,39 @@
+package tn.eluea.kgpt.core.ai;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide thread pool for language model requests.
+ *
+ * Shared by {@link AiResponseManager} (keyboard process) and the multi-model compare mode
+ * (KGPT app process), so each process keeps a single bounded pool for blocking network reads.
+ */
+public final class AiExecutor {
+
+    // Enough for a full compare run; normal generations only ever use one or two threads
+    public static final int POOL_SIZE = 4;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(POOL_SIZE);
+
+    // Shutdown hook to clean up executor
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            EXECUTOR.shutdown();
+            try {
+                if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
+                    EXECUTOR.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                EXECUTOR.shutdownNow();
+            }
+        }));
+    }
+
+    private AiExecutor() {}
+
+    public static ExecutorService get() {
+        return EXECUTOR;
+    }
+}
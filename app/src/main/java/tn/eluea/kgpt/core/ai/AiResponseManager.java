@@ -1,8 +1,8 @@
 package tn.eluea.kgpt.core.ai;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import tn.eluea.kgpt.R;
@@ -15,12 +15,37 @@ public class AiResponseManager implements GenerativeAIListener {
 
     private final GenerativeAIController mAIController;
     private final Runnable onAiPrepareCallback;
-    private boolean justPrepared = true;
 
-    // State for text actions (replace mode)
+    // State for text actions (replace mode); consumed by the next generateResponse
     private boolean isTextActionMode = false;
     private String pendingSelectedText = null;
 
+    /**
+     * Per-generation state. Several generations can run at once, each writing into the field
+     * it was started from.
+     */
+    private static final class Job {
+        final GenerationSession session;
+        final String prompt;
+        final String systemMessage;
+        final String roleId;
+        boolean justPrepared = true;
+
+        Job(GenerationSession session, String prompt, String systemMessage, String roleId) {
+            this.session = session;
+            this.prompt = prompt;
+            this.systemMessage = systemMessage;
+            this.roleId = roleId;
+        }
+
+        GenerationTarget target() {
+            return session.target;
+        }
+    }
+
+    // Keyed by session id
+    private final Map<Long, Job> mJobs = new ConcurrentHashMap<>();
+
     // Use method to get string to support locale changes and resources
     private String getGeneratingContentString() {
         Context ctx = UiInteractor.getInstance().getContext();
@@ -37,21 +62,7 @@ public class AiResponseManager implements GenerativeAIListener {
     }
 
     // Thread pool for AI requests - reuse threads instead of creating new ones
-    private static final ExecutorService aiExecutor = Executors.newFixedThreadPool(2);
-
-    // Shutdown hook to clean up executor
-    static {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            aiExecutor.shutdown();
-            try {
-                if (!aiExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    aiExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                aiExecutor.shutdownNow();
-            }
-        }));
-    }
+    private static final ExecutorService aiExecutor = AiExecutor.get();
 
     public AiResponseManager(GenerativeAIController aiController, Runnable onAiPrepareCallback) {
         this.mAIController = aiController;
@@ -94,18 +105,65 @@ public class AiResponseManager implements GenerativeAIListener {
             return;
         }
 
+        // Bind the generation to the field it was triggered from
+        GenerationSession session = new GenerationSession(
+                IMSController.getInstance().getCurrentTarget(), GenerativeAIController.SESSION_DEADLINE_MS);
+        Job job = new Job(session, prompt, systemMessage, roleIdOverride);
+        setTextActionMode(false, null);
+
+        // Don't block the field on a dead network: queue the prompt for the KGPT app to replay.
+        // A local server may well be reachable (on-device or LAN) without a default network.
+        // If the queue refuses the prompt, generate anyway so the failure reaches the field
+        // through onAIError instead of the prompt vanishing.
+        if (mAIController.getLanguageModel() != tn.eluea.kgpt.llm.LanguageModel.LocalServer
+                && !tn.eluea.kgpt.features.deferred.DeferredPromptQueue
+                .isNetworkAvailable(UiInteractor.getInstance().getContext())
+                && deferRequest(job)) {
+            return;
+        }
+
+        mJobs.put(session.id, job);
+
         // Use thread pool instead of creating new threads
         aiExecutor.execute(() -> {
             try {
                 // Prefer role-aware API if available
-                mAIController.generateResponse(prompt, systemMessage, roleIdOverride);
+                mAIController.generateResponse(prompt, systemMessage, roleIdOverride, session);
             } catch (Throwable t) {
-                // Backward compatibility: fall back to legacy signature
-                mAIController.generateResponse(prompt, systemMessage);
+                // Backward compatibility: retry without the role override
+                mAIController.generateResponse(prompt, systemMessage, null, session);
             }
         });
     }
 
+    /**
+     * Hand a request over to the KGPT app, which replays it when connectivity returns
+     * and stores the reply in the AI Clipboard.
+     */
+    private boolean deferRequest(Job job) {
+        if (job == null || job.prompt == null) return false;
+
+        Context ctx = UiInteractor.getInstance().getContext();
+        String model = null;
+        try {
+            model = mAIController.getLanguageModel().name();
+        } catch (Throwable ignored) {}
+        if (!tn.eluea.kgpt.features.deferred.DeferredPromptQueue.submit(ctx, job.prompt,
+                job.systemMessage, job.roleId, model)) {
+            return false;
+        }
+
+        String msg;
+        try {
+            msg = ctx.getString(R.string.deferred_prompt_queued);
+        } catch (Exception e) {
+            // Running with the host IME's Resources
+            msg = "No network. Prompt queued, the reply will be saved to AI Clipboard.";
+        }
+        UiInteractor.getInstance().toastLong(msg);
+        return true;
+    }
+
     public void setTextActionMode(boolean enabled, String selectedText) {
         this.isTextActionMode = enabled;
         this.pendingSelectedText = selectedText;
@@ -115,52 +173,116 @@ public class AiResponseManager implements GenerativeAIListener {
         return mAIController;
     }
 
+    /** The most recently started generation. */
+    public GenerationSession getSession() {
+        return mAIController.getCurrentSession();
+    }
+
+    /**
+     * Stop the generation writing into the focused field (or the most recent one),
+     * keeping what was already written.
+     */
+    public boolean cancelGeneration() {
+        GenerationSession session = mAIController.getSessionFor(IMSController.getInstance().getCurrentTarget());
+        return session != null ? mAIController.cancelSession(session) : mAIController.cancelCurrentSession();
+    }
+
     // --- GenerativeAIListener Implementation ---
 
     @Override
     public void onAIPrepare() {
+        onAIPrepare(mAIController.getCurrentSession());
+    }
+
+    @Override
+    public void onAINext(String chunk) {
+        onAINext(mAIController.getCurrentSession(), chunk);
+    }
+
+    @Override
+    public void onAIError(Throwable t) {
+        onAIError(mAIController.getCurrentSession(), t);
+    }
+
+    @Override
+    public void onAIComplete() {
+        onAIComplete(mAIController.getCurrentSession());
+    }
+
+    @Override
+    public void onAIPrepare(GenerationSession session) {
+        Job job = session != null ? mJobs.get(session.id) : null;
+        if (job == null) {
+            return;
+        }
         if (onAiPrepareCallback != null) {
             onAiPrepareCallback.run();
         }
 
-        // In text action mode, delete the selected text first
-        if (isTextActionMode && pendingSelectedText != null) {
-            // The selected text should already be selected, so we just need to delete it
-            // and the AI response will replace it
-            IMSController.getInstance().flush();
-        } else {
-            IMSController.getInstance().flush();
+        IMSController ims = IMSController.getInstance();
+        // In text action mode the selected text is still selected, so the AI response replaces it
+        if (ims.isFocused(job.target())) {
+            ims.flush();
         }
 
-        String generatingContent = getGeneratingContentString();
-        IMSController.getInstance().commit(generatingContent);
-        IMSController.getInstance().stopNotifyInput();
-        IMSController.getInstance().startInputLock();
-        justPrepared = true;
+        ims.commitTo(job.target(), getGeneratingContentString());
+        ims.setTargetBusy(job.target(), true);
+        job.justPrepared = true;
     }
 
-    private void clearGeneratingContent() {
-        if (justPrepared) {
-            justPrepared = false;
-            IMSController.getInstance().flush();
-            String generatingContent = getGeneratingContentString();
-            IMSController.getInstance().delete(generatingContent.length());
+    private void clearGeneratingContent(Job job) {
+        if (job.justPrepared) {
+            job.justPrepared = false;
+            IMSController.getInstance().deleteTo(job.target(), getGeneratingContentString().length());
         }
     }
 
     @Override
-    public void onAINext(String chunk) {
-        IMSController.getInstance().endInputLock();
-        clearGeneratingContent();
-        IMSController.getInstance().flush();
-        IMSController.getInstance().commit(chunk);
-        IMSController.getInstance().startInputLock();
+    public void onAINext(GenerationSession session, String chunk) {
+        Job job = session != null ? mJobs.get(session.id) : null;
+        if (job == null) {
+            return;
+        }
+        IMSController ims = IMSController.getInstance();
+        if (!ims.isFocused(job.target())) {
+            // User is in another field; this output waits in the target's queue
+            clearGeneratingContent(job);
+            ims.commitTo(job.target(), chunk);
+            return;
+        }
+
+        // One batch per coalesced chunk: the editor relayouts once instead of per edit
+        android.view.inputmethod.InputConnection batch = ims.beginBatchEdit();
+        try {
+            ims.endInputLock();
+            clearGeneratingContent(job);
+            ims.flush();
+            ims.commitTo(job.target(), chunk);
+            ims.startInputLock();
+        } finally {
+            ims.endBatchEdit(batch);
+        }
     }
 
     @Override
-    public void onAIError(Throwable t) {
-        IMSController.getInstance().endInputLock();
-        clearGeneratingContent();
+    public void onAIError(GenerationSession session, Throwable t) {
+        Job job = session != null ? mJobs.remove(session.id) : null;
+        if (job == null) {
+            return;
+        }
+        IMSController ims = IMSController.getInstance();
+        boolean focused = ims.isFocused(job.target());
+
+        // Only defer when nothing was streamed yet, otherwise the reply would be duplicated
+        boolean nothingCommitted = job.justPrepared;
+        if (focused) ims.endInputLock();
+        clearGeneratingContent(job);
+
+        if (nothingCommitted && tn.eluea.kgpt.features.deferred.DeferredPromptQueue.isNetworkFailure(t)
+                && deferRequest(job)) {
+            ims.setTargetBusy(job.target(), false);
+            return;
+        }
 
         String errorMsg = t.getMessage();
         Context ctx = UiInteractor.getInstance().getContext();
@@ -170,21 +292,20 @@ public class AiResponseManager implements GenerativeAIListener {
 
         String displayError = ctx != null ? ctx.getString(R.string.error_format, errorMsg)
                 : "[Error: " + errorMsg + "]";
-        IMSController.getInstance().flush();
-        IMSController.getInstance().commit(displayError);
-        IMSController.getInstance().startNotifyInput();
-
-        // Reset text action mode
-        setTextActionMode(false, null);
+        if (focused) ims.flush();
+        ims.commitTo(job.target(), displayError);
+        ims.setTargetBusy(job.target(), false);
     }
 
     @Override
-    public void onAIComplete() {
-        IMSController.getInstance().endInputLock();
-        clearGeneratingContent();
-        IMSController.getInstance().startNotifyInput();
-
-        // Reset text action mode
-        setTextActionMode(false, null);
+    public void onAIComplete(GenerationSession session) {
+        Job job = session != null ? mJobs.remove(session.id) : null;
+        if (job == null) {
+            return;
+        }
+        IMSController ims = IMSController.getInstance();
+        if (ims.isFocused(job.target())) ims.endInputLock();
+        clearGeneratingContent(job);
+        ims.setTargetBusy(job.target(), false);
     }
 }
@@ -0,0 +1,147 @@
+package tn.eluea.kgpt.core.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One AI generation, from the moment a prompt is submitted until its output is fully
+ * committed (or abandoned).
+ *
+ * States only move forward: PREPARING -> CONNECTING -> STREAMING -> COMMITTING -> DONE,
+ * with FAILED and CANCELLED reachable from any live state. Once terminal, every further
+ * transition is refused, which is what lets callers drop late chunks from an old request.
+ */
+public final class GenerationSession {
+
+    public enum State {
+        PREPARING,
+        CONNECTING,
+        STREAMING,
+        COMMITTING,
+        DONE,
+        FAILED,
+        CANCELLED;
+
+        public boolean isTerminal() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private static final AtomicLong sNextId = new AtomicLong(1);
+    private static final long NEVER = Long.MIN_VALUE;
+
+    public final long id;
+    public final GenerationTarget target;
+    private final long mCreatedAtMs;
+    private final long mDeadlineAtMs;
+    private final long[] mTransitionAtMs = new long[State.values().length];
+
+    private volatile State mState = State.PREPARING;
+    private volatile Runnable mCancelHandle = null;
+
+    public GenerationSession(long timeoutMs) {
+        this(GenerationTarget.UNKNOWN, timeoutMs);
+    }
+
+    public GenerationSession(GenerationTarget target, long timeoutMs) {
+        id = sNextId.getAndIncrement();
+        this.target = target != null ? target : GenerationTarget.UNKNOWN;
+        mCreatedAtMs = nowMs();
+        mDeadlineAtMs = mCreatedAtMs + Math.max(0L, timeoutMs);
+        Arrays.fill(mTransitionAtMs, NEVER);
+        mTransitionAtMs[State.PREPARING.ordinal()] = mCreatedAtMs;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public boolean isTerminal() {
+        return mState.isTerminal();
+    }
+
+    /**
+     * Advance to {@code next}. Returns false if the session is already terminal or the move
+     * would go backwards, in which case nothing changes.
+     */
+    public synchronized boolean moveTo(State next) {
+        State cur = mState;
+        if (cur.isTerminal() || cur == next) return false;
+        if (!next.isTerminal() && next.ordinal() < cur.ordinal()) return false;
+        mState = next;
+        mTransitionAtMs[next.ordinal()] = nowMs();
+        return true;
+    }
+
+    /**
+     * Install the handle that aborts the underlying request. If the session already ended
+     * abnormally the handle runs right away.
+     */
+    public void setCancelHandle(Runnable handle) {
+        mCancelHandle = handle;
+        State s = mState;
+        if (s == State.CANCELLED || s == State.FAILED) {
+            runCancelHandle();
+        }
+    }
+
+    /** Abort the request. Returns false if the session had already ended. */
+    public boolean cancel() {
+        if (!moveTo(State.CANCELLED)) return false;
+        runCancelHandle();
+        return true;
+    }
+
+    /** Fail the session because its deadline passed, aborting the request. */
+    public boolean expire() {
+        if (!moveTo(State.FAILED)) return false;
+        runCancelHandle();
+        return true;
+    }
+
+    private void runCancelHandle() {
+        Runnable h = mCancelHandle;
+        mCancelHandle = null;
+        if (h != null) {
+            try { h.run(); } catch (Throwable ignored) {}
+        }
+    }
+
+    public long getDeadlineAtMs() {
+        return mDeadlineAtMs;
+    }
+
+    public long remainingMs() {
+        return Math.max(0L, mDeadlineAtMs - nowMs());
+    }
+
+    public boolean isExpired() {
+        return nowMs() >= mDeadlineAtMs;
+    }
+
+    /** Milliseconds from creation until {@code state} was reached, or -1 if it never was. */
+    public long elapsedUntil(State state) {
+        long at = mTransitionAtMs[state.ordinal()];
+        return at == NEVER ? -1 : at - mCreatedAtMs;
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder("session#").append(id).append(' ').append(mState)
+                .append(" -> ").append(target);
+        for (State s : State.values()) {
+            if (s == State.PREPARING) continue;
+            long t = elapsedUntil(s);
+            if (t >= 0) sb.append(' ').append(s.name().toLowerCase()).append('=').append(t).append("ms");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static long nowMs() {
+        return System.nanoTime() / 1_000_000L;
+    }
+}
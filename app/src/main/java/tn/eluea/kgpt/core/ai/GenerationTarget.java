@@ -0,0 +1,52 @@
+package tn.eluea.kgpt.core.ai;
+
+/**
+ * The text field a generation writes into.
+ *
+ * Two targets are the same field when package and field id match; {@link #inputGeneration}
+ * tells apart successive connections to that field (it increases on every onStartInput), so
+ * a generation can notice that the user left and came back.
+ */
+public final class GenerationTarget {
+
+    public static final GenerationTarget UNKNOWN = new GenerationTarget(null, 0, null, 0);
+
+    public final String packageName;
+    public final int fieldId;
+    public final String fieldName;
+    public final int inputGeneration;
+
+    public GenerationTarget(String packageName, int fieldId, String fieldName, int inputGeneration) {
+        this.packageName = packageName;
+        this.fieldId = fieldId;
+        this.fieldName = fieldName;
+        this.inputGeneration = inputGeneration;
+    }
+
+    /** Stable identity of the field, ignoring the connection generation. */
+    public String fieldKey() {
+        return packageName + "#" + fieldId + "#" + (fieldName != null ? fieldName : "");
+    }
+
+    public boolean isSameField(GenerationTarget other) {
+        return other != null && fieldKey().equals(other.fieldKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GenerationTarget)) return false;
+        GenerationTarget t = (GenerationTarget) o;
+        return inputGeneration == t.inputGeneration && isSameField(t);
+    }
+
+    @Override
+    public int hashCode() {
+        return fieldKey().hashCode() * 31 + inputGeneration;
+    }
+
+    @Override
+    public String toString() {
+        return fieldKey() + "@" + inputGeneration;
+    }
+}
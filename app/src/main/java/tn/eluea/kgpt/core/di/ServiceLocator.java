@@ -1,9 +1,17 @@
 package tn.eluea.kgpt.core.di;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.SPUpdater;
+import tn.eluea.kgpt.core.codec.BlobCodec;
 import tn.eluea.kgpt.core.ai.AiResponseManager;
 import tn.eluea.kgpt.core.dispatcher.BrainDispatcher;
 import tn.eluea.kgpt.features.textactions.data.TextActionManager;
@@ -15,6 +23,8 @@ import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
 /**
  * A simple Service Locator to manage dependencies and decouple instantiation.
  * This acts as a poor man's Dependency Injection container.
+ * Each dependency is created by its first getter call, so hosts that never trigger the AI
+ * stack never allocate it.
  * 
  * Note: This class is safe to use in both Xposed and non-Xposed contexts.
  */
@@ -37,13 +47,21 @@ public class ServiceLocator {
         IS_XPOSED_CONTEXT = xposedAvailable;
     }
 
-    // Singleton dependencies
-    private GenerativeAIController generativeAIController;
-    private AiResponseManager aiResponseManager;
-    private CommandManager commandManager;
-    private BrainDispatcher brainDispatcher;
-    private TextParser textParser;
-    private SPUpdater spUpdater;
+    // Singleton dependencies, created on first use: the keyboard process pays for the AI
+    // stack only once a trigger actually needs it
+    private volatile GenerativeAIController generativeAIController;
+    private volatile AiResponseManager aiResponseManager;
+    private volatile CommandManager commandManager;
+    private volatile BrainDispatcher brainDispatcher;
+    private volatile TextParser textParser;
+    private volatile SPUpdater spUpdater;
+
+    // Low-memory mode lasts this long after the last report of memory pressure
+    private static final long LOW_MEMORY_HOLD_MS = 60_000;
+    private volatile long lowMemoryUntil;
+
+    // Time and approximate Java heap each subsystem took to create, for the startup log
+    private final Map<String, String> initCosts = new LinkedHashMap<>();
 
     public static synchronized ServiceLocator getInstance() {
         if (instance == null) {
@@ -60,49 +78,144 @@ public class ServiceLocator {
     }
 
     private ServiceLocator() {
-        try {
-            // Initialize singletons that don't need Context immediately
-            generativeAIController = new GenerativeAIController();
-            commandManager = new CommandManager();
-            spUpdater = new SPUpdater();
-
-            // AiResponseManager depends on GenerativeAIController
-            aiResponseManager = new AiResponseManager(generativeAIController, null);
-
-            // BrainDispatcher depends on AiResponseManager and CommandManager
-            brainDispatcher = new BrainDispatcher(aiResponseManager, commandManager);
-
-            textParser = new TextParser();
-            
-            Log.d(TAG, "ServiceLocator initialized successfully. Xposed context: " + IS_XPOSED_CONTEXT);
-        } catch (Exception e) {
-            Log.e(TAG, "Error initializing ServiceLocator", e);
-            throw e;
-        }
+        Log.d(TAG, "ServiceLocator created. Xposed context: " + IS_XPOSED_CONTEXT);
     }
 
     public GenerativeAIController getGenerativeAIController() {
-        return generativeAIController;
+        GenerativeAIController c = generativeAIController;
+        if (c == null) {
+            synchronized (this) {
+                if (generativeAIController == null) {
+                    generativeAIController = measure("GenerativeAIController", GenerativeAIController::new);
+                }
+                c = generativeAIController;
+            }
+        }
+        return c;
     }
 
     public AiResponseManager getAiResponseManager() {
-        return aiResponseManager;
+        AiResponseManager m = aiResponseManager;
+        if (m == null) {
+            GenerativeAIController controller = getGenerativeAIController();
+            synchronized (this) {
+                if (aiResponseManager == null) {
+                    aiResponseManager = measure("AiResponseManager",
+                            () -> new AiResponseManager(controller, null));
+                }
+                m = aiResponseManager;
+            }
+        }
+        return m;
     }
 
     public CommandManager getCommandManager() {
-        return commandManager;
+        CommandManager m = commandManager;
+        if (m == null) {
+            synchronized (this) {
+                if (commandManager == null) {
+                    commandManager = measure("CommandManager", CommandManager::new);
+                }
+                m = commandManager;
+            }
+        }
+        return m;
     }
 
     public BrainDispatcher getBrainDispatcher() {
-        return brainDispatcher;
+        BrainDispatcher d = brainDispatcher;
+        if (d == null) {
+            AiResponseManager ai = getAiResponseManager();
+            CommandManager commands = getCommandManager();
+            synchronized (this) {
+                if (brainDispatcher == null) {
+                    brainDispatcher = measure("BrainDispatcher", () -> new BrainDispatcher(ai, commands));
+                }
+                d = brainDispatcher;
+            }
+        }
+        return d;
     }
 
     public TextParser getTextParser() {
-        return textParser;
+        TextParser p = textParser;
+        if (p == null) {
+            synchronized (this) {
+                if (textParser == null) {
+                    textParser = measure("TextParser", TextParser::new);
+                }
+                p = textParser;
+            }
+        }
+        return p;
     }
 
     public SPUpdater getSpUpdater() {
-        return spUpdater;
+        SPUpdater u = spUpdater;
+        if (u == null) {
+            synchronized (this) {
+                if (spUpdater == null) {
+                    spUpdater = measure("SPUpdater", SPUpdater::new);
+                }
+                u = spUpdater;
+            }
+        }
+        return u;
+    }
+
+    /**
+     * Create one subsystem and record how long it took and how much the Java heap grew
+     * meanwhile. The heap figure includes whatever else the host allocated at the time, so
+     * it is an upper bound, not an exact attribution.
+     */
+    private <T> T measure(String name, Supplier<T> factory) {
+        Runtime rt = Runtime.getRuntime();
+        long heapBefore = rt.totalMemory() - rt.freeMemory();
+        long start = SystemClock.elapsedRealtimeNanos();
+        T created = factory.get();
+        long micros = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        long heapKb = Math.max(0, (rt.totalMemory() - rt.freeMemory()) - heapBefore) / 1024;
+        String cost = micros / 1000 + "." + (micros % 1000) / 100 + " ms, ~" + heapKb + " KB";
+        synchronized (initCosts) {
+            initCosts.put(name, cost);
+        }
+        Log.d(TAG, "Created " + name + ": " + cost);
+        return created;
+    }
+
+    /** Subsystems created so far, with their creation cost. */
+    public String getInitCosts() {
+        synchronized (initCosts) {
+            return initCosts.toString();
+        }
+    }
+
+    /**
+     * Drop caches on memory pressure. Only what can be rebuilt from config is dropped; the
+     * subsystems themselves stay, since their listeners are registered with the host.
+     * Pressure levels (not just the keyboard being hidden) also enter low-memory mode for
+     * {@link #LOW_MEMORY_HOLD_MS}, see {@link #isLowMemory()}.
+     */
+    public void onTrimMemory(int level) {
+        BlobCodec.clearCaches();
+        if (SPManager.isReady()) {
+            SPManager.getInstance().getConfigClient().trimMemory();
+        }
+        boolean pressure = level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+        if (pressure) {
+            lowMemoryUntil = SystemClock.elapsedRealtime() + LOW_MEMORY_HOLD_MS;
+        }
+        Log.d(TAG, "onTrimMemory(" + level + "): caches dropped" + (pressure ? ", low-memory mode" : ""));
+    }
+
+    /**
+     * True shortly after the host reported memory pressure. Optional work that allocates
+     * a lot (preloading the local model) is skipped meanwhile.
+     */
+    public boolean isLowMemory() {
+        return SystemClock.elapsedRealtime() < lowMemoryUntil;
     }
 
     // Factory methods for dependencies needing Context
@@ -25,6 +25,7 @@ import tn.eluea.kgpt.text.parse.result.QuickJumpParseResult;
 import tn.eluea.kgpt.text.parse.result.ModelSwitchParseResult;
 import tn.eluea.kgpt.text.parse.result.AIClipboardParseResult;
 import tn.eluea.kgpt.text.parse.result.QuickJumpMenuParseResult;
+import tn.eluea.kgpt.text.parse.result.CompareModelsParseResult;
 import tn.eluea.kgpt.text.transform.format.TextUnicodeConverter;
 import tn.eluea.kgpt.features.textactions.TextActionPrompts;
 import tn.eluea.kgpt.ui.IMSController;
@@ -72,6 +73,8 @@ public class BrainDispatcher {
             UiInteractor.getInstance().showAiClipboardDialog();
         } else if (parseResult instanceof QuickJumpMenuParseResult) {
             UiInteractor.getInstance().showQuickJumpDialog();
+        } else if (parseResult instanceof CompareModelsParseResult) {
+            UiInteractor.getInstance().showCompareModelsDialog(((CompareModelsParseResult) parseResult).prompt);
         } else if (parseResult instanceof QuickJumpParseResult) {
             handleQuickJump((QuickJumpParseResult) parseResult);
         } else if (parseResult instanceof WebSearchParseResult) {
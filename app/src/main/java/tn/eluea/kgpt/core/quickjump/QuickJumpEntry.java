@@ -16,6 +16,19 @@ public class QuickJumpEntry {
         this.enabled = true;
     }
 
+    QuickJumpEntry(String id, String name, String trigger, String urlTemplate, boolean enabled) {
+        this.id = id;
+        this.name = name;
+        this.trigger = trigger;
+        this.urlTemplate = urlTemplate;
+        this.enabled = enabled;
+    }
+
+    /** Same entry, same id; skips the random UUID a new entry would get. */
+    public QuickJumpEntry copy() {
+        return new QuickJumpEntry(id, name, trigger, urlTemplate, enabled);
+    }
+
     public static QuickJumpEntry fromJson(JSONObject obj) {
         if (obj == null) return null;
         QuickJumpEntry e = new QuickJumpEntry();
@@ -3,18 +3,80 @@ package tn.eluea.kgpt.core.quickjump;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.BlobReader;
+import tn.eluea.kgpt.core.codec.BlobWriter;
+
 public final class QuickJumpManager {
     private static final Pattern LEGACY_LINE = Pattern.compile("^\\s*【([^】]+)】\\s*(.+?)\\s*$");
 
     private QuickJumpManager() {}
 
+    /**
+     * Stored form of the entry list. Configs saved by older builds are JSON (an array, or an
+     * object with "items") or the legacy "【name】url" lines; {@link #parseText} reads both.
+     */
+    public static final BlobCodec<List<QuickJumpEntry>> CODEC =
+            new BlobCodec<List<QuickJumpEntry>>(BlobCodec.SCHEMA_QUICK_JUMP, 1, "QuickJump") {
+                @Override
+                protected void write(BlobWriter out, List<QuickJumpEntry> items) {
+                    out.writeVarint(items.size());
+                    for (QuickJumpEntry e : items) {
+                        out.writeString(e.id != null ? e.id : "");
+                        out.writeString(e.name != null ? e.name : "");
+                        out.writeString(e.trigger != null ? e.trigger : "");
+                        out.writeString(e.urlTemplate != null ? e.urlTemplate : "");
+                        out.writeBoolean(e.enabled);
+                    }
+                }
+
+                @Override
+                protected List<QuickJumpEntry> read(BlobReader in, int version) throws IOException {
+                    int n = in.readLength();
+                    ArrayList<QuickJumpEntry> out = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        out.add(new QuickJumpEntry(in.readString(), in.readString(), in.readString(),
+                                in.readString(), in.readBoolean()));
+                    }
+                    return out;
+                }
+
+                @Override
+                protected List<QuickJumpEntry> parseJson(String text) {
+                    return parseText(text);
+                }
+
+                @Override
+                protected String formatJson(List<QuickJumpEntry> items) {
+                    JSONArray arr = new JSONArray();
+                    for (QuickJumpEntry e : items) {
+                        arr.put(e.toJson());
+                    }
+                    return arr.toString();
+                }
+
+                @Override
+                protected List<QuickJumpEntry> copy(List<QuickJumpEntry> items) {
+                    ArrayList<QuickJumpEntry> out = new ArrayList<>(items.size());
+                    for (QuickJumpEntry e : items) {
+                        out.add(e.copy());
+                    }
+                    return out;
+                }
+            };
+
     public static List<QuickJumpEntry> load(String config) {
+        return CODEC.decodeOrEmpty(config);
+    }
+
+    private static List<QuickJumpEntry> parseText(String config) {
         ArrayList<QuickJumpEntry> out = new ArrayList<>();
         if (config == null) return out;
         String raw = config.trim();
@@ -94,14 +156,13 @@ public final class QuickJumpManager {
     }
 
     public static String save(List<QuickJumpEntry> items) {
-        JSONArray arr = new JSONArray();
+        ArrayList<QuickJumpEntry> out = new ArrayList<>();
         if (items != null) {
             for (QuickJumpEntry e : items) {
-                if (e == null) continue;
-                arr.put(e.toJson());
+                if (e != null) out.add(e);
             }
         }
-        return arr.toString();
+        return CODEC.encode(out);
     }
 
     public static int countEnabled(List<QuickJumpEntry> items) {
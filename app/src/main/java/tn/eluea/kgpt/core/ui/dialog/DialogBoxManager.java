@@ -27,6 +27,7 @@ import tn.eluea.kgpt.core.ui.dialog.box.PatternEditDialogBox;
 import tn.eluea.kgpt.core.ui.dialog.box.PatternListDialogBox;
 import tn.eluea.kgpt.core.ui.dialog.box.SettingsDialogBox;
 import tn.eluea.kgpt.core.ui.dialog.box.ChatInputDialogBox;
+import tn.eluea.kgpt.core.ui.dialog.box.CompareModelsDialogBox;
 import tn.eluea.kgpt.core.ui.dialog.box.WebSearchDialogBox;
 
 public class DialogBoxManager {
@@ -107,6 +108,9 @@ public class DialogBoxManager {
             case ChatInput:
                 box = new ChatInputDialogBox(this, mParent, mInputBundle, mConfig);
                 break;
+            case CompareModels:
+                box = new CompareModelsDialogBox(this, mParent, mInputBundle, mConfig);
+                break;
             case OtherSettings:
                 box = new OtherSettingsDialogBox(this, mParent, mInputBundle, mConfig);
                 break;
@@ -24,6 +24,7 @@ public enum DialogType {
     ChooseRole("Choose Role", false),
     ChooseSubModel("Choose Model", false),
     ChatInput("AI Chat", false),
+    CompareModels("Compare Models", false),
     ;
 
     public final String title;
@@ -32,10 +32,23 @@ public class ChatInputDialogBox extends DialogBox {
 
         MaterialButton btnCancel = layout.findViewById(R.id.btn_cancel);
         MaterialButton btnSend = layout.findViewById(R.id.btn_send);
+        MaterialButton btnCompare = layout.findViewById(R.id.btn_compare);
         TextInputEditText et = layout.findViewById(R.id.et_prompt);
 
         btnCancel.setOnClickListener(v -> sheet.dismiss());
 
+        if (btnCompare != null) {
+            btnCompare.setOnClickListener(v -> {
+                String prompt = et != null && et.getText() != null ? et.getText().toString().trim() : "";
+                if (prompt.isEmpty()) {
+                    try { UiInteractor.getInstance().toastLong(getContext().getString(R.string.ui_enter_prompt)); } catch (Throwable ignored) {}
+                    return;
+                }
+                if (getInput() != null) getInput().putString(UiInteractor.EXTRA_COMPARE_PROMPT, prompt);
+                switchToDialog(tn.eluea.kgpt.core.ui.dialog.DialogType.CompareModels);
+            });
+        }
+
         btnSend.setOnClickListener(v -> {
             String prompt = et != null && et.getText() != null ? et.getText().toString() : "";
             if (prompt == null) prompt = "";
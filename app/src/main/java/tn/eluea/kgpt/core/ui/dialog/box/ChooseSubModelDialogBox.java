@@ -728,7 +728,7 @@ public class ChooseSubModelDialogBox extends DialogBox {
         for (LanguageModel m : LanguageModel.values()) {
             if (m == null) continue;
             String key = sp.getApiKey(m);
-            boolean hasKey = key != null && !key.trim().isEmpty();
+            boolean hasKey = !m.requiresApiKey || (key != null && !key.trim().isEmpty());
             if (hasKey || m == current) providers.add(m);
         }
 
@@ -772,14 +772,15 @@ public class ChooseSubModelDialogBox extends DialogBox {
                 LanguageModel.Mistral,
                 LanguageModel.Chutes,
                 LanguageModel.Perplexity,
-                LanguageModel.GLM
+                LanguageModel.GLM,
+                LanguageModel.LocalServer
         };
 
         LayoutInflater inflater = LayoutInflater.from(root.getContext());
         for (LanguageModel m : order) {
             if (m == null) continue;
             String key = sp.getApiKey(m);
-            boolean hasKey = key != null && !key.trim().isEmpty();
+            boolean hasKey = !m.requiresApiKey || (key != null && !key.trim().isEmpty());
 
             View item = inflater.inflate(R.layout.item_ai_provider_entry, container, false);
             TextView tv = item.findViewById(R.id.tv_model_name);
@@ -3504,6 +3505,11 @@ private void copyToSystemClipboard(Context ctx, String text) {
                 Toast.makeText(ctx, R.string.msg_pattern_create_symbol_failed, Toast.LENGTH_SHORT).show();
                 return;
             }
+            String unsafeReason = tn.eluea.kgpt.text.parse.PatternAnalyzer.rejectionReason(newRegex);
+            if (unsafeReason != null) {
+                Toast.makeText(ctx, ctx.getString(R.string.msg_pattern_unsafe, unsafeReason), Toast.LENGTH_LONG).show();
+                return;
+            }
 
             boolean enabled = swEnabled != null && swEnabled.isChecked();
 
@@ -3830,7 +3836,7 @@ if (tv != null) tv.setText(displayName);
         for (LanguageModel m : LanguageModel.values()) {
             if (m == null) continue;
             String key = sp.getApiKey(m);
-            boolean hasKey = key != null && !key.trim().isEmpty();
+            boolean hasKey = !m.requiresApiKey || (key != null && !key.trim().isEmpty());
             if (hasKey || m == current) providers.add(m);
         }
         int total = providers.size();
@@ -3865,7 +3871,7 @@ if (tv != null) tv.setText(displayName);
 
         for (LanguageModel m : providers) {
             String key = sp.getApiKey(m);
-            boolean hasKey = key != null && !key.trim().isEmpty();
+            boolean hasKey = !m.requiresApiKey || (key != null && !key.trim().isEmpty());
 
             View item = inflater.inflate(R.layout.item_model_option, container, false);
             TextView tv = item.findViewById(R.id.tv_model_name);
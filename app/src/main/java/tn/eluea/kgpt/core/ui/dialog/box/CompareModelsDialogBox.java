@@ -0,0 +1,147 @@
+package tn.eluea.kgpt.core.ui.dialog.box;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.google.android.material.button.MaterialButton;
+
+import java.util.List;
+
+import tn.eluea.kgpt.R;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.data.ConfigContainer;
+import tn.eluea.kgpt.core.ui.dialog.DialogBoxManager;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.compare.ModelCompareRunner;
+import tn.eluea.kgpt.llm.compare.ModelRunMetrics;
+import tn.eluea.kgpt.ui.UiInteractor;
+
+/**
+ * Compare mode: sends the same prompt to several models at once and streams each answer into
+ * its own pane. Nothing is sent until the user taps Compare, since the trigger can fire on text
+ * that was never meant as a prompt. Picking a pane commits its text into the previous editor
+ * and cancels the rest.
+ */
+public class CompareModelsDialogBox extends DialogBox {
+
+    private ModelCompareRunner mRunner;
+
+    public CompareModelsDialogBox(DialogBoxManager dialogManager, Activity parent,
+                                  Bundle inputBundle, ConfigContainer configContainer) {
+        super(dialogManager, parent, inputBundle, configContainer);
+    }
+
+    @Override
+    protected Dialog build() {
+        tn.eluea.kgpt.ui.main.FloatingBottomSheet sheet = new tn.eluea.kgpt.ui.main.FloatingBottomSheet(getContext());
+        LayoutInflater inflater = LayoutInflater.from(sheet.getContext());
+        View layout = inflater.inflate(R.layout.dialog_compare_models, null);
+
+        MaterialButton btnCancel = layout.findViewById(R.id.btn_cancel);
+        MaterialButton btnStart = layout.findViewById(R.id.btn_compare_start);
+        TextView tvPrompt = layout.findViewById(R.id.tv_compare_prompt);
+        LinearLayout panes = layout.findViewById(R.id.ll_compare_panes);
+
+        String prompt = getInput() != null ? getInput().getString(UiInteractor.EXTRA_COMPARE_PROMPT) : null;
+        prompt = prompt != null ? prompt.trim() : "";
+        tvPrompt.setText(prompt);
+
+        btnCancel.setOnClickListener(v -> {
+            if (mRunner != null) mRunner.cancelAll();
+            sheet.dismiss();
+        });
+        sheet.setOnCancelListener(d -> {
+            if (mRunner != null) mRunner.cancelAll();
+        });
+        sheet.setContentView(layout);
+
+        List<LanguageModel> models;
+        try {
+            models = SPManager.getInstance().getCompareModels();
+        } catch (Throwable t) {
+            models = java.util.Collections.emptyList();
+        }
+        if (prompt.isEmpty() || models.size() < 2) {
+            TextView empty = new TextView(sheet.getContext());
+            empty.setText(prompt.isEmpty() ? R.string.ui_enter_prompt : R.string.ui_compare_no_models);
+            panes.addView(empty);
+            btnStart.setVisibility(View.GONE);
+            return sheet;
+        }
+
+        final View[] paneViews = new View[models.size()];
+        mRunner = new ModelCompareRunner(models, new ModelCompareRunner.Listener() {
+            @Override
+            public void onPaneChunk(int pane, String chunk) {
+                TextView tv = paneViews[pane].findViewById(R.id.tv_pane_text);
+                tv.append(chunk);
+                bindMetrics(paneViews[pane], mRunner.getMetrics(pane));
+            }
+
+            @Override
+            public void onPaneFinished(int pane, ModelRunMetrics metrics) {
+                bindMetrics(paneViews[pane], metrics);
+                if (metrics.status == ModelRunMetrics.Status.DONE && !mRunner.getText(pane).trim().isEmpty()) {
+                    paneViews[pane].findViewById(R.id.btn_pane_use).setEnabled(true);
+                } else if (metrics.status == ModelRunMetrics.Status.FAILED) {
+                    TextView tv = paneViews[pane].findViewById(R.id.tv_pane_text);
+                    tv.setText(getContext().getString(R.string.ui_compare_failed, metrics.error));
+                }
+            }
+        });
+
+        for (int i = 0; i < mRunner.getPaneCount(); i++) {
+            final int index = i;
+            View pv = inflater.inflate(R.layout.item_compare_pane, panes, false);
+            ModelRunMetrics m = mRunner.getMetrics(i);
+            ((TextView) pv.findViewById(R.id.tv_pane_model)).setText(m.model.label + " · " + m.subModel);
+            bindMetrics(pv, m);
+            pv.findViewById(R.id.btn_pane_use).setOnClickListener(v -> pick(sheet, index));
+            paneViews[i] = pv;
+            panes.addView(pv);
+        }
+
+        final String confirmedPrompt = prompt;
+        btnStart.setOnClickListener(v -> {
+            btnStart.setEnabled(false);
+            mRunner.start(confirmedPrompt, null);
+        });
+        return sheet;
+    }
+
+    private void bindMetrics(View pane, ModelRunMetrics m) {
+        TextView tv = pane.findViewById(R.id.tv_pane_metrics);
+        if (m.firstTokenMs < 0 && m.totalMs < 0) {
+            tv.setText(R.string.ui_compare_waiting);
+        } else if (m.totalMs < 0) {
+            tv.setText(getContext().getString(R.string.ui_compare_ttft, m.firstTokenMs));
+        } else {
+            tv.setText(getContext().getString(R.string.ui_compare_metrics,
+                    Math.max(m.firstTokenMs, 0), m.totalMs / 1000.0));
+        }
+    }
+
+    private void pick(Dialog sheet, int pane) {
+        final String text = mRunner.getText(pane).trim();
+        mRunner.keepOnly(pane);
+        if (text.isEmpty()) return;
+
+        // Dismiss first so the target app regains focus (IME reconnects), then commit into the
+        // previous editor, same as ChatInputDialogBox.
+        android.os.Handler h = new android.os.Handler(android.os.Looper.getMainLooper());
+        final android.content.Context appCtx = getContext().getApplicationContext();
+        h.postDelayed(() -> {
+            try {
+                android.content.Intent i = new android.content.Intent(UiInteractor.ACTION_FB_COMMIT_PROMPT);
+                i.putExtra(UiInteractor.EXTRA_FB_TEXT, text);
+                appCtx.sendBroadcast(i);
+            } catch (Throwable ignored) {}
+        }, 250);
+        sheet.dismiss();
+    }
+}
@@ -37,6 +37,7 @@ import tn.eluea.kgpt.core.data.ConfigContainer;
 import tn.eluea.kgpt.core.ui.dialog.DialogBoxManager;
 import tn.eluea.kgpt.core.ui.dialog.DialogType;
 import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternAnalyzer;
 import tn.eluea.kgpt.text.parse.PatternType;
 
 import android.view.ContextThemeWrapper;
@@ -169,6 +170,14 @@ public class PatternEditDialogBox extends DialogBox {
                 return;
             }
 
+            // Refuse patterns that can backtrack catastrophically on the keystroke path
+            String unsafeReason = PatternAnalyzer.rejectionReason(newRegex);
+            if (unsafeReason != null) {
+                Toast.makeText(getContext(), getContext().getString(R.string.msg_pattern_unsafe, unsafeReason),
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+
             // Check for duplicates
             long similarCount = getConfig().patterns.stream()
                     .filter((c) -> c.getPattern().pattern().equals(newRegex)).count();
@@ -0,0 +1,92 @@
+package tn.eluea.kgpt.features.deferred;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+
+/**
+ * Entry point used by the hooked keyboard process to hand a prompt over to the KGPT app
+ * when the network is unavailable.
+ *
+ * The keyboard process cannot run WorkManager jobs (it belongs to the host IME), so the prompt
+ * is sent as an explicit broadcast to {@link DeferredPromptReceiver}, which journals it and
+ * schedules {@link DeferredPromptWorker} in the KGPT app process.
+ */
+public final class DeferredPromptQueue {
+
+    public static final String ACTION_DEFER_PROMPT = tn.eluea.kgpt.BuildConfig.APPLICATION_ID + ".action.DEFER_PROMPT";
+    public static final String EXTRA_PROMPT = "tn.eluea.kgpt.deferred.PROMPT";
+    public static final String EXTRA_SYSTEM_MESSAGE = "tn.eluea.kgpt.deferred.SYSTEM_MESSAGE";
+    public static final String EXTRA_ROLE_ID = "tn.eluea.kgpt.deferred.ROLE_ID";
+    public static final String EXTRA_MODEL = "tn.eluea.kgpt.deferred.MODEL";
+
+    private DeferredPromptQueue() {}
+
+    /**
+     * Best-effort connectivity check. Returns true when the state cannot be determined so that
+     * the regular request path (and its error handling) still runs.
+     */
+    @SuppressWarnings("deprecation")
+    public static boolean isNetworkAvailable(Context ctx) {
+        if (ctx == null) return true;
+        try {
+            ConnectivityManager cm = (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm == null) return true;
+            NetworkInfo info = cm.getActiveNetworkInfo();
+            return info != null && info.isConnected();
+        } catch (Throwable ignored) {
+            // Host IME may lack ACCESS_NETWORK_STATE
+            return true;
+        }
+    }
+
+    /**
+     * Whether the throwable (or one of its causes) means the request never reached the server.
+     * HTTP errors reported by {@link tn.eluea.kgpt.llm.internet.SimpleInternetProvider} are plain
+     * IOExceptions and are intentionally not matched: replaying them would fail the same way.
+     */
+    public static boolean isNetworkFailure(Throwable t) {
+        int depth = 0;
+        while (t != null && depth++ < 8) {
+            if (t instanceof UnknownHostException
+                    || t instanceof ConnectException
+                    || t instanceof NoRouteToHostException
+                    || t instanceof SocketException
+                    || t instanceof InterruptedIOException) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Send the prompt to the KGPT app for deferred generation.
+     *
+     * @return true if the broadcast was sent
+     */
+    public static boolean submit(Context ctx, String prompt, String systemMessage, String roleId, String modelName) {
+        if (ctx == null || prompt == null || prompt.trim().isEmpty()) return false;
+        try {
+            Intent i = new Intent(ACTION_DEFER_PROMPT);
+            i.setClassName(tn.eluea.kgpt.BuildConfig.APPLICATION_ID, DeferredPromptReceiver.class.getName());
+            i.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
+            i.putExtra(EXTRA_PROMPT, prompt);
+            if (systemMessage != null) i.putExtra(EXTRA_SYSTEM_MESSAGE, systemMessage);
+            if (roleId != null) i.putExtra(EXTRA_ROLE_ID, roleId);
+            if (modelName != null) i.putExtra(EXTRA_MODEL, modelName);
+            ctx.sendBroadcast(i);
+            return true;
+        } catch (Throwable t) {
+            tn.eluea.kgpt.util.Logger.log("DeferredPromptQueue: submit failed: " + t);
+            return false;
+        }
+    }
+}
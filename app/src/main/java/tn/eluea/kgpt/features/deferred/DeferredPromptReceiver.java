@@ -0,0 +1,36 @@
+package tn.eluea.kgpt.features.deferred;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives prompts deferred by the hooked keyboard process (see {@link DeferredPromptQueue}).
+ *
+ * Manifest receiver so the prompt is accepted even when the KGPT app process is not running.
+ * The prompt is journaled first and only then handed to WorkManager, so it survives a process
+ * kill between the two steps: the worker always replays the whole journal.
+ */
+public class DeferredPromptReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (context == null || intent == null) return;
+        if (!DeferredPromptQueue.ACTION_DEFER_PROMPT.equals(intent.getAction())) return;
+
+        String prompt = null;
+        String systemMessage = null;
+        String roleId = null;
+        String model = null;
+        try { prompt = intent.getStringExtra(DeferredPromptQueue.EXTRA_PROMPT); } catch (Throwable ignored) {}
+        try { systemMessage = intent.getStringExtra(DeferredPromptQueue.EXTRA_SYSTEM_MESSAGE); } catch (Throwable ignored) {}
+        try { roleId = intent.getStringExtra(DeferredPromptQueue.EXTRA_ROLE_ID); } catch (Throwable ignored) {}
+        try { model = intent.getStringExtra(DeferredPromptQueue.EXTRA_MODEL); } catch (Throwable ignored) {}
+        if (prompt == null || prompt.trim().isEmpty()) return;
+
+        Context appCtx = context.getApplicationContext();
+        if (DeferredPromptStore.add(appCtx, prompt, systemMessage, roleId, model) != null) {
+            DeferredPromptWorker.enqueue(appCtx);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package tn.eluea.kgpt.features.deferred;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Disk journal of prompts waiting for connectivity. Lives in the KGPT app's private files dir.
+ *
+ * One JSON object per line. Every mutation rewrites the file through {@link AtomicFile}, so a
+ * crash mid-write leaves the previous journal intact. The queue is small by design
+ * ({@link #MAX_ENTRIES}), which keeps the rewrite cheap.
+ */
+public final class DeferredPromptStore {
+
+    private static final String FILE_NAME = "deferred_prompts.jsonl";
+    static final int MAX_ENTRIES = 50;
+    static final int MAX_PROMPT_LEN = 20000;
+
+    private static final Object LOCK = new Object();
+
+    public static final class Entry {
+        public final String id;
+        public final long createdAt;
+        public final String prompt;
+        public final String systemMessage;
+        public final String roleId;
+        public final String model;
+        public final int attempts;
+
+        Entry(String id, long createdAt, String prompt, String systemMessage, String roleId, String model, int attempts) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.prompt = prompt;
+            this.systemMessage = systemMessage;
+            this.roleId = roleId;
+            this.model = model;
+            this.attempts = attempts;
+        }
+
+        Entry withAttempts(int n) {
+            return new Entry(id, createdAt, prompt, systemMessage, roleId, model, n);
+        }
+
+        JSONObject toJson() {
+            JSONObject o = new JSONObject();
+            try {
+                o.put("id", id);
+                o.put("t", createdAt);
+                o.put("prompt", prompt);
+                if (systemMessage != null) o.put("system", systemMessage);
+                if (roleId != null) o.put("role", roleId);
+                if (model != null) o.put("model", model);
+                o.put("attempts", attempts);
+            } catch (Exception ignored) {}
+            return o;
+        }
+
+        static Entry fromJson(JSONObject o) {
+            if (o == null) return null;
+            String id = o.optString("id", "");
+            String prompt = o.optString("prompt", "");
+            if (id.isEmpty() || prompt.isEmpty()) return null;
+            return new Entry(id,
+                    o.optLong("t", 0L),
+                    prompt,
+                    o.has("system") ? o.optString("system", null) : null,
+                    o.has("role") ? o.optString("role", null) : null,
+                    o.has("model") ? o.optString("model", null) : null,
+                    o.optInt("attempts", 0));
+        }
+    }
+
+    private DeferredPromptStore() {}
+
+    private static AtomicFile file(Context ctx) {
+        return new AtomicFile(new java.io.File(ctx.getFilesDir(), FILE_NAME));
+    }
+
+    public static Entry add(Context ctx, String prompt, String systemMessage, String roleId, String model) {
+        if (ctx == null || prompt == null) return null;
+        String p = prompt.trim();
+        if (p.isEmpty()) return null;
+        if (p.length() > MAX_PROMPT_LEN) p = p.substring(0, MAX_PROMPT_LEN);
+
+        Entry e = new Entry(UUID.randomUUID().toString(), System.currentTimeMillis(),
+                p, systemMessage, roleId, model, 0);
+        synchronized (LOCK) {
+            List<Entry> list = readLocked(ctx);
+            // Drop an identical pending prompt (e.g. the user retried while offline)
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).prompt.equals(p)) list.remove(i);
+            }
+            list.add(e);
+            while (list.size() > MAX_ENTRIES) list.remove(0);
+            writeLocked(ctx, list);
+        }
+        return e;
+    }
+
+    public static List<Entry> getAll(Context ctx) {
+        if (ctx == null) return new ArrayList<>();
+        synchronized (LOCK) {
+            return readLocked(ctx);
+        }
+    }
+
+    public static void remove(Context ctx, String id) {
+        if (ctx == null || id == null) return;
+        synchronized (LOCK) {
+            List<Entry> list = readLocked(ctx);
+            boolean changed = false;
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (id.equals(list.get(i).id)) {
+                    list.remove(i);
+                    changed = true;
+                }
+            }
+            if (changed) writeLocked(ctx, list);
+        }
+    }
+
+    /** Increments the attempt counter and returns the new value, or -1 if the entry is gone. */
+    public static int markAttempt(Context ctx, String id) {
+        if (ctx == null || id == null) return -1;
+        synchronized (LOCK) {
+            List<Entry> list = readLocked(ctx);
+            for (int i = 0; i < list.size(); i++) {
+                Entry e = list.get(i);
+                if (id.equals(e.id)) {
+                    Entry n = e.withAttempts(e.attempts + 1);
+                    list.set(i, n);
+                    writeLocked(ctx, list);
+                    return n.attempts;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public static int size(Context ctx) {
+        return getAll(ctx).size();
+    }
+
+    private static List<Entry> readLocked(Context ctx) {
+        List<Entry> out = new ArrayList<>();
+        try {
+            byte[] data = file(ctx).readFully();
+            BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                try {
+                    Entry e = Entry.fromJson(new JSONObject(line));
+                    if (e != null) out.add(e);
+                } catch (Exception ignored) {
+                    // Skip a torn or corrupt line, keep the rest of the journal
+                }
+            }
+        } catch (java.io.FileNotFoundException ignored) {
+        } catch (Throwable t) {
+            tn.eluea.kgpt.util.Logger.log("DeferredPromptStore: read failed: " + t);
+        }
+        return out;
+    }
+
+    private static void writeLocked(Context ctx, List<Entry> list) {
+        AtomicFile f = file(ctx);
+        FileOutputStream fos = null;
+        try {
+            fos = f.startWrite();
+            StringBuilder sb = new StringBuilder();
+            for (Entry e : list) {
+                // JSONObject.toString() escapes newlines, so one entry is always one line
+                sb.append(e.toJson().toString()).append('\n');
+            }
+            fos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            f.finishWrite(fos);
+        } catch (Throwable t) {
+            if (fos != null) f.failWrite(fos);
+            tn.eluea.kgpt.util.Logger.log("DeferredPromptStore: write failed: " + t);
+        }
+    }
+}
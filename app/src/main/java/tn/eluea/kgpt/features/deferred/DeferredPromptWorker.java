@@ -0,0 +1,257 @@
+package tn.eluea.kgpt.features.deferred;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.R;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.clipboard.AIClipboardStore;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.roles.RoleManager;
+import tn.eluea.kgpt.ui.UiInteractor;
+
+/**
+ * Replays journaled prompts once connectivity is back and stores the replies in the AI Clipboard.
+ *
+ * Entries are processed oldest-first. A network failure stops the run and asks WorkManager to
+ * retry with backoff; any other failure (bad key, HTTP error) counts as an attempt and the entry
+ * is dropped after {@link #MAX_ATTEMPTS}.
+ */
+public class DeferredPromptWorker extends Worker {
+
+    private static final String TAG = "KGPT_DeferredWorker";
+    private static final String WORK_NAME = "kgpt_deferred_prompts";
+    private static final String CHANNEL_ID = "kgpt_deferred_prompts";
+    private static final int NOTIFICATION_ID = 0x4B47;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RESPONSE_TIMEOUT_SEC = 120;
+
+    public DeferredPromptWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule a replay run. Safe to call repeatedly: a pending run is kept, and a running one
+     * gets a follow-up so entries journaled mid-run are not missed.
+     */
+    public static void enqueue(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DeferredPromptWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                WORK_NAME,
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context ctx = getApplicationContext();
+        List<DeferredPromptStore.Entry> entries = DeferredPromptStore.getAll(ctx);
+        Log.d(TAG, "Replaying " + entries.size() + " deferred prompt(s)");
+        if (entries.isEmpty()) return Result.success();
+
+        if (!SPManager.isReady()) SPManager.init(ctx);
+
+        int delivered = 0;
+        String lastReply = null;
+        for (DeferredPromptStore.Entry e : entries) {
+            if (isStopped()) return Result.retry();
+
+            Outcome outcome = run(e);
+            if (outcome.text != null) {
+                AIClipboardStore.append(ctx, outcome.text);
+                DeferredPromptStore.remove(ctx, e.id);
+                delivered++;
+                lastReply = outcome.text;
+                continue;
+            }
+
+            if (outcome.error != null && DeferredPromptQueue.isNetworkFailure(outcome.error)) {
+                Log.d(TAG, "Network still unavailable, retrying later");
+                notifyDelivered(ctx, delivered, lastReply);
+                return Result.retry();
+            }
+
+            int attempts = DeferredPromptStore.markAttempt(ctx, e.id);
+            Log.w(TAG, "Deferred prompt failed (attempt " + attempts + ")", outcome.error);
+            if (attempts >= MAX_ATTEMPTS) {
+                DeferredPromptStore.remove(ctx, e.id);
+            }
+        }
+
+        notifyDelivered(ctx, delivered, lastReply);
+        return DeferredPromptStore.size(ctx) > 0 ? Result.retry() : Result.success();
+    }
+
+    private static final class Outcome {
+        String text;
+        Throwable error;
+    }
+
+    private Outcome run(DeferredPromptStore.Entry e) {
+        final Outcome outcome = new Outcome();
+        SPManager sp = SPManager.getInstance();
+
+        LanguageModel model = null;
+        if (e.model != null) {
+            try { model = LanguageModel.valueOf(e.model); } catch (Exception ignored) {}
+        }
+        if (model == null) {
+            if (!sp.hasLanguageModel()) {
+                outcome.error = new IllegalStateException("No language model configured");
+                return outcome;
+            }
+            model = sp.getLanguageModel();
+        }
+
+        LanguageModelClient client = LanguageModelClient.forModel(model);
+        for (LanguageModelField field : LanguageModelField.values()) {
+            client.setField(field, sp.getLanguageModelField(model, field));
+        }
+        client.setInternetProvider(new SimpleInternetProvider());
+
+        String systemMessage = e.systemMessage;
+        try {
+            String rid = (e.roleId != null && !e.roleId.trim().isEmpty())
+                    ? e.roleId.trim()
+                    : sp.getActiveRoleId();
+            systemMessage = RoleManager.resolveSystemMessage(rid, sp.getRolesJson(), systemMessage);
+        } catch (Exception ignored) {}
+
+        final StringBuilder sb = new StringBuilder();
+        final CountDownLatch done = new CountDownLatch(1);
+        Publisher<String> publisher = client.submitPrompt(e.prompt, systemMessage);
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                if (s != null) {
+                    synchronized (sb) {
+                        sb.append(s);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                outcome.error = t;
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        try {
+            if (!done.await(RESPONSE_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                outcome.error = new java.net.SocketTimeoutException("Deferred prompt timed out");
+                return outcome;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            outcome.error = new java.io.InterruptedIOException("Interrupted");
+            return outcome;
+        }
+
+        if (outcome.error == null) {
+            String text;
+            synchronized (sb) {
+                text = sb.toString().trim();
+            }
+            if (!text.isEmpty()) {
+                outcome.text = text;
+            } else {
+                outcome.error = new IllegalStateException("Empty response");
+            }
+        }
+        return outcome;
+    }
+
+    private static void notifyDelivered(Context ctx, int count, String lastReply) {
+        if (count <= 0) return;
+        try {
+            NotificationManagerCompat nm = NotificationManagerCompat.from(ctx);
+            if (!nm.areNotificationsEnabled()) return;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                NotificationManager sys = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+                if (sys != null && sys.getNotificationChannel(CHANNEL_ID) == null) {
+                    NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                            ctx.getString(R.string.deferred_prompts_channel_name),
+                            NotificationManager.IMPORTANCE_DEFAULT);
+                    channel.setDescription(ctx.getString(R.string.deferred_prompts_channel_desc));
+                    sys.createNotificationChannel(channel);
+                }
+            }
+
+            Intent open = new Intent("tn.eluea.kgpt.OVERLAY");
+            open.setPackage(ctx.getPackageName());
+            open.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            open.putExtra(UiInteractor.EXTRA_DIALOG_TYPE, tn.eluea.kgpt.core.ui.dialog.DialogType.ChooseSubModel.name());
+            open.putExtra(UiInteractor.EXTRA_START_SCREEN, "AI_CLIPBOARD");
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) flags |= PendingIntent.FLAG_IMMUTABLE;
+            PendingIntent pi = PendingIntent.getActivity(ctx, 0, open, flags);
+
+            String preview = lastReply != null ? lastReply : "";
+            if (preview.length() > 200) preview = preview.substring(0, 200) + "…";
+
+            NotificationCompat.Builder b = new NotificationCompat.Builder(ctx, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_magic_sparkles_filled)
+                    .setContentTitle(count == 1
+                            ? ctx.getString(R.string.deferred_prompts_ready_one)
+                            : ctx.getString(R.string.deferred_prompts_ready_many, count))
+                    .setContentText(preview)
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(preview))
+                    .setContentIntent(pi)
+                    .setAutoCancel(true);
+            nm.notify(NOTIFICATION_ID, b.build());
+        } catch (SecurityException se) {
+            // POST_NOTIFICATIONS not granted on Android 13+
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to post notification", t);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import android.inputmethodservice.InputMethodService;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
@@ -44,11 +45,16 @@ public class SelectionHandler {
     private static final String PREF_TEXT_ACTIONS_ENABLED = "text_actions_enabled";
     private static final long SELECTION_DEBOUNCE_MS = 600; // Increased from 400ms for better UX
     private static final long MENU_COOLDOWN_MS = 1500; // Reduced from 2000ms for better responsiveness
+    // How long a read of the feature switch is trusted; selection changes come in bursts
+    private static final long ENABLED_CACHE_MS = 1000;
+
+    private static volatile boolean sEnabled;
+    private static volatile long sEnabledValidUntil;
 
     private final java.lang.ref.WeakReference<Context> contextRef;
     private final OnTextActionListener actionListener;
 
-    private String lastSelectedText = null;
+    // Range the menu was last scheduled for, so a repeat of it doesn't show the menu again
     private int lastSelStart = -1;
     private int lastSelEnd = -1;
     private long lastMenuShowTime = 0;
@@ -58,7 +64,11 @@ public class SelectionHandler {
     private java.lang.ref.WeakReference<InputMethodService> currentImsRef;
 
     private final Handler debounceHandler = new Handler(Looper.getMainLooper());
-    private Runnable pendingShowMenu;
+    // Range waiting out the debounce. Only offsets are kept while the selection moves: the
+    // text is read once, when the menu is about to show.
+    private int pendingSelStart = -1;
+    private int pendingSelEnd = -1;
+    private final Runnable pendingShowMenu = this::showPendingMenu;
 
     private BroadcastReceiver resultReceiver;
     private volatile boolean receiverRegistered = false;
@@ -148,73 +158,96 @@ public class SelectionHandler {
      * Check if the text actions feature is enabled.
      */
     public boolean isEnabled() {
+        return isFeatureEnabled();
+    }
+
+    /** Same as {@link #isEnabled()}, for deciding whether a handler is needed at all. */
+    public static boolean isFeatureEnabled() {
+        long now = SystemClock.uptimeMillis();
+        if (now < sEnabledValidUntil) {
+            return sEnabled;
+        }
+        boolean enabled = readFeatureEnabled();
+        sEnabled = enabled;
+        sEnabledValidUntil = now + ENABLED_CACHE_MS;
+        return enabled;
+    }
+
+    private static boolean readFeatureEnabled() {
+        // The pushed config snapshot when the keyboard side is set up; XSharedPreferences before
+        if (tn.eluea.kgpt.SPManager.isReady()) {
+            return tn.eluea.kgpt.SPManager.getInstance().getConfigClient()
+                    .getBoolean(PREF_TEXT_ACTIONS_ENABLED, true);
+        }
         return XposedConfigReader.getBoolean(PREF_TEXT_ACTIONS_ENABLED, true);
     }
 
     /**
-     * Called when selection changes in the input field.
+     * Called when selection changes in the input field. Runs on every caret move, so it only
+     * compares offsets; a drag-to-select burst ends in a single read of the selected text,
+     * {@link #SELECTION_DEBOUNCE_MS} after the selection stops moving.
      */
     public void onSelectionChanged(InputMethodService ims, int oldSelStart, int oldSelEnd,
             int newSelStart, int newSelEnd) {
-        this.currentImsRef = new java.lang.ref.WeakReference<>(ims);
-
-        boolean enabled = isEnabled();
-        tn.eluea.kgpt.util.Logger.log("SelectionHandler: onSelectionChanged. Enabled=" + enabled);
-        if (!enabled) {
+        if (!isEnabled()) {
+            cancelPendingMenu();
             return;
         }
 
-        // Check if there's a selection (not just cursor position)
-        if (newSelStart != newSelEnd && newSelEnd > newSelStart) { // Initial check
-            // Let's rely on getSelectedText for accurate check or just range check
-            // Actually newSelEnd > newSelStart assumes order.
-            // Let's normalize here.
-            final int s = Math.min(newSelStart, newSelEnd);
-            final int e = Math.max(newSelStart, newSelEnd);
-
-            if (e > s) {
-                // There's selected text
-                String selectedText = getSelectedText(ims, s, e);
-
-                if (selectedText != null && !selectedText.isEmpty() && selectedText.length() > 1) {
-                    // Debug log
-                    tn.eluea.kgpt.util.Logger.log("Selection detected: " + selectedText.length() + " chars");
-
-                    // Check if this is a new selection
-                    if (selectedText.equals(lastSelectedText) &&
-                            s == lastSelStart && e == lastSelEnd) {
-                        return; // Same selection, ignore
-                    }
-
-                    // Debounce to avoid flickering
-                    if (pendingShowMenu != null) {
-                        debounceHandler.removeCallbacks(pendingShowMenu);
-                    }
-
-                    final String finalText = selectedText;
-                    final int finalStart = s;
-                    final int finalEnd = e;
+        if (currentImsRef == null || currentImsRef.get() != ims) {
+            this.currentImsRef = new java.lang.ref.WeakReference<>(ims);
+        }
 
-                    pendingShowMenu = () -> {
-                        lastSelectedText = finalText;
-                        lastSelStart = finalStart;
-                        lastSelEnd = finalEnd;
-                        showMenu(ims, finalStart, finalEnd, finalText);
-                    };
+        final int s = Math.min(newSelStart, newSelEnd);
+        final int e = Math.max(newSelStart, newSelEnd);
 
-                    debounceHandler.postDelayed(pendingShowMenu, SELECTION_DEBOUNCE_MS);
-                }
-            }
-        } else {
+        // Single characters are not worth a menu
+        if (s < 0 || e - s <= 1) {
             // No selection - cancel pending menu
-            if (pendingShowMenu != null) {
-                debounceHandler.removeCallbacks(pendingShowMenu);
-                pendingShowMenu = null;
-            }
-            lastSelectedText = null;
+            cancelPendingMenu();
             lastSelStart = -1;
             lastSelEnd = -1;
+            return;
         }
+
+        if (s == lastSelStart && e == lastSelEnd) {
+            return; // Same selection, ignore
+        }
+
+        // Debounce to avoid flickering: each move restarts the wait
+        pendingSelStart = s;
+        pendingSelEnd = e;
+        debounceHandler.removeCallbacks(pendingShowMenu);
+        debounceHandler.postDelayed(pendingShowMenu, SELECTION_DEBOUNCE_MS);
+    }
+
+    private void cancelPendingMenu() {
+        if (pendingSelStart >= 0) {
+            debounceHandler.removeCallbacks(pendingShowMenu);
+            pendingSelStart = -1;
+            pendingSelEnd = -1;
+        }
+    }
+
+    private void showPendingMenu() {
+        final int s = pendingSelStart;
+        final int e = pendingSelEnd;
+        pendingSelStart = -1;
+        pendingSelEnd = -1;
+        InputMethodService ims = currentImsRef != null ? currentImsRef.get() : null;
+        if (s < 0 || ims == null) {
+            return;
+        }
+
+        String selectedText = getSelectedText(ims, s, e);
+        if (selectedText == null || selectedText.length() <= 1) {
+            return;
+        }
+        tn.eluea.kgpt.util.Logger.log("Selection detected: " + selectedText.length() + " chars");
+
+        lastSelStart = s;
+        lastSelEnd = e;
+        showMenu(ims, s, e, selectedText);
     }
 
     /**
@@ -238,11 +271,12 @@ public class SelectionHandler {
             // Fallback: get from extracted text
             ExtractedText extractedText = ic.getExtractedText(new ExtractedTextRequest(), 0);
             if (extractedText != null && extractedText.text != null) {
-                String fullText = extractedText.text.toString();
+                CharSequence fullText = extractedText.text;
                 int start = Math.max(0, Math.min(selStart, selEnd));
                 int end = Math.min(fullText.length(), Math.max(selStart, selEnd));
                 if (end > start) {
-                    return fullText.substring(start, end);
+                    // Copy only the selection, not the whole field
+                    return fullText.subSequence(start, end).toString();
                 }
             }
         } catch (Exception e) {
@@ -312,10 +346,9 @@ public class SelectionHandler {
      * Clean up resources.
      */
     public void destroy() {
-        if (pendingShowMenu != null) {
-            debounceHandler.removeCallbacks(pendingShowMenu);
-            pendingShowMenu = null;
-        }
+        debounceHandler.removeCallbacks(pendingShowMenu);
+        pendingSelStart = -1;
+        pendingSelEnd = -1;
         
         // Clear references
         currentImsRef = null;
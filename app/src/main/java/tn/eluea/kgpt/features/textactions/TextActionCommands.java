@@ -129,6 +129,13 @@ public class TextActionCommands {
         return null;
     }
 
+    /**
+     * All command names (without the leading $).
+     */
+    public static java.util.Set<String> getCommands() {
+        return java.util.Collections.unmodifiableSet(COMMAND_MAP.keySet());
+    }
+
     /**
      * Get all available command triggers for a specific action.
      */
@@ -19,7 +19,7 @@ import android.content.Context;
 import tn.eluea.kgpt.features.textactions.domain.TextAction;
 import tn.eluea.kgpt.features.textactions.domain.CustomTextAction;
 import tn.eluea.kgpt.features.textactions.TextActionPrompts;
-import android.content.SharedPreferences;
+import tn.eluea.kgpt.provider.ConfigClient;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -36,20 +36,20 @@ import java.util.Set;
  */
 public class TextActionManager {
 
-    private static final String PREF_NAME = "keyboard_gpt";
     private static final String PREF_TEXT_ACTIONS_ENABLED = "text_actions_enabled";
     private static final String PREF_TEXT_ACTIONS_LIST = "text_actions_list";
     private static final String PREF_TEXT_ACTIONS_SHOW_LABELS = "text_actions_show_labels";
 
     private final Context context;
-    private final SharedPreferences prefs;
+    // Through the provider: the settings aren't in a SharedPreferences file of ours
+    private final ConfigClient prefs;
     private boolean featureEnabled;
     private boolean showLabels;
     private Set<TextAction> enabledActions;
 
     public TextActionManager(Context context) {
         this.context = context;
-        this.prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.prefs = new ConfigClient(context);
         this.enabledActions = new HashSet<>();
         reloadConfig();
     }
@@ -177,7 +177,7 @@ public class TextActionManager {
      */
     public void setActionPrompt(TextAction action, String prompt) {
         String key = "text_action_prompt_" + action.name();
-        prefs.edit().putString(key, prompt).apply();
+        prefs.putString(key, prompt);
     }
 
     private static final String PREF_CUSTOM_TEXT_ACTIONS = "custom_text_actions";
@@ -218,7 +218,7 @@ public class TextActionManager {
                 obj.put("enabled", action.enabled);
                 array.put(obj);
             }
-            prefs.edit().putString(PREF_CUSTOM_TEXT_ACTIONS, array.toString()).apply();
+            prefs.putString(PREF_CUSTOM_TEXT_ACTIONS, array.toString());
         } catch (JSONException e) {
             tn.eluea.kgpt.util.Logger.log(e);
         }
@@ -252,6 +252,6 @@ public class TextActionManager {
      */
     public void resetActionPrompt(TextAction action) {
         String key = "text_action_prompt_" + action.name();
-        prefs.edit().remove(key).apply();
+        prefs.remove(key);
     }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2024-2025 Amr Aldeeb @Eluea
+ *
+ * This file is part of KGPT - a fork of KeyboardGPT.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ */
+package tn.eluea.kgpt.hook;
+
+import android.app.Application;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.robv.android.xposed.XC_MethodHook;
+import de.robv.android.xposed.XposedHelpers;
+import tn.eluea.kgpt.MainHook;
+import tn.eluea.kgpt.provider.ConfigProvider;
+import tn.eluea.kgpt.provider.XposedConfigReader;
+
+/**
+ * Installs the hook families KGPT places in every scoped app only while the feature they
+ * serve is enabled, so an app where those features are off runs none of our code.
+ *
+ * Whether a feature is on comes from {@link XposedConfigReader}, the world-readable config
+ * snapshot, which needs no IPC. Once the app's Application exists, the scope follows the
+ * config provider's change notifications and installs or removes families as their key is
+ * toggled.
+ *
+ * Each family logs how long installing it took, and its hooks time themselves through
+ * {@link Family#recordCall} so the average cost per call shows up in the log.
+ */
+public final class HostHookScope {
+
+    private static final String TAG = "KGPT_HostHookScope";
+
+    // A family logs its average callback cost every this many calls
+    private static final int CALL_REPORT_INTERVAL = 256;
+
+    private static final Map<String, Family> sFamilies = new LinkedHashMap<>();
+    private static XC_MethodHook.Unhook sAppCreateHook;
+    private static boolean sWatching;
+
+    private HostHookScope() {
+    }
+
+    /**
+     * A set of hooks serving one feature. {@link #install} hooks what the feature needs and
+     * returns the hooks so the scope can remove them again.
+     */
+    public abstract static class Family {
+        final String name;
+        // Null for hooks that serve something with no switch, which stay installed
+        final String key;
+        final boolean defaultValue;
+
+        private final List<XC_MethodHook.Unhook> mHooks = new ArrayList<>();
+        private boolean mInstalled;
+
+        private final AtomicLong mCalls = new AtomicLong();
+        private final AtomicLong mCallNanos = new AtomicLong();
+
+        protected Family(String name, String key, boolean defaultValue) {
+            this.name = name;
+            this.key = key;
+            this.defaultValue = defaultValue;
+        }
+
+        protected abstract Collection<XC_MethodHook.Unhook> install();
+
+        /** Undo what the hooks left in the app once they are removed (listeners, receivers). */
+        protected void release() {
+        }
+
+        /** Record one callback that started at {@code startNanos} ({@link System#nanoTime}). */
+        public final void recordCall(long startNanos) {
+            long total = mCallNanos.addAndGet(System.nanoTime() - startNanos);
+            long calls = mCalls.incrementAndGet();
+            if (calls % CALL_REPORT_INTERVAL == 0) {
+                MainHook.log(TAG + ": " + name + " averages " + (total / calls / 1000f) + " µs over "
+                        + calls + " calls");
+            }
+        }
+
+        boolean wanted() {
+            return key == null || XposedConfigReader.getBoolean(key, defaultValue);
+        }
+    }
+
+    /**
+     * Start following config changes once the app's Application is created (before that
+     * there is no Context to observe with). Safe to call more than once.
+     */
+    public static synchronized void start() {
+        if (sAppCreateHook != null || sWatching) return;
+        try {
+            sAppCreateHook = XposedHelpers.findAndHookMethod(Instrumentation.class, "callApplicationOnCreate",
+                    Application.class, new XC_MethodHook() {
+                        @Override
+                        protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                            watch(((Application) param.args[0]).getApplicationContext());
+                        }
+                    });
+        } catch (Throwable t) {
+            MainHook.log(TAG + ": Can't hook application start, toggles apply on restart: " + t);
+        }
+    }
+
+    /** Register {@code family} and install it now if its feature is on. */
+    public static synchronized void add(Family family) {
+        if (sFamilies.containsKey(family.name)) return;
+        sFamilies.put(family.name, family);
+        sync(family);
+    }
+
+    /** Bring every family in line with the current config. */
+    public static synchronized void syncAll() {
+        for (Family family : sFamilies.values()) {
+            sync(family);
+        }
+    }
+
+    private static void sync(Family family) {
+        boolean wanted = family.wanted();
+        if (wanted == family.mInstalled) return;
+
+        long start = System.nanoTime();
+        if (wanted) {
+            try {
+                Collection<XC_MethodHook.Unhook> hooks = family.install();
+                if (hooks != null) family.mHooks.addAll(hooks);
+            } catch (Throwable t) {
+                MainHook.log(TAG + ": Failed to install " + family.name + ": " + t);
+            }
+        } else {
+            for (XC_MethodHook.Unhook hook : family.mHooks) {
+                try {
+                    hook.unhook();
+                } catch (Throwable ignored) {
+                }
+            }
+            family.mHooks.clear();
+            try {
+                family.release();
+            } catch (Throwable ignored) {
+            }
+        }
+        family.mInstalled = wanted;
+        MainHook.log(TAG + ": " + family.name + (wanted ? " installed (" + family.mHooks.size() + " hooks)"
+                : " removed") + " in " + ((System.nanoTime() - start) / 1000) + " µs");
+    }
+
+    private static synchronized void watch(Context context) {
+        if (sAppCreateHook != null) {
+            // Only the first Application of the process matters
+            sAppCreateHook.unhook();
+            sAppCreateHook = null;
+        }
+        if (sWatching || context == null) return;
+        try {
+            ContentObserver observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    if (uri != null && !concernsFamilies(uri)) return;
+                    // The exported file is committed before the provider notifies
+                    XposedConfigReader.forceReload();
+                    syncAll();
+                }
+            };
+            context.getContentResolver().registerContentObserver(ConfigProvider.CONTENT_URI, true, observer);
+            sWatching = true;
+        } catch (Throwable t) {
+            MainHook.log(TAG + ": Can't observe config, toggles apply on restart: " + t);
+        }
+    }
+
+    private static synchronized boolean concernsFamilies(Uri uri) {
+        List<String> keys = uri.getQueryParameters(ConfigProvider.PARAM_KEY);
+        // No key list means too many keys changed to name
+        if (keys.isEmpty()) return true;
+        for (Family family : sFamilies.values()) {
+            if (family.key != null && keys.contains(family.key)) return true;
+        }
+        return false;
+    }
+}
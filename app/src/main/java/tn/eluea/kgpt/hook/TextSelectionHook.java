@@ -28,6 +28,8 @@ import android.widget.TextView;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
 
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
@@ -63,104 +65,147 @@ public class TextSelectionHook {
     private static boolean receiverRegistered = false;
     private static WeakReference<TextView> currentTextViewRef = new WeakReference<>(null);
 
+    // Adds our items to selection menus; only while text actions are enabled
+    private static final HostHookScope.Family ACTION_MODE =
+            new HostHookScope.Family("TextActionsMenu", PREF_TEXT_ACTIONS_ENABLED, false) {
+                @Override
+                protected Collection<XC_MethodHook.Unhook> install() {
+                    return hookActionModeCallback();
+                }
+            };
+
+    // Runs our menu items and captures copy/cut for the AI clipboard, which has no switch
+    private static final HostHookScope.Family CONTEXT_MENU =
+            new HostHookScope.Family("TextContextMenu", null, false) {
+                @Override
+                protected Collection<XC_MethodHook.Unhook> install() {
+                    return hookTextViewSelection();
+                }
+            };
+
     public static void hook(XC_LoadPackage.LoadPackageParam lpparam) {
         log("TextSelectionHook initializing for: " + lpparam.packageName);
 
         // Hook ActionMode.Callback to add our menu items
-        hookActionModeCallback(lpparam);
+        HostHookScope.add(ACTION_MODE);
 
         // Alternative: Hook TextView's text selection
-        hookTextViewSelection(lpparam);
+        HostHookScope.add(CONTEXT_MENU);
     }
 
     /**
      * Hook ActionMode.Callback to add KGPT actions to selection menu.
      */
-    private static void hookActionModeCallback(XC_LoadPackage.LoadPackageParam lpparam) {
+    private static Collection<XC_MethodHook.Unhook> hookActionModeCallback() {
         try {
             // Hook Activity.onActionModeStarted to intercept text selection menus
-            XposedHelpers.findAndHookMethod(
+            XC_MethodHook.Unhook unhook = XposedHelpers.findAndHookMethod(
                     Activity.class,
                     "onActionModeStarted",
                     ActionMode.class,
                     new XC_MethodHook() {
                         @Override
                         protected void afterHookedMethod(MethodHookParam param) throws Throwable {
-                            if (!isEnabled())
-                                return;
-
-                            Activity activity = (Activity) param.thisObject;
-                            ActionMode mode = (ActionMode) param.args[0];
-
-                            if (mode == null)
-                                return;
-
-                            // Store context for later use
-                            appContextRef = new WeakReference<>(activity.getApplicationContext());
-
-                            // Check if this is a text selection action mode
-                            if (mode.getType() == ActionMode.TYPE_FLOATING) {
-                                log("Floating ActionMode started, adding KGPT actions");
-                                addKGPTMenuItems(mode, activity);
+                            long start = System.nanoTime();
+                            try {
+                                onActionModeStarted(param);
+                            } finally {
+                                ACTION_MODE.recordCall(start);
                             }
                         }
                     });
             log("Hooked Activity.onActionModeStarted");
+            return Collections.singletonList(unhook);
         } catch (Throwable t) {
             log("Failed to hook Activity.onActionModeStarted: " + t.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static void onActionModeStarted(XC_MethodHook.MethodHookParam param) {
+        ActionMode mode = (ActionMode) param.args[0];
+
+        // Only floating (text selection) menus get our items; check that before any config
+        if (mode == null || mode.getType() != ActionMode.TYPE_FLOATING)
+            return;
+
+        // Still checked: the snapshot the scope installed from may be up to a second old
+        if (!isEnabled())
+            return;
+
+        Activity activity = (Activity) param.thisObject;
+
+        // Store context for later use
+        Context appContext = activity.getApplicationContext();
+        if (appContextRef.get() != appContext) {
+            appContextRef = new WeakReference<>(appContext);
         }
+
+        log("Floating ActionMode started, adding KGPT actions");
+        addKGPTMenuItems(mode, activity);
     }
 
     /**
      * Hook TextView to detect text selection.
      */
-    private static void hookTextViewSelection(XC_LoadPackage.LoadPackageParam lpparam) {
+    private static Collection<XC_MethodHook.Unhook> hookTextViewSelection() {
         try {
             // Hook TextView.onTextContextMenuItem to handle our custom menu items
-            XposedHelpers.findAndHookMethod(
+            XC_MethodHook.Unhook unhook = XposedHelpers.findAndHookMethod(
                     TextView.class,
                     "onTextContextMenuItem",
                     int.class,
                     new XC_MethodHook() {
                         @Override
                         protected void beforeHookedMethod(MethodHookParam param) throws Throwable {
-                            int id = (int) param.args[0];
-                            TextView textView = (TextView) param.thisObject;
-
-                            // Check if it's one of our menu items
-                            if (id >= MENU_ID_KGPT_BASE && id <= MENU_ID_TRANSLATE) {
-                                handleKGPTAction(textView, id);
-                                param.setResult(true); // Consume the event
-                                return;
-                            }
-
-                            // Clipboard capture (Copy/Cut)
-                            // Record copied/cut text into KGPT "AI Clipboard" history.
-                            // Note: Android does not expose cut vs copy in clipboard content; we just store text.
-                            if (id == android.R.id.copy || id == android.R.id.cut) {
-                                try {
-                                    int start = textView.getSelectionStart();
-                                    int end = textView.getSelectionEnd();
-                                    if (start >= 0 && end >= 0 && start != end) {
-                                        CharSequence t = textView.getText();
-                                        if (t != null) {
-                                            String selected = t.subSequence(Math.min(start, end), Math.max(start, end)).toString();
-                                            if (selected != null && !selected.trim().isEmpty()) {
-                                                Context c = textView.getContext();
-                                                if (c != null) {
-                                                    AIClipboardStore.append(c.getApplicationContext(), selected);
-                                                }
-                                            }
-                                        }
-                                    }
-                                } catch (Throwable ignored) {
-                                }
+                            long start = System.nanoTime();
+                            try {
+                                onTextContextMenuItem(param);
+                            } finally {
+                                CONTEXT_MENU.recordCall(start);
                             }
                         }
                     });
             log("Hooked TextView.onTextContextMenuItem");
+            return Collections.singletonList(unhook);
         } catch (Throwable t) {
             log("Failed to hook TextView.onTextContextMenuItem: " + t.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static void onTextContextMenuItem(XC_MethodHook.MethodHookParam param) {
+        int id = (int) param.args[0];
+        TextView textView = (TextView) param.thisObject;
+
+        // Check if it's one of our menu items
+        if (id >= MENU_ID_KGPT_BASE && id <= MENU_ID_TRANSLATE) {
+            handleKGPTAction(textView, id);
+            param.setResult(true); // Consume the event
+            return;
+        }
+
+        // Clipboard capture (Copy/Cut)
+        // Record copied/cut text into KGPT "AI Clipboard" history.
+        // Note: Android does not expose cut vs copy in clipboard content; we just store text.
+        if (id == android.R.id.copy || id == android.R.id.cut) {
+            try {
+                int start = textView.getSelectionStart();
+                int end = textView.getSelectionEnd();
+                if (start >= 0 && end >= 0 && start != end) {
+                    CharSequence t = textView.getText();
+                    if (t != null) {
+                        String selected = t.subSequence(Math.min(start, end), Math.max(start, end)).toString();
+                        if (selected != null && !selected.trim().isEmpty()) {
+                            Context c = textView.getContext();
+                            if (c != null) {
+                                AIClipboardStore.append(c.getApplicationContext(), selected);
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable ignored) {
+            }
         }
     }
 
@@ -15,9 +15,14 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.BlobReader;
+import tn.eluea.kgpt.core.codec.BlobWriter;
+
 public class Commands {
 
     /**
@@ -59,34 +64,75 @@ public class Commands {
         return defaults;
     }
 
-    public static String encodeCommands(List<GenerativeAICommand> commands) {
-        JSONArray rootJson = new JSONArray();
-        for (GenerativeAICommand command: commands) {
-            try {
-                rootJson.put(new JSONObject()
-                        .accumulate("prefix", command.getCommandPrefix())
-                        .accumulate("message", command.getTweakMessage()));
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
-        }
+    /** Stored form of the command list: per command its prefix and tweak message. */
+    public static final BlobCodec<ArrayList<GenerativeAICommand>> CODEC =
+            new BlobCodec<ArrayList<GenerativeAICommand>>(BlobCodec.SCHEMA_COMMANDS, 1, "Commands") {
+                @Override
+                protected void write(BlobWriter out, ArrayList<GenerativeAICommand> commands) {
+                    out.writeVarint(commands.size());
+                    for (GenerativeAICommand command : commands) {
+                        out.writeString(command.getCommandPrefix());
+                        out.writeString(command.getTweakMessage());
+                    }
+                }
+
+                @Override
+                protected ArrayList<GenerativeAICommand> read(BlobReader in, int version) throws IOException {
+                    int n = in.readLength();
+                    ArrayList<GenerativeAICommand> result = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        result.add(new SimpleGenerativeAICommand(in.readString(), in.readString()));
+                    }
+                    return result;
+                }
+
+                @Override
+                protected ArrayList<GenerativeAICommand> parseJson(String rawCommands) {
+                    ArrayList<GenerativeAICommand> result = new ArrayList<>();
+                    if (rawCommands == null) {
+                        return result;
+                    }
+                    try {
+                        JSONArray array = new JSONArray(rawCommands);
+                        for (int i=0; i<array.length(); i++) {
+                            JSONObject commandJson = (JSONObject) array.get(i);
+                            String prefix = commandJson.getString("prefix");
+                            String message = commandJson.getString("message");
+                            result.add(new SimpleGenerativeAICommand(prefix, message));
+                        }
+                        return result;
+                    } catch (JSONException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
 
-        return rootJson.toString();
+                @Override
+                protected String formatJson(ArrayList<GenerativeAICommand> commands) {
+                    JSONArray rootJson = new JSONArray();
+                    for (GenerativeAICommand command: commands) {
+                        try {
+                            rootJson.put(new JSONObject()
+                                    .accumulate("prefix", command.getCommandPrefix())
+                                    .accumulate("message", command.getTweakMessage()));
+                        } catch (JSONException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return rootJson.toString();
+                }
+
+                @Override
+                protected ArrayList<GenerativeAICommand> copy(ArrayList<GenerativeAICommand> commands) {
+                    // The commands themselves are immutable
+                    return new ArrayList<>(commands);
+                }
+            };
+
+    public static String encodeCommands(List<GenerativeAICommand> commands) {
+        return CODEC.encode(new ArrayList<>(commands));
     }
 
     public static ArrayList<GenerativeAICommand> decodeCommands(String rawCommands) {
-        ArrayList<GenerativeAICommand> result = new ArrayList<>();
-        try {
-            JSONArray array = new JSONArray(rawCommands);
-            for (int i=0; i<array.length(); i++) {
-                JSONObject commandJson = (JSONObject) array.get(i);
-                String prefix = commandJson.getString("prefix");
-                String message = commandJson.getString("message");
-                result.add(new SimpleGenerativeAICommand(prefix, message));
-            }
-            return result;
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
+        return CODEC.decodeOrEmpty(rawCommands);
     }
 }
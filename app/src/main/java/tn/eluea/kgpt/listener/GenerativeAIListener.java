@@ -16,4 +16,23 @@ public interface GenerativeAIListener {
     void onAINext(String chunk);
     void onAIError(Throwable t);
     void onAIComplete();
+
+    // Session-aware variants, used by GenerativeAIController. Listeners that track several
+    // concurrent generations override these; the rest keep the plain callbacks above.
+
+    default void onAIPrepare(tn.eluea.kgpt.core.ai.GenerationSession session) {
+        onAIPrepare();
+    }
+
+    default void onAINext(tn.eluea.kgpt.core.ai.GenerationSession session, String chunk) {
+        onAINext(chunk);
+    }
+
+    default void onAIError(tn.eluea.kgpt.core.ai.GenerationSession session, Throwable t) {
+        onAIError(t);
+    }
+
+    default void onAIComplete(tn.eluea.kgpt.core.ai.GenerationSession session) {
+        onAIComplete();
+    }
 }
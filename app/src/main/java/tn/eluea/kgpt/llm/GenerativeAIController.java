@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.ai.GenerationSession;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
 import tn.eluea.kgpt.llm.client.LanguageModelClient;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
@@ -46,6 +47,19 @@ public class GenerativeAIController implements ConfigChangeListener {
     private List<GenerativeAIListener> mListeners = new ArrayList<>();
     private InternetProvider mInternetProvider = new SimpleInternetProvider();
 
+    // Re-preload well inside LocalServerClient.KEEP_ALIVE so the model never gets unloaded
+    private static final long LOCAL_PRELOAD_INTERVAL_MS = 5 * 60 * 1000L;
+    private volatile long mLastLocalPreloadAt = 0L;
+
+    // Hard ceiling for one generation; replaces relying on the IME input lock timeout alone
+    public static final long SESSION_DEADLINE_MS = 120 * 1000L;
+    // Live generations by target field; different fields stream concurrently
+    private final java.util.concurrent.ConcurrentHashMap<String, GenerationSession> mSessions =
+            new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile GenerationSession mSession = null;
+    private final android.os.Handler mDeadlineHandler =
+            new android.os.Handler(android.os.Looper.getMainLooper());
+
     public GenerativeAIController() {
         mSPManager = SPManager.getInstance();
         mInteractor = UiInteractor.getInstance();
@@ -80,6 +94,7 @@ public class GenerativeAIController implements ConfigChangeListener {
     }
 
     public boolean needApiKey() {
+        if (!mModelClient.getLanguageModel().requiresApiKey) return false;
         return mModelClient.getApiKey() == null || mModelClient.getApiKey().isEmpty();
     }
 
@@ -124,6 +139,25 @@ public class GenerativeAIController implements ConfigChangeListener {
         }
     }
 
+    /**
+     * Ask a local model server to load the current model ahead of the first prompt.
+     * No-op for cloud providers; throttled so showing the keyboard repeatedly is cheap.
+     */
+    public void preloadLocalModelIfNeeded() {
+        final LanguageModelClient client = mModelClient;
+        if (!(client instanceof tn.eluea.kgpt.llm.client.LocalServerClient)) return;
+
+        long now = android.os.SystemClock.elapsedRealtime();
+        if (mLastLocalPreloadAt != 0L && now - mLastLocalPreloadAt < LOCAL_PRELOAD_INTERVAL_MS) return;
+        mLastLocalPreloadAt = now;
+
+        tn.eluea.kgpt.core.ai.AiExecutor.get().execute(() -> {
+            boolean ok = ((tn.eluea.kgpt.llm.client.LocalServerClient) client).preload();
+            tn.eluea.kgpt.util.Logger.log("Local model preload " + (ok ? "done" : "failed"));
+            if (!ok) mLastLocalPreloadAt = 0L;
+        });
+    }
+
     public void addListener(GenerativeAIListener listener) {
         mListeners.add(listener);
     }
@@ -144,6 +178,16 @@ public class GenerativeAIController implements ConfigChangeListener {
      * Generate response with optional role id override.
      */
     public void generateResponse(String prompt, String systemMessage, String roleIdOverride) {
+        generateResponse(prompt, systemMessage, roleIdOverride,
+                new GenerationSession(SESSION_DEADLINE_MS));
+    }
+
+    /**
+     * Generate response for a session created by the caller, so the caller can attach its
+     * own per-target state before the first callback arrives.
+     */
+    public void generateResponse(String prompt, String systemMessage, String roleIdOverride,
+            final GenerationSession session) {
         tn.eluea.kgpt.util.Logger.log("Getting response for text \"" + prompt + "\"");
 
         if (prompt.isEmpty()) {
@@ -159,8 +203,41 @@ public class GenerativeAIController implements ConfigChangeListener {
             systemMessage = RoleManager.resolveSystemMessage(rid, sp.getRolesJson(), systemMessage);
         } catch (Exception ignored) {}
 
-        mInteractor.post(() -> mListeners.forEach(GenerativeAIListener::onAIPrepare));
+        // A new request supersedes whatever still runs in the same field; its late chunks are
+        // dropped. Generations bound to other fields keep streaming.
+        GenerationSession previous = mSessions.put(session.target.fieldKey(), session);
+        mSession = session;
+        if (previous != null && previous != session && previous.cancel()) {
+            tn.eluea.kgpt.util.Logger.log("Superseded " + previous.summary());
+            mDeadlineHandler.removeCallbacksAndMessages(previous);
+            mInteractor.post(() -> mListeners.forEach(l -> l.onAIComplete(previous)));
+        }
+
+        mInteractor.post(() -> {
+            if (isLive(session)) mListeners.forEach(l -> l.onAIPrepare(session));
+        });
+
+        int ceilingMs = 80;
+        try {
+            ceilingMs = mSPManager.getStreamLatencyCeilingMs();
+        } catch (Throwable ignored) {}
+        final TokenCoalescer coalescer = new TokenCoalescer(batch -> {
+            if (isLive(session)) mListeners.forEach(l -> l.onAINext(session, batch));
+        }, ceilingMs);
+
+        mDeadlineHandler.postAtTime(() -> {
+            if (!isLive(session)) return;
+            coalescer.drain();
+            if (session.expire()) {
+                tn.eluea.kgpt.util.Logger.log("Deadline passed: " + session.summary());
+                mSessions.remove(session.target.fieldKey(), session);
+                java.util.concurrent.TimeoutException t =
+                        new java.util.concurrent.TimeoutException("Generation timed out");
+                mListeners.forEach(l -> l.onAIError(session, t));
+            }
+        }, session, android.os.SystemClock.uptimeMillis() + SESSION_DEADLINE_MS);
 
+        session.moveTo(GenerationSession.State.CONNECTING);
         Publisher<String> publisher;
         if (needModelClient()) {
             publisher = new SimpleStringPublisher("Missing API Key");
@@ -174,7 +251,10 @@ public class GenerativeAIController implements ConfigChangeListener {
 
             @Override
             public void onSubscribe(Subscription s) {
-                s.request(Long.MAX_VALUE);
+                session.setCancelHandle(s::cancel);
+                if (!session.isTerminal()) {
+                    s.request(Long.MAX_VALUE);
+                }
             }
 
             @Override
@@ -182,11 +262,16 @@ public class GenerativeAIController implements ConfigChangeListener {
                 if (s == null || s.isEmpty()) {
                     return;
                 }
+                if (session.isTerminal()) {
+                    // Cancelled or superseded: nothing buffered will be committed
+                    coalescer.cancel();
+                    return;
+                }
 
                 tn.eluea.kgpt.util.Logger.log("onNext: string with length " + s.length());
 
-                mInteractor.post(() -> mListeners.forEach(
-                        l -> l.onAINext(s)));
+                session.moveTo(GenerationSession.State.STREAMING);
+                coalescer.offer(s);
             }
 
             @Override
@@ -199,10 +284,16 @@ public class GenerativeAIController implements ConfigChangeListener {
                 completed = true;
 
                 tn.eluea.kgpt.util.Logger.error(t.getMessage());
+                if (!session.moveTo(GenerationSession.State.COMMITTING)) {
+                    return;
+                }
 
                 // Notify listeners about the error
                 mInteractor.post(() -> {
-                    mListeners.forEach(l -> l.onAIError(t));
+                    if (!isLive(session)) return;
+                    coalescer.drain();
+                    finish(session, GenerationSession.State.FAILED);
+                    mListeners.forEach(l -> l.onAIError(session, t));
                 });
                 tn.eluea.kgpt.util.Logger.log("Error handled");
             }
@@ -214,13 +305,65 @@ public class GenerativeAIController implements ConfigChangeListener {
                     return;
                 }
                 completed = true;
+                if (!session.moveTo(GenerationSession.State.COMMITTING)) {
+                    return;
+                }
 
-                mInteractor.post(() -> mListeners.forEach(GenerativeAIListener::onAIComplete));
+                mInteractor.post(() -> {
+                    if (!isLive(session)) return;
+                    coalescer.drain();
+                    finish(session, GenerationSession.State.DONE);
+                    mListeners.forEach(l -> l.onAIComplete(session));
+                });
                 tn.eluea.kgpt.util.Logger.log("Done");
             }
         });
     }
 
+    private boolean isLive(GenerationSession session) {
+        return !session.isTerminal() && mSessions.get(session.target.fieldKey()) == session;
+    }
+
+    private void finish(GenerationSession session, GenerationSession.State state) {
+        session.moveTo(state);
+        mSessions.remove(session.target.fieldKey(), session);
+        mDeadlineHandler.removeCallbacksAndMessages(session);
+        tn.eluea.kgpt.util.Logger.log(session.summary());
+    }
+
+    /**
+     * The most recently started generation, or null if none was started yet.
+     * It may already be terminal.
+     */
+    public GenerationSession getCurrentSession() {
+        return mSession;
+    }
+
+    /** The live generation writing into {@code target}'s field, if any. */
+    public GenerationSession getSessionFor(tn.eluea.kgpt.core.ai.GenerationTarget target) {
+        return target == null ? null : mSessions.get(target.fieldKey());
+    }
+
+    /**
+     * Stop the most recent generation. Text committed so far is kept and listeners get
+     * onAIComplete so they can release the input lock.
+     */
+    public boolean cancelCurrentSession() {
+        return cancelSession(mSession);
+    }
+
+    public boolean cancelSession(GenerationSession session) {
+        if (session == null || session.isTerminal()) return false;
+        mInteractor.post(() -> {
+            if (!isLive(session) || !session.cancel()) return;
+            mSessions.remove(session.target.fieldKey(), session);
+            mDeadlineHandler.removeCallbacksAndMessages(session);
+            tn.eluea.kgpt.util.Logger.log(session.summary());
+            mListeners.forEach(l -> l.onAIComplete(session));
+        });
+        return true;
+    }
+
     public LanguageModel getLanguageModel() {
         return mModelClient.getLanguageModel();
     }
@@ -32,18 +32,28 @@ public enum LanguageModel {
                 "https://www.perplexity.ai/settings/api"),
     GLM("ZhipuAI", "glm-4", "https://open.bigmodel.cn/api/paas/v4", false,
                 "https://open.bigmodel.cn/usercenter/apikeys"),
+    // OpenAI-compatible server on the device or LAN (llama.cpp server, Ollama). The key is optional.
+    LocalServer("Local Server", "llama3.2", "http://127.0.0.1:11434/v1", true,
+                "https://github.com/ollama/ollama", false),
             ;
 
     public final String label;
     public final boolean isFree;
     public final String getKeyUrl;
+    public final boolean requiresApiKey;
 
     public final Map<LanguageModelField, String> defaults;
 
     LanguageModel(String label, String defaultSubModel, String defaultBaseUrl, boolean isFree, String getKeyUrl) {
+        this(label, defaultSubModel, defaultBaseUrl, isFree, getKeyUrl, true);
+    }
+
+    LanguageModel(String label, String defaultSubModel, String defaultBaseUrl, boolean isFree, String getKeyUrl,
+                  boolean requiresApiKey) {
         this.label = label;
         this.isFree = isFree;
         this.getKeyUrl = getKeyUrl;
+        this.requiresApiKey = requiresApiKey;
 
         defaults = ImmutableMap.of(
                 LanguageModelField.SubModel, defaultSubModel,
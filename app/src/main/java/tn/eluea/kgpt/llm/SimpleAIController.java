@@ -73,6 +73,7 @@ public class SimpleAIController {
     }
 
     public boolean needApiKey() {
+        if (mModelClient != null && !mModelClient.getLanguageModel().requiresApiKey) return false;
         return mModelClient == null || 
                mModelClient.getApiKey() == null || 
                mModelClient.getApiKey().isEmpty();
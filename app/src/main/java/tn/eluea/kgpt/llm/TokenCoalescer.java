@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.function.Consumer;
+
+/**
+ * Batches streamed chunks so the editor receives at most one commit per frame.
+ *
+ * Chunks can be offered from any thread. A frame callback is only scheduled when the
+ * buffer goes from empty to non-empty; on each vsync the buffer is released if it ends
+ * on a word boundary, has grown past {@link #MAX_BATCH_CHARS}, or its oldest chunk has
+ * waited longer than the latency ceiling. Otherwise it waits for the next frame.
+ */
+public class TokenCoalescer implements Choreographer.FrameCallback {
+    static final int MAX_BATCH_CHARS = 64;
+
+    private final Consumer<String> mSink;
+    private final long mCeilingMs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final StringBuilder mBuffer = new StringBuilder();
+    private long mOldestAt = 0L;
+    private boolean mScheduled = false;
+    private boolean mCancelled = false;
+
+    /**
+     * @param sink      receives each batch on the main thread
+     * @param ceilingMs longest a chunk may be held back; 0 releases on every frame
+     */
+    public TokenCoalescer(Consumer<String> sink, long ceilingMs) {
+        mSink = sink;
+        mCeilingMs = Math.max(0L, ceilingMs);
+    }
+
+    public void offer(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        boolean schedule;
+        synchronized (mBuffer) {
+            if (mCancelled) {
+                return;
+            }
+            if (mBuffer.length() == 0) {
+                mOldestAt = SystemClock.uptimeMillis();
+            }
+            mBuffer.append(chunk);
+            schedule = !mScheduled;
+            mScheduled = true;
+        }
+        if (schedule) {
+            mMainHandler.post(this::postFrame);
+        }
+    }
+
+    /**
+     * Hand over whatever is still buffered. Must be called on the main thread before a
+     * terminal signal so the final words are committed ahead of complete/error.
+     */
+    public void drain() {
+        String batch = null;
+        synchronized (mBuffer) {
+            if (mBuffer.length() > 0) {
+                batch = mBuffer.toString();
+                mBuffer.setLength(0);
+            }
+        }
+        if (batch != null) {
+            mSink.accept(batch);
+        }
+    }
+
+    /**
+     * Drop whatever is buffered and ignore later chunks, for a generation that was cancelled
+     * or superseded. A frame already scheduled finds nothing to release.
+     */
+    public void cancel() {
+        synchronized (mBuffer) {
+            mCancelled = true;
+            mBuffer.setLength(0);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        String batch = null;
+        synchronized (mBuffer) {
+            if (mBuffer.length() == 0) {
+                mScheduled = false;
+                return;
+            }
+            long waited = SystemClock.uptimeMillis() - mOldestAt;
+            if (shouldRelease(mBuffer, waited, mCeilingMs)) {
+                batch = mBuffer.toString();
+                mBuffer.setLength(0);
+                mScheduled = false;
+            }
+        }
+        if (batch == null) {
+            postFrame();
+            return;
+        }
+        mSink.accept(batch);
+    }
+
+    private void postFrame() {
+        try {
+            Choreographer.getInstance().postFrameCallback(this);
+        } catch (Throwable t) {
+            // No Choreographer on this looper, fall back to a 16ms tick
+            mMainHandler.postDelayed(() -> doFrame(System.nanoTime()), 16);
+        }
+    }
+
+    static boolean shouldRelease(CharSequence buffer, long waitedMs, long ceilingMs) {
+        int len = buffer.length();
+        if (len == 0) return false;
+        if (len >= MAX_BATCH_CHARS || waitedMs >= ceilingMs) return true;
+        return isWordBoundary(Character.codePointBefore(buffer, len));
+    }
+
+    static boolean isWordBoundary(int cp) {
+        if (Character.isWhitespace(cp) || Character.isIdeographic(cp)) {
+            return true;
+        }
+        switch (Character.getType(cp)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
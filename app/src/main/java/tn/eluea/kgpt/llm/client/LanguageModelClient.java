@@ -102,6 +102,8 @@ public abstract class LanguageModelClient {
                 return new PerplexityClient();
             case GLM:
                 return new GLMClient();
+            case LocalServer:
+                return new LocalServerClient();
             case ChatGPT:
             default:
                 return new ChatGPTClient();
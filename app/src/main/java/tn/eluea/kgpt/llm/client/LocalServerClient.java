@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.client;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.reactivestreams.Publisher;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+import android.util.Log;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.codec.ChatCompletionCodec;
+import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+
+/**
+ * Client for an OpenAI-compatible server running on the device or the LAN
+ * (llama.cpp server, Ollama, LM Studio...).
+ *
+ * Differences from {@link ChatGPTClient}:
+ * - the API key is optional, no Authorization header is sent without one;
+ * - responses are always streamed;
+ * - every request carries {@code keep_alive} so Ollama keeps the model resident, and
+ *   {@link #preload()} loads it ahead of the first prompt.
+ */
+public class LocalServerClient extends LanguageModelClient {
+    private static final String TAG = "KGPT_LocalServer";
+
+    // How long the server should keep the model loaded after the last request
+    public static final String KEEP_ALIVE = "30m";
+
+    private static final int PRELOAD_CONNECT_TIMEOUT_MS = 2000;
+    private static final int PRELOAD_READ_TIMEOUT_MS = 60000;
+
+    @Override
+    public LanguageModel getLanguageModel() {
+        return LanguageModel.LocalServer;
+    }
+
+    @Override
+    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+        if (systemMessage == null) {
+            systemMessage = getDefaultSystemMessage();
+        }
+
+        String url = trimSlash(getBaseUrl()) + "/chat/completions";
+        HttpURLConnection con;
+        try {
+            con = (HttpURLConnection) new URL(url).openConnection();
+            con.setRequestMethod("POST");
+            con.setRequestProperty("Content-Type", "application/json");
+            con.setRequestProperty("Accept", "text/event-stream");
+            String apiKey = getApiKey();
+            if (apiKey != null && !apiKey.isEmpty()) {
+                con.setRequestProperty("Authorization", "Bearer " + apiKey);
+            }
+
+            JSONArray messagesJson = new JSONArray();
+            messagesJson.put(new JSONObject()
+                    .accumulate("role", "system")
+                    .accumulate("content", systemMessage));
+            messagesJson.put(new JSONObject()
+                    .accumulate("role", "user")
+                    .accumulate("content", prompt));
+            JSONObject rootJson = new JSONObject();
+            rootJson.put("model", getSubModel());
+            rootJson.put("messages", messagesJson);
+            rootJson.put("stream", true);
+            rootJson.put("keep_alive", KEEP_ALIVE);
+            rootJson.put("max_tokens", getIntField(LanguageModelField.MaxTokens));
+            rootJson.put("temperature", getDoubleField(LanguageModelField.Temperature));
+            rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
+
+            InternetRequestPublisher publisher = new InternetRequestPublisher(
+                    (s, reader) -> {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            String chunk = parseStreamLine(line);
+                            if (chunk == null) {
+                                if (line.trim().endsWith("[DONE]")) break;
+                                continue;
+                            }
+                            s.onNext(chunk);
+                        }
+                    },
+                    (s, reader) -> {
+                        String response = reader.lines().collect(Collectors.joining(""));
+                        throw new IllegalArgumentException("Local server error: " + parseError(response));
+                    });
+            InputStream inputStream = sendRequest(con, rootJson.toString(), publisher);
+            publisher.setInputStream(inputStream);
+            return publisher;
+        } catch (Throwable t) {
+            return new ExceptionPublisher(t);
+        }
+    }
+
+    /**
+     * Ask the server to load the model now so the first prompt doesn't pay the load time.
+     * Blocking; call it off the main thread. Returns true if the server acknowledged.
+     *
+     * Uses Ollama's native {@code /api/generate} with an empty prompt. Servers without that
+     * endpoint (llama.cpp keeps its single model loaded anyway) just get a {@code /models} ping,
+     * which still warms up the connection.
+     */
+    public boolean preload() {
+        String base = trimSlash(getBaseUrl());
+        try {
+            JSONObject body = new JSONObject();
+            body.put("model", getSubModel());
+            body.put("keep_alive", KEEP_ALIVE);
+            int code = request("POST", rootUrl(base) + "/api/generate", body.toString());
+            if (code >= 200 && code < 300) return true;
+            return request("GET", base + "/models", null) < 400;
+        } catch (Throwable t) {
+            Log.d(TAG, "Preload failed: " + t.getMessage());
+            return false;
+        }
+    }
+
+    private int request(String method, String url, String body) throws Exception {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            con.setRequestMethod(method);
+            con.setConnectTimeout(PRELOAD_CONNECT_TIMEOUT_MS);
+            con.setReadTimeout(PRELOAD_READ_TIMEOUT_MS);
+            String apiKey = getApiKey();
+            if (apiKey != null && !apiKey.isEmpty()) {
+                con.setRequestProperty("Authorization", "Bearer " + apiKey);
+            }
+            if (body != null) {
+                con.setDoOutput(true);
+                con.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream os = con.getOutputStream()) {
+                    os.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int code = con.getResponseCode();
+            // Drain and close rather than disconnect, so the connection goes back to the
+            // keep-alive pool for the generation request that follows
+            try (InputStream in = code < 400 ? con.getInputStream() : con.getErrorStream()) {
+                if (in != null) {
+                    byte[] buf = new byte[1024];
+                    while (in.read(buf) != -1) { }
+                }
+            } catch (Throwable ignored) {}
+            return code;
+        } catch (Exception e) {
+            // Unread response: the connection can't be reused
+            con.disconnect();
+            throw e;
+        }
+    }
+
+    static String parseStreamLine(String line) throws JSONException {
+        return ChatCompletionCodec.parseStreamLine(line);
+    }
+
+    static String parseError(String response) {
+        return ChatCompletionCodec.parseError(response);
+    }
+
+    static String rootUrl(String baseUrl) {
+        String root = trimSlash(baseUrl);
+        if (root.endsWith("/v1")) root = root.substring(0, root.length() - 3);
+        return root;
+    }
+
+    private static String trimSlash(String url) {
+        if (url == null) return "";
+        String u = url.trim();
+        while (u.endsWith("/")) u = u.substring(0, u.length() - 1);
+        return u;
+    }
+}
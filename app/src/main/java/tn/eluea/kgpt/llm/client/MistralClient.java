@@ -12,7 +12,6 @@
 package tn.eluea.kgpt.llm.client;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.reactivestreams.Publisher;
 
@@ -23,6 +22,7 @@ import java.util.stream.Collectors;
 
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.codec.ChatCompletionCodec;
 import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
 import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
 
@@ -63,28 +63,7 @@ public class MistralClient extends LanguageModelClient {
             InternetRequestPublisher publisher = new InternetRequestPublisher(
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
-                        JSONObject responseJson = new JSONObject(response);
-                        if (responseJson.has("choices")) {
-                            JSONArray choices = responseJson.getJSONArray("choices");
-                            for (int i = 0; i < choices.length(); i++) {
-                                JSONObject choice = choices.getJSONObject(i).getJSONObject("message");
-                                if (choice.has("role") && "assistant".equals(choice.getString("role"))) {
-                                    s.onNext(choice
-                                            .getString("content"));
-                                    return;
-                                }
-                            }
-                            if (choices.length() > 0) {
-                                s.onNext(choices.getJSONObject(0)
-                                        .getJSONObject("message")
-                                        .getString("content"));
-                            }
-                            else {
-                                throw new JSONException("choices has length 0");
-                            }
-                        } else {
-                            throw new JSONException("no \"choices\" attribute found");
-                        }
+                        s.onNext(ChatCompletionCodec.parseCompletion(response));
                     },
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
@@ -0,0 +1,219 @@
+package tn.eluea.kgpt.llm.compare;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.ai.AiExecutor;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+import tn.eluea.kgpt.roles.RoleManager;
+
+/**
+ * Fans one prompt out to several language models at once (compare mode).
+ *
+ * Every model gets its own pane index. Streams run on {@link AiExecutor} and all callbacks are
+ * delivered on the main thread. Picking a pane cancels the others; metrics for the whole run
+ * are recorded through {@link SPManager#appendCompareRun} once every pane has settled.
+ */
+public class ModelCompareRunner {
+    private static final String TAG = "KGPT_Compare";
+
+    public interface Listener {
+        void onPaneChunk(int pane, String chunk);
+
+        void onPaneFinished(int pane, ModelRunMetrics metrics);
+    }
+
+    private static final class Pane {
+        final LanguageModelClient client;
+        final ModelRunMetrics metrics;
+        final StringBuilder text = new StringBuilder();
+        volatile boolean cancelled = false;
+        volatile Publisher<String> publisher;
+        volatile Subscription subscription;
+        Future<?> future;
+
+        Pane(LanguageModelClient client) {
+            this.client = client;
+            this.metrics = new ModelRunMetrics(client.getLanguageModel(), client.getSubModel());
+        }
+    }
+
+    private final List<Pane> mPanes = new ArrayList<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+    private int mPending = 0;
+    private boolean mRecorded = false;
+    private long mStartedAt = 0L;
+
+    public ModelCompareRunner(List<LanguageModel> models, Listener listener) {
+        mListener = listener;
+        SPManager sp = SPManager.getInstance();
+        for (LanguageModel model : models) {
+            LanguageModelClient client = LanguageModelClient.forModel(model);
+            for (LanguageModelField field : LanguageModelField.values()) {
+                client.setField(field, sp.getLanguageModelField(model, field));
+            }
+            client.setInternetProvider(new SimpleInternetProvider());
+            mPanes.add(new Pane(client));
+        }
+    }
+
+    public int getPaneCount() {
+        return mPanes.size();
+    }
+
+    public ModelRunMetrics getMetrics(int pane) {
+        return mPanes.get(pane).metrics;
+    }
+
+    public String getText(int pane) {
+        return mPanes.get(pane).text.toString();
+    }
+
+    public void start(String prompt, String systemMessage) {
+        try {
+            SPManager sp = SPManager.getInstance();
+            systemMessage = RoleManager.resolveSystemMessage(sp.getActiveRoleId(), sp.getRolesJson(), systemMessage);
+        } catch (Exception ignored) {}
+
+        final String system = systemMessage;
+        mStartedAt = SystemClock.elapsedRealtime();
+        mPending = mPanes.size();
+        for (int i = 0; i < mPanes.size(); i++) {
+            final int index = i;
+            final Pane pane = mPanes.get(i);
+            pane.future = AiExecutor.get().submit(() -> run(index, pane, prompt, system));
+        }
+    }
+
+    private void run(int index, Pane pane, String prompt, String systemMessage) {
+        if (pane.cancelled) return;
+
+        Publisher<String> publisher = pane.client.submitPrompt(prompt, systemMessage);
+        pane.publisher = publisher;
+        if (pane.cancelled) {
+            cancelPublisher(pane);
+            return;
+        }
+
+        publisher.subscribe(new Subscriber<String>() {
+            boolean finished = false;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                pane.subscription = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                if (pane.cancelled || s == null || s.isEmpty()) return;
+                long now = SystemClock.elapsedRealtime();
+                if (pane.metrics.firstTokenMs < 0) pane.metrics.firstTokenMs = now - mStartedAt;
+                mMainHandler.post(() -> {
+                    if (pane.cancelled) return;
+                    pane.text.append(s);
+                    pane.metrics.chars = pane.text.length();
+                    mListener.onPaneChunk(index, s);
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (finished) return;
+                finished = true;
+                Log.w(TAG, pane.metrics.model.label + " failed", t);
+                pane.metrics.error = t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+                finish(index, pane, ModelRunMetrics.Status.FAILED);
+            }
+
+            @Override
+            public void onComplete() {
+                if (finished) return;
+                finished = true;
+                finish(index, pane, ModelRunMetrics.Status.DONE);
+            }
+        });
+    }
+
+    private void finish(int index, Pane pane, ModelRunMetrics.Status status) {
+        long total = SystemClock.elapsedRealtime() - mStartedAt;
+        mMainHandler.post(() -> {
+            if (pane.metrics.status != ModelRunMetrics.Status.RUNNING) return;
+            pane.metrics.totalMs = total;
+            pane.metrics.status = pane.cancelled ? ModelRunMetrics.Status.CANCELLED : status;
+            mListener.onPaneFinished(index, pane.metrics);
+            onPaneSettled();
+        });
+    }
+
+    /** Keep the chosen pane and cancel every other stream. Must be called on the main thread. */
+    public void keepOnly(int keep) {
+        for (int i = 0; i < mPanes.size(); i++) {
+            if (i != keep) cancelPane(mPanes.get(i));
+        }
+    }
+
+    /** Cancel all streams. Must be called on the main thread. */
+    public void cancelAll() {
+        for (Pane pane : mPanes) {
+            cancelPane(pane);
+        }
+    }
+
+    private void cancelPane(Pane pane) {
+        if (pane.metrics.status != ModelRunMetrics.Status.RUNNING) return;
+        pane.cancelled = true;
+        pane.metrics.status = ModelRunMetrics.Status.CANCELLED;
+        pane.metrics.totalMs = SystemClock.elapsedRealtime() - mStartedAt;
+        cancelPublisher(pane);
+        if (pane.future != null) pane.future.cancel(true);
+        onPaneSettled();
+    }
+
+    private static void cancelPublisher(Pane pane) {
+        try {
+            Subscription s = pane.subscription;
+            if (s != null) s.cancel();
+            Publisher<String> p = pane.publisher;
+            if (p instanceof InternetRequestPublisher) ((InternetRequestPublisher) p).cancel();
+        } catch (Throwable ignored) {}
+    }
+
+    private void onPaneSettled() {
+        mPending--;
+        if (mPending > 0 || mRecorded) return;
+        mRecorded = true;
+
+        JSONArray models = new JSONArray();
+        for (Pane pane : mPanes) {
+            models.put(pane.metrics.toJson());
+            Log.d(TAG, pane.metrics.toString());
+        }
+        try {
+            JSONObject run = new JSONObject();
+            run.put("t", System.currentTimeMillis());
+            run.put("models", models);
+            SPManager.getInstance().appendCompareRun(run);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to record compare run", t);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package tn.eluea.kgpt.llm.compare;
+
+import org.json.JSONObject;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+
+/**
+ * Timing of one model inside a compare run. Times are in milliseconds from the moment the
+ * request was handed to the executor; -1 means "not reached".
+ */
+public class ModelRunMetrics {
+    public enum Status { RUNNING, DONE, FAILED, CANCELLED }
+
+    public final LanguageModel model;
+    public final String subModel;
+    public volatile Status status = Status.RUNNING;
+    public volatile long firstTokenMs = -1;
+    public volatile long totalMs = -1;
+    public volatile int chars = 0;
+    public volatile String error = null;
+
+    ModelRunMetrics(LanguageModel model, String subModel) {
+        this.model = model;
+        this.subModel = subModel;
+    }
+
+    public JSONObject toJson() {
+        JSONObject o = new JSONObject();
+        try {
+            o.put("model", model.name());
+            o.put("sub", subModel);
+            o.put("status", status.name());
+            o.put("ttft", firstTokenMs);
+            o.put("total", totalMs);
+            o.put("chars", chars);
+            if (error != null) o.put("error", error);
+        } catch (Exception ignored) {}
+        return o;
+    }
+
+    @Override
+    public String toString() {
+        return model.label + " ttft=" + firstTokenMs + "ms total=" + totalMs + "ms " + status;
+    }
+}
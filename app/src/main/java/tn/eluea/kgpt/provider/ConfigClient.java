@@ -12,28 +12,120 @@
  */
 package tn.eluea.kgpt.provider;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
 import android.os.Looper;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Client for accessing ConfigProvider.
- * Uses ContentProvider for main app, XSharedPreferences for Xposed module.
+ * Uses ContentProvider for main app, XSharedPreferences for Xposed module
+ * (which only has the provider's exported keys).
  * Thread-safe implementation using ConcurrentHashMap.
+ *
+ * Reads are served from a snapshot of the whole config, loaded in one query and
+ * tagged with the provider's generation. A change notification names the keys changed
+ * since some generation; if the snapshot is at least that recent only those keys are
+ * re-queried and dropped from the cache, otherwise the snapshot is reloaded. Because
+ * some ROMs drop observer callbacks, it is also reloaded when a generation probe (one
+ * cheap provider call, at most every {@link #REVALIDATE_INTERVAL_MS}) says it moved on.
+ *
+ * Writes that belong together go through {@link #edit()} or {@link #runInTransaction}
+ * and reach the provider as a single batch.
+ *
+ * The client also registers a Binder with the provider, which pushes every change to it
+ * as a delta. While that channel is up the snapshot is kept current in memory: no
+ * generation probes, no reloads, and listeners fire from the delta rather than the
+ * ContentObserver.
  */
 public class ConfigClient {
 
     private static final String TAG = "KGPT_ConfigClient";
 
+    // How long a snapshot is trusted without asking the provider for its generation
+    private static final long REVALIDATE_INTERVAL_MS = 1000;
+
+    // A notification naming more keys than this reloads the snapshot in one query instead
+    private static final int MAX_TARGETED_KEYS = 8;
+
+    // Change notifications may query the provider, so they are handled off the main
+    // thread, on one thread shared by every client in the process
+    private static Handler sObserverHandler;
+
+    // read() result when the provider couldn't be reached
+    private static final Object UNAVAILABLE = new Object();
+
+    private static final class Snapshot {
+        final long generation;
+        // Null values are deferred keys, too large for the snapshot
+        final Map<String, String> values;
+        // Deferred values fetched so far at this generation
+        final Map<String, String> deferred = new ConcurrentHashMap<>();
+
+        Snapshot(long generation, Map<String, String> values) {
+            this.generation = generation;
+            this.values = values;
+        }
+
+        /** This snapshot with one local write applied, at the write's generation. */
+        Snapshot with(String key, String value, long newGeneration) {
+            return with(Collections.singletonMap(key, value), newGeneration);
+        }
+
+        /** Like {@link #with(Map, long)}, with {@code deferredKeys} now too large to hold. */
+        Snapshot with(Map<String, String> changes, Set<String> deferredKeys, long newGeneration) {
+            Snapshot s = with(changes, newGeneration);
+            for (String key : deferredKeys) {
+                s.values.put(key, null);
+                s.deferred.remove(key);
+            }
+            return s;
+        }
+
+        /** This snapshot with the values of a write applied (null removes a key). */
+        Snapshot with(Map<String, String> changes, long newGeneration) {
+            Map<String, String> copy = new HashMap<>(values);
+            for (Map.Entry<String, String> c : changes.entrySet()) {
+                if (c.getValue() != null) {
+                    copy.put(c.getKey(), c.getValue());
+                } else {
+                    copy.remove(c.getKey());
+                }
+            }
+            Snapshot s = new Snapshot(newGeneration, copy);
+            for (Map.Entry<String, String> e : deferred.entrySet()) {
+                if (!changes.containsKey(e.getKey())) s.deferred.put(e.getKey(), e.getValue());
+            }
+            return s;
+        }
+    }
+
     private final ContentResolver mResolver;
     private final Context mContext;
     // Thread-safe cache using ConcurrentHashMap
@@ -41,6 +133,32 @@ public class ConfigClient {
     private final Map<String, OnConfigChangeListener> mListeners = new ConcurrentHashMap<>();
     private ContentObserver mObserver;
 
+    private final Object mSnapshotLock = new Object();
+    private volatile Snapshot mSnapshot;
+    // Set by change notifications newer than the snapshot
+    private volatile boolean mStale = true;
+    private volatile long mValidatedAt;
+
+    // Transaction open on the calling thread, see runInTransaction()
+    private final ThreadLocal<Editor> mOpenEditor = new ThreadLocal<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // While registered with the provider every change reaches onDelta, so the snapshot
+    // is current without probing
+    private volatile boolean mPushConnected;
+    // Guards registration only. Never taken together with mSnapshotLock: the provider answers
+    // a registration under its write lock, and delivers deltas (which take mSnapshotLock)
+    // under the same lock, so registering while holding mSnapshotLock could deadlock.
+    private final Object mPushLock = new Object();
+    private final Binder mPushBinder = new Binder() {
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code != ConfigProvider.TRANSACTION_DELTA) return super.onTransact(code, data, reply, flags);
+            onDelta(data);
+            return true;
+        }
+    };
+
     // Flag to check if we're in Xposed context (XSharedPreferences class is
     // available)
     private static final boolean IS_XPOSED_CONTEXT;
@@ -59,6 +177,122 @@ public class ConfigClient {
         void onConfigChanged(String key, Object newValue);
     }
 
+    public interface Transaction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Changes collected from {@link #edit()} (or a {@link #runInTransaction} body) and
+     * written by {@link #commit()} in one provider call: one append to the config log, one
+     * generation and one change notification for all the keys.
+     */
+    public final class Editor {
+        // In write order; a null value removes the key
+        private final Map<String, ContentValues> mChanges = new LinkedHashMap<>();
+
+        private Editor() {
+        }
+
+        /** Like SharedPreferences.Editor, a null value removes the key. */
+        public Editor putString(String key, String value) {
+            if (value == null) return remove(key);
+            return put(key, value, ConfigProvider.TYPE_STRING);
+        }
+
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, String.valueOf(value), ConfigProvider.TYPE_BOOLEAN);
+        }
+
+        public Editor putInt(String key, int value) {
+            return put(key, String.valueOf(value), ConfigProvider.TYPE_INT);
+        }
+
+        public Editor remove(String key) {
+            mChanges.put(key, null);
+            return this;
+        }
+
+        private Editor put(String key, String value, String type) {
+            ContentValues cv = new ContentValues();
+            cv.put(ConfigProvider.COLUMN_KEY, key);
+            cv.put(ConfigProvider.COLUMN_VALUE, value);
+            cv.put(ConfigProvider.COLUMN_TYPE, type);
+            mChanges.put(key, cv);
+            return this;
+        }
+
+        /** Write everything at once. False if the provider couldn't be reached. */
+        public boolean commit() {
+            if (mChanges.isEmpty()) return true;
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>(mChanges.size());
+            Map<String, String> values = new HashMap<>();
+            for (Map.Entry<String, ContentValues> c : mChanges.entrySet()) {
+                String key = c.getKey();
+                ContentValues cv = c.getValue();
+                if (cv != null) {
+                    String value = cv.getAsString(ConfigProvider.COLUMN_VALUE);
+                    ops.add(ContentProviderOperation.newInsert(ConfigProvider.CONTENT_URI).withValues(cv).build());
+                    values.put(key, value);
+                    mCache.put(key, value);
+                } else {
+                    ops.add(ContentProviderOperation.newDelete(
+                            Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key)).build());
+                    values.put(key, null);
+                    mCache.remove(key);
+                }
+            }
+            try {
+                ContentProviderResult[] results = mResolver.applyBatch(ConfigProvider.AUTHORITY, ops);
+                Uri generationUri = null;
+                for (ContentProviderResult r : results) {
+                    if (r.uri != null) {
+                        generationUri = r.uri;
+                        break;
+                    }
+                }
+                // Only deletes: no generation to go by, so the next read reloads
+                applyLocalWrites(values, generationUri);
+                return true;
+            } catch (Exception e) {
+                mStale = true;
+                Log.w(TAG, "Provider batch failed for: " + mChanges.keySet(), e);
+                return false;
+            } finally {
+                mChanges.clear();
+            }
+        }
+    }
+
+    /** Start a batch of changes; nothing is written until {@link Editor#commit()}. */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Run {@code body} with every put and remove this client gets on the calling thread
+     * collected into one {@link Editor} and committed when it returns, so code written
+     * against the single-key setters (SPManager) can write in one batch. Reads inside
+     * see the pending values. If {@code body} throws nothing is written; nested calls
+     * join the outer transaction.
+     */
+    public <E extends Exception> boolean runInTransaction(Transaction<E> body) throws E {
+        if (mOpenEditor.get() != null) {
+            body.run();
+            return true;
+        }
+        Editor editor = new Editor();
+        mOpenEditor.set(editor);
+        try {
+            body.run();
+        } catch (Throwable t) {
+            for (String key : editor.mChanges.keySet()) mCache.remove(key);
+            throw t;
+        } finally {
+            mOpenEditor.remove();
+        }
+        return editor.commit();
+    }
+
     public ConfigClient(Context context) {
         mContext = context;
         mResolver = context.getContentResolver();
@@ -66,26 +300,31 @@ public class ConfigClient {
     }
 
     private void setupObserver() {
-        mObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        mObserver = new ContentObserver(observerHandler()) {
             @Override
             public void onChange(boolean selfChange, Uri uri) {
-                if (uri != null) {
-                    String key = uri.getLastPathSegment();
-                    if (key != null && !key.equals("config")) {
+                // The push channel already delivered this change, listeners included
+                if (mPushConnected) return;
+                if (uri == null) return;
+                List<String> named = changedKeys(uri);
+                onProviderChange(uri, named);
+                List<String> keys;
+                if (named.isEmpty()) {
+                    // Unnamed keys: anything may have changed, so every listener hears of it
+                    mCache.clear();
+                    keys = listenedKeys();
+                } else {
+                    for (String key : named) {
                         mCache.remove(key);
-                        Object newValue = getString(key, null);
-                        OnConfigChangeListener listener = mListeners.get(key);
-                        if (listener != null) {
-                            listener.onConfigChanged(key, newValue);
-                        }
-                        OnConfigChangeListener globalListener = mListeners.get("*");
-                        if (globalListener != null) {
-                            globalListener.onConfigChanged(key, newValue);
-                        }
-                    } else {
-                        mCache.clear();
                     }
+                    keys = named;
                 }
+                // Listeners run on the main thread
+                mMainHandler.post(() -> {
+                    for (String key : keys) {
+                        dispatchChange(key);
+                    }
+                });
             }
         };
 
@@ -96,6 +335,52 @@ public class ConfigClient {
         }
     }
 
+    private static synchronized Handler observerHandler() {
+        if (sObserverHandler == null) {
+            HandlerThread thread = new HandlerThread("KGPT-ConfigObserver", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sObserverHandler = new Handler(thread.getLooper());
+        }
+        return sObserverHandler;
+    }
+
+    /** The keys a change notification names, or none if it doesn't say. */
+    private static List<String> changedKeys(Uri uri) {
+        String key = uri.getLastPathSegment();
+        if (key != null && !key.equals("config")) {
+            return Collections.singletonList(key);
+        }
+        return uri.getQueryParameters(ConfigProvider.PARAM_KEY);
+    }
+
+    /**
+     * Every key a listener would hear of: the registered ones, plus every key the snapshot
+     * holds when a global listener is registered.
+     */
+    private List<String> listenedKeys() {
+        Set<String> keys = new LinkedHashSet<>(mListeners.keySet());
+        keys.remove("*");
+        Snapshot s = mSnapshot;
+        if (s != null && mListeners.containsKey("*")) {
+            keys.addAll(s.values.keySet());
+        }
+        return new ArrayList<>(keys);
+    }
+
+    private void dispatchChange(String key) {
+        mCache.remove(key);
+        OnConfigChangeListener listener = mListeners.get(key);
+        OnConfigChangeListener globalListener = mListeners.get("*");
+        if (listener == null && globalListener == null) return;
+        Object newValue = getString(key, null);
+        if (listener != null) {
+            listener.onConfigChanged(key, newValue);
+        }
+        if (globalListener != null) {
+            globalListener.onConfigChanged(key, newValue);
+        }
+    }
+
     public void registerListener(String key, OnConfigChangeListener listener) {
         mListeners.put(key, listener);
     }
@@ -108,23 +393,228 @@ public class ConfigClient {
         mListeners.remove(key);
     }
 
-    public String getString(String key, String defaultValue) {
-        // FORCE REFRESH: By-pass cache check for Strings to ensure freshness via
-        // ContentProvider
-        // Cache is only checked as a fallback if provider query fails.
+    /**
+     * Bring the snapshot up to the change {@code uri} announces: nothing to do if it already
+     * has it; a query per named key if it is at least as recent as the generation the
+     * notification starts from; a full reload otherwise.
+     */
+    private void onProviderChange(Uri uri, List<String> keys) {
+        long generation = parseGeneration(uri);
+        long since = parseLong(uri, ConfigProvider.PARAM_SINCE);
+        if (since < 0 && generation >= 0) {
+            // A notification for a single change
+            since = generation - 1;
+        }
+        synchronized (mSnapshotLock) {
+            Snapshot s = mSnapshot;
+            if (s != null && generation >= 0 && generation <= s.generation) return;
+            if (s != null && !mStale && generation >= 0 && s.generation >= since
+                    && !keys.isEmpty() && keys.size() <= MAX_TARGETED_KEYS) {
+                Map<String, String> values = new HashMap<>();
+                for (String key : keys) {
+                    Object value = queryKey(key);
+                    if (value == UNAVAILABLE) {
+                        mStale = true;
+                        return;
+                    }
+                    values.put(key, (String) value);
+                }
+                mSnapshot = s.with(values, generation);
+                return;
+            }
+            mStale = true;
+        }
+    }
+
+    private static long parseGeneration(Uri uri) {
+        return parseLong(uri, ConfigProvider.PARAM_GENERATION);
+    }
 
-        // Always try ContentProvider first (Single Source of Truth)
-        // This works in Xposed context because the provider is exported
+    private static long parseLong(Uri uri, String param) {
+        if (uri == null) return -1;
+        try {
+            String g = uri.getQueryParameter(param);
+            return g != null ? Long.parseLong(g) : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The current snapshot, reloaded if it is stale. {@code probe} asks the provider for its
+     * generation even inside the revalidation interval. Null if the provider is unreachable
+     * and nothing was ever loaded.
+     */
+    private Snapshot snapshot(boolean probe) {
+        Snapshot s = mSnapshot;
+        if (s != null && !mStale && mPushConnected) {
+            // Every change since this snapshot has been pushed to us; nothing to ask
+            return s;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (s != null && !mStale && !probe && now - mValidatedAt < REVALIDATE_INTERVAL_MS) {
+            return s;
+        }
+        if (s == null && mValidatedAt != 0 && now - mValidatedAt < REVALIDATE_INTERVAL_MS) {
+            // The provider was unreachable a moment ago; don't retry on every read
+            return null;
+        }
+        // Registered before the load, so no change falls between the two
+        if (!mPushConnected) {
+            registerPush();
+        }
+        synchronized (mSnapshotLock) {
+            s = mSnapshot;
+            if (s != null && !mStale) {
+                long generation = queryGeneration();
+                if (generation == s.generation || generation < 0) {
+                    // Current, or the provider is gone and the last snapshot is all there is
+                    mValidatedAt = now;
+                    return s;
+                }
+            }
+            // Cleared first so a change landing during the load marks it stale again
+            mStale = false;
+            Snapshot loaded = loadSnapshot();
+            mValidatedAt = now;
+            if (loaded != null) {
+                mSnapshot = loaded;
+                return loaded;
+            }
+            return s;
+        }
+    }
+
+    /** Hand our push binder to the provider; no-op for a provider without a push channel. */
+    private void registerPush() {
+        synchronized (mPushLock) {
+            if (mPushConnected) return;
+            try {
+                Bundle extras = new Bundle();
+                extras.putBinder(ConfigProvider.EXTRA_LISTENER, mPushBinder);
+                Bundle result = mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_REGISTER_LISTENER,
+                        null, extras);
+                IBinder provider = result != null ? result.getBinder(ConfigProvider.EXTRA_PROVIDER_TOKEN) : null;
+                if (provider == null) return;
+                provider.linkToDeath(() -> {
+                    // The provider process died and took our registration with it
+                    mPushConnected = false;
+                    mStale = true;
+                }, 0);
+                mPushConnected = true;
+            } catch (Exception e) {
+                Log.d(TAG, "Push registration failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /** A delta pushed by ConfigProvider.pushDelta, on a binder thread. */
+    private void onDelta(Parcel data) {
+        long generation = data.readLong();
+        int count = data.readInt();
+        Map<String, String> values = new HashMap<>();
+        Set<String> deferredKeys = new HashSet<>();
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = data.readString();
+            String type = data.readString();
+            String value = data.readString();
+            if (key == null) continue;
+            keys.add(key);
+            if (ConfigProvider.TYPE_DEFERRED.equals(type)) {
+                deferredKeys.add(key);
+            } else {
+                values.put(key, value);
+            }
+        }
+
+        synchronized (mSnapshotLock) {
+            Snapshot s = mSnapshot;
+            if (s != null && generation > s.generation) {
+                if (!mStale && generation == s.generation + 1) {
+                    mSnapshot = s.with(values, deferredKeys, generation);
+                } else {
+                    mStale = true;
+                }
+            }
+        }
+
+        // Listeners run on the main thread, as they do for observer callbacks
+        mMainHandler.post(() -> {
+            for (String key : keys) {
+                dispatchChange(key);
+            }
+        });
+    }
+
+    public boolean isPushConnected() {
+        return mPushConnected;
+    }
+
+    private long queryGeneration() {
+        try {
+            Bundle result = mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_GET_GENERATION, null, null);
+            if (result != null) return result.getLong(ConfigProvider.EXTRA_GENERATION, -1);
+        } catch (Exception ignored) {
+        }
+        return -1;
+    }
+
+    private Snapshot loadSnapshot() {
+        try (Cursor cursor = mResolver.query(ConfigProvider.SNAPSHOT_URI, null, null, null, null)) {
+            if (cursor == null) return null;
+            int keyCol = cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_KEY);
+            int valueCol = cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE);
+            long generation = -1;
+            Map<String, String> values = new HashMap<>();
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(keyCol);
+                String value = cursor.getString(valueCol);
+                if (ConfigProvider.GENERATION_ROW.equals(key)) {
+                    generation = Long.parseLong(value);
+                } else if (key != null) {
+                    values.put(key, value);
+                }
+            }
+            // An older provider without snapshots answers with no generation row
+            return generation >= 0 ? new Snapshot(generation, values) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Value of {@code key} as the provider stores it, null if unset, or {@link #UNAVAILABLE}.
+     */
+    private Object read(String key, boolean probe) {
+        Editor open = mOpenEditor.get();
+        if (open != null && open.mChanges.containsKey(key)) {
+            ContentValues cv = open.mChanges.get(key);
+            return cv != null ? cv.getAsString(ConfigProvider.COLUMN_VALUE) : null;
+        }
+        Snapshot s = snapshot(probe);
+        if (s == null) return queryKey(key);
+        if (!s.values.containsKey(key)) return null;
+        String value = s.values.get(key);
+        if (value != null) return value;
+        value = s.deferred.get(key);
+        if (value != null) return value;
+        Object fetched = queryKey(key);
+        if (fetched instanceof String) s.deferred.put(key, (String) fetched);
+        return fetched;
+    }
+
+    /** A single-key query, for deferred values and when no snapshot could be loaded. */
+    private Object queryKey(String key) {
         try {
             Uri uri = Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key);
             Cursor cursor = mResolver.query(uri, null, null, null, null);
             if (cursor != null) {
                 try {
                     if (cursor.moveToFirst()) {
-                        String value = cursor.getString(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE));
-                        mCache.put(key, value);
-                        return value;
+                        return cursor.getString(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE));
                     }
+                    return null;
                 } finally {
                     cursor.close();
                 }
@@ -132,8 +622,42 @@ public class ConfigClient {
         } catch (Exception e) {
             // Log.d(TAG, "Provider query failed for: " + key + " - " + e.getMessage());
         }
+        return UNAVAILABLE;
+    }
+
+    /** Apply our own write to the snapshot if nothing else happened in between. */
+    private void applyLocalWrite(String key, String value, Uri result) {
+        applyLocalWrites(Collections.singletonMap(key, value), result);
+    }
+
+    private void applyLocalWrites(Map<String, String> values, Uri result) {
+        long generation = parseGeneration(result);
+        synchronized (mSnapshotLock) {
+            Snapshot s = mSnapshot;
+            if (s == null) return;
+            if (generation == s.generation) {
+                // Provider saw no change
+                return;
+            }
+            if (generation == s.generation + 1) {
+                mSnapshot = s.with(values, generation);
+            } else {
+                mStale = true;
+            }
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        Object value = read(key, false);
+        if (value != UNAVAILABLE) {
+            if (value != null) {
+                mCache.put(key, value);
+                return (String) value;
+            }
+            return defaultValue;
+        }
 
-        // Fallback: if provider query fails or returns no row, use last known cached value
+        // Fallback: if the provider can't be reached, use last known cached value
         if (mCache.containsKey(key)) {
             Object cached = mCache.get(key);
             if (cached != null) {
@@ -144,10 +668,10 @@ public class ConfigClient {
         // Fallback: In Xposed context, try XSharedPreferences
         if (IS_XPOSED_CONTEXT && XposedConfigReader.isAvailable()) {
             try {
-                String value = XposedConfigReader.getString(key, null);
-                if (value != null) {
-                    mCache.put(key, value);
-                    return value;
+                String xValue = XposedConfigReader.getString(key, null);
+                if (xValue != null) {
+                    mCache.put(key, xValue);
+                    return xValue;
                 }
             } catch (Exception e) {
                 Log.d(TAG, "XSharedPreferences failed for: " + key + " - " + e.getMessage());
@@ -177,100 +701,64 @@ public class ConfigClient {
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, value);
         cv.put(ConfigProvider.COLUMN_TYPE, ConfigProvider.TYPE_STRING);
+        insert(key, value, cv);
+    }
 
+    private void insert(String key, String value, ContentValues cv) {
+        Editor open = mOpenEditor.get();
+        if (open != null) {
+            // A null value is ignored by the provider; keep it that way inside a transaction
+            if (value != null) open.mChanges.put(key, cv);
+            return;
+        }
         try {
-            mResolver.insert(ConfigProvider.CONTENT_URI, cv);
+            applyLocalWrite(key, value, mResolver.insert(ConfigProvider.CONTENT_URI, cv));
         } catch (Exception e) {
+            mStale = true;
             Log.w(TAG, "Provider insert failed for: " + key, e);
         }
     }
 
     public boolean getBoolean(String key, boolean defaultValue) {
-        // Check cache first
-        if (mCache.containsKey(key)) {
-            Object cached = mCache.get(key);
-            if (cached instanceof Boolean) {
-                return (Boolean) cached;
-            }
-            try {
-                return Boolean.parseBoolean(cached.toString());
-            } catch (Exception e) {
-                // Ignore
-            }
-        }
-
-        // Always try ContentProvider first
-        try {
-            Uri uri = Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key);
-            Cursor cursor = mResolver.query(uri, null, null, null, null);
-            if (cursor != null) {
-                try {
-                    if (cursor.moveToFirst()) {
-                        String value = cursor.getString(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE));
-                        if (value != null) {
-                            boolean boolValue = Boolean.parseBoolean(value);
-                            mCache.put(key, boolValue);
-                            return boolValue;
-                        }
-                    }
-                } finally {
-                    cursor.close();
-                }
-            }
-        } catch (Exception e) {
-            // Log.d(TAG, "Provider query failed for boolean: " + key);
-        }
-
-        // Fallback: In Xposed context, try XSharedPreferences
-        if (IS_XPOSED_CONTEXT && XposedConfigReader.isAvailable()) {
-            try {
-                boolean value = XposedConfigReader.getBoolean(key, defaultValue);
-                mCache.put(key, value);
-                return value;
-            } catch (Exception e) {
-                Log.d(TAG, "XSharedPreferences getBoolean failed for: " + key + " - " + e.getMessage());
-            }
-        }
-
-        return defaultValue;
+        return getBoolean(key, defaultValue, false);
     }
 
     /**
-     * Same as {@link #getBoolean(String, boolean)} but bypasses the in-memory cache.
+     * Same as {@link #getBoolean(String, boolean)} but always checks the provider's
+     * generation first.
      *
      * <p>Why: Some ROMs / processes may miss ContentObserver callbacks, which can
-     * leave cached values stale until process restart. This helper forces a fresh
-     * read from the provider (then updates cache) to make important runtime toggles
-     * take effect immediately.</p>
+     * leave cached values stale until process restart. The probe is one small
+     * provider call; the value itself still comes from the snapshot unless the
+     * generation moved on.</p>
      */
     public boolean getBooleanNoCache(String key, boolean defaultValue) {
-        // Always try ContentProvider first (no cache short-circuit)
-        try {
-            Uri uri = Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key);
-            Cursor cursor = mResolver.query(uri, null, null, null, null);
-            if (cursor != null) {
-                try {
-                    if (cursor.moveToFirst()) {
-                        String value = cursor.getString(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE));
-                        if (value != null) {
-                            boolean boolValue = Boolean.parseBoolean(value);
-                            mCache.put(key, boolValue);
-                            return boolValue;
-                        }
-                    }
-                } finally {
-                    cursor.close();
-                }
-            }
-        } catch (Exception ignored) {
+        return getBoolean(key, defaultValue, true);
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue, boolean probe) {
+        Object value = read(key, probe);
+        if (value != UNAVAILABLE) {
+            if (value == null) return defaultValue;
+            boolean boolValue = Boolean.parseBoolean((String) value);
+            mCache.put(key, boolValue);
+            return boolValue;
+        }
+
+        // Fallback: last known value
+        Object cached = mCache.get(key);
+        if (cached instanceof Boolean) {
+            return (Boolean) cached;
+        } else if (cached != null) {
+            return Boolean.parseBoolean(cached.toString());
         }
 
         // Fallback: In Xposed context, try XSharedPreferences
         if (IS_XPOSED_CONTEXT && XposedConfigReader.isAvailable()) {
             try {
-                boolean value = XposedConfigReader.getBoolean(key, defaultValue);
-                mCache.put(key, value);
-                return value;
+                boolean xValue = XposedConfigReader.getBoolean(key, defaultValue);
+                mCache.put(key, xValue);
+                return xValue;
             } catch (Exception e) {
                 Log.d(TAG, "XSharedPreferences getBoolean failed for: " + key + " - " + e.getMessage());
             }
@@ -286,69 +774,46 @@ public class ConfigClient {
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, String.valueOf(value));
         cv.put(ConfigProvider.COLUMN_TYPE, ConfigProvider.TYPE_BOOLEAN);
-
-        try {
-            mResolver.insert(ConfigProvider.CONTENT_URI, cv);
-        } catch (Exception e) {
-            Log.w(TAG, "Provider insert failed for: " + key, e);
-        }
+        insert(key, String.valueOf(value), cv);
     }
 
     public int getInt(String key, int defaultValue) {
-        // Check cache first
-        if (mCache.containsKey(key)) {
-            Object cached = mCache.get(key);
-            if (cached instanceof Number) {
-                return ((Number) cached).intValue();
-            }
+        Object value = read(key, false);
+        if (value != UNAVAILABLE) {
+            if (value == null) return defaultValue;
             try {
-                return Integer.parseInt(cached.toString());
-            } catch (Exception e) {
-                // Ignore
+                int intValue = Integer.parseInt((String) value);
+                mCache.put(key, intValue);
+                return intValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
             }
         }
 
-        // Always try ContentProvider first
-        try {
-            Uri uri = Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key);
-            Cursor cursor = mResolver.query(uri, null, null, null, null);
-            if (cursor != null) {
-                try {
-                    if (cursor.moveToFirst()) {
-                        String value = cursor.getString(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE));
-                        if (value != null) {
-                            int intValue = Integer.parseInt(value);
-                            mCache.put(key, intValue);
-                            return intValue;
-                        }
-                    }
-                } finally {
-                    cursor.close();
-                }
+        // Fallback: last known value
+        Object cached = mCache.get(key);
+        if (cached instanceof Number) {
+            return ((Number) cached).intValue();
+        } else if (cached != null) {
+            try {
+                return Integer.parseInt(cached.toString());
+            } catch (NumberFormatException e) {
+                // Ignore
             }
-        } catch (Exception e) {
-            // Log.d(TAG, "Provider query failed for int: " + key);
         }
 
         // Fallback: In Xposed context, try XSharedPreferences
         if (IS_XPOSED_CONTEXT && XposedConfigReader.isAvailable()) {
             try {
-                int value = XposedConfigReader.getInt(key, defaultValue);
-                mCache.put(key, value);
-                return value;
+                int xValue = XposedConfigReader.getInt(key, defaultValue);
+                mCache.put(key, xValue);
+                return xValue;
             } catch (Exception e) {
                 Log.d(TAG, "XSharedPreferences getInt failed for: " + key + " - " + e.getMessage());
             }
         }
 
-        String value = getString(key, null);
-        if (value == null)
-            return defaultValue;
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
+        return defaultValue;
     }
 
     public void putInt(String key, int value) {
@@ -358,11 +823,24 @@ public class ConfigClient {
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, String.valueOf(value));
         cv.put(ConfigProvider.COLUMN_TYPE, ConfigProvider.TYPE_INT);
+        insert(key, String.valueOf(value), cv);
+    }
 
+    public void remove(String key) {
+        mCache.remove(key);
+        Editor open = mOpenEditor.get();
+        if (open != null) {
+            open.remove(key);
+            return;
+        }
         try {
-            mResolver.insert(ConfigProvider.CONTENT_URI, cv);
+            if (mResolver.delete(Uri.withAppendedPath(ConfigProvider.CONTENT_URI, key), null, null) > 0) {
+                // delete() reports no generation; let the next read reload
+                mStale = true;
+            }
         } catch (Exception e) {
-            Log.w(TAG, "Provider insert failed for: " + key, e);
+            mStale = true;
+            Log.w(TAG, "Provider delete failed for: " + key, e);
         }
     }
 
@@ -372,6 +850,7 @@ public class ConfigClient {
 
     public void clearCache() {
         mCache.clear();
+        mStale = true;
         // Only call XposedConfigReader if in Xposed context
         if (IS_XPOSED_CONTEXT) {
             try {
@@ -382,13 +861,35 @@ public class ConfigClient {
         }
     }
 
+    /**
+     * Drop what can be read again: the typed cache and the large values fetched into the
+     * snapshot. The snapshot itself stays, so reads don't start hitting the provider.
+     */
+    public void trimMemory() {
+        mCache.clear();
+        Snapshot s = mSnapshot;
+        if (s != null) {
+            s.deferred.clear();
+        }
+    }
+
     public void destroy() {
         try {
             mResolver.unregisterContentObserver(mObserver);
         } catch (Exception e) {
             // Ignore
         }
+        if (mPushConnected) {
+            mPushConnected = false;
+            try {
+                Bundle extras = new Bundle();
+                extras.putBinder(ConfigProvider.EXTRA_LISTENER, mPushBinder);
+                mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_UNREGISTER_LISTENER, null, extras);
+            } catch (Exception ignored) {
+            }
+        }
         mListeners.clear();
         mCache.clear();
+        mSnapshot = null;
     }
 }
\ No newline at end of file
@@ -13,30 +13,75 @@
 package tn.eluea.kgpt.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tn.eluea.kgpt.core.store.KvLogStore;
+
 /**
  * ContentProvider for KGPT configuration.
- * 
- * IMPORTANT: Uses MODE_WORLD_READABLE for LSPosed's New XSharedPreferences (API
- * 93+).
- * This allows the Xposed module running in keyboard process to read our
- * preferences.
+ *
+ * Values live in an append-only, checksummed log ({@link KvLogStore}) in the app's files
+ * dir: a write appends one record instead of rewriting a whole XML file, and a crash in
+ * the middle of one can't take the other settings with it.
+ *
+ * The few keys the Xposed side reads straight from disk ({@link #EXPORTED_KEYS}) are
+ * mirrored into a MODE_WORLD_READABLE SharedPreferences file for LSPosed's New
+ * XSharedPreferences (API 93+). Everything else is only reachable through this provider.
  * 
  * URI patterns:
  * - content://tn.eluea.kgpt.provider/config/{key} - Get/Set a single config
  * value
  * - content://tn.eluea.kgpt.provider/config - Get all config values
+ * - content://tn.eluea.kgpt.provider/snapshot - All values plus the generation they
+ * were read at
+ *
+ * Every change advances a generation number, which clients probe with
+ * {@link #METHOD_GET_GENERATION} to tell whether their snapshot is still current.
+ * A {@link #bulkInsert} or {@link #applyBatch} is one change: a single append to the log
+ * and one generation.
+ *
+ * Change notifications are coalesced: the changes of a {@link #NOTIFY_DELAY_MS} window go
+ * out as one notification on .../config that lists the changed keys in {@link #PARAM_KEY}
+ * and the generation range they cover ({@link #PARAM_SINCE} to {@link #PARAM_GENERATION}).
+ * A client whose snapshot is at least that recent only needs to refresh those keys.
+ *
+ * Clients that register over {@link #METHOD_REGISTER_LISTENER} also get each change pushed
+ * to them as a compact delta, so the keyboard process can apply it to its snapshot in
+ * memory instead of polling the generation or re-reading the preferences file.
  */
 public class ConfigProvider extends ContentProvider {
 
@@ -46,15 +91,65 @@ public class ConfigProvider extends ContentProvider {
     public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/config");
 
     private static final String PREF_NAME = "keyboard_gpt";
+    private static final String STORE_FILE = "config/keyboard_gpt.kvlog";
+    // Created once migration has fully landed; until then every start migrates again
+    private static final String MIGRATED_MARKER = "config/keyboard_gpt.migrated";
+
+    /**
+     * Keys read through XposedConfigReader in hooked processes (the keyboard, and apps
+     * deciding which hooks to install), before or without the provider. Only these are written to the world-readable preferences file.
+     */
+    static final Set<String> EXPORTED_KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "app_triggers",
+            "app_triggers_enabled",
+            "text_actions_enabled",
+            "inline_ask_prefix",
+            // Decides whether hooked apps install the IME metrics hooks the pad follows
+            tn.eluea.kgpt.features.floatingball.FloatingBallKeys.KEY_PAD_ENABLED)));
+
+    public static final Uri SNAPSHOT_URI = Uri.parse("content://" + AUTHORITY + "/snapshot");
+
+    public static final String METHOD_GET_GENERATION = "get_generation";
+    public static final String EXTRA_GENERATION = "generation";
+
+    // Push channel: a client hands over a Binder in EXTRA_LISTENER and gets every change
+    // as a one-way TRANSACTION_DELTA (see pushDelta); EXTRA_PROVIDER_TOKEN in the reply
+    // dies with this process
+    public static final String METHOD_REGISTER_LISTENER = "register_listener";
+    public static final String METHOD_UNREGISTER_LISTENER = "unregister_listener";
+    public static final String EXTRA_LISTENER = "listener";
+    public static final String EXTRA_PROVIDER_TOKEN = "provider";
+    public static final int TRANSACTION_DELTA = IBinder.FIRST_CALL_TRANSACTION;
+    // Appended to insert results and change notifications
+    public static final String PARAM_GENERATION = "generation";
+    // Repeated on a change notification, once per changed key; left out when there are
+    // more than MAX_NOTIFY_KEYS, which means "anything may have changed"
+    public static final String PARAM_KEY = "key";
+    // Generation a change notification starts from: it names every key changed after it
+    public static final String PARAM_SINCE = "since";
+    // First row of a snapshot; its value is the generation
+    public static final String GENERATION_ROW = "kgpt:generation";
+
+    // Values longer than this (clipboard history, model lists) are left out of snapshots
+    // with TYPE_DEFERRED and read by key when needed
+    static final int MAX_SNAPSHOT_VALUE_BYTES = 16 * 1024;
+
+    // Changes within this long of the first one share a notification, so a settings page
+    // saving field by field wakes every observer once
+    static final long NOTIFY_DELAY_MS = 100;
+    // A notification naming more keys than this would be a huge URI; clients reload instead
+    static final int MAX_NOTIFY_KEYS = 64;
 
     private static final int CONFIG_ALL = 1;
     private static final int CONFIG_KEY = 2;
+    private static final int CONFIG_SNAPSHOT = 3;
 
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
     static {
         sUriMatcher.addURI(AUTHORITY, "config", CONFIG_ALL);
         sUriMatcher.addURI(AUTHORITY, "config/*", CONFIG_KEY);
+        sUriMatcher.addURI(AUTHORITY, "snapshot", CONFIG_SNAPSHOT);
     }
 
     // Column names
@@ -68,8 +163,25 @@ public class ConfigProvider extends ContentProvider {
     public static final String TYPE_BOOLEAN = "boolean";
     public static final String TYPE_LONG = "long";
     public static final String TYPE_FLOAT = "float";
+    public static final String TYPE_DEFERRED = "deferred";
+
+    private KvLogStore mStore;
+    // World-readable mirror of EXPORTED_KEYS for XSharedPreferences
+    private SharedPreferences mExportPrefs;
+    // Check-bump-append of one write, so generations follow the order records land in
+    private final Object mWriteLock = new Object();
+
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    // Registered push listeners and their death links
+    private final Map<IBinder, IBinder.DeathRecipient> mListeners = new ConcurrentHashMap<>();
+    private final Binder mToken = new Binder();
 
-    private SharedPreferences mPrefs;
+    // Changes waiting for the next notification, guarded by itself
+    private final Set<String> mPendingKeys = new LinkedHashSet<>();
+    private long mPendingSince = -1;
+    private long mPendingGeneration;
+    private Handler mNotifyHandler;
 
     @Override
     @SuppressWarnings("deprecation")
@@ -82,14 +194,15 @@ public class ConfigProvider extends ContentProvider {
 
         // Check if device is unlocked before accessing credential-protected storage
         // This is important for directBootAware providers
+        Context storageContext = context;
         android.os.UserManager userManager = (android.os.UserManager) context.getSystemService(Context.USER_SERVICE);
         if (userManager != null && !userManager.isUserUnlocked()) {
             Log.w(TAG, "onCreate: User not unlocked yet, using device-protected storage");
             // Use device-protected storage for direct boot
             try {
-                Context deviceContext = context.createDeviceProtectedStorageContext();
-                mPrefs = deviceContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-                Log.d(TAG, "onCreate: Using device-protected SharedPreferences");
+                storageContext = context.createDeviceProtectedStorageContext();
+                mExportPrefs = storageContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+                Log.d(TAG, "onCreate: Using device-protected storage");
             } catch (Exception e) {
                 Log.e(TAG, "Failed to create device-protected storage", e);
                 return false;
@@ -99,16 +212,46 @@ public class ConfigProvider extends ContentProvider {
             // LSPosed hooks ContextImpl.checkMode() to allow this on API 93+
             // Must use credential-protected storage (default), NOT device-protected
             try {
-                mPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_WORLD_READABLE);
+                mExportPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_WORLD_READABLE);
                 Log.d(TAG, "onCreate: Using MODE_WORLD_READABLE SharedPreferences");
             } catch (SecurityException e) {
                 // Fallback for non-LSPosed environments
                 Log.w(TAG, "MODE_WORLD_READABLE not available, using MODE_PRIVATE", e);
-                mPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+                mExportPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+            }
+        }
+
+        java.io.File storeFile = new java.io.File(storageContext.getFilesDir(), STORE_FILE);
+        java.io.File migratedMarker = new java.io.File(storageContext.getFilesDir(), MIGRATED_MARKER);
+        try {
+            mStore = new KvLogStore(storeFile, Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "KGPT-ConfigCompact");
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open config store", e);
+            return false;
+        }
+        if (!migratedMarker.exists() && migrateFromPreferences()) {
+            try {
+                migratedMarker.createNewFile();
+            } catch (IOException e) {
+                // Harmless: the next start migrates the same values again
+                Log.e(TAG, "Failed to mark migration done", e);
             }
         }
+        syncExports();
+
+        Log.d(TAG, "onCreate: config store has " + mStore.size() + " entries");
+
+        // Seeded from the clock so it keeps increasing across provider restarts; clients
+        // in other processes outlive this one
+        mGeneration.set(System.currentTimeMillis() * 1000);
 
-        Log.d(TAG, "onCreate: SharedPreferences has " + mPrefs.getAll().size() + " entries");
+        HandlerThread notifyThread = new HandlerThread("KGPT-ConfigNotify", Process.THREAD_PRIORITY_BACKGROUND);
+        notifyThread.start();
+        mNotifyHandler = new Handler(notifyThread.getLooper());
 
         // Proactively fix permissions on startup
         fixFilePermissions();
@@ -116,6 +259,59 @@ public class ConfigProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * First start on the log: carry every value over from the preferences file that used
+     * to hold them in one batch, then cut that file down to the exported keys. Returns
+     * false if either step failed; the old file then still holds every value, and since
+     * the batch lands whole or not at all, the next start retries from scratch.
+     */
+    private boolean migrateFromPreferences() {
+        Map<String, ?> all = mExportPrefs.getAll();
+        if (all.isEmpty()) return true;
+        Map<String, KvLogStore.Value> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> e : all.entrySet()) {
+            if (e.getValue() == null) continue;
+            batch.put(e.getKey(), new KvLogStore.Value(getTypeString(e.getValue()), String.valueOf(e.getValue())));
+        }
+        try {
+            mStore.write(batch);
+        } catch (IOException ex) {
+            Log.e(TAG, "Migration failed: " + batch.size() + " preferences", ex);
+            return false;
+        }
+        SharedPreferences.Editor editor = mExportPrefs.edit();
+        for (String key : all.keySet()) {
+            if (!EXPORTED_KEYS.contains(key)) editor.remove(key);
+        }
+        if (!editor.commit()) {
+            Log.e(TAG, "Migration failed to trim the preferences file");
+            return false;
+        }
+        Log.d(TAG, "Migrated " + batch.size() + " preferences into the config store");
+        return true;
+    }
+
+    /** Make the world-readable file agree with the store for every exported key. */
+    private void syncExports() {
+        SharedPreferences.Editor editor = mExportPrefs.edit();
+        boolean changed = false;
+        for (String key : EXPORTED_KEYS) {
+            KvLogStore.Value v = mStore.read(key);
+            Object current = mExportPrefs.getAll().get(key);
+            if (v == null) {
+                if (current != null) {
+                    editor.remove(key);
+                    changed = true;
+                }
+            } else if (current == null || !String.valueOf(current).equals(v.value)
+                    || !getTypeString(current).equals(v.type)) {
+                putTyped(editor, key, v.type, v.value);
+                changed = true;
+            }
+        }
+        if (changed) editor.commit();
+    }
+
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection,
@@ -127,12 +323,27 @@ public class ConfigProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
             case CONFIG_KEY:
                 String key = uri.getLastPathSegment();
-                addRowForKey(cursor, key);
+                addRow(cursor, key, mStore.read(key));
                 break;
 
             case CONFIG_ALL:
-                for (String k : mPrefs.getAll().keySet()) {
-                    addRowForKey(cursor, k);
+                for (String k : mStore.keys()) {
+                    addRow(cursor, k, mStore.read(k));
+                }
+                break;
+
+            case CONFIG_SNAPSHOT:
+                // Generation first: commit() publishes it after the values land, so a write
+                // racing this read can only make the snapshot newer than its generation, and
+                // that change's delta or notification is still applied on top
+                cursor.addRow(new Object[] { GENERATION_ROW, String.valueOf(mGeneration.get()), TYPE_LONG });
+                for (String k : mStore.keys()) {
+                    // Large values stay on disk until somebody asks for them by key
+                    if (mStore.valueBytes(k) > MAX_SNAPSHOT_VALUE_BYTES) {
+                        cursor.addRow(new Object[] { k, null, TYPE_DEFERRED });
+                    } else {
+                        addRow(cursor, k, mStore.read(k));
+                    }
                 }
                 break;
         }
@@ -141,11 +352,9 @@ public class ConfigProvider extends ContentProvider {
         return cursor;
     }
 
-    private void addRowForKey(MatrixCursor cursor, String key) {
-        Object value = mPrefs.getAll().get(key);
+    private void addRow(MatrixCursor cursor, String key, KvLogStore.Value value) {
         if (value != null) {
-            String type = getTypeString(value);
-            cursor.addRow(new Object[] { key, String.valueOf(value), type });
+            cursor.addRow(new Object[] { key, value.value, value.type });
         }
     }
 
@@ -163,24 +372,27 @@ public class ConfigProvider extends ContentProvider {
         return TYPE_STRING;
     }
 
-    @Nullable
-    @Override
-    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
-        if (values == null)
-            return null;
-
-        String key = values.getAsString(COLUMN_KEY);
-        String value = values.getAsString(COLUMN_VALUE);
-        String type = values.getAsString(COLUMN_TYPE);
-
-        if (key == null || value == null)
-            return null;
-
-        SharedPreferences.Editor editor = mPrefs.edit();
-
-        if (type == null)
-            type = TYPE_STRING;
+    /**
+     * {@code value} in the form it is stored as {@code type}, e.g. "true" for any boolean
+     * spelling. Throws NumberFormatException if it isn't a number of that type.
+     */
+    private static String normalize(String type, String value) {
+        switch (type) {
+            case TYPE_INT:
+                return String.valueOf(Integer.parseInt(value));
+            case TYPE_BOOLEAN:
+                return String.valueOf(Boolean.parseBoolean(value));
+            case TYPE_LONG:
+                return String.valueOf(Long.parseLong(value));
+            case TYPE_FLOAT:
+                return String.valueOf(Float.parseFloat(value));
+            case TYPE_STRING:
+            default:
+                return value;
+        }
+    }
 
+    private static void putTyped(SharedPreferences.Editor editor, String key, String type, String value) {
         switch (type) {
             case TYPE_INT:
                 editor.putInt(key, Integer.parseInt(value));
@@ -199,28 +411,282 @@ public class ConfigProvider extends ContentProvider {
                 editor.putString(key, value);
                 break;
         }
+    }
 
-        // CRITICAL: Use commit() instead of apply() to ensure data is written
-        // immediately
-        // This is essential for XSharedPreferences to pick up changes
-        // LSPosed Wiki: The hooked app reads from the physical file
-        boolean success = editor.commit();
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        KvLogStore.Value v = toValue(values);
+        if (v == null)
+            return null;
+
+        String key = values.getAsString(COLUMN_KEY);
+        long generation = commit(Collections.singletonMap(key, v));
+        if (generation < 0)
+            return null;
+        return withGeneration(Uri.withAppendedPath(CONTENT_URI, key), generation);
+    }
 
-        if (success) {
-            fixFilePermissions();
+    /**
+     * Insert all rows as one write: one append to the log, one generation and one change
+     * notification for the lot.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        Map<String, KvLogStore.Value> changes = new LinkedHashMap<>();
+        for (ContentValues cv : values) {
+            KvLogStore.Value v = toValue(cv);
+            if (v != null) changes.put(cv.getAsString(COLUMN_KEY), v);
         }
+        return commit(changes) < 0 ? 0 : changes.size();
+    }
 
-        Log.d(TAG, "insert: key=" + key + ", type=" + type + ", success=" + success);
+    /**
+     * Inserts, updates and key deletes, applied together as one write like
+     * {@link #bulkInsert}. Insert results carry the generation of the batch.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        Map<String, KvLogStore.Value> changes = new LinkedHashMap<>();
+        String[] keys = new String[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            ContentProviderOperation op = operations.get(i);
+            if (op.isInsert() || op.isUpdate()) {
+                ContentValues cv = op.resolveValueBackReferences(results, i);
+                KvLogStore.Value v = toValue(cv);
+                if (v == null) throw new OperationApplicationException("Invalid values at " + i);
+                keys[i] = cv.getAsString(COLUMN_KEY);
+                changes.put(keys[i], v);
+            } else if (op.isDelete() && sUriMatcher.match(op.getUri()) == CONFIG_KEY) {
+                keys[i] = op.getUri().getLastPathSegment();
+                changes.put(keys[i], null);
+            } else {
+                throw new OperationApplicationException("Unsupported operation: " + op);
+            }
+        }
+
+        long generation = commit(changes);
+        if (generation < 0) throw new OperationApplicationException("Config write failed");
+
+        for (int i = 0; i < results.length; i++) {
+            ContentProviderOperation op = operations.get(i);
+            results[i] = op.isInsert()
+                    ? new ContentProviderResult(withGeneration(Uri.withAppendedPath(CONTENT_URI, keys[i]), generation))
+                    : new ContentProviderResult(1);
+        }
+        return results;
+    }
+
+    /** Key, type and normalized value of an insert, or null if it isn't a valid one. */
+    @Nullable
+    private static KvLogStore.Value toValue(@Nullable ContentValues values) {
+        if (values == null)
+            return null;
+
+        String key = values.getAsString(COLUMN_KEY);
+        String value = values.getAsString(COLUMN_VALUE);
+        String type = values.getAsString(COLUMN_TYPE);
+
+        if (key == null || value == null)
+            return null;
+
+        if (type == null)
+            type = TYPE_STRING;
+
+        try {
+            return new KvLogStore.Value(type, normalize(type, value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "insert: " + key + " is not a valid " + type + ": " + value);
+            return null;
+        }
+    }
+
+    /**
+     * Write {@code changes} (null removes a key) to the store as one append, mirror the
+     * exported keys and notify once. Returns the generation the changes landed at (the
+     * current one if none of them changed anything), or -1 if the write failed.
+     */
+    private long commit(Map<String, KvLogStore.Value> changes) {
+        Map<String, KvLogStore.Value> changed = new LinkedHashMap<>();
+        long generation;
+
+        synchronized (mWriteLock) {
+            for (Map.Entry<String, KvLogStore.Value> c : changes.entrySet()) {
+                String key = c.getKey();
+                KvLogStore.Value v = c.getValue();
+                boolean same = v == null ? !mStore.contains(key)
+                        : v.type.equals(mStore.typeOf(key)) && v.value.equals(mStore.get(key));
+                if (!same) changed.put(key, v);
+            }
+            // Unchanged: no write, no generation bump, nobody to notify
+            if (changed.isEmpty()) {
+                return mGeneration.get();
+            }
+
+            generation = mGeneration.get() + 1;
+            try {
+                mStore.write(changed);
+            } catch (IOException e) {
+                Log.e(TAG, "write failed: keys=" + changed.keySet(), e);
+                return -1;
+            }
+            // Published only once the write has landed: a snapshot that reads this generation
+            // reads these values too. One read before it may see the values early, which the
+            // delta or notification for this generation then repeats harmlessly.
+            mGeneration.set(generation);
+
+            // CRITICAL: Use commit() instead of apply() to ensure data is written
+            // immediately
+            // This is essential for XSharedPreferences to pick up changes
+            // LSPosed Wiki: The hooked app reads from the physical file
+            // Before anyone is told of the change: hooked apps reload this file when
+            // notified, and a notification ahead of the commit would reload the old values
+            SharedPreferences.Editor editor = null;
+            for (Map.Entry<String, KvLogStore.Value> c : changed.entrySet()) {
+                if (!EXPORTED_KEYS.contains(c.getKey())) continue;
+                if (editor == null) editor = mExportPrefs.edit();
+                KvLogStore.Value v = c.getValue();
+                if (v != null) {
+                    putTyped(editor, c.getKey(), v.type, v.value);
+                } else {
+                    editor.remove(c.getKey());
+                }
+            }
+            if (editor != null && editor.commit()) {
+                fixFilePermissions();
+            }
 
-        Uri resultUri = Uri.withAppendedPath(CONTENT_URI, key);
+            // Under the lock, so listeners get the deltas in generation order
+            pushDelta(changed, generation);
+            scheduleNotify(changed.keySet(), generation);
+        }
+
+        Log.d(TAG, "write: keys=" + changed.keySet() + ", generation=" + generation);
+        return generation;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (METHOD_GET_GENERATION.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(EXTRA_GENERATION, mGeneration.get());
+            return result;
+        }
+        if (METHOD_REGISTER_LISTENER.equals(method) || METHOD_UNREGISTER_LISTENER.equals(method)) {
+            IBinder listener = extras != null ? extras.getBinder(EXTRA_LISTENER) : null;
+            if (listener == null) return null;
+            if (METHOD_UNREGISTER_LISTENER.equals(method)) {
+                removeListener(listener);
+                return null;
+            }
+            synchronized (mWriteLock) {
+                IBinder.DeathRecipient recipient = () -> removeListener(listener);
+                try {
+                    listener.linkToDeath(recipient, 0);
+                } catch (RemoteException e) {
+                    // Already dead
+                    return null;
+                }
+                mListeners.put(listener, recipient);
+                // Read under the write lock: every later change reaches the listener as a delta
+                Bundle result = new Bundle();
+                result.putLong(EXTRA_GENERATION, mGeneration.get());
+                result.putBinder(EXTRA_PROVIDER_TOKEN, mToken);
+                return result;
+            }
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private void removeListener(IBinder listener) {
+        IBinder.DeathRecipient recipient = mListeners.remove(listener);
+        if (recipient != null) {
+            try {
+                listener.unlinkToDeath(recipient, 0);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
 
-        // Notify observers about the change
-        if (getContext() != null) {
-            getContext().getContentResolver().notifyChange(resultUri, null);
-            getContext().getContentResolver().notifyChange(CONTENT_URI, null);
+    /**
+     * Send one change to every registered listener as a one-way transaction:
+     * generation, count, then key, type and value per key. A removed key has a null type;
+     * a value too large for a snapshot goes as {@link #TYPE_DEFERRED} without its value.
+     */
+    private void pushDelta(Map<String, KvLogStore.Value> changed, long generation) {
+        if (mListeners.isEmpty()) return;
+        Parcel data = Parcel.obtain();
+        try {
+            data.writeLong(generation);
+            data.writeInt(changed.size());
+            for (Map.Entry<String, KvLogStore.Value> c : changed.entrySet()) {
+                KvLogStore.Value v = c.getValue();
+                data.writeString(c.getKey());
+                if (v == null) {
+                    data.writeString(null);
+                    data.writeString(null);
+                } else if (mStore.valueBytes(c.getKey()) > MAX_SNAPSHOT_VALUE_BYTES) {
+                    data.writeString(TYPE_DEFERRED);
+                    data.writeString(null);
+                } else {
+                    data.writeString(v.type);
+                    data.writeString(v.value);
+                }
+            }
+            for (IBinder listener : mListeners.keySet()) {
+                try {
+                    listener.transact(TRANSACTION_DELTA, data, null, IBinder.FLAG_ONEWAY);
+                } catch (RemoteException e) {
+                    removeListener(listener);
+                }
+            }
+        } finally {
+            data.recycle();
         }
+    }
+
+    /**
+     * Add a change to the pending notification, starting the {@link #NOTIFY_DELAY_MS} window
+     * if this is the first. Called under the write lock, so generations arrive in order.
+     */
+    private void scheduleNotify(Set<String> keys, long generation) {
+        synchronized (mPendingKeys) {
+            if (mPendingSince < 0) {
+                mPendingSince = generation - 1;
+                mNotifyHandler.postDelayed(this::flushNotify, NOTIFY_DELAY_MS);
+            }
+            mPendingKeys.addAll(keys);
+            mPendingGeneration = generation;
+        }
+    }
+
+    private void flushNotify() {
+        Uri.Builder uri = CONTENT_URI.buildUpon();
+        long since;
+        long generation;
+        synchronized (mPendingKeys) {
+            if (mPendingKeys.size() <= MAX_NOTIFY_KEYS) {
+                for (String key : mPendingKeys) {
+                    uri.appendQueryParameter(PARAM_KEY, key);
+                }
+            }
+            since = mPendingSince;
+            generation = mPendingGeneration;
+            mPendingKeys.clear();
+            mPendingSince = -1;
+        }
+        Context context = getContext();
+        if (context == null) return;
+        uri.appendQueryParameter(PARAM_SINCE, String.valueOf(since));
+        context.getContentResolver().notifyChange(withGeneration(uri.build(), generation), null);
+    }
 
-        return resultUri;
+    static Uri withGeneration(Uri uri, long generation) {
+        return uri.buildUpon().appendQueryParameter(PARAM_GENERATION, String.valueOf(generation)).build();
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -263,9 +729,8 @@ public class ConfigProvider extends ContentProvider {
             @Nullable String[] selectionArgs) {
         if (sUriMatcher.match(uri) == CONFIG_KEY) {
             String key = uri.getLastPathSegment();
-            mPrefs.edit().remove(key).commit();
-            getContext().getContentResolver().notifyChange(uri, null);
-            return 1;
+            if (!mStore.contains(key)) return 0;
+            return commit(Collections.<String, KvLogStore.Value>singletonMap(key, null)) < 0 ? 0 : 1;
         }
         return 0;
     }
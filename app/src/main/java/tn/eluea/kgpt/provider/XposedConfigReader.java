@@ -23,6 +23,7 @@ import de.robv.android.xposed.XSharedPreferences;
 /**
  * Config reader for Xposed module context.
  * Uses LSPosed's New XSharedPreferences (API 93+) to read KGPT's SharedPreferences.
+ * Only ConfigProvider.EXPORTED_KEYS are written there; anything else reads as unset.
  * 
  * According to LSPosed Wiki:
  * - Module must use Context.MODE_WORLD_READABLE when saving preferences
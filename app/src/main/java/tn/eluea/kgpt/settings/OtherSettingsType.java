@@ -34,7 +34,12 @@ public enum OtherSettingsType {
         UpdateCheckInterval("Update Check Interval", "How often to check for updates (in hours).",
                         Nature.Integer, 24), // Default: every 24 hours
         UpdateDownloadPath("Download Path", "Custom path for downloading updates.",
-                        Nature.String, ""); // Empty means default Downloads folder
+                        Nature.String, ""), // Empty means default Downloads folder
+
+        // Streaming
+        StreamLatencyCeiling("Streaming latency ceiling",
+                        "Longest time (ms) streamed text may be held back to commit whole words.",
+                        Nature.Integer, 80);
 
         public final String title;
         public final String description;
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.core.quickjump.QuickJumpEntry;
+import tn.eluea.kgpt.features.textactions.TextActionCommands;
+import tn.eluea.kgpt.roles.RoleManager;
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternAnalyzer;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.TriggerAutomaton;
+import tn.eluea.kgpt.text.parse.result.FormatParseResultFactory;
+import tn.eluea.kgpt.text.parse.result.InlineAskParseResultFactory;
+import tn.eluea.kgpt.text.parse.result.InlineCommandParseResultFactory;
+import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
+import tn.eluea.kgpt.text.transform.format.ExternalFormattingReader;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTrigger;
+
+/**
+ * Everything {@link TextParser#parse} needs, compiled once per configuration change.
+ *
+ * A plan is immutable and published through a volatile reference, so the keystroke path
+ * reads it without locking and without touching the ContentProvider or parsing JSON.
+ */
+final class ParsePlan {
+    // Trigger automaton groups, one per matcher in TextParser.parse
+    static final int GROUP_QUICK_JUMP = 0;
+    static final int GROUP_APP_TRIGGER = 1;
+    static final int GROUP_TEXT_ACTION = 2;
+    static final int GROUP_ROLE = 3;
+    static final int GROUP_TRIGGER_SYMBOL = 4;
+    static final int GROUP_DIRECTIVE_BASE = 8;
+
+    // Text read around the cursor on each keystroke: the longest trigger plus room for a
+    // typical prompt in its scope. Longer prompts are fetched when a trigger actually matches.
+    static final int LINE_SCOPE_CHARS = 512;
+    static final int MULTILINE_SCOPE_CHARS = 2048;
+    static final int WINDOW_MARGIN = 64;
+    static final int MAX_WINDOW_BEFORE = 8192;
+
+    final List<ParseDirective> directives;
+    final String triggerSymbol;
+    final boolean aiTriggerEnabled;
+    final Set<String> availableCommands;
+
+    final boolean commandsEnabled;
+    final boolean triggersEnabled;
+    final boolean aiTriggerMultiline;
+
+    final List<QuickJumpEntry> quickJumpEntries;
+    final boolean appTriggersEnabled;
+    final List<AppTrigger> appTriggers;
+    // Explicit role trigger -> roles using it, in role order
+    final Map<String, List<RoleManager.Role>> roleTriggers;
+    final String activeRoleId;
+
+    final String askPrefix;
+    final Pattern askScopePattern;
+    final Pattern inlineAskPattern;
+    final Pattern inlineCommandPattern;
+
+    final TriggerAutomaton automaton;
+    // Enabled patterns PatternAnalyzer rejected, regex -> reason; TextParser tells the user
+    final Map<String, String> rejectedPatterns;
+    final int windowBefore;
+    final int windowAfter;
+    final long builtAtMs;
+
+    ParsePlan(List<ParsePattern> patterns, List<ExternalFormattingReader.Style> formatStyles,
+            Set<String> availableCommands,
+            boolean commandsEnabled, boolean triggersEnabled, boolean aiTriggerMultiline,
+            List<QuickJumpEntry> quickJumpEntries, boolean appTriggersEnabled, List<AppTrigger> appTriggers,
+            List<RoleManager.Role> roles, String activeRoleId, String askPrefix,
+            Set<String> disabledRegexes, long builtAtMs) {
+        List<ParseDirective> dirs = new ArrayList<>();
+        Map<String, String> rejected = new LinkedHashMap<>();
+        String symbol = "$";
+        boolean aiEnabled = false;
+        if (patterns != null) {
+            for (ParsePattern parsePattern : patterns) {
+                // Only add enabled patterns
+                if (parsePattern.isEnabled()) {
+                    ParseDirective directive = compile(parsePattern, disabledRegexes, rejected);
+                    if (directive != null) dirs.add(directive);
+                }
+
+                // Track AI trigger symbol and enabled state
+                if (parsePattern.getType() == PatternType.CommandAI) {
+                    String s = PatternType.regexToSymbol(parsePattern.getPattern().pattern());
+                    if (s != null && !s.isEmpty()) {
+                        symbol = s;
+                    }
+                    aiEnabled = parsePattern.isEnabled();
+                }
+            }
+        }
+        if (formatStyles != null) {
+            // After the built-in patterns, which win on a shared delimiter
+            for (ExternalFormattingReader.Style style : formatStyles) {
+                ParseDirective directive = compile(style, disabledRegexes);
+                if (directive != null) dirs.add(directive);
+            }
+        }
+        this.directives = Collections.unmodifiableList(dirs);
+        this.rejectedPatterns = Collections.unmodifiableMap(rejected);
+        this.triggerSymbol = symbol;
+        this.aiTriggerEnabled = aiEnabled;
+        this.availableCommands = availableCommands != null
+                ? Collections.unmodifiableSet(availableCommands) : Collections.emptySet();
+
+        this.commandsEnabled = commandsEnabled;
+        this.triggersEnabled = triggersEnabled;
+        this.aiTriggerMultiline = aiTriggerMultiline;
+
+        this.quickJumpEntries = quickJumpEntries != null
+                ? Collections.unmodifiableList(new ArrayList<>(quickJumpEntries)) : Collections.emptyList();
+        this.appTriggersEnabled = appTriggersEnabled;
+        this.appTriggers = appTriggers != null
+                ? Collections.unmodifiableList(new ArrayList<>(appTriggers)) : Collections.emptyList();
+
+        Map<String, List<RoleManager.Role>> table = new LinkedHashMap<>();
+        if (roles != null) {
+            for (RoleManager.Role r : roles) {
+                if (r == null) continue;
+                // Empty trigger means "use the global AI trigger" and never auto-selects a role
+                String trig = r.trigger != null ? r.trigger.trim() : "";
+                if (trig.isEmpty()) continue;
+                List<RoleManager.Role> list = table.get(trig);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    table.put(trig, list);
+                }
+                list.add(r);
+            }
+        }
+        this.roleTriggers = Collections.unmodifiableMap(table);
+        this.activeRoleId = activeRoleId;
+
+        this.askPrefix = askPrefix;
+        this.askScopePattern = Pattern.compile("/" + Pattern.quote(askPrefix) + "\\s+");
+        this.inlineAskPattern = InlineAskParseResultFactory.compilePattern(symbol, askPrefix);
+        this.inlineCommandPattern = InlineCommandParseResultFactory.compilePattern(symbol);
+
+        this.automaton = buildAutomaton();
+        // "/ask " scopes an inline prompt the same way a trigger does
+        int longest = Math.max(automaton.getLongestLiteral(), askPrefix.length() + 2);
+        int scope = aiTriggerMultiline ? MULTILINE_SCOPE_CHARS : LINE_SCOPE_CHARS;
+        this.windowBefore = Math.min(MAX_WINDOW_BEFORE, longest + scope + WINDOW_MARGIN);
+        // Enough to see the end of the cursor line (single-line prompts, Quick Jump)
+        this.windowAfter = LINE_SCOPE_CHARS;
+        this.builtAtMs = builtAtMs;
+    }
+
+    /**
+     * Directive for {@code parsePattern} after {@link PatternAnalyzer}, or null when the
+     * pattern is unsafe (recorded in {@code rejected}) or was disabled for running over its
+     * time budget.
+     */
+    private static ParseDirective compile(ParsePattern parsePattern, Set<String> disabledRegexes,
+            Map<String, String> rejected) {
+        String source = parsePattern.getPattern().pattern();
+        PatternAnalyzer.Verdict verdict = PatternAnalyzer.analyze(source);
+        if (verdict.isRejected()) {
+            tn.eluea.kgpt.util.Logger.log("Skipping trigger pattern " + source + ": " + verdict.rejectReason);
+            rejected.put(source, verdict.rejectReason);
+            return null;
+        }
+        if (disabledRegexes != null && disabledRegexes.contains(verdict.regex)) {
+            return null;
+        }
+        Pattern pattern = verdict.regex.equals(source) ? parsePattern.getPattern() : Pattern.compile(verdict.regex);
+        return new ParseDirective(pattern, ParseResultFactory.of(parsePattern.getType()));
+    }
+
+    /** "text^" for a user style with delimiter ^, like the built-in format triggers. */
+    private static ParseDirective compile(ExternalFormattingReader.Style style, Set<String> disabledRegexes) {
+        // Delimiters are never letters or digits, so a backslash always makes them literal
+        String d = "\\" + style.delimiter;
+        String regex = "([^" + d + "]+)" + d + "$";
+        if (disabledRegexes != null && disabledRegexes.contains(regex)) {
+            return null;
+        }
+        return new ParseDirective(Pattern.compile(regex), new FormatParseResultFactory(style.method));
+    }
+
+    private TriggerAutomaton buildAutomaton() {
+        TriggerAutomaton.Builder b = new TriggerAutomaton.Builder();
+        for (QuickJumpEntry e : quickJumpEntries) {
+            if (e == null || !e.enabled || e.trigger == null) continue;
+            String trig = e.trigger.trim();
+            if (!trig.isEmpty()) b.add(trig, GROUP_QUICK_JUMP);
+        }
+        if (appTriggersEnabled) {
+            for (AppTrigger t : appTriggers) {
+                if (t == null || !t.isEnabled() || t.getTrigger() == null) continue;
+                if (!t.getTrigger().isEmpty()) b.add(t.getTrigger(), GROUP_APP_TRIGGER);
+            }
+        }
+        for (String cmd : TextActionCommands.getCommands()) {
+            b.add("$" + cmd, GROUP_TEXT_ACTION);
+        }
+        for (String trig : roleTriggers.keySet()) {
+            b.add(trig, GROUP_ROLE);
+        }
+        // Inline /command and /ask prompts end with the AI trigger symbol
+        b.add(triggerSymbol, GROUP_TRIGGER_SYMBOL);
+        for (int i = 0; i < directives.size(); i++) {
+            // A directive without a known literal suffix is always checked
+            b.add(directives.get(i).getRequiredSuffix(), GROUP_DIRECTIVE_BASE + i);
+        }
+        return b.build();
+    }
+
+    static boolean isCandidate(long candidates, int group) {
+        // Groups past the mask width were never compiled in and must always be checked
+        return group >= TriggerAutomaton.MAX_GROUPS || (candidates & (1L << group)) != 0;
+    }
+
+    boolean anyDirectiveCandidate(long candidates) {
+        if (GROUP_DIRECTIVE_BASE + directives.size() > TriggerAutomaton.MAX_GROUPS) return true;
+        return (candidates >>> GROUP_DIRECTIVE_BASE) != 0;
+    }
+}
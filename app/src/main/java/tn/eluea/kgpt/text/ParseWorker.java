@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import tn.eluea.kgpt.core.ai.GenerationTarget;
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+import tn.eluea.kgpt.ui.IMSController;
+
+/**
+ * Runs {@link TextParser#parse} on its own thread so the keyboard never waits for it.
+ *
+ * Submissions go into a single-slot mailbox: a snapshot that hasn't been picked up yet is
+ * simply replaced by the newer one, so a burst of keystrokes costs one parse. A match is only
+ * handed back to the main thread if the editor is still in the state that was parsed (same
+ * text revision, same field); otherwise it is dropped and the newer snapshot decides.
+ */
+public final class ParseWorker {
+
+    public interface Callback {
+        /** Main thread; the editor still holds {@code text} with the cursor at {@code cursor}. */
+        void onParsed(String text, int cursor, ParseResult result);
+    }
+
+    private static final class Snapshot {
+        final String text;
+        final int cursor;
+        final int revision;
+        final GenerationTarget target;
+
+        Snapshot(String text, int cursor, int revision, GenerationTarget target) {
+            this.text = text;
+            this.cursor = cursor;
+            this.revision = revision;
+            this.target = target;
+        }
+    }
+
+    private final TextParser mParser;
+    private final Callback mCallback;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<Snapshot> mMailbox = new AtomicReference<>();
+    private final Runnable mDrain = this::drain;
+
+    public ParseWorker(TextParser parser, Callback callback) {
+        mParser = parser;
+        mCallback = callback;
+        mThread = new HandlerThread("KGPT_Parser");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /** Main thread. Replaces any snapshot still waiting to be parsed. */
+    public void submit(String text, int cursor) {
+        IMSController ims = IMSController.getInstance();
+        Snapshot snapshot = new Snapshot(text, cursor, ims.getTextRevision(), ims.getCurrentTarget());
+        // Only the empty -> full transition needs a drain; later ones ride on it
+        if (mMailbox.getAndSet(snapshot) == null) {
+            mHandler.post(mDrain);
+        }
+    }
+
+    private void drain() {
+        final Snapshot snapshot = mMailbox.getAndSet(null);
+        if (snapshot == null) return;
+
+        final ParseResult result;
+        try {
+            result = mParser.parse(snapshot.text, snapshot.cursor);
+        } catch (Throwable t) {
+            tn.eluea.kgpt.util.Logger.log(t);
+            return;
+        }
+        if (result == null) return;
+
+        // Typing went on while we parsed; the queued snapshot supersedes this one
+        if (mMailbox.get() != null) return;
+
+        mMainHandler.post(() -> {
+            IMSController ims = IMSController.getInstance();
+            if (ims.getTextRevision() != snapshot.revision
+                    || !snapshot.target.equals(ims.getCurrentTarget())) {
+                return;
+            }
+            mCallback.onParsed(snapshot.text, snapshot.cursor, result);
+        });
+    }
+
+    public void quit() {
+        mMailbox.set(null);
+        mThread.quitSafely();
+    }
+}
@@ -15,17 +15,24 @@ import android.os.Bundle;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.core.quickjump.QuickJumpEntry;
 import tn.eluea.kgpt.core.quickjump.QuickJumpManager;
 import tn.eluea.kgpt.text.parse.result.QuickJumpParseResult;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
+import tn.eluea.kgpt.provider.ConfigClient;
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.text.parse.ParsePattern;
-import tn.eluea.kgpt.text.parse.PatternType;
 import tn.eluea.kgpt.features.textactions.TextActionCommands;
 import tn.eluea.kgpt.roles.RoleManager;
 import tn.eluea.kgpt.text.parse.result.InlineAskParseResult;
@@ -33,90 +40,247 @@ import tn.eluea.kgpt.text.parse.result.InlineAskParseResultFactory;
 import tn.eluea.kgpt.text.parse.result.InlineCommandParseResult;
 import tn.eluea.kgpt.text.parse.result.InlineCommandParseResultFactory;
 import tn.eluea.kgpt.text.parse.result.CommandParseResult;
-import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
 import tn.eluea.kgpt.text.parse.ParseDirective;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
 import tn.eluea.kgpt.text.parse.result.AIParseResult;
 import tn.eluea.kgpt.text.parse.result.AppTriggerParseResult;
 import tn.eluea.kgpt.text.parse.result.TextActionParseResult;
+import tn.eluea.kgpt.text.transform.format.ExternalFormattingReader;
 import tn.eluea.kgpt.ui.UiInteractor;
 import tn.eluea.kgpt.ui.lab.apptrigger.AppTrigger;
 import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
 import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
 
 public class TextParser implements ConfigChangeListener {
-    private final List<ParseDirective> directives = new ArrayList<>();
-    private String currentTriggerSymbol = "$";
-    private boolean aiTriggerEnabled = false;
     private boolean textActionsEnabled = false;
-    private AppTriggerManager appTriggerManager = null;
-    private java.util.Set<String> availableCommands = new java.util.HashSet<>();
+    private volatile AppTriggerManager appTriggerManager = null;
 
-    // Master (one-click) toggles cached in-process.
-    // We refresh periodically (and also listen to ConfigClient) to ensure the IME process
-    // picks up changes immediately without requiring a force-stop/restart.
+    // Master (one-click) toggles. Read with getBooleanNoCache when a plan is built, because
+    // some ROMs miss ContentObserver updates in the IME/Xposed process (a no-op probe while
+    // the provider pushes changes).
     private static final String KEY_INVOCATION_COMMANDS_ENABLED = "invocation_commands_enabled_v1";
     private static final String KEY_INVOCATION_TRIGGERS_ENABLED = "invocation_triggers_enabled_v1";
-    private static final long MASTER_REFRESH_INTERVAL_MS = 200;
-    private volatile boolean masterCommandsEnabled = true;
-    private volatile boolean masterTriggersEnabled = true;
-    private long lastMasterRefreshMs = 0;
-
-    // Quick Jump entries cache (parsed from SPManager.getQuickJumpConfig())
-    private String quickJumpCacheRaw = null;
-    private List<QuickJumpEntry> quickJumpCacheItems = Collections.emptyList();
-
+    private static final String KEY_AI_TRIGGER_MULTILINE = "ai_trigger_multiline_enabled_v1";
+    private static final String KEY_QUICK_JUMP_CONFIG = "quick_jump_config";
+    private static final String KEY_APP_TRIGGERS = "app_triggers";
+    private static final String KEY_APP_TRIGGERS_ENABLED = "app_triggers_enabled";
+
+    // Observer callbacks are not reliable everywhere, so without the provider's push channel
+    // a plan older than this is rebuilt in the background on the next keystroke (the
+    // keystroke itself still uses the old one).
+    private static final long PLAN_STALE_MS = 2000;
+
+    // Inputs owned by the config listeners; null commands means "reload on next build"
+    private volatile List<ParsePattern> parsePatterns;
+    private volatile Set<String> availableCommands;
+
+    // Everything parse() reads, swapped as a whole
+    private volatile ParsePlan plan;
+
+    // Directives that ran over their match budget; left out of plans until patterns change
+    private final Set<String> disabledRegexes = java.util.Collections.newSetFromMap(
+            new java.util.concurrent.ConcurrentHashMap<>());
+
+    // Rejected patterns the user was already told about, so each is reported once
+    private final Set<String> reportedRejections = java.util.Collections.newSetFromMap(
+            new java.util.concurrent.ConcurrentHashMap<>());
+
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+    private final ExecutorService planExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "kgpt-parse-plan");
+        t.setDaemon(true);
+        return t;
+    });
 
     public TextParser() {
         UiInteractor.getInstance().registerConfigChangeListener(this);
-        List<ParsePattern> parsePatterns = SPManager.getInstance().getParsePatterns();
-        updatePatterns(parsePatterns);
-        loadAvailableCommands();
+        parsePatterns = SPManager.getInstance().getParsePatterns();
+        plan = buildPlan();
 
-        // Initial read + live updates for master toggles
-        refreshMasterSwitches(true);
         try {
-            SPManager.getInstance().getConfigClient().registerListener(KEY_INVOCATION_TRIGGERS_ENABLED,
-                    (key, newValue) -> masterTriggersEnabled = parseBoolean(newValue, true));
-            SPManager.getInstance().getConfigClient().registerListener(KEY_INVOCATION_COMMANDS_ENABLED,
-                    (key, newValue) -> masterCommandsEnabled = parseBoolean(newValue, true));
+            ConfigClient client = SPManager.getInstance().getConfigClient();
+            ConfigClient.OnConfigChangeListener rebuild = (key, newValue) -> requestRebuild();
+            client.registerListener(KEY_INVOCATION_TRIGGERS_ENABLED, rebuild);
+            client.registerListener(KEY_INVOCATION_COMMANDS_ENABLED, rebuild);
+            client.registerListener(KEY_AI_TRIGGER_MULTILINE, rebuild);
+            client.registerListener(KEY_QUICK_JUMP_CONFIG, rebuild);
+            client.registerListener(KEY_APP_TRIGGERS, rebuild);
+            client.registerListener(KEY_APP_TRIGGERS_ENABLED, rebuild);
+            client.registerListener(RoleManager.PREF_ROLES_JSON, rebuild);
+            client.registerListener(RoleManager.PREF_ACTIVE_ROLE_ID, rebuild);
+            client.registerListener(ExternalFormattingReader.PREF_FORMAT_STYLES, rebuild);
         } catch (Throwable ignored) {
         }
     }
 
-    private static boolean parseBoolean(Object v, boolean def) {
-        if (v == null) return def;
+    /** True while config changes reach the listeners registered above as they happen. */
+    private static boolean isConfigPushed() {
         try {
-            return Boolean.parseBoolean(String.valueOf(v));
+            return SPManager.getInstance().getConfigClient().isPushConnected();
         } catch (Throwable t) {
-            return def;
+            return false;
         }
     }
 
-    private void refreshMasterSwitches(boolean force) {
-        long now = android.os.SystemClock.uptimeMillis();
-        if (!force && (now - lastMasterRefreshMs) < MASTER_REFRESH_INTERVAL_MS) return;
-        lastMasterRefreshMs = now;
+    /**
+     * Read every input of the plan. This is where all IPC and JSON parsing happens; it runs
+     * once in the constructor and afterwards only on the plan thread.
+     */
+    private ParsePlan buildPlan() {
+        SPManager sp = SPManager.getInstance();
+        ConfigClient client = sp.getConfigClient();
+
+        boolean commandsEnabled = true;
+        boolean triggersEnabled = true;
+        try {
+            triggersEnabled = client.getBooleanNoCache(KEY_INVOCATION_TRIGGERS_ENABLED, true);
+            commandsEnabled = client.getBooleanNoCache(KEY_INVOCATION_COMMANDS_ENABLED, true);
+        } catch (Throwable ignored) {
+        }
+
+        boolean multiline = true;
+        try { multiline = sp.getAiTriggerMultilineEnabled(); } catch (Throwable ignored) {}
+
+        Set<String> commands = availableCommands;
+        if (commands == null) {
+            commands = loadAvailableCommands();
+            availableCommands = commands;
+        }
+
+        List<QuickJumpEntry> quickJump = Collections.emptyList();
         try {
-            // Bypass cache to avoid stale values in some IME/Xposed process environments.
-            masterTriggersEnabled = SPManager.getInstance().getConfigClient()
-                    .getBooleanNoCache(KEY_INVOCATION_TRIGGERS_ENABLED, true);
-            masterCommandsEnabled = SPManager.getInstance().getConfigClient()
-                    .getBooleanNoCache(KEY_INVOCATION_COMMANDS_ENABLED, true);
+            String cfg = sp.getQuickJumpConfig();
+            quickJump = QuickJumpManager.load(cfg != null ? cfg : "");
         } catch (Throwable ignored) {
         }
+
+        boolean appTriggersOn = false;
+        List<AppTrigger> appTriggers = Collections.emptyList();
+        try {
+            AppTriggerManager manager = appTriggerManager;
+            if (manager != null && manager.isFeatureEnabled()) {
+                appTriggersOn = true;
+                appTriggers = manager.getAppTriggers();
+            }
+        } catch (Throwable ignored) {
+        }
+
+        List<RoleManager.Role> roles = Collections.emptyList();
+        String activeRoleId = null;
+        try {
+            roles = RoleManager.loadRoles(sp.getRolesJson());
+            activeRoleId = sp.getActiveRoleId();
+        } catch (Throwable ignored) {
+        }
+
+        List<ExternalFormattingReader.Style> formatStyles = Collections.emptyList();
+        try {
+            formatStyles = ExternalFormattingReader.read(client.getString(ExternalFormattingReader.PREF_FORMAT_STYLES, ""));
+        } catch (Throwable ignored) {
+        }
+
+        ParsePlan built = new ParsePlan(parsePatterns, formatStyles, commands, commandsEnabled, triggersEnabled,
+                multiline, quickJump, appTriggersOn, appTriggers, roles, activeRoleId,
+                tn.eluea.kgpt.instruction.command.InlineAskCommand.getPrefix(),
+                disabledRegexes, android.os.SystemClock.uptimeMillis());
+        reportRejected(built);
+        return built;
     }
 
-    private void loadAvailableCommands() {
-        availableCommands.clear();
-        List<GenerativeAICommand> commands = SPManager.getInstance().getGenerativeAICommands();
-        for (GenerativeAICommand cmd : commands) {
-            availableCommands.add(cmd.getCommandPrefix());
+    /**
+     * Tell the user about enabled patterns the plan left out as unsafe. The editors refuse
+     * such patterns, so these come from older builds or restored backups; without this the
+     * trigger would just stop working.
+     */
+    private void reportRejected(ParsePlan built) {
+        for (Map.Entry<String, String> e : built.rejectedPatterns.entrySet()) {
+            if (!reportedRejections.add(e.getKey())) continue;
+            String msg;
+            try {
+                msg = UiInteractor.getInstance().getContext()
+                        .getString(tn.eluea.kgpt.R.string.msg_pattern_skipped_unsafe, e.getKey(), e.getValue());
+            } catch (Throwable t) {
+                // Running with the host IME's Resources
+                msg = "Trigger pattern " + e.getKey() + " could freeze the keyboard and was skipped ("
+                        + e.getValue() + ")";
+            }
+            final String toast = msg;
+            UiInteractor.getInstance().post(() -> UiInteractor.getInstance().toastLong(toast));
         }
     }
 
+    /** Schedule a plan rebuild; requests made while one is queued fold into it. */
+    private void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) return;
+        try {
+            planExecutor.execute(() -> {
+                // Cleared first so a change arriving mid-build schedules another pass
+                rebuildPending.set(false);
+                try {
+                    plan = buildPlan();
+                } catch (Throwable t) {
+                    tn.eluea.kgpt.util.Logger.log("ParsePlan rebuild failed: " + t.getMessage());
+                }
+            });
+        } catch (Throwable t) {
+            rebuildPending.set(false);
+        }
+    }
+
+    /**
+     * A directive blew its per-match time budget: drop it from this and future plans and tell
+     * the user, instead of stalling every keystroke that reaches it.
+     */
+    private void disableDirective(ParseDirective directive) {
+        String regex = directive.getPattern().pattern();
+        if (!disabledRegexes.add(regex)) return;
+        tn.eluea.kgpt.util.Logger.log("Disabled trigger pattern " + regex + ": over the "
+                + ParseDirective.MATCH_BUDGET_MS + "ms match budget");
+
+        String msg;
+        try {
+            msg = UiInteractor.getInstance().getContext()
+                    .getString(tn.eluea.kgpt.R.string.msg_pattern_disabled_slow, regex);
+        } catch (Throwable t) {
+            // Running with the host IME's Resources
+            msg = "Trigger pattern " + regex + " was too slow and has been disabled";
+        }
+        final String toast = msg;
+        // Parsing runs on the parse thread; toasts need the main looper
+        UiInteractor.getInstance().post(() -> UiInteractor.getInstance().toastLong(toast));
+        requestRebuild();
+    }
+
+    private static Set<String> loadAvailableCommands() {
+        Set<String> commands = new HashSet<>();
+        try {
+            List<GenerativeAICommand> list = SPManager.getInstance().getGenerativeAICommands();
+            for (GenerativeAICommand cmd : list) {
+                commands.add(cmd.getCommandPrefix());
+            }
+        } catch (Throwable ignored) {
+        }
+        return commands;
+    }
+
     public void setAppTriggerManager(AppTriggerManager manager) {
         this.appTriggerManager = manager;
+        requestRebuild();
+    }
+
+    /** Whether the AI trigger sends the whole text rather than the cursor line, per the current plan. */
+    public boolean isAiTriggerMultiline() {
+        return plan.aiTriggerMultiline;
+    }
+
+    /** Chars before the cursor the current configuration needs to see a trigger and its prompt. */
+    public int getWindowBefore() {
+        return plan.windowBefore;
+    }
+
+    /** Chars after the cursor worth reading (the rest of the cursor line). */
+    public int getWindowAfter() {
+        return plan.windowAfter;
     }
 
     /**
@@ -126,28 +290,8 @@ public class TextParser implements ConfigChangeListener {
         this.textActionsEnabled = enabled;
     }
 
-    private void updatePatterns(List<ParsePattern> parsePatterns) {
-        directives.clear();
-        aiTriggerEnabled = false;
-
-        for (ParsePattern parsePattern : parsePatterns) {
-            // Only add enabled patterns
-            if (parsePattern.isEnabled()) {
-                directives.add(new ParseDirective(parsePattern.getPattern(),
-                        ParseResultFactory.of(parsePattern.getType())));
-            }
-
-            // Track AI trigger symbol and enabled state
-            if (parsePattern.getType() == PatternType.CommandAI) {
-                String symbol = PatternType.regexToSymbol(parsePattern.getPattern().pattern());
-                if (symbol != null && !symbol.isEmpty()) {
-                    currentTriggerSymbol = symbol;
-                }
-                aiTriggerEnabled = parsePattern.isEnabled();
-            }
-        }
-    }
     private ParseResult adjustAiTriggerToCursorLineIfNeeded(
+            ParsePlan plan,
             ParseResult original,
             String fullText,
             int cursor,
@@ -156,7 +300,7 @@ public class TextParser implements ConfigChangeListener {
         try {
             if (!(original instanceof AIParseResult)) return original;
             AIParseResult origAi = (AIParseResult) original;
-            if (SPManager.getInstance().getAiTriggerMultilineEnabled()) return original;
+            if (plan.aiTriggerMultiline) return original;
             if (fullText == null) return original;
             cursor = Math.max(0, Math.min(cursor, fullText.length()));
             if (triggerSymbol == null || triggerSymbol.isEmpty()) return original;
@@ -197,48 +341,29 @@ public class TextParser implements ConfigChangeListener {
      * This avoids ambiguous situations where multiple roles would share the
      * same global trigger keyword (e.g., many roles left blank).
      */
-    private AIParseResult checkRoleAiTrigger(String textBeforeCursor, String fullText, int cursor) {
+    private AIParseResult checkRoleAiTrigger(ParsePlan plan, String textBeforeCursor, String fullText, int cursor) {
         try {
-            if (!aiTriggerEnabled) return null;
+            if (!plan.aiTriggerEnabled) return null;
             if (textBeforeCursor == null || textBeforeCursor.isEmpty()) return null;
+            if (plan.roleTriggers.isEmpty()) return null;
 
-            SPManager sp = SPManager.getInstance();
-            if (sp == null) return null;
-
-            String rolesJson = sp.getRolesJson();
-            List<RoleManager.Role> roles = RoleManager.loadRoles(rolesJson);
-            if (roles == null || roles.isEmpty()) return null;
-
-            // Find matching triggers (longest suffix wins).
+            // Find the matching trigger (longest suffix wins); the plan already grouped
+            // roles sharing a trigger, in role order.
             String bestTrigger = null;
-            java.util.ArrayList<RoleManager.Role> bestRoles = new java.util.ArrayList<>();
-
-            for (RoleManager.Role r : roles) {
-                if (r == null) continue;
-                // Only role-specific (explicit) triggers should override the active role.
-                // Empty trigger means "use the global AI trigger" and should NOT auto-select a role.
-                String trig = r.trigger != null ? r.trigger.trim() : "";
-                if (trig.isEmpty()) continue;
-
-                if (textBeforeCursor.endsWith(trig)) {
-                    if (bestTrigger == null || trig.length() > bestTrigger.length()) {
-                        bestTrigger = trig;
-                        bestRoles.clear();
-                        bestRoles.add(r);
-                    } else if (trig.length() == bestTrigger.length() && trig.equals(bestTrigger)) {
-                        bestRoles.add(r);
-                    }
+            for (String trig : plan.roleTriggers.keySet()) {
+                if (textBeforeCursor.endsWith(trig)
+                        && (bestTrigger == null || trig.length() > bestTrigger.length())) {
+                    bestTrigger = trig;
                 }
             }
-
-            if (bestTrigger == null || bestRoles.isEmpty()) return null;
+            if (bestTrigger == null) return null;
+            List<RoleManager.Role> bestRoles = plan.roleTriggers.get(bestTrigger);
 
             // Choose role:
             // If multiple roles share the same explicit trigger, prefer the current active role.
             RoleManager.Role chosen = null;
-            String activeId = sp.getActiveRoleId();
+            String activeId = plan.activeRoleId;
             for (RoleManager.Role r : bestRoles) {
-                if (r == null) continue;
                 if (activeId != null && activeId.equals(r.id)) {
                     chosen = r;
                     break;
@@ -246,7 +371,6 @@ public class TextParser implements ConfigChangeListener {
             }
             if (chosen == null) chosen = bestRoles.get(0);
 
-            if (chosen == null) return null;
             String roleId = chosen.id != null ? chosen.id.trim() : RoleManager.DEFAULT_ROLE_ID;
             if (roleId.isEmpty()) roleId = RoleManager.DEFAULT_ROLE_ID;
 
@@ -257,7 +381,7 @@ public class TextParser implements ConfigChangeListener {
             groups.add(promptRaw);        // group1
 
             AIParseResult res = new AIParseResult(groups, 0, cursor, roleId, bestTrigger);
-            ParseResult adjusted = adjustAiTriggerToCursorLineIfNeeded(res, fullText, cursor, bestTrigger);
+            ParseResult adjusted = adjustAiTriggerToCursorLineIfNeeded(plan, res, fullText, cursor, bestTrigger);
             return (adjusted instanceof AIParseResult) ? (AIParseResult) adjusted : res;
         } catch (Throwable t) {
             return null;
@@ -270,27 +394,11 @@ public class TextParser implements ConfigChangeListener {
      * When the input ends with a matching trigger, we delete only the trigger
      * (optionally one preceding whitespace) and open the URL externally.
      */
-    private QuickJumpParseResult checkQuickJump(String textBeforeCursor, int cursor) {
+    private QuickJumpParseResult checkQuickJump(ParsePlan plan, String textBeforeCursor, int cursor) {
         try {
             if (textBeforeCursor == null || textBeforeCursor.isEmpty()) return null;
 
-            SPManager sp = SPManager.getInstance();
-            if (sp == null) return null;
-
-            String cfg = null;
-            try { cfg = sp.getQuickJumpConfig(); } catch (Throwable ignored) {}
-            if (cfg == null) cfg = "";
-
-            if (quickJumpCacheRaw == null || !quickJumpCacheRaw.equals(cfg)) {
-                quickJumpCacheRaw = cfg;
-                try {
-                    quickJumpCacheItems = QuickJumpManager.load(cfg);
-                } catch (Throwable t) {
-                    quickJumpCacheItems = java.util.Collections.emptyList();
-                }
-            }
-
-            if (quickJumpCacheItems == null || quickJumpCacheItems.isEmpty()) return null;
+            if (plan.quickJumpEntries.isEmpty()) return null;
 
             int len = textBeforeCursor.length();
             int trimmedEnd = len;
@@ -304,7 +412,7 @@ public class TextParser implements ConfigChangeListener {
 
             QuickJumpEntry best = null;
             String bestTrig = null;
-            for (QuickJumpEntry e : quickJumpCacheItems) {
+            for (QuickJumpEntry e : plan.quickJumpEntries) {
                 if (e == null || !e.enabled) continue;
                 String trig = e.trigger != null ? e.trigger.trim() : "";
                 if (trig.isEmpty()) continue;
@@ -358,6 +466,7 @@ public class TextParser implements ConfigChangeListener {
             return null;
         }
     }
+
     public ParseResult parse(String text, int cursor) {
         // Bounds check to prevent StringIndexOutOfBoundsException
         if (text == null || text.isEmpty()) {
@@ -365,34 +474,50 @@ public class TextParser implements ConfigChangeListener {
         }
         cursor = Math.max(0, Math.min(cursor, text.length()));
 
+        // One read of the published plan; nothing below touches the provider or parses JSON
+        final ParsePlan plan = this.plan;
+        if (android.os.SystemClock.uptimeMillis() - plan.builtAtMs > PLAN_STALE_MS && !isConfigPushed()) {
+            requestRebuild();
+        }
+
         String textBeforeCursor = text.substring(0, cursor);
 
         // Master switches (UI one-click toggles)
-        // NOTE: These are intentionally refreshed frequently because some ROMs may miss
-        // ContentObserver updates in the IME/Xposed process.
-        refreshMasterSwitches(false);
-        final boolean commandsEnabled = masterCommandsEnabled;
-        final boolean triggersEnabled = masterTriggersEnabled;
+        final boolean commandsEnabled = plan.commandsEnabled;
+        final boolean triggersEnabled = plan.triggersEnabled;
+
+        // Every matcher below needs its trigger at the cursor; one backwards walk tells
+        // which of them can possibly match, so typing ordinary text costs O(trigger length).
+        final long candidates = plan.automaton.match(textBeforeCursor, textBeforeCursor.length());
+        // Directives past the mask width are never in it, so an empty mask doesn't rule them out
+        if (candidates == 0 && !plan.anyDirectiveCandidate(candidates)) {
+            return null;
+        }
 
         // Quick Jump (user-defined URL triggers)
-        QuickJumpParseResult qj = checkQuickJump(textBeforeCursor, cursor);
-        if (qj != null) {
-            return qj;
+        if (ParsePlan.isCandidate(candidates, ParsePlan.GROUP_QUICK_JUMP)) {
+            QuickJumpParseResult qj = checkQuickJump(plan, textBeforeCursor, cursor);
+            if (qj != null) {
+                return qj;
+            }
         }
 
         // Check for app triggers first (if enabled)
-        android.util.Log.d("KGPT_AppTrigger", "parse() called with text: '" + textBeforeCursor + "'");
-        AppTriggerParseResult appTriggerResult = checkAppTrigger(textBeforeCursor);
-        if (appTriggerResult != null) {
-            android.util.Log.d("KGPT_AppTrigger",
-                    "Found trigger: " + appTriggerResult.trigger + " -> " + appTriggerResult.packageName);
-            return appTriggerResult;
+        if (ParsePlan.isCandidate(candidates, ParsePlan.GROUP_APP_TRIGGER)) {
+            AppTriggerParseResult appTriggerResult = checkAppTrigger(plan, textBeforeCursor);
+            if (appTriggerResult != null) {
+                android.util.Log.d("KGPT_AppTrigger",
+                        "Found trigger: " + appTriggerResult.trigger + " -> " + appTriggerResult.packageName);
+                return appTriggerResult;
+            }
         }
 
         // Check for text action commands (e.g., "text $rephrase")
-        TextActionParseResult textActionResult = checkTextAction(textBeforeCursor);
-        if (textActionResult != null) {
-            return textActionResult;
+        if (ParsePlan.isCandidate(candidates, ParsePlan.GROUP_TEXT_ACTION)) {
+            TextActionParseResult textActionResult = checkTextAction(textBeforeCursor);
+            if (textActionResult != null) {
+                return textActionResult;
+            }
         }
 
         // If invocation triggers are globally disabled, stop here.
@@ -403,57 +528,76 @@ public class TextParser implements ConfigChangeListener {
 
         // Check for role-specific AI triggers (e.g., "hello es" where "es" is the role trigger)
         // Do this before regex directives so it can work even when the trigger isn't a configured ParsePattern.
-        AIParseResult roleAi = checkRoleAiTrigger(textBeforeCursor, text, cursor);
+        AIParseResult roleAi = ParsePlan.isCandidate(candidates, ParsePlan.GROUP_ROLE)
+                ? checkRoleAiTrigger(plan, textBeforeCursor, text, cursor) : null;
         if (roleAi != null) {
             return roleAi;
         }
 
+        final List<ParseDirective> directives = plan.directives;
+        final String triggerSymbol = plan.triggerSymbol;
+
         // Only check inline ask/inline commands if AI trigger is enabled
-        if (aiTriggerEnabled) {
+        if (plan.aiTriggerEnabled) {
             // Check for inline commands first (any /command with preserved text)
             // These handle their own text preservation
-            if (commandsEnabled) {
+            if (commandsEnabled && ParsePlan.isCandidate(candidates, ParsePlan.GROUP_TRIGGER_SYMBOL)) {
                 InlineCommandParseResult inlineCommandResult = InlineCommandParseResultFactory.parse(
-                        textBeforeCursor, currentTriggerSymbol, availableCommands);
+                        textBeforeCursor, plan.inlineCommandPattern, plan.availableCommands);
                 if (inlineCommandResult != null) {
                     return inlineCommandResult;
                 }
             }
 
+            // The ask prefix is a static setting; if it moved since the plan was built,
+            // compile for this keystroke and let the next plan pick it up.
+            String prefix = tn.eluea.kgpt.instruction.command.InlineAskCommand.getPrefix();
+            Pattern askScopePattern = plan.askScopePattern;
+            Pattern inlineAskPattern = plan.inlineAskPattern;
+            if (prefix != null && !prefix.equals(plan.askPrefix)) {
+                askScopePattern = Pattern.compile("/" + Pattern.quote(prefix) + "\\s+");
+                inlineAskPattern = InlineAskParseResultFactory.compilePattern(triggerSymbol, prefix);
+                requestRebuild();
+            }
+
             // Check for /ask usage as a shield for ANY directive
             // This fixes the issue where valid triggers (like @ for bold) would apply to
             // the entire text
             // because they matched the whole string pattern. /ask now properly delimits the
             // scope.
-            String prefix = tn.eluea.kgpt.instruction.command.InlineAskCommand.getPrefix();
-            String askPatternStr = "/" + java.util.regex.Pattern.quote(prefix) + "\\s+";
-            java.util.regex.Pattern askPattern = java.util.regex.Pattern.compile(askPatternStr);
-            java.util.regex.Matcher askMatcher = askPattern.matcher(textBeforeCursor);
+            // Only worth scanning for /ask when some directive can match at the cursor
+            if (plan.anyDirectiveCandidate(candidates)) {
+                java.util.regex.Matcher askMatcher = askScopePattern.matcher(textBeforeCursor);
 
-            int lastAskIndex = -1;
-            int lastContentStart = -1;
+                int lastAskIndex = -1;
+                int lastContentStart = -1;
 
-            // Find the *last* occurrence of /ask followed by whitespace
-            while (askMatcher.find()) {
-                lastAskIndex = askMatcher.start();
-                lastContentStart = askMatcher.end();
-            }
+                // Find the *last* occurrence of /ask followed by whitespace
+                while (askMatcher.find()) {
+                    lastAskIndex = askMatcher.start();
+                    lastContentStart = askMatcher.end();
+                }
 
-            if (commandsEnabled && lastAskIndex >= 0) {
-                String scopedText = textBeforeCursor.substring(lastContentStart);
-
-                // Check if this scoped text matches any directive
-                for (ParseDirective directive : directives) {
-                    // Pass 'lastAskIndex' as startOverride so the Result consumes the "/ask ..."
-                    // part
-                    // Pass 'lastContentStart' as offset for the scoped text
-                    ParseResult result = directive.parseWithStartOverride(scopedText, lastContentStart, lastAskIndex);
-                    if (result != null) {
-                        // When commands are disabled, ignore command results (including "%"-based commands).
-                        if (!commandsEnabled && (result instanceof CommandParseResult)) {
-                            continue;
+                if (commandsEnabled && lastAskIndex >= 0) {
+                    String scopedText = textBeforeCursor.substring(lastContentStart);
+
+                    // Check if this scoped text matches any directive
+                    for (int i = 0; i < directives.size(); i++) {
+                        if (!ParsePlan.isCandidate(candidates, ParsePlan.GROUP_DIRECTIVE_BASE + i)) continue;
+                        ParseDirective directive = directives.get(i);
+                        if (directive.isOverBudget()) continue;
+                        // Pass 'lastAskIndex' as startOverride so the Result consumes the "/ask ..."
+                        // part
+                        // Pass 'lastContentStart' as offset for the scoped text
+                        ParseResult result = directive.parseWithStartOverride(scopedText, lastContentStart, lastAskIndex);
+                        if (directive.isOverBudget()) disableDirective(directive);
+                        if (result != null) {
+                            // When commands are disabled, ignore command results (including "%"-based commands).
+                            if (!commandsEnabled && (result instanceof CommandParseResult)) {
+                                continue;
+                            }
+                            return adjustAiTriggerToCursorLineIfNeeded(plan, result, text, cursor, triggerSymbol);
                         }
-                        return adjustAiTriggerToCursorLineIfNeeded(result, text, cursor, currentTriggerSymbol);
                     }
                 }
             }
@@ -461,23 +605,29 @@ public class TextParser implements ConfigChangeListener {
             // Fallback to strict InlineAskParseResultFactory if generic shielding didn't
             // match anything
             // This handles cases specific to the Factory implementation if any
-            if (commandsEnabled) {
+            if (commandsEnabled && ParsePlan.isCandidate(candidates, ParsePlan.GROUP_TRIGGER_SYMBOL)) {
                 InlineAskParseResult inlineAskResult = InlineAskParseResultFactory.parse(
-                        textBeforeCursor, currentTriggerSymbol);
+                        textBeforeCursor, inlineAskPattern, prefix != null ? prefix : plan.askPrefix);
                 if (inlineAskResult != null) {
                     return inlineAskResult;
                 }
             }
         }
 
-        for (ParseDirective directive : directives) {
+        for (int i = 0; i < directives.size(); i++) {
+            // Only run the regex of directives whose suffix is actually at the cursor
+            if (!ParsePlan.isCandidate(candidates, ParsePlan.GROUP_DIRECTIVE_BASE + i)) continue;
+            ParseDirective directive = directives.get(i);
+            // Disabled, waiting for the next plan to drop it
+            if (directive.isOverBudget()) continue;
             ParseResult parseResult = directive.parse(textBeforeCursor);
+            if (directive.isOverBudget()) disableDirective(directive);
             if (parseResult != null) {
                 // When commands are globally disabled, ignore command parse results.
                 if (!commandsEnabled && (parseResult instanceof CommandParseResult)) {
                     continue;
                 }
-                return adjustAiTriggerToCursorLineIfNeeded(parseResult, text, cursor, currentTriggerSymbol);
+                return adjustAiTriggerToCursorLineIfNeeded(plan, parseResult, text, cursor, triggerSymbol);
             }
         }
 
@@ -487,16 +637,15 @@ public class TextParser implements ConfigChangeListener {
     /**
      * Check if the text ends with an app trigger
      */
-    private AppTriggerParseResult checkAppTrigger(String text) {
+    private AppTriggerParseResult checkAppTrigger(ParsePlan plan, String text) {
         android.util.Log.d("KGPT_AppTrigger", "checkAppTrigger() - appTriggerManager: " + (appTriggerManager != null));
 
-        if (appTriggerManager == null || !appTriggerManager.isFeatureEnabled()) {
-            android.util.Log.d("KGPT_AppTrigger", "Feature disabled or manager null. Enabled: " +
-                    (appTriggerManager != null ? appTriggerManager.isFeatureEnabled() : "null"));
+        if (appTriggerManager == null || !plan.appTriggersEnabled) {
+            android.util.Log.d("KGPT_AppTrigger", "Feature disabled or manager null.");
             return null;
         }
 
-        List<AppTrigger> triggers = appTriggerManager.getAppTriggers();
+        List<AppTrigger> triggers = plan.appTriggers;
         android.util.Log.d("KGPT_AppTrigger", "Loaded " + triggers.size() + " triggers");
         for (AppTrigger t : triggers) {
             android.util.Log.d("KGPT_AppTrigger", "  - Trigger: '" + t.getTrigger() + "' enabled: " + t.isEnabled());
@@ -604,12 +753,16 @@ public class TextParser implements ConfigChangeListener {
 
     @Override
     public void onCommandsChange(String commandsRaw) {
-        loadAvailableCommands();
+        availableCommands = null;
+        requestRebuild();
     }
 
     @Override
     public void onPatternsChange(String patternsRaw) {
-        updatePatterns(ParsePattern.decode(patternsRaw));
+        parsePatterns = ParsePattern.decode(patternsRaw);
+        // Saving patterns is the user's way to retry one that was disabled as too slow
+        disabledRegexes.clear();
+        requestRebuild();
     }
 
     @Override
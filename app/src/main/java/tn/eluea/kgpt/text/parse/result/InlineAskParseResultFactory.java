@@ -43,17 +43,26 @@ public class InlineAskParseResultFactory implements ParseResultFactory {
      * @return InlineAskParseResult if matched, null otherwise
      */
     public static InlineAskParseResult parse(String text, String triggerSymbol) {
-        if (text == null || text.isEmpty()) {
-            return null;
-        }
-
         // Get current prefix (may have been customized by user)
         String commandPrefix = InlineAskCommand.getPrefix();
+        return parse(text, compilePattern(triggerSymbol, commandPrefix), commandPrefix);
+    }
 
-        // Build pattern with the trigger symbol and current prefix
+    /**
+     * Build the inline ask pattern for a trigger symbol and /ask prefix.
+     */
+    public static Pattern compilePattern(String triggerSymbol, String commandPrefix) {
         String escapedSymbol = Pattern.quote(triggerSymbol);
-        Pattern pattern = Pattern
-                .compile("(.*)\\s*/" + Pattern.quote(commandPrefix) + "\\s+(.+)" + escapedSymbol + "$");
+        return Pattern.compile("(.*)\\s*/" + Pattern.quote(commandPrefix) + "\\s+(.+)" + escapedSymbol + "$");
+    }
+
+    /**
+     * Parse text for inline ask command with a pattern from {@link #compilePattern}.
+     */
+    public static InlineAskParseResult parse(String text, Pattern pattern, String commandPrefix) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
 
         Matcher matcher = pattern.matcher(text);
         if (matcher.find()) {
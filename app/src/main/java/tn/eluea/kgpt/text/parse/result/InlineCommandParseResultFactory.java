@@ -41,12 +41,27 @@ public class InlineCommandParseResultFactory {
         if (text == null || text.isEmpty() || availableCommands == null || availableCommands.isEmpty()) {
             return null;
         }
+        return parse(text, compilePattern(triggerSymbol), availableCommands);
+    }
 
+    /**
+     * Build the inline command pattern for a trigger symbol.
+     */
+    public static Pattern compilePattern(String triggerSymbol) {
         String escapedSymbol = Pattern.quote(triggerSymbol);
 
         // Pattern: (preserved text) /command (prompt)$
         // We need to find /command where command is in availableCommands
-        Pattern pattern = Pattern.compile("(.*)\\s*/([a-zA-Z0-9_]+)\\s+(.+)" + escapedSymbol + "$");
+        return Pattern.compile("(.*)\\s*/([a-zA-Z0-9_]+)\\s+(.+)" + escapedSymbol + "$");
+    }
+
+    /**
+     * Parse text for inline command with a pattern from {@link #compilePattern}.
+     */
+    public static InlineCommandParseResult parse(String text, Pattern pattern, Set<String> availableCommands) {
+        if (text == null || text.isEmpty() || availableCommands == null || availableCommands.isEmpty()) {
+            return null;
+        }
 
         Matcher matcher = pattern.matcher(text);
         if (matcher.find()) {
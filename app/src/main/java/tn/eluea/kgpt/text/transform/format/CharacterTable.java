@@ -1,61 +0,0 @@
-/*
- * Copyright (c) 2025 Amr Aldeeb @Eluea
- * GitHub: https://github.com/Eluea
- * Telegram: https://t.me/Eluea
- *
- * This file is part of KGPT.
- * Based on original code from KeyboardGPT by Mino260806.
- * Original: https://github.com/Mino260806/KeyboardGPT
- *
- * Licensed under the GPLv3.
- */
-package tn.eluea.kgpt.text.transform.format;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-public class CharacterTable {
-    final static Pattern PATTERN_REPLACEMENT = Pattern.compile("([^ ]+) ([^ ]+)");
-
-    private Map<String, String> mCharMap;
-
-    public CharacterTable(Map<String, String> charMap) {
-        mCharMap = charMap;
-    }
-
-    public static CharacterTable fromFile(File file) {
-        Scanner scanner = null;
-        try {
-            scanner = new Scanner(file);
-        } catch (FileNotFoundException e) {
-            return new CharacterTable(null);
-        }
-
-        HashMap<String, String> charMap = new HashMap<>();
-        while (scanner.hasNext()) {
-            String line = scanner.nextLine();
-            Matcher matcher = PATTERN_REPLACEMENT.matcher(line);
-            if (matcher.find()) {
-                if (matcher.groupCount() >= 2) {
-                    String character = matcher.group(1);
-                    String replacement = matcher.group(2);
-
-                    charMap.put(character, replacement);
-                }
-            }
-        }
-
-        return new CharacterTable(charMap);
-    }
-
-    public String replace(char c) {
-        if (mCharMap.containsKey(String.valueOf(c)))
-            return mCharMap.get(String.valueOf(c));
-        return String.valueOf(c);
-    }
-}
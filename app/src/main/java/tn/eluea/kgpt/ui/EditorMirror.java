@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+/**
+ * Local copy of the text around the cursor of the focused field, kept in a gap buffer and
+ * updated from the InputConnection calls the keyboard makes, so most keystrokes need no
+ * binder round trip to read the text back.
+ *
+ * The gap sits at the cursor, so typing and deleting there is O(1). The mirror holds a
+ * window of the document; {@link #origin} is the absolute offset of its first char when
+ * known. Any edit the mirror can't follow exactly (it reaches outside the window, or the
+ * position is unknown) invalidates it, and IMSController reloads it over IPC.
+ */
+final class EditorMirror {
+    static final int UNKNOWN = -1;
+
+    // Window kept around the cursor; trimmed with slack so trimming is amortized
+    private static final int KEEP_BEFORE = 8192;
+    private static final int KEEP_AFTER = 2048;
+
+    private char[] buf = new char[256];
+    private int gapStart = 0;
+    private int gapEnd = buf.length;
+
+    private boolean valid = false;
+    // Absolute offset of index 0, or UNKNOWN
+    private int origin = UNKNOWN;
+    // Whether index 0 / the end are the real start / end of the document
+    private boolean atDocStart = false;
+    private boolean atDocEnd = false;
+
+    // Selection is [cursor - selLength, cursor]; composing region in mirror indices
+    private int selLength = 0;
+    private int composingStart = UNKNOWN;
+    private int composingEnd = UNKNOWN;
+
+    boolean isValid() {
+        return valid;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    int length() {
+        return buf.length - (gapEnd - gapStart);
+    }
+
+    int cursor() {
+        return gapStart;
+    }
+
+    /** Absolute offset of the first char held, or UNKNOWN. */
+    int origin() {
+        return origin;
+    }
+
+    boolean isAtDocStart() {
+        return atDocStart;
+    }
+
+    boolean isAtDocEnd() {
+        return atDocEnd;
+    }
+
+    /** Absolute cursor position in the document, or UNKNOWN. */
+    int absoluteCursor() {
+        return origin == UNKNOWN ? UNKNOWN : origin + gapStart;
+    }
+
+    int absoluteSelectionStart() {
+        return origin == UNKNOWN ? UNKNOWN : origin + gapStart - selLength;
+    }
+
+    /**
+     * Reload from text read over IPC.
+     *
+     * @param absCursor absolute cursor position, or UNKNOWN
+     */
+    void load(CharSequence before, CharSequence after, int absCursor, boolean wholeBefore, boolean wholeAfter) {
+        int b = before != null ? before.length() : 0;
+        int a = after != null ? after.length() : 0;
+        int cap = Math.max(256, Integer.highestOneBit(Math.max(1, b + a)) << 1);
+        buf = new char[cap];
+        for (int i = 0; i < b; i++) buf[i] = before.charAt(i);
+        gapStart = b;
+        gapEnd = cap - a;
+        for (int i = 0; i < a; i++) buf[gapEnd + i] = after.charAt(i);
+        origin = absCursor >= 0 ? absCursor - b : (wholeBefore ? 0 : UNKNOWN);
+        atDocStart = wholeBefore || origin == 0;
+        atDocEnd = wholeAfter;
+        selLength = 0;
+        composingStart = composingEnd = UNKNOWN;
+        valid = true;
+    }
+
+    /** Adopt the editor's absolute cursor when it wasn't known at load time. */
+    void adoptAbsoluteCursor(int absCursor) {
+        if (!valid || origin != UNKNOWN || absCursor < gapStart) return;
+        origin = absCursor - gapStart;
+        if (origin == 0) atDocStart = true;
+    }
+
+    // --- InputConnection edits ---
+
+    void commitText(CharSequence text, int newCursorPosition) {
+        if (!valid) return;
+        int[] r = replacementRange();
+        int start = r[0];
+        replace(start, r[1], text);
+        composingStart = composingEnd = UNKNOWN;
+        placeCursor(start, text != null ? text.length() : 0, newCursorPosition);
+    }
+
+    void setComposingText(CharSequence text, int newCursorPosition) {
+        if (!valid) return;
+        int[] r = replacementRange();
+        int start = r[0];
+        int len = text != null ? text.length() : 0;
+        replace(start, r[1], text);
+        if (!valid) return;
+        composingStart = start;
+        composingEnd = start + len;
+        placeCursor(start, len, newCursorPosition);
+    }
+
+    void finishComposingText() {
+        composingStart = composingEnd = UNKNOWN;
+    }
+
+    void deleteSurroundingText(int before, int after) {
+        if (!valid) return;
+        int selStart = gapStart - selLength;
+        int selEnd = gapStart;
+        before = Math.max(0, before);
+        after = Math.max(0, after);
+        if (before > selStart && !atDocStart) {
+            // Reaches past the start of the window; we can't tell how much really went
+            invalidate();
+            return;
+        }
+        if (after > length() - selEnd && !atDocEnd) {
+            invalidate();
+            return;
+        }
+        int delBefore = Math.min(before, selStart);
+        int delAfter = Math.min(after, length() - selEnd);
+        int keepSel = selLength;
+        // After the selection first so the indices before it stay put
+        if (delAfter > 0) remove(selEnd, selEnd + delAfter);
+        if (delBefore > 0) remove(selStart - delBefore, selStart);
+        moveGap(selEnd - delBefore);
+        selLength = keepSel;
+    }
+
+    void deleteSurroundingTextInCodePoints(int beforeCp, int afterCp) {
+        if (!valid) return;
+        int selStart = gapStart - selLength;
+        int selEnd = gapStart;
+        int before = 0;
+        int cpBefore = 0;
+        for (int i = selStart; cpBefore < beforeCp && i > 0; cpBefore++) {
+            int step = i >= 2 && Character.isLowSurrogate(charAt(i - 1))
+                    && Character.isHighSurrogate(charAt(i - 2)) ? 2 : 1;
+            i -= step;
+            before += step;
+        }
+        // Compared in code points: a pair is two chars but only one of the code points asked for
+        if (cpBefore < beforeCp && !atDocStart) {
+            invalidate();
+            return;
+        }
+        int after = 0;
+        int cpAfter = 0;
+        int len = length();
+        for (int i = selEnd; cpAfter < afterCp && i < len; cpAfter++) {
+            int step = i + 1 < len && Character.isHighSurrogate(charAt(i))
+                    && Character.isLowSurrogate(charAt(i + 1)) ? 2 : 1;
+            i += step;
+            after += step;
+        }
+        if (cpAfter < afterCp && !atDocEnd) {
+            invalidate();
+            return;
+        }
+        deleteSurroundingText(before, after);
+    }
+
+    /** replaceText(start, end, text, newCursorPosition) with absolute positions. */
+    void replaceText(int absStart, int absEnd, CharSequence text, int newCursorPosition) {
+        if (!valid) return;
+        if (origin == UNKNOWN) {
+            invalidate();
+            return;
+        }
+        int start = Math.min(absStart, absEnd) - origin;
+        int end = Math.max(absStart, absEnd) - origin;
+        if (start < 0 || end > length()) {
+            invalidate();
+            return;
+        }
+        replace(start, end, text);
+        composingStart = composingEnd = UNKNOWN;
+        placeCursor(start, text != null ? text.length() : 0, newCursorPosition);
+    }
+
+    /** The editor reported a selection; true if the mirror already agrees with it. */
+    boolean matchesSelection(int absSelStart, int absSelEnd) {
+        if (!valid || origin == UNKNOWN) return false;
+        return absoluteSelectionStart() == Math.min(absSelStart, absSelEnd)
+                && absoluteCursor() == Math.max(absSelStart, absSelEnd);
+    }
+
+    // --- reads ---
+
+    char charAt(int index) {
+        return index < gapStart ? buf[index] : buf[index + (gapEnd - gapStart)];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length());
+        sb.append(buf, 0, gapStart);
+        sb.append(buf, gapEnd, buf.length - gapEnd);
+        return sb.toString();
+    }
+
+    /**
+     * Compare the mirror with {@code sample}, the result of getTextBeforeCursor(requested).
+     * A shorter sample means the editor has no more text before the cursor, so the mirror
+     * must not either.
+     */
+    boolean matchesTextBeforeCursor(CharSequence sample, int requested) {
+        if (!valid || sample == null) return false;
+        int n = sample.length();
+        if (n > gapStart) return false;
+        if (n < requested && n != gapStart) return false;
+        int from = gapStart - n;
+        for (int i = 0; i < n; i++) {
+            if (buf[from + i] != sample.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // --- gap buffer internals ---
+
+    private int[] replacementRange() {
+        if (composingStart != UNKNOWN && composingEnd != UNKNOWN) {
+            return new int[] { Math.min(composingStart, composingEnd), Math.max(composingStart, composingEnd) };
+        }
+        return new int[] { gapStart - selLength, gapStart };
+    }
+
+    private void replace(int start, int end, CharSequence text) {
+        int len = length();
+        if (start < 0 || end > len || start > end) {
+            invalidate();
+            return;
+        }
+        if (end > start) remove(start, end);
+        moveGap(start);
+        int n = text != null ? text.length() : 0;
+        ensureGap(n);
+        for (int i = 0; i < n; i++) buf[gapStart++] = text.charAt(i);
+        selLength = 0;
+        shiftComposing(start, end, n);
+    }
+
+    /** Delete [start, end); leaves the gap (cursor) at {@code start}. */
+    private void remove(int start, int end) {
+        moveGap(end);
+        gapStart = start;
+        shiftComposing(start, end, 0);
+    }
+
+    private void shiftComposing(int start, int end, int insertedLen) {
+        if (composingStart == UNKNOWN) return;
+        int delta = insertedLen - (end - start);
+        if (composingStart >= end) {
+            composingStart += delta;
+            composingEnd += delta;
+        } else if (composingEnd > start) {
+            // The edit overlapped the composing span; the editor drops it too
+            composingStart = composingEnd = UNKNOWN;
+        }
+    }
+
+    private void placeCursor(int start, int textLen, int newCursorPosition) {
+        int target = newCursorPosition > 0 ? start + textLen + newCursorPosition - 1 : start + newCursorPosition;
+        if (target < 0 || target > length()) {
+            invalidate();
+            return;
+        }
+        moveGap(target);
+        trim();
+    }
+
+    private void moveGap(int index) {
+        if (index == gapStart) return;
+        int gap = gapEnd - gapStart;
+        if (index < gapStart) {
+            int n = gapStart - index;
+            System.arraycopy(buf, index, buf, index + gap, n);
+        } else {
+            int n = index - gapStart;
+            System.arraycopy(buf, gapEnd, buf, gapStart, n);
+        }
+        gapStart = index;
+        gapEnd = index + gap;
+    }
+
+    private void ensureGap(int needed) {
+        if (gapEnd - gapStart >= needed) return;
+        int len = length();
+        int cap = Math.max(buf.length * 2, len + needed + 64);
+        char[] next = new char[cap];
+        int afterLen = buf.length - gapEnd;
+        System.arraycopy(buf, 0, next, 0, gapStart);
+        System.arraycopy(buf, gapEnd, next, cap - afterLen, afterLen);
+        gapEnd = cap - afterLen;
+        buf = next;
+    }
+
+    /**
+     * Drop text far from the cursor: before it once it is twice the window, so trims are
+     * rare; after it beyond the window, keeping the text right after the cursor.
+     */
+    private void trim() {
+        int excessBefore = gapStart - KEEP_BEFORE;
+        if (excessBefore > KEEP_BEFORE) {
+            System.arraycopy(buf, excessBefore, buf, 0, KEEP_BEFORE);
+            gapStart = KEEP_BEFORE;
+            if (origin != UNKNOWN) origin += excessBefore;
+            atDocStart = false;
+            if (composingStart != UNKNOWN) {
+                composingStart -= excessBefore;
+                composingEnd -= excessBefore;
+                if (composingStart < 0) composingStart = composingEnd = UNKNOWN;
+            }
+            selLength = Math.min(selLength, gapStart);
+        }
+        int afterLen = buf.length - gapEnd;
+        int excessAfter = afterLen - KEEP_AFTER;
+        if (excessAfter > 0) {
+            // The after-text ends at the buffer end; move its head there and cut its tail
+            System.arraycopy(buf, gapEnd, buf, buf.length - KEEP_AFTER, KEEP_AFTER);
+            gapEnd = buf.length - KEEP_AFTER;
+            atDocEnd = false;
+            if (composingEnd != UNKNOWN && composingEnd > length()) composingStart = composingEnd = UNKNOWN;
+        }
+    }
+}
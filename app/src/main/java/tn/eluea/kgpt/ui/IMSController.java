@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import tn.eluea.kgpt.BuildConfig;
+import tn.eluea.kgpt.core.ai.GenerationTarget;
 import tn.eluea.kgpt.listener.InputEventListener;
 import android.content.ClipData;
 import android.content.ClipboardManager;
@@ -36,6 +37,7 @@ public class IMSController {
     private InputMethodService ims = null;
     private String typedText = "";
     private int cursor = 0;
+    private volatile int textRevision = 0;
     private volatile boolean inputNotify = false;
     private volatile boolean inputLock = false;
     private volatile long inputLockStartTime = 0;
@@ -53,9 +55,25 @@ public class IMSController {
     private final Handler inputEventHandler = new Handler(Looper.getMainLooper());
     private volatile boolean inputEventScheduled = false;
     private volatile InputConnection lastInputEventIC = null;
-    private static final int INPUT_EVENT_MAX_BEFORE = 8192;
     private static final long INPUT_EVENT_DEBOUNCE_MS = 20;
 
+    // Text read around the cursor. The parser sizes it to its triggers (TextParser#getWindowBefore);
+    // the defaults are the old fixed window, used until a parser is attached.
+    private static final int DEFAULT_WINDOW_BEFORE = 8192;
+    private static final int DEFAULT_WINDOW_AFTER = 2048;
+    // Read on demand when a trigger matched but its prompt runs past the window
+    private static final int WIDE_WINDOW_BEFORE = 32 * 1024;
+    private static final int WIDE_WINDOW_AFTER = 8192;
+    private volatile java.util.function.IntSupplier windowBefore = () -> DEFAULT_WINDOW_BEFORE;
+    private volatile java.util.function.IntSupplier windowAfter = () -> DEFAULT_WINDOW_AFTER;
+
+    // Where typedText sits in the document: absolute offset of its first char (-1 if unknown),
+    // whether it reaches the start / end, and whether it came from a wide read
+    private int textOrigin = -1;
+    private boolean textFromDocStart = false;
+    private boolean textToDocEnd = false;
+    private boolean textIsWide = false;
+
     // Shadow buffer: supports editors that return null for getTextBeforeCursor/getExtractedText.
     private final StringBuilder shadow = new StringBuilder();
     private boolean composingActive = false;
@@ -66,6 +84,16 @@ public class IMSController {
     // settings dialogs (or another app) may leak into the next app and break trigger parsing.
     private String shadowPackage = null;
 
+    // Package of the field the keyboard is attached to, taken from onStartInput so the
+    // keystroke path doesn't ask the service for its EditorInfo on every event
+    private String targetPackage = null;
+    private boolean targetPackageKnown = false;
+
+    // Incremental copy of the focused field, fed by the same InputConnection hooks. While it is
+    // valid a keystroke costs one short getTextBeforeCursor() to confirm it, not a full re-read.
+    private final EditorMirror mirror = new EditorMirror();
+    private static final int MIRROR_SAMPLE_CHARS = 32;
+
 
     private final StringBuilder pendingCommitBuffer = new StringBuilder();
     private int pendingDeleteBefore = 0;
@@ -148,6 +176,48 @@ public class IMSController {
 
     private List<InputEventListener> mListeners = new ArrayList<>();
 
+    // Field the keyboard is attached to. Each onStartInput bumps the generation counter.
+    private GenerationTarget currentTarget = GenerationTarget.UNKNOWN;
+    private boolean targetDetached = false;
+    private int inputGeneration = 0;
+    // Fields with generations in flight; lock/notify gating only applies while one is focused
+    private final java.util.Map<String, Integer> busyFields = new java.util.HashMap<>();
+    // Output for fields that are not focused, replayed when the user returns to them
+    private final java.util.Map<String, TargetQueue> targetQueues = new java.util.HashMap<>();
+    private static final int TARGET_QUEUE_MAX_CHARS = 64 * 1024;
+
+    private static final class TargetQueue {
+        int deleteBefore = 0;
+        final StringBuilder text = new StringBuilder();
+        // Chars past TARGET_QUEUE_MAX_CHARS. Once the queue overflows nothing more is
+        // appended, so what reaches the field is a prefix of the output, never one with a
+        // hole in the middle.
+        int dropped = 0;
+
+        void append(String s) {
+            if (dropped == 0 && text.length() + s.length() <= TARGET_QUEUE_MAX_CHARS) {
+                text.append(s);
+            } else {
+                dropped += s.length();
+            }
+        }
+
+        void delete(int count) {
+            // The newest chars are the dropped ones
+            int fromDropped = Math.min(count, dropped);
+            dropped -= fromDropped;
+            count -= fromDropped;
+            int fromText = Math.min(count, text.length());
+            text.setLength(text.length() - fromText);
+            // Queued text was never written, so only the remainder reaches the field
+            if (text.length() == 0) deleteBefore += count - fromText;
+        }
+
+        boolean isEmpty() {
+            return deleteBefore == 0 && text.length() == 0 && dropped == 0;
+        }
+    }
+
     public IMSController() {
     }
 
@@ -167,46 +237,37 @@ public class IMSController {
         if (ims == null)
             return;
 
+        // The mirror followed the keyboard's own edits; if it agrees with the editor there is
+        // nothing to read back. A pending input event will publish it after the debounce.
+        if (mirror.isValid()) {
+            if (!inputEventScheduled) mirror.adoptAbsoluteCursor(newSelEnd);
+            if (mirror.matchesSelection(newSelStart, newSelEnd)) {
+                if (!inputEventScheduled) publishMirror();
+                return;
+            }
+            if (inputEventScheduled) return;
+            // Cursor jump (tap, selection, edit by the app): resync below
+            mirror.invalidate();
+        }
+
         InputConnection ic = ims.getCurrentInputConnection();
         if (ic == null) {
             return;
         }
 
-        // Primary path: prefer ExtractedText (full buffer when supported by the editor)
+        // Only the window the parser needs; a matched trigger asks for more (requestWiderText)
         try {
-            ExtractedText extractedText = ic.getExtractedText(new ExtractedTextRequest(), 0);
-            if (extractedText != null && extractedText.text != null) {
-                typedText = extractedText.text.toString();
-                int selEnd = extractedText.selectionEnd;
-                int candidateCursor = (selEnd >= 0 ? selEnd : newSelEnd);
-                cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
-                notifyTextUpdate();
+            int absCursor = Math.max(newSelStart, newSelEnd);
+            if (readWindow(ic, windowBefore.getAsInt(), windowAfter.getAsInt(), absCursor,
+                    newSelStart != newSelEnd, false)) {
                 return;
             }
         } catch (Throwable ignored) {
         }
 
-        // Fallback: some custom editors return null for getExtractedText().
-        // Build a local buffer around the cursor using getTextBefore/AfterCursor so triggers still work.
+        // Fallback: some custom editors only implement getExtractedText()
         try {
-            final int MAX_BEFORE = 8192;
-            final int MAX_AFTER = 1024;
-
-            CharSequence before = ic.getTextBeforeCursor(MAX_BEFORE, 0);
-            CharSequence after = ic.getTextAfterCursor(MAX_AFTER, 0);
-
-            if (before == null && after == null) {
-                return;
-            }
-
-            StringBuilder sb = new StringBuilder();
-            if (before != null) sb.append(before);
-            int localCursor = sb.length();
-            if (after != null) sb.append(after);
-
-            typedText = sb.toString();
-            cursor = localCursor;
-            notifyTextUpdate();
+            readExtracted(ic, windowBefore.getAsInt() + windowAfter.getAsInt(), newSelEnd, false);
         } catch (Throwable ignored) {
         }
     }
@@ -222,8 +283,7 @@ public class IMSController {
         if (inputNotify) return;
         if (ims == null) return;
         try {
-			android.view.inputmethod.EditorInfo ei = ims.getCurrentInputEditorInfo();
-			String pkg = (ei != null) ? ei.packageName : null;
+			String pkg = getCurrentTargetPackageName();
 			if (pkg != null) {
 				if (tn.eluea.kgpt.BuildConfig.APPLICATION_ID.equals(pkg)) {
 					// We're typing inside KGPT's own UI. Clear shadow so it won't leak into other apps.
@@ -256,35 +316,32 @@ public class IMSController {
             }
             if (current == null) return;
 
+            // The mirror already applied this edit; a short read confirms the editor agrees
+            if (mirror.isValid()) {
+                try {
+                    CharSequence sample = current.getTextBeforeCursor(MIRROR_SAMPLE_CHARS, 0);
+                    if (mirror.matchesTextBeforeCursor(sample, MIRROR_SAMPLE_CHARS)) {
+                        publishMirror();
+                        return;
+                    }
+                } catch (Throwable ignored) {}
+                mirror.invalidate();
+            }
+
             // Prefer a local buffer around the cursor: it works in many editors even when getExtractedText() returns null.
             // IMPORTANT: include after-cursor text when possible so UI layers (e.g., Quick Jump menu) can read the
             // "current line" even if the cursor is placed at the beginning of the word/line.
             try {
-                final int MAX_BEFORE = INPUT_EVENT_MAX_BEFORE;
-                final int MAX_AFTER = 2048;
-
-                CharSequence before = current.getTextBeforeCursor(MAX_BEFORE, 0);
-                CharSequence after = current.getTextAfterCursor(MAX_AFTER, 0);
-
-                if (before != null || after != null) {
-                    String b = before != null ? before.toString() : "";
-                    String a = after != null ? after.toString() : "";
-                    typedText = b + a;
-                    cursor = b.length();
-                    notifyTextUpdate();
+                if (readWindow(current, windowBefore.getAsInt(), windowAfter.getAsInt(),
+                        EditorMirror.UNKNOWN, false, false)) {
                     return;
                 }
             } catch (Throwable ignored) {}
 
             // Fallback to ExtractedText (some editors only support this)
             try {
-                ExtractedText extractedText = current.getExtractedText(new ExtractedTextRequest(), 0);
-                if (extractedText != null && extractedText.text != null) {
-                    typedText = extractedText.text.toString();
-                    int selEnd = extractedText.selectionEnd;
-                    int candidateCursor = (selEnd >= 0 ? selEnd : typedText.length());
-                    cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
-                    notifyTextUpdate();
+                if (readExtracted(current, windowBefore.getAsInt() + windowAfter.getAsInt(), -1, false)) {
+                    return;
                 }
             } catch (Throwable ignored) {}
 
@@ -293,6 +350,7 @@ public class IMSController {
 if (shadow.length() > 0) {
     typedText = shadow.toString();
     cursor = typedText.length();
+    setTextBounds(-1, false, true, false);
     notifyTextUpdate();
 }
         }, INPUT_EVENT_DEBOUNCE_MS);
@@ -301,12 +359,152 @@ if (shadow.length() > 0) {
 
 
 private void trimShadowIfNeeded() {
-    if (shadow.length() > SHADOW_MAX) {
+    // Let it grow to twice the cap before cutting, so the copy isn't paid on every keystroke
+    if (shadow.length() > SHADOW_MAX * 2) {
         shadow.delete(0, shadow.length() - SHADOW_MAX);
     }
 }
 
+    /** Hand the mirror to listeners, unless it is exactly what they saw last. */
+    private void publishMirror() {
+        int c = mirror.cursor();
+        if (c == cursor && typedText != null && typedText.length() == mirror.length()) {
+            String text = mirror.toString();
+            if (text.equals(typedText)) return;
+            typedText = text;
+        } else {
+            typedText = mirror.toString();
+        }
+        cursor = c;
+        setTextBounds(mirror.origin(), mirror.isAtDocStart(), mirror.isAtDocEnd(), false);
+        notifyTextUpdate();
+    }
+
+    /**
+     * Read up to {@code before}/{@code after} chars around the cursor into the mirror and
+     * publish them.
+     *
+     * @param absCursor the editor's cursor if known, else EditorMirror.UNKNOWN
+     * @return false if the editor gave nothing back
+     */
+    private boolean readWindow(InputConnection ic, int before, int after, int absCursor,
+            boolean hasSelection, boolean wide) {
+        CharSequence b = ic.getTextBeforeCursor(before, 0);
+        CharSequence a = ic.getTextAfterCursor(after, 0);
+        if (b == null && a == null) return false;
+
+        boolean wholeBefore = b != null && b.length() < before;
+        boolean wholeAfter = a != null && a.length() < after;
+        if (hasSelection) {
+            // getTextBeforeCursor() stops at the selection start; put the selection back
+            CharSequence sel = ic.getSelectedText(0);
+            if (sel != null && sel.length() > 0) {
+                b = b != null ? new StringBuilder(b).append(sel) : sel;
+            }
+        }
+        mirror.load(b, a, absCursor, wholeBefore, wholeAfter);
+        // The mirror only tracks a caret; selections are re-read when they change
+        if (hasSelection) mirror.invalidate();
+
+        typedText = mirror.toString();
+        cursor = mirror.cursor();
+        setTextBounds(mirror.origin(), mirror.isAtDocStart(), mirror.isAtDocEnd(), wide);
+        notifyTextUpdate();
+        return true;
+    }
+
+    /**
+     * ExtractedText fallback for editors without getTextBeforeCursor(). {@code maxChars} is only
+     * a hint (0 = whole text); many editors return everything regardless.
+     */
+    private boolean readExtracted(InputConnection ic, int maxChars, int fallbackCursor, boolean wide) {
+        ExtractedTextRequest request = new ExtractedTextRequest();
+        request.hintMaxChars = maxChars;
+        ExtractedText extractedText = ic.getExtractedText(request, 0);
+        if (extractedText == null || extractedText.text == null) return false;
+
+        typedText = extractedText.text.toString();
+        int selEnd = extractedText.selectionEnd;
+        int candidateCursor = selEnd >= 0 ? selEnd : (fallbackCursor >= 0 ? fallbackCursor : typedText.length());
+        cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
+        loadMirror(extractedText, cursor);
+        int start = Math.max(0, extractedText.startOffset);
+        setTextBounds(start, start == 0, maxChars <= 0 || typedText.length() < maxChars, wide);
+        notifyTextUpdate();
+        return true;
+    }
+
+    private void setTextBounds(int origin, boolean fromDocStart, boolean toDocEnd, boolean wide) {
+        textOrigin = origin;
+        textFromDocStart = fromDocStart;
+        textToDocEnd = toDocEnd;
+        textIsWide = wide;
+    }
+
+    /**
+     * Size the window read on each update. Called once the parser exists; it knows how long
+     * the configured triggers and prompts are.
+     */
+    public void setExtractionWindow(java.util.function.IntSupplier before, java.util.function.IntSupplier after) {
+        windowBefore = before;
+        windowAfter = after;
+    }
+
+    /**
+     * A trigger matched but its prompt may run past the window: read a much wider one and
+     * publish it, so the parser sees the text again.
+     *
+     * @return false if the current text already came from a wide read (or nothing could be
+     *         read); the caller should go on with what it has
+     */
+    public boolean requestWiderText() {
+        if (textIsWide || ims == null) return false;
+        InputConnection ic = getIC();
+        if (ic == null) return false;
+        int absCursor = textOrigin >= 0 ? textOrigin + cursor : EditorMirror.UNKNOWN;
+        try {
+            if (readWindow(ic, WIDE_WINDOW_BEFORE, WIDE_WINDOW_AFTER, absCursor, false, true)) {
+                return true;
+            }
+        } catch (Throwable ignored) {
+        }
+        try {
+            return readExtracted(ic, 0, -1, true);
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    /** Absolute offset in the document of typedText's first char, or -1 if unknown. */
+    public int getTextOrigin() {
+        return textOrigin;
+    }
+
+    /** Whether the last published text starts at the start of the document. */
+    public boolean isTextFromDocStart() {
+        return textFromDocStart;
+    }
+
+    /** Whether the last published text runs to the end of the document. */
+    public boolean isTextToDocEnd() {
+        return textToDocEnd;
+    }
+
+    /** Reload the mirror from an ExtractedText read; {@code selEnd} is relative to its text. */
+    private void loadMirror(ExtractedText extractedText, int selEnd) {
+        try {
+            CharSequence text = extractedText.text;
+            int start = Math.max(0, extractedText.startOffset);
+            mirror.load(text.subSequence(0, selEnd), text.subSequence(selEnd, text.length()),
+                    start + selEnd, start == 0, false);
+            if (extractedText.selectionStart != extractedText.selectionEnd) mirror.invalidate();
+        } catch (Throwable t) {
+            mirror.invalidate();
+        }
+    }
+
     private String getCurrentTargetPackageName() {
+        if (targetPackageKnown) return targetPackage;
         try {
             if (ims == null) return null;
             EditorInfo ei = ims.getCurrentInputEditorInfo();
@@ -354,10 +552,15 @@ private void trimShadowIfNeeded() {
  * (debounced) to avoid duplicate trigger firing.
  */
 public void onInputEventText(CharSequence cs, boolean composing) {
-    if (inputNotify) return;
+    onInputEventText(cs, composing, 1);
+}
+
+public void onInputEventText(CharSequence cs, boolean composing, int newCursorPosition) {
+    if (inputNotify) {
+        mirror.invalidate();
+        return;
+    }
     if (cs == null) return;
-    String s = cs.toString();
-    if (s.isEmpty()) return;
 
 	String pkg = getCurrentTargetPackageName();
 	if (isKgptPackage(pkg)) {
@@ -367,6 +570,16 @@ public void onInputEventText(CharSequence cs, boolean composing) {
 	}
 	ensureShadowForPackage(pkg);
 
+    // An empty composing text still clears the composing span in the editor
+    if (composing) {
+        mirror.setComposingText(cs, newCursorPosition);
+    } else {
+        mirror.commitText(cs, newCursorPosition);
+    }
+
+    String s = cs.toString();
+    if (s.isEmpty()) return;
+
     // If we were composing, replace the previous composing tail with the new one
     if (composingActive && composingLen > 0 && shadow.length() >= composingLen) {
         int start = Math.max(0, shadow.length() - composingLen);
@@ -387,7 +600,10 @@ public void onInputEventText(CharSequence cs, boolean composing) {
 }
 
 public void onInputEventFinishComposing() {
-    if (inputNotify) return;
+    if (inputNotify) {
+        mirror.invalidate();
+        return;
+    }
 
     String pkg = getCurrentTargetPackageName();
     if (isKgptPackage(pkg)) {
@@ -397,12 +613,20 @@ public void onInputEventFinishComposing() {
     }
     ensureShadowForPackage(pkg);
 
+    mirror.finishComposingText();
     composingActive = false;
     composingLen = 0;
 }
 
 public void onInputEventDelete(int before, int after) {
-    if (inputNotify) return;
+    onInputEventDelete(before, after, false);
+}
+
+public void onInputEventDelete(int before, int after, boolean inCodePoints) {
+    if (inputNotify) {
+        mirror.invalidate();
+        return;
+    }
     before = Math.max(0, before);
     after = Math.max(0, after);
 
@@ -414,6 +638,12 @@ public void onInputEventDelete(int before, int after) {
     }
     ensureShadowForPackage(pkg);
 
+    if (inCodePoints) {
+        mirror.deleteSurroundingTextInCodePoints(before, after);
+    } else {
+        mirror.deleteSurroundingText(before, after);
+    }
+
     if (before > 0 && shadow.length() > 0) {
         int start = Math.max(0, shadow.length() - before);
         shadow.delete(start, shadow.length());
@@ -425,7 +655,14 @@ public void onInputEventDelete(int before, int after) {
 }
 
 public void onInputEventReplace(int start, int end, CharSequence cs) {
-    if (inputNotify) return;
+    onInputEventReplace(start, end, cs, 1);
+}
+
+public void onInputEventReplace(int start, int end, CharSequence cs, int newCursorPosition) {
+    if (inputNotify) {
+        mirror.invalidate();
+        return;
+    }
 
     String pkg = getCurrentTargetPackageName();
     if (isKgptPackage(pkg)) {
@@ -435,6 +672,7 @@ public void onInputEventReplace(int start, int end, CharSequence cs) {
     }
     ensureShadowForPackage(pkg);
 
+    mirror.replaceText(start, end, cs, newCursorPosition);
     composingActive = false;
     composingLen = 0;
     if (cs != null) {
@@ -452,6 +690,12 @@ public void resetShadow() {
     try { shadow.setLength(0); } catch (Throwable ignored) {}
     composingActive = false;
     composingLen = 0;
+    mirror.invalidate();
+}
+
+/** The keyboard changed the text in a way the mirror doesn't model (commitCompletion...). */
+public void onInputEventUntracked() {
+    mirror.invalidate();
 }
 
 /**
@@ -475,7 +719,16 @@ public void addListener(InputEventListener listener) {
         mListeners.remove(listener);
     }
 
+    /**
+     * Bumped on every text update handed to listeners (main thread). Lets work done on a
+     * snapshot elsewhere check that the editor hasn't moved on since.
+     */
+    public int getTextRevision() {
+        return textRevision;
+    }
+
     private void notifyTextUpdate() {
+        textRevision++;
         for (InputEventListener listener : mListeners) {
             listener.onTextUpdate(typedText, cursor);
         }
@@ -483,13 +736,16 @@ public void addListener(InputEventListener listener) {
 
     public void registerService(InputMethodService ims) {
         this.ims = ims;
+        targetPackageKnown = false;
     }
 
     public void unregisterService(InputMethodService ims) {
         this.ims = null;
+        targetPackageKnown = false;
         try { shadow.setLength(0); } catch (Throwable ignored) {}
         composingActive = false;
         composingLen = 0;
+        mirror.invalidate();
     }
 
     public void delete(int count) {
@@ -563,6 +819,29 @@ public void addListener(InputEventListener listener) {
 
 
 
+    /**
+     * Open a batch edit on the current InputConnection so several edits reach the
+     * editor as a single update. Pass the returned connection to {@link #endBatchEdit}.
+     *
+     * @return the connection the batch was opened on, or null if none is available.
+     */
+    public InputConnection beginBatchEdit() {
+        InputConnection ic = getIC();
+        if (ic == null) return null;
+        try {
+            ic.beginBatchEdit();
+            return ic;
+        } catch (Throwable t) {
+            Logger.error("IMS beginBatchEdit failed: " + t.getMessage());
+            return null;
+        }
+    }
+
+    public void endBatchEdit(InputConnection ic) {
+        if (ic == null) return;
+        try { ic.endBatchEdit(); } catch (Throwable ignored) {}
+    }
+
     public void commit(String text) {
         if (text == null || text.isEmpty()) {
             return;
@@ -644,6 +923,132 @@ public void addListener(InputEventListener listener) {
         inputLockStartTime = 0;
         timeoutHandler.removeCallbacks(lockTimeoutRunnable);
     }
+    // -----------------------------
+    // Generation targets
+    // -----------------------------
+
+    /** Called after InputMethodService.onStartInput; binds the controller to the new field. */
+    public void onStartInput(EditorInfo info) {
+        inputGeneration++;
+        // Without an EditorInfo, fall back to asking the service per event
+        targetPackage = info != null ? info.packageName : null;
+        targetPackageKnown = info != null;
+        mirror.invalidate();
+        GenerationTarget previous = currentTarget;
+        boolean wasDetached = targetDetached;
+        currentTarget = info == null ? GenerationTarget.UNKNOWN
+                : new GenerationTarget(info.packageName, info.fieldId, info.fieldName, inputGeneration);
+        targetDetached = false;
+
+        if (wasDetached || !currentTarget.isSameField(previous)) {
+            applyTargetGate();
+        }
+        TargetQueue q = targetQueues.get(currentTarget.fieldKey());
+        if (q != null && !q.isEmpty()) {
+            // Let the editor finish binding its InputConnection first
+            deferredHandler.post(this::flushTargetQueue);
+        }
+    }
+
+    /** Called after InputMethodService.onFinishInput; output is queued until a field is bound again. */
+    public void onFinishInput() {
+        targetDetached = true;
+        mirror.invalidate();
+        applyTargetGate();
+    }
+
+    public GenerationTarget getCurrentTarget() {
+        return currentTarget;
+    }
+
+    /** True if text committed for {@code target} would land in the field the user is in. */
+    public boolean isFocused(GenerationTarget target) {
+        return !targetDetached && target != null && target.isSameField(currentTarget);
+    }
+
+    /**
+     * Mark a generation as running (or no longer running) in {@code target}'s field. While
+     * that field is focused the input lock is held and input notifications are suppressed.
+     */
+    public void setTargetBusy(GenerationTarget target, boolean busy) {
+        if (target == null) return;
+        String key = target.fieldKey();
+        Integer n = busyFields.get(key);
+        int count = (n == null ? 0 : n) + (busy ? 1 : -1);
+        if (count > 0) {
+            busyFields.put(key, count);
+        } else {
+            busyFields.remove(key);
+        }
+        if (isFocused(target)) {
+            applyTargetGate();
+        }
+    }
+
+    private void applyTargetGate() {
+        boolean busy = !targetDetached && busyFields.containsKey(currentTarget.fieldKey());
+        if (busy) {
+            inputNotify = true;
+            startInputLock();
+        } else {
+            // Not (or no longer) in a busy field; other generations keep running in the background
+            endInputLock();
+            inputNotify = false;
+        }
+    }
+
+    /** Commit into {@code target}; queued while the field is not focused. */
+    public void commitTo(GenerationTarget target, String text) {
+        if (text == null || text.isEmpty()) return;
+        if (isFocused(target) && !targetQueues.containsKey(target.fieldKey())) {
+            commit(text);
+            return;
+        }
+        queueFor(target).append(text);
+    }
+
+    /** Delete before the cursor in {@code target}; queued while the field is not focused. */
+    public void deleteTo(GenerationTarget target, int count) {
+        if (count <= 0) return;
+        if (isFocused(target) && !targetQueues.containsKey(target.fieldKey())) {
+            flush();
+            delete(count);
+            return;
+        }
+        queueFor(target).delete(count);
+    }
+
+    private TargetQueue queueFor(GenerationTarget target) {
+        String key = target.fieldKey();
+        TargetQueue q = targetQueues.get(key);
+        if (q == null) {
+            q = new TargetQueue();
+            targetQueues.put(key, q);
+        }
+        return q;
+    }
+
+    private void flushTargetQueue() {
+        if (targetDetached) return;
+        TargetQueue q = targetQueues.remove(currentTarget.fieldKey());
+        if (q == null || q.isEmpty()) return;
+        if (q.dropped > 0) {
+            tn.eluea.kgpt.util.Logger.log("Queued output overflowed, dropped the last " + q.dropped + " chars");
+        }
+
+        boolean locked = inputLock;
+        endInputLock();
+        InputConnection batch = beginBatchEdit();
+        try {
+            flush();
+            if (q.deleteBefore > 0) delete(q.deleteBefore);
+            if (q.text.length() > 0) commit(q.text.toString());
+        } finally {
+            endBatchEdit(batch);
+        }
+        if (locked) startInputLock();
+    }
+
     private boolean hasPending() {
         return pendingFinishComposing || pendingDeleteBefore > 0 || pendingDeleteAfter > 0 || pendingCommitBuffer.length() > 0;
     }
@@ -47,6 +47,7 @@ public class UiInteractor {
 
     // Optional: request a specific start screen for multi-screen dialogs (e.g. ChooseSubModel hub).
     public static final String EXTRA_START_SCREEN = "tn.eluea.kgpt.overlay.START_SCREEN";
+    public static final String EXTRA_COMPARE_PROMPT = "tn.eluea.kgpt.overlay.COMPARE_PROMPT";
 
     public static final String EXTRA_CONFIG_SELECTED_MODEL = "tn.eluea.kgpt.config.SELECTED_MODEL";
 
@@ -597,6 +598,19 @@ public class UiInteractor {
         return true;
     }
 
+    /**
+     * Open compare mode: the prompt is sent to several models side by side.
+     * Used by the CompareModels trigger.
+     */
+    public boolean showCompareModelsDialog(String prompt) {
+        if (isDialogOnCooldown()) return false;
+        tn.eluea.kgpt.util.Logger.log("Launching compare models dialog");
+        android.content.Intent intent = getOverlayIntent(tn.eluea.kgpt.core.ui.dialog.DialogType.CompareModels, false);
+        intent.putExtra(EXTRA_COMPARE_PROMPT, prompt);
+        mContext.startActivity(intent);
+        return true;
+    }
+
     /**
      * Open the ChooseSubModel hub directly on the Quick Jump screen.
      * Used by the QuickJumpMenu trigger.
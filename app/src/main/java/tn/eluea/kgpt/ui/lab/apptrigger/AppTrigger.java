@@ -17,9 +17,14 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.BlobReader;
+import tn.eluea.kgpt.core.codec.BlobWriter;
+
 /**
  * Model class representing an app trigger configuration
  */
@@ -94,44 +99,97 @@ public class AppTrigger {
         return parts[0].toLowerCase();
     }
 
+    /**
+     * Stored form of the trigger list. The activity name is optional, as in the JSON form
+     * older builds wrote.
+     */
+    public static final BlobCodec<List<AppTrigger>> CODEC =
+            new BlobCodec<List<AppTrigger>>(BlobCodec.SCHEMA_APP_TRIGGERS, 1, "AppTrigger") {
+                @Override
+                protected void write(BlobWriter out, List<AppTrigger> triggers) {
+                    out.writeVarint(triggers.size());
+                    for (AppTrigger trigger : triggers) {
+                        out.writeString(trigger.getPackageName());
+                        out.writeString(trigger.getActivityName());
+                        out.writeString(trigger.getAppName());
+                        out.writeString(trigger.getTrigger());
+                        out.writeBoolean(trigger.isEnabled());
+                    }
+                }
+
+                @Override
+                protected List<AppTrigger> read(BlobReader in, int version) throws IOException {
+                    int n = in.readLength();
+                    List<AppTrigger> triggers = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        AppTrigger trigger = new AppTrigger(in.readString(), in.readString(),
+                                in.readString(), in.readString());
+                        trigger.setEnabled(in.readBoolean());
+                        triggers.add(trigger);
+                    }
+                    return triggers;
+                }
+
+                @Override
+                protected List<AppTrigger> parseJson(String encoded) {
+                    List<AppTrigger> triggers = new ArrayList<>();
+                    if (encoded == null || encoded.isEmpty()) {
+                        return triggers;
+                    }
+                    try {
+                        JSONArray jsonArray = new JSONArray(encoded);
+                        for (int i = 0; i < jsonArray.length(); i++) {
+                            JSONObject obj = jsonArray.getJSONObject(i);
+                            AppTrigger trigger = new AppTrigger(
+                                    obj.getString("packageName"),
+                                    obj.optString("activityName", null), // Optional for backward compatibility
+                                    obj.getString("appName"),
+                                    obj.getString("trigger"));
+                            trigger.setEnabled(obj.optBoolean("enabled", true));
+                            triggers.add(trigger);
+                        }
+                    } catch (Exception e) {
+                        tn.eluea.kgpt.util.Logger.log(e);
+                    }
+                    return triggers;
+                }
+
+                @Override
+                protected String formatJson(List<AppTrigger> triggers) {
+                    JSONArray jsonArray = new JSONArray();
+                    for (AppTrigger trigger : triggers) {
+                        try {
+                            JSONObject obj = new JSONObject();
+                            obj.put("packageName", trigger.getPackageName());
+                            obj.put("activityName", trigger.getActivityName());
+                            obj.put("appName", trigger.getAppName());
+                            obj.put("trigger", trigger.getTrigger());
+                            obj.put("enabled", trigger.isEnabled());
+                            jsonArray.put(obj);
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    return jsonArray.toString();
+                }
+
+                @Override
+                protected List<AppTrigger> copy(List<AppTrigger> triggers) {
+                    List<AppTrigger> out = new ArrayList<>(triggers.size());
+                    for (AppTrigger t : triggers) {
+                        AppTrigger c = new AppTrigger(t.packageName, t.activityName, t.appName, t.trigger);
+                        c.enabled = t.enabled;
+                        out.add(c);
+                    }
+                    return out;
+                }
+            };
+
     public static String encode(List<AppTrigger> triggers) {
-        JSONArray jsonArray = new JSONArray();
-        for (AppTrigger trigger : triggers) {
-            try {
-                JSONObject obj = new JSONObject();
-                obj.put("packageName", trigger.getPackageName());
-                obj.put("activityName", trigger.getActivityName());
-                obj.put("appName", trigger.getAppName());
-                obj.put("trigger", trigger.getTrigger());
-                obj.put("enabled", trigger.isEnabled());
-                jsonArray.put(obj);
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
-        return jsonArray.toString();
+        return CODEC.encode(triggers);
     }
 
     public static List<AppTrigger> decode(String encoded) {
-        List<AppTrigger> triggers = new ArrayList<>();
-        if (encoded == null || encoded.isEmpty()) {
-            return triggers;
-        }
-        try {
-            JSONArray jsonArray = new JSONArray(encoded);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject obj = jsonArray.getJSONObject(i);
-                AppTrigger trigger = new AppTrigger(
-                        obj.getString("packageName"),
-                        obj.optString("activityName", null), // Optional for backward compatibility
-                        obj.getString("appName"),
-                        obj.getString("trigger"));
-                trigger.setEnabled(obj.optBoolean("enabled", true));
-                triggers.add(trigger);
-            }
-        } catch (Exception e) {
-            tn.eluea.kgpt.util.Logger.log(e);
-        }
-        return triggers;
+        return CODEC.decodeOrEmpty(encoded);
     }
 }
@@ -29,7 +29,8 @@ import tn.eluea.kgpt.provider.XposedConfigReader;
 
 /**
  * Manager class for app triggers feature.
- * Uses XSharedPreferences (via XposedConfigReader) when running in Xposed
+ * Reads through ConfigClient, whose snapshot the provider keeps current by push;
+ * XSharedPreferences (via XposedConfigReader) is only its fallback in Xposed
  * module context.
  */
 public class AppTriggerManager {
@@ -64,20 +65,10 @@ public class AppTriggerManager {
     }
 
     private void loadTriggers() {
-        String encoded = null;
-
-        // Try XSharedPreferences first (works in both app and Xposed module)
-        if (XposedConfigReader.isAvailable()) {
-            encoded = XposedConfigReader.getString(PREF_APP_TRIGGERS, null);
-            Log.d(TAG, "loadTriggers() from XSharedPreferences: "
-                    + (encoded != null ? encoded.length() + " chars" : "null"));
-        }
-
-        // Fallback to ConfigClient (ContentProvider)
-        if (encoded == null) {
-            encoded = configClient.getString(PREF_APP_TRIGGERS, null);
-            Log.d(TAG, "loadTriggers() from ConfigClient: " + (encoded != null ? encoded.length() + " chars" : "null"));
-        }
+        // ConfigClient's snapshot is kept current by the provider's push channel, and it
+        // falls back to XSharedPreferences by itself when the provider can't be reached
+        String encoded = configClient.getString(PREF_APP_TRIGGERS, null);
+        Log.d(TAG, "loadTriggers() from ConfigClient: " + (encoded != null ? encoded.length() + " chars" : "null"));
 
         appTriggers = AppTrigger.decode(encoded);
         Log.d(TAG, "loadTriggers() - loaded " + appTriggers.size() + " triggers");
@@ -139,15 +130,6 @@ public class AppTriggerManager {
     }
 
     public boolean isFeatureEnabled() {
-        // Try XSharedPreferences first
-        if (XposedConfigReader.isAvailable()) {
-            boolean enabled = XposedConfigReader.getBoolean(PREF_APP_TRIGGERS_ENABLED, true);
-            Log.d(TAG, "isFeatureEnabled() from XSharedPreferences = " + enabled);
-            return enabled;
-        }
-
-        // Fallback to ConfigClient
-        configClient.clearCache();
         boolean enabled = configClient.getBoolean(PREF_APP_TRIGGERS_ENABLED, true);
         Log.d(TAG, "isFeatureEnabled() from ConfigClient = " + enabled);
         return enabled;
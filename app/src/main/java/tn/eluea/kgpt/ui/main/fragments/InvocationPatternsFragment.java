@@ -313,6 +313,11 @@ public class InvocationPatternsFragment extends Fragment {
 
             // Update regex pattern
             String newRegex = PatternType.symbolToRegex(newSymbol, pattern.getType().groupCount);
+            String unsafeReason = tn.eluea.kgpt.text.parse.PatternAnalyzer.rejectionReason(newRegex);
+            if (unsafeReason != null) {
+                inputLayout.setError(getString(R.string.msg_pattern_unsafe, unsafeReason));
+                return;
+            }
             ParsePattern updated = new ParsePattern(pattern.getType(), newRegex, pattern.getExtras());
             // IMPORTANT: the enabled switch can be toggled before pressing "Save".
             // Don't rely on the old `pattern` object (it may still have the previous enabled state),
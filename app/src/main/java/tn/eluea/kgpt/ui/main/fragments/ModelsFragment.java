@@ -210,6 +210,15 @@ VALID_MODELS.put(LanguageModel.GLM, new java.util.HashSet<>(java.util.Arrays.asL
         "glm-4-flashx", "glm-4-flash", "glm-4-9b",
         "glm-4-0520", "glm-3-turbo")));
 
+// Local server models (whatever the server has pulled)
+SUB_MODEL_PRESETS.put(LanguageModel.LocalServer, new String[] {
+        "llama3.2",
+        "qwen2.5",
+        "gemma3",
+        "mistral"
+});
+VALID_MODELS.put(LanguageModel.LocalServer, null); // Allow any model
+
     }
 
     /**
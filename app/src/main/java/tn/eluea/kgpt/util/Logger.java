@@ -76,4 +76,21 @@ public class Logger {
             Log.e(TAG, "Exception", t);
         }
     }
+
+    /**
+     * Route kgpt-core logging through this logger, so it obeys the same
+     * enable-logs setting as the rest of the module.
+     */
+    public static void installCoreSink() {
+        tn.eluea.kgpt.core.platform.CoreLog.setSink((priority, tag, message, t) -> {
+            if (priority >= tn.eluea.kgpt.core.platform.CoreLog.ERROR) {
+                error("(" + tag + ") " + message);
+            } else {
+                log(tag, message);
+            }
+            if (t != null) {
+                log(t);
+            }
+        });
+    }
 }
@@ -0,0 +1,217 @@
+package tn.eluea.kgpt.llm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TokenCoalescer on a hand-driven main thread: posted runnables and frame callbacks are
+ * collected and run by {@link #frame(long)}, with SystemClock on a virtual clock.
+ */
+public class TokenCoalescerTest {
+
+    private final List<Runnable> posted = new ArrayList<>();
+    private final List<Choreographer.FrameCallback> frameCallbacks = new ArrayList<>();
+    private final List<String> batches = new ArrayList<>();
+    private long now = 1000;
+
+    private MockedStatic<Looper> mockedLooper;
+    private MockedStatic<SystemClock> mockedClock;
+    private MockedStatic<Choreographer> mockedChoreographer;
+    private MockedConstruction<Handler> handlers;
+
+    @Before
+    public void setUp() {
+        mockedLooper = Mockito.mockStatic(Looper.class);
+        mockedClock = Mockito.mockStatic(SystemClock.class);
+        mockedClock.when(SystemClock::uptimeMillis).thenAnswer(inv -> now);
+
+        Choreographer choreographer = mock(Choreographer.class);
+        doAnswer(inv -> {
+            frameCallbacks.add(inv.getArgument(0));
+            return null;
+        }).when(choreographer).postFrameCallback(any(Choreographer.FrameCallback.class));
+        mockedChoreographer = Mockito.mockStatic(Choreographer.class);
+        mockedChoreographer.when(Choreographer::getInstance).thenReturn(choreographer);
+
+        handlers = Mockito.mockConstruction(Handler.class, (mock, context) ->
+                when(mock.post(any(Runnable.class))).thenAnswer(inv -> {
+                    posted.add(inv.getArgument(0));
+                    return true;
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        handlers.close();
+        mockedChoreographer.close();
+        mockedClock.close();
+        mockedLooper.close();
+    }
+
+    private TokenCoalescer coalescer(long ceilingMs) {
+        return new TokenCoalescer(batches::add, ceilingMs);
+    }
+
+    /** Move the clock on by {@code ms}, run what was posted, then deliver the next vsync. */
+    private void frame(long ms) {
+        now += ms;
+        List<Runnable> runnables = new ArrayList<>(posted);
+        posted.clear();
+        for (Runnable r : runnables) {
+            r.run();
+        }
+        List<Choreographer.FrameCallback> callbacks = new ArrayList<>(frameCallbacks);
+        frameCallbacks.clear();
+        for (Choreographer.FrameCallback callback : callbacks) {
+            callback.doFrame(now * 1_000_000L);
+        }
+    }
+
+    @Test
+    public void chunksWithinAFrameAreCommittedTogether() {
+        TokenCoalescer coalescer = coalescer(80);
+        coalescer.offer("Hel");
+        coalescer.offer("lo ");
+        coalescer.offer("");
+        coalescer.offer(null);
+        // Only the first chunk into an empty buffer schedules a frame
+        assertEquals(1, posted.size());
+
+        frame(16);
+        assertEquals(Collections.singletonList("Hello "), batches);
+        assertTrue(frameCallbacks.isEmpty());
+    }
+
+    @Test
+    public void partialWordWaitsForTheBoundary() {
+        TokenCoalescer coalescer = coalescer(80);
+        coalescer.offer("Hel");
+        frame(16);
+        assertTrue(batches.isEmpty());
+        // Still waiting on the next frame, so the next chunk doesn't schedule another
+        assertEquals(1, frameCallbacks.size());
+        coalescer.offer("lo,");
+        assertTrue(posted.isEmpty());
+
+        frame(16);
+        assertEquals(Collections.singletonList("Hello,"), batches);
+    }
+
+    @Test
+    public void latencyCeilingReleasesMidWord() {
+        TokenCoalescer coalescer = coalescer(50);
+        coalescer.offer("Supercal");
+        frame(16);
+        frame(16);
+        assertTrue(batches.isEmpty());
+        frame(20);
+        assertEquals(Collections.singletonList("Supercal"), batches);
+    }
+
+    @Test
+    public void longBatchIsReleasedWithoutABoundary() {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < TokenCoalescer.MAX_BATCH_CHARS; i++) {
+            word.append('a');
+        }
+        TokenCoalescer coalescer = coalescer(10_000);
+        coalescer.offer(word.toString());
+        frame(16);
+        assertEquals(Collections.singletonList(word.toString()), batches);
+    }
+
+    @Test
+    public void zeroCeilingReleasesEveryFrame() {
+        TokenCoalescer coalescer = coalescer(0);
+        coalescer.offer("a");
+        frame(16);
+        coalescer.offer("b");
+        frame(16);
+        assertEquals(Arrays.asList("a", "b"), batches);
+    }
+
+    @Test
+    public void drainFlushesTheTailAtTheEndOfTheStream() {
+        TokenCoalescer coalescer = coalescer(80);
+        coalescer.offer("The end");
+        frame(16);
+        assertTrue(batches.isEmpty());
+
+        coalescer.drain();
+        assertEquals(Collections.singletonList("The end"), batches);
+        // The pending frame finds nothing and doesn't reschedule
+        frame(16);
+        assertEquals(1, batches.size());
+        assertTrue(frameCallbacks.isEmpty());
+        // Nothing left to hand over
+        coalescer.drain();
+        assertEquals(1, batches.size());
+
+        // A chunk after that schedules a frame of its own
+        coalescer.offer("!");
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void cancelDropsBufferedAndLaterChunks() {
+        TokenCoalescer coalescer = coalescer(80);
+        coalescer.offer("Hel");
+        coalescer.cancel();
+        frame(16);
+        assertTrue(frameCallbacks.isEmpty());
+
+        coalescer.offer("lo ");
+        assertTrue(posted.isEmpty());
+        coalescer.drain();
+        frame(16);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void wordBoundaries() {
+        assertTrue(TokenCoalescer.isWordBoundary(' '));
+        assertTrue(TokenCoalescer.isWordBoundary('\n'));
+        assertTrue(TokenCoalescer.isWordBoundary('.'));
+        assertTrue(TokenCoalescer.isWordBoundary('-'));
+        assertTrue(TokenCoalescer.isWordBoundary(')'));
+        assertTrue(TokenCoalescer.isWordBoundary('\u201D'));
+        // Every ideograph ends a word
+        assertTrue(TokenCoalescer.isWordBoundary('\u4F60'));
+        assertTrue(TokenCoalescer.isWordBoundary(0x20000));
+        assertFalse(TokenCoalescer.isWordBoundary('a'));
+        assertFalse(TokenCoalescer.isWordBoundary('7'));
+        assertFalse(TokenCoalescer.isWordBoundary('\u00E9'));
+    }
+
+    @Test
+    public void shouldReleaseLooksAtTheLastCodePoint() {
+        assertFalse(TokenCoalescer.shouldRelease("", 1000, 80));
+        assertTrue(TokenCoalescer.shouldRelease("word ", 0, 80));
+        assertFalse(TokenCoalescer.shouldRelease("word", 0, 80));
+        assertTrue(TokenCoalescer.shouldRelease("word", 80, 80));
+        // A supplementary ideograph is a pair of chars but one boundary
+        assertTrue(TokenCoalescer.shouldRelease("ab" + new String(Character.toChars(0x20000)), 0, 80));
+    }
+}
@@ -0,0 +1,153 @@
+package tn.eluea.kgpt.llm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+
+public class LocalServerClientTest {
+
+    private StandInLocalServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) server.close();
+    }
+
+    private LocalServerClient client(String apiKey) {
+        LocalServerClient client = new LocalServerClient();
+        client.setField(LanguageModelField.BaseUrl, server.baseUrl());
+        client.setField(LanguageModelField.SubModel, "llama3.2");
+        if (apiKey != null) client.setField(LanguageModelField.ApiKey, apiKey);
+        return client;
+    }
+
+    private static final class Collected {
+        final StringBuilder text = new StringBuilder();
+        int chunks = 0;
+        Throwable error;
+    }
+
+    private static Collected collect(Publisher<String> publisher) throws InterruptedException {
+        final Collected c = new Collected();
+        final CountDownLatch done = new CountDownLatch(1);
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                c.text.append(s);
+                c.chunks++;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                c.error = t;
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue("stream did not finish", done.await(10, TimeUnit.SECONDS));
+        return c;
+    }
+
+    @Test
+    public void localServer_DoesNotRequireApiKey() {
+        assertFalse(LanguageModel.LocalServer.requiresApiKey);
+        assertTrue(LanguageModel.ChatGPT.requiresApiKey);
+        assertTrue(LanguageModelClient.forModel(LanguageModel.LocalServer) instanceof LocalServerClient);
+    }
+
+    @Test
+    public void submitPrompt_StreamsTokensWithoutAuthorization() throws Exception {
+        server = new StandInLocalServer(true);
+        server.setTokens("Hello", ", ", "local", " world");
+
+        Collected c = collect(client(null).submitPrompt("hi", "be brief"));
+
+        assertNull(c.error);
+        assertEquals("Hello, local world", c.text.toString());
+        assertEquals(4, c.chunks);
+        assertNull(server.authHeaders.get(0));
+
+        JSONObject body = new JSONObject(server.chatBodies.get(0));
+        assertTrue(body.getBoolean("stream"));
+        assertEquals(LocalServerClient.KEEP_ALIVE, body.getString("keep_alive"));
+        assertEquals("llama3.2", body.getString("model"));
+    }
+
+    @Test
+    public void submitPrompt_SendsBearerWhenKeyConfigured() throws Exception {
+        server = new StandInLocalServer(true);
+
+        Collected c = collect(client("secret").submitPrompt("hi", null));
+
+        assertNull(c.error);
+        assertEquals("Bearer secret", server.authHeaders.get(0));
+    }
+
+    @Test
+    public void submitPrompt_ServerErrorIsReported() throws Exception {
+        server = new StandInLocalServer(true);
+        server.failChat(404, "{\"error\":\"model 'nope' not found\"}");
+
+        Collected c = collect(client(null).submitPrompt("hi", null));
+
+        assertNotNull(c.error);
+        assertTrue(c.error.getMessage(), c.error.getMessage().contains("not found"));
+    }
+
+    @Test
+    public void preload_UsesOllamaGenerateEndpoint() throws Exception {
+        server = new StandInLocalServer(true);
+
+        assertTrue(client(null).preload());
+        assertEquals(1, server.preloadCount.get());
+        assertEquals(0, server.modelsCount.get());
+    }
+
+    @Test
+    public void preload_FallsBackToModelsPing() throws Exception {
+        server = new StandInLocalServer(false);
+
+        assertTrue(client(null).preload());
+        assertEquals(0, server.preloadCount.get());
+        assertEquals(1, server.modelsCount.get());
+    }
+
+    @Test
+    public void parseStreamLine_SkipsNonContentLines() throws Exception {
+        assertNull(LocalServerClient.parseStreamLine(""));
+        assertNull(LocalServerClient.parseStreamLine(": ping"));
+        assertNull(LocalServerClient.parseStreamLine("data: [DONE]"));
+        assertNull(LocalServerClient.parseStreamLine("data: {\"choices\":[{\"delta\":{\"content\":null}}]}"));
+        assertEquals("x", LocalServerClient.parseStreamLine("data: {\"choices\":[{\"delta\":{\"content\":\"x\"}}]}"));
+    }
+
+    @Test
+    public void rootUrl_StripsV1Suffix() {
+        assertEquals("http://10.0.0.2:11434", LocalServerClient.rootUrl("http://10.0.0.2:11434/v1/"));
+        assertEquals("http://10.0.0.2:8080", LocalServerClient.rootUrl("http://10.0.0.2:8080"));
+    }
+}
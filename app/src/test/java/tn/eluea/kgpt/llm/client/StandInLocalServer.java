@@ -0,0 +1,136 @@
+package tn.eluea.kgpt.llm.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal OpenAI-compatible server for tests, standing in for llama.cpp server / Ollama.
+ *
+ * Streams the configured tokens as SSE chunks on {@code /v1/chat/completions}, answers
+ * {@code /v1/models}, and optionally Ollama's {@code /api/generate} preload endpoint.
+ */
+class StandInLocalServer implements AutoCloseable {
+
+    private final HttpServer mServer;
+    private final boolean mOllamaApi;
+    private volatile List<String> mTokens = Arrays.asList("Hello", " ", "world");
+    private volatile int mChatStatus = 200;
+    private volatile String mErrorBody = "{\"error\":\"model not found\"}";
+
+    final List<String> chatBodies = new ArrayList<>();
+    final List<String> authHeaders = new ArrayList<>();
+    final AtomicInteger preloadCount = new AtomicInteger();
+    final AtomicInteger modelsCount = new AtomicInteger();
+
+    StandInLocalServer(boolean ollamaApi) throws IOException {
+        mOllamaApi = ollamaApi;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/v1/chat/completions", this::handleChat);
+        mServer.createContext("/v1/models", this::handleModels);
+        mServer.createContext("/api/generate", this::handleGenerate);
+        mServer.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/v1";
+    }
+
+    void setTokens(String... tokens) {
+        mTokens = Arrays.asList(tokens);
+    }
+
+    void failChat(int status, String body) {
+        mChatStatus = status;
+        mErrorBody = body;
+    }
+
+    private void handleChat(HttpExchange ex) throws IOException {
+        String body = readAll(ex.getRequestBody());
+        synchronized (chatBodies) {
+            chatBodies.add(body);
+            authHeaders.add(ex.getRequestHeaders().getFirst("Authorization"));
+        }
+
+        if (mChatStatus != 200) {
+            byte[] err = mErrorBody.getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(mChatStatus, err.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(err);
+            }
+            return;
+        }
+
+        ex.getResponseHeaders().add("Content-Type", "text/event-stream");
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream os = ex.getResponseBody()) {
+            // Keep-alive comment, as llama.cpp sends while the prompt is processed
+            write(os, ": ping\n\n");
+            // Role-only chunk without content
+            write(os, "data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"}}]}\n\n");
+            for (String token : mTokens) {
+                String escaped = token.replace("\\", "\\\\").replace("\"", "\\\"");
+                write(os, "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + escaped + "\"}}]}\n\n");
+            }
+            write(os, "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":null},\"finish_reason\":\"stop\"}]}\n\n");
+            write(os, "data: [DONE]\n\n");
+        }
+    }
+
+    private void handleModels(HttpExchange ex) throws IOException {
+        modelsCount.incrementAndGet();
+        readAll(ex.getRequestBody());
+        byte[] out = "{\"object\":\"list\",\"data\":[{\"id\":\"llama3.2\",\"object\":\"model\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(200, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    private void handleGenerate(HttpExchange ex) throws IOException {
+        readAll(ex.getRequestBody());
+        if (!mOllamaApi) {
+            ex.sendResponseHeaders(404, -1);
+            ex.close();
+            return;
+        }
+        preloadCount.incrementAndGet();
+        byte[] out = "{\"model\":\"llama3.2\",\"response\":\"\",\"done\":true}".getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(200, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    private static void write(OutputStream os, String s) throws IOException {
+        os.write(s.getBytes(StandardCharsets.UTF_8));
+        os.flush();
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            bos.write(buf, 0, n);
+        }
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+    }
+}
@@ -0,0 +1,229 @@
+package tn.eluea.kgpt.perf;
+
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.InputConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import tn.eluea.kgpt.ui.IMSController;
+
+/**
+ * An editor document behind a fake {@link InputConnection}.
+ *
+ * Edits are applied the way a TextView applies them (composing region, selection,
+ * newCursorPosition) and then forwarded to IMSController exactly like the hooks in
+ * MainHook.hookInputConnection do; selection changes reach onUpdateSelection through the
+ * looper, as they would from the app process. Every InputConnection call is one binder
+ * transaction on a device, so the reads are counted, along with the chars they return.
+ */
+final class FakeEditor implements InvocationHandler {
+
+    final InputConnection ic = (InputConnection) Proxy.newProxyInstance(
+            InputConnection.class.getClassLoader(), new Class<?>[] { InputConnection.class }, this);
+
+    private final IMSController controller;
+    private final FakeLooper looper;
+
+    private final StringBuilder doc = new StringBuilder();
+    private int selStart = 0;
+    private int selEnd = 0;
+    private int composingStart = -1;
+    private int composingEnd = -1;
+    private int batchDepth = 0;
+    private int reportedSelStart = 0;
+    private int reportedSelEnd = 0;
+
+    long readCalls = 0;
+    long charsRead = 0;
+
+    FakeEditor(IMSController controller, FakeLooper looper) {
+        this.controller = controller;
+        this.looper = looper;
+    }
+
+    /** Existing text in the field before the trace starts; the cursor goes to its end. */
+    void prefill(CharSequence text) {
+        doc.setLength(0);
+        doc.append(text);
+        selStart = selEnd = doc.length();
+        reportedSelStart = reportedSelEnd = selEnd;
+    }
+
+    /** The user taps elsewhere in the field: no InputConnection call, only a selection update. */
+    void moveCursor(int delta) {
+        int to = Math.max(0, Math.min(doc.length(), selEnd + delta));
+        selStart = selEnd = to;
+        composingStart = composingEnd = -1;
+        reportSelection();
+    }
+
+    /** What the editor sends right after the keyboard binds to it. */
+    void reportInitialSelection() {
+        final int s = selStart;
+        final int e = selEnd;
+        looper.post(() -> controller.onUpdateSelection(s, e, s, e, -1, -1), 0);
+    }
+
+    int length() {
+        return doc.length();
+    }
+
+    void resetCounters() {
+        readCalls = 0;
+        charsRead = 0;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "FakeEditor";
+            }
+        }
+        switch (name) {
+            case "getTextBeforeCursor": {
+                int n = (int) args[0];
+                return read(doc.substring(Math.max(0, selStart - n), selStart));
+            }
+            case "getTextAfterCursor": {
+                int n = (int) args[0];
+                return read(doc.substring(selEnd, Math.min(doc.length(), selEnd + n)));
+            }
+            case "getSelectedText":
+                return selStart == selEnd ? read(null) : read(doc.substring(selStart, selEnd));
+            case "getExtractedText": {
+                // Like TextView: the whole text, whatever the request hints
+                ExtractedText et = new ExtractedText();
+                et.text = read(doc.toString());
+                et.startOffset = 0;
+                et.selectionStart = selStart;
+                et.selectionEnd = selEnd;
+                return et;
+            }
+            case "beginBatchEdit":
+                batchDepth++;
+                return true;
+            case "endBatchEdit":
+                if (batchDepth > 0 && --batchDepth == 0) reportSelection();
+                return true;
+            case "commitText":
+            case "setComposingText":
+            case "finishComposingText":
+            case "deleteSurroundingText":
+            case "deleteSurroundingTextInCodePoints":
+            case "setSelection":
+                return edit(name, args);
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private boolean edit(String name, Object[] args) {
+        // MainHook gates every edit while a generation owns the field
+        if (controller.isInputLocked()) return false;
+
+        switch (name) {
+            case "commitText": {
+                CharSequence text = (CharSequence) args[0];
+                int ncp = (int) args[1];
+                int start = replace(text);
+                composingStart = composingEnd = -1;
+                placeCursor(start, text.length(), ncp);
+                controller.onInputEventText(text, false, ncp);
+                break;
+            }
+            case "setComposingText": {
+                CharSequence text = (CharSequence) args[0];
+                int ncp = (int) args[1];
+                int start = replace(text);
+                composingStart = start;
+                composingEnd = start + text.length();
+                placeCursor(start, text.length(), ncp);
+                controller.onInputEventText(text, true, ncp);
+                break;
+            }
+            case "finishComposingText":
+                composingStart = composingEnd = -1;
+                controller.onInputEventFinishComposing();
+                break;
+            case "deleteSurroundingText":
+            case "deleteSurroundingTextInCodePoints": {
+                // The traces use no surrogate pairs, so chars and code points coincide
+                int before = Math.max(0, (int) args[0]);
+                int after = Math.max(0, (int) args[1]);
+                int end = Math.min(doc.length(), selEnd + after);
+                doc.delete(selEnd, end);
+                int start = Math.max(0, selStart - before);
+                doc.delete(start, selStart);
+                selEnd -= selStart - start;
+                selStart = start;
+                composingStart = composingEnd = -1;
+                controller.onInputEventDelete(before, after, "deleteSurroundingTextInCodePoints".equals(name));
+                break;
+            }
+            case "setSelection": {
+                int s = Math.max(0, Math.min(doc.length(), (int) args[0]));
+                int e = Math.max(0, Math.min(doc.length(), (int) args[1]));
+                selStart = Math.min(s, e);
+                selEnd = Math.max(s, e);
+                // Not one of the hooked edits; only the selection update tells the controller
+                reportSelection();
+                return true;
+            }
+            default:
+                return false;
+        }
+        controller.requestTextUpdateFromInputEvent(ic);
+        reportSelection();
+        return true;
+    }
+
+    /** Replace the composing region, or else the selection; returns where the text starts. */
+    private int replace(CharSequence text) {
+        int start = composingStart >= 0 ? composingStart : selStart;
+        int end = composingStart >= 0 ? composingEnd : selEnd;
+        doc.replace(start, end, text.toString());
+        return start;
+    }
+
+    private void placeCursor(int start, int len, int ncp) {
+        int target = ncp > 0 ? start + len + ncp - 1 : start + ncp;
+        selStart = selEnd = Math.max(0, Math.min(doc.length(), target));
+    }
+
+    private void reportSelection() {
+        if (batchDepth > 0) return;
+        if (selStart == reportedSelStart && selEnd == reportedSelEnd) return;
+        final int oldS = reportedSelStart;
+        final int oldE = reportedSelEnd;
+        final int s = selStart;
+        final int e = selEnd;
+        final int cs = composingStart;
+        final int ce = composingEnd;
+        reportedSelStart = s;
+        reportedSelEnd = e;
+        // Delivered asynchronously from the app process
+        looper.post(() -> controller.onUpdateSelection(oldS, oldE, s, e, cs, ce), 0);
+    }
+
+    private CharSequence read(String text) {
+        readCalls++;
+        if (text != null) charsRead += text.length();
+        return text;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package tn.eluea.kgpt.perf;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.PriorityQueue;
+
+/**
+ * Single-threaded stand-in for the main looper and the parse thread, on a virtual clock.
+ *
+ * Every {@link Handler} constructed while {@link #install()} is open posts into this queue,
+ * so the debounce in IMSController and the ParseWorker hand-offs run deterministically on the
+ * test thread when {@link #advance} moves the clock. The other android.os pieces on that path
+ * are stubbed with it: HandlerThread does nothing, Looper hands out no looper and SystemClock
+ * reads the virtual clock.
+ */
+final class FakeLooper {
+
+    private static final class Message {
+        final long when;
+        final long seq;
+        final Runnable runnable;
+
+        Message(long when, long seq, Runnable runnable) {
+            this.when = when;
+            this.seq = seq;
+            this.runnable = runnable;
+        }
+    }
+
+    private final PriorityQueue<Message> queue = new PriorityQueue<>((a, b) -> a.when != b.when
+            ? Long.compare(a.when, b.when) : Long.compare(a.seq, b.seq));
+    private long now = 0;
+    private long seq = 0;
+
+    /** Close the returned stubs on the thread that installed them. */
+    AutoCloseable install() {
+        MockedConstruction<Handler> handlers = Mockito.mockConstruction(Handler.class, (mock, context) -> {
+            when(mock.post(any(Runnable.class))).thenAnswer(inv -> {
+                post(inv.getArgument(0), 0);
+                return true;
+            });
+            when(mock.postDelayed(any(Runnable.class), anyLong())).thenAnswer(inv -> {
+                post(inv.getArgument(0), inv.getArgument(1));
+                return true;
+            });
+            doAnswer(inv -> {
+                remove(inv.getArgument(0));
+                return null;
+            }).when(mock).removeCallbacks(any(Runnable.class));
+        });
+        MockedConstruction<HandlerThread> threads = Mockito.mockConstruction(HandlerThread.class);
+        MockedStatic<Looper> loopers = Mockito.mockStatic(Looper.class);
+        MockedStatic<SystemClock> clock = Mockito.mockStatic(SystemClock.class);
+        clock.when(SystemClock::uptimeMillis).thenAnswer(inv -> now);
+        clock.when(SystemClock::elapsedRealtime).thenAnswer(inv -> now);
+        return () -> {
+            clock.close();
+            loopers.close();
+            threads.close();
+            handlers.close();
+        };
+    }
+
+    void post(Runnable r, long delayMs) {
+        queue.add(new Message(now + Math.max(0, delayMs), seq++, r));
+    }
+
+    void remove(Runnable r) {
+        queue.removeIf(m -> m.runnable == r);
+    }
+
+    /** Move the clock forward, running everything that falls due on the way. */
+    void advance(long ms) {
+        long until = now + ms;
+        while (!queue.isEmpty() && queue.peek().when <= until) {
+            Message m = queue.poll();
+            now = Math.max(now, m.when);
+            m.runnable.run();
+        }
+        now = until;
+    }
+}
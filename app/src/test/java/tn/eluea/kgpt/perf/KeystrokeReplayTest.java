@@ -0,0 +1,273 @@
+package tn.eluea.kgpt.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.inputmethodservice.InputMethodService;
+import android.util.Log;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tn.eluea.kgpt.KGPTBrain;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.ai.AiResponseManager;
+import tn.eluea.kgpt.core.di.ServiceLocator;
+import tn.eluea.kgpt.core.dispatcher.BrainDispatcher;
+import tn.eluea.kgpt.instruction.command.CommandManager;
+import tn.eluea.kgpt.provider.ConfigClient;
+import tn.eluea.kgpt.provider.XposedConfigReader;
+import tn.eluea.kgpt.text.TextParser;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.UiInteractor;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
+
+/**
+ * Replays recorded keystroke traces through the IME hot path on the JVM:
+ * InputConnection hooks -> IMSController -> KGPTBrain.onTextUpdate -> ParseWorker/TextParser
+ * -> BrainDispatcher.
+ *
+ * Handlers run on a virtual clock (FakeLooper), so the debounce and the parse hand-off behave
+ * as on a device but everything happens on the test thread. The assertions are on the
+ * InputConnection reads per keystroke (each one a binder transaction on a device) and on what
+ * got dispatched, so they catch a trigger path that starts re-reading the document again.
+ * Timing lives in the JMH benchmarks of kgpt-core.
+ */
+public class KeystrokeReplayTest {
+
+    // Time between keystrokes; longer than IMSController's input debounce
+    private static final long KEY_INTERVAL_MS = 120;
+
+    @Mock
+    private UiInteractor uiInteractor;
+    @Mock
+    private SPManager spManager;
+    @Mock
+    private ConfigClient configClient;
+    @Mock
+    private ServiceLocator locator;
+    @Mock
+    private AiResponseManager aiManager;
+    @Mock
+    private CommandManager commandManager;
+    @Mock
+    private InputMethodService ims;
+    @Mock
+    private Context context;
+
+    private MockedStatic<UiInteractor> mockedUiInteractor;
+    private MockedStatic<SPManager> mockedSpManager;
+    private MockedStatic<ServiceLocator> mockedLocator;
+    private MockedStatic<XposedConfigReader> mockedXposedConfig;
+    private MockedStatic<Log> mockedLog;
+    private EditorInfo editorInfo;
+
+    private static final class Result {
+        long keystrokes;
+        long readCalls;
+        long charsRead;
+        final List<String> dispatched = new ArrayList<>();
+
+        double perKey(long value) {
+            return keystrokes == 0 ? 0 : (double) value / keystrokes;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        mockedUiInteractor = Mockito.mockStatic(UiInteractor.class);
+        mockedUiInteractor.when(UiInteractor::getInstance).thenReturn(uiInteractor);
+        mockedSpManager = Mockito.mockStatic(SPManager.class);
+        mockedSpManager.when(SPManager::getInstance).thenReturn(spManager);
+        mockedLocator = Mockito.mockStatic(ServiceLocator.class);
+        mockedLocator.when(ServiceLocator::getInstance).thenReturn(locator);
+        mockedXposedConfig = Mockito.mockStatic(XposedConfigReader.class);
+        mockedLog = Mockito.mockStatic(Log.class);
+
+        when(spManager.getConfigClient()).thenReturn(configClient);
+        when(spManager.getParsePatterns()).thenReturn(defaultPatterns());
+        when(configClient.getBooleanNoCache(anyString(), anyBoolean()))
+                .thenAnswer(inv -> inv.getArgument(1));
+        when(configClient.getString(anyString(), anyString()))
+                .thenAnswer(inv -> inv.getArgument(1));
+
+        editorInfo = new EditorInfo();
+        editorInfo.packageName = "com.example.notes";
+        editorInfo.fieldId = 1;
+        when(ims.getCurrentInputEditorInfo()).thenReturn(editorInfo);
+    }
+
+    @After
+    public void tearDown() {
+        mockedLog.close();
+        mockedXposedConfig.close();
+        mockedLocator.close();
+        mockedSpManager.close();
+        mockedUiInteractor.close();
+    }
+
+    @Test
+    public void typing() throws Exception {
+        Result r = replay("typing");
+        assertQuietKeystrokes("typing", r);
+        assertEquals(Collections.singletonList("AIParseResult"), r.dispatched);
+    }
+
+    @Test
+    public void cjkComposing() throws Exception {
+        Result r = replay("cjk_composing");
+        assertQuietKeystrokes("cjk_composing", r);
+        assertEquals(Collections.singletonList("AIParseResult"), r.dispatched);
+    }
+
+    @Test
+    public void deletions() throws Exception {
+        Result r = replay("deletions");
+        assertQuietKeystrokes("deletions", r);
+        assertEquals(Collections.emptyList(), r.dispatched);
+    }
+
+    @Test
+    public void pasteBursts() throws Exception {
+        Result r = replay("paste_bursts");
+        assertQuietKeystrokes("paste_bursts", r);
+        assertEquals(Collections.singletonList("AIParseResult"), r.dispatched);
+    }
+
+    private static void assertQuietKeystrokes(String trace, Result r) {
+        // A keystroke is confirmed from the mirror with a short read; the old path
+        // re-read 8 KB + 2 KB (or the whole document) every time
+        assertTrue(trace + ": " + r.perKey(r.charsRead) + " chars read per keystroke",
+                r.perKey(r.charsRead) < 256);
+        assertTrue(trace + ": " + r.perKey(r.readCalls) + " reads per keystroke",
+                r.perKey(r.readCalls) <= 2.0);
+    }
+
+    private Result replay(String name) throws Exception {
+        KeystrokeTrace trace = KeystrokeTrace.load(name);
+        FakeLooper looper = new FakeLooper();
+        Result result = new Result();
+        try (AutoCloseable android = looper.install()) {
+            IMSController controller = new IMSController();
+            when(uiInteractor.getIMSController()).thenReturn(controller);
+            controller.registerService(ims);
+            FakeEditor editor = new FakeEditor(controller, looper);
+            when(ims.getCurrentInputConnection()).thenReturn(editor.ic);
+
+            // The traces use no app triggers; a manager would only schedule a plan rebuild
+            // on a thread the stubs don't reach
+            TextParser parser = new TextParser() {
+                @Override
+                public void setAppTriggerManager(AppTriggerManager manager) {
+                }
+            };
+            when(locator.getTextParser()).thenReturn(parser);
+            when(locator.getBrainDispatcher()).thenReturn(new BrainDispatcher(aiManager, commandManager));
+
+            KGPTBrain brain = new KGPTBrain(context) {
+                @Override
+                public void processParsedText(String text, ParseResult parseResult) {
+                    result.dispatched.add(parseResult.getClass().getSimpleName());
+                    super.processParsedText(text, parseResult);
+                }
+            };
+            try {
+                for (KeystrokeTrace.Step step : trace.steps) {
+                    play(step, controller, editor, looper, result);
+                }
+            } finally {
+                brain.destroy();
+            }
+
+            result.readCalls = editor.readCalls;
+            result.charsRead = editor.charsRead;
+        }
+        return result;
+    }
+
+    private void play(KeystrokeTrace.Step step, IMSController controller, FakeEditor editor,
+            FakeLooper looper, Result result) {
+        switch (step.kind) {
+            case PREFILL:
+                // Binding to a field that already holds text; not part of the keystroke cost
+                editor.prefill(KeystrokeTrace.filler(step.count));
+                controller.onStartInput(editorInfo);
+                editor.reportInitialSelection();
+                looper.advance(KEY_INTERVAL_MS);
+                editor.resetCounters();
+                break;
+            case TYPE:
+                for (int i = 0; i < step.text.length(); i++) {
+                    final String ch = step.text.substring(i, i + 1);
+                    key(result, 1, looper, () -> editor.ic.commitText(ch, 1));
+                }
+                break;
+            case COMPOSE:
+                for (String token : step.text.split("\\s+")) {
+                    int colon = token.indexOf(':');
+                    String reading = token.substring(0, colon);
+                    String committed = token.substring(colon + 1);
+                    for (int i = 1; i <= reading.length(); i++) {
+                        final String composing = reading.substring(0, i);
+                        key(result, 1, looper, () -> editor.ic.setComposingText(composing, 1));
+                    }
+                    key(result, 1, looper, () -> editor.ic.commitText(committed, 1));
+                }
+                break;
+            case DELETE:
+                for (int i = 0; i < step.count; i++) {
+                    key(result, 1, looper, () -> editor.ic.deleteSurroundingText(1, 0));
+                }
+                break;
+            case PASTE:
+                key(result, 1, looper, () -> editor.ic.commitText(step.text, 1));
+                break;
+            case BURST:
+                key(result, step.text.length(), looper, () -> {
+                    for (int i = 0; i < step.text.length(); i++) {
+                        editor.ic.commitText(step.text.substring(i, i + 1), 1);
+                    }
+                });
+                break;
+            case MOVE:
+                key(result, 1, looper, () -> editor.moveCursor(step.count));
+                break;
+        }
+    }
+
+    /** Run {@code keys} keystrokes and let the editor go idle. */
+    private static void key(Result result, int keys, FakeLooper looper, Runnable action) {
+        action.run();
+        looper.advance(KEY_INTERVAL_MS);
+        result.keystrokes += keys;
+    }
+
+    private static List<ParsePattern> defaultPatterns() {
+        List<ParsePattern> patterns = new ArrayList<>();
+        for (PatternType type : PatternType.values()) {
+            ParsePattern p = new ParsePattern(type, type.defaultPattern);
+            p.setEnabled(true);
+            patterns.add(p);
+        }
+        return patterns;
+    }
+}
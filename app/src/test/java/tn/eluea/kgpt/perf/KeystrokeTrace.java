@@ -0,0 +1,121 @@
+package tn.eluea.kgpt.perf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded keystroke session, read from {@code src/test/resources/traces/<name>.trace}.
+ *
+ * One step per line, {@code #} starts a comment. Text arguments run to the end of the line
+ * and may use {@code \n} and {@code \t}:
+ * <pre>
+ * prefill 20000             existing text in the field (not counted)
+ * type Hello                one commitText() per char
+ * compose ni:你 hao:好      setComposingText() per reading prefix, then commitText() of the result
+ * delete 5                  five deleteSurroundingText(1, 0)
+ * paste some text           a single commitText() with the whole text
+ * burst some text           one commitText() per char with no idle time in between
+ * move -200                 the user taps 200 chars back
+ * </pre>
+ */
+final class KeystrokeTrace {
+
+    enum Kind { PREFILL, TYPE, COMPOSE, DELETE, PASTE, BURST, MOVE }
+
+    static final class Step {
+        final Kind kind;
+        final String text;
+        final int count;
+
+        Step(Kind kind, String text, int count) {
+            this.kind = kind;
+            this.text = text;
+            this.count = count;
+        }
+    }
+
+    final String name;
+    final List<Step> steps;
+
+    private KeystrokeTrace(String name, List<Step> steps) {
+        this.name = name;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    static KeystrokeTrace load(String name) throws IOException {
+        String path = "/traces/" + name + ".trace";
+        InputStream in = KeystrokeTrace.class.getResourceAsStream(path);
+        if (in == null) throw new IOException("missing trace " + path);
+
+        List<Step> steps = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                int space = line.indexOf(' ');
+                String op = space < 0 ? line : line.substring(0, space);
+                String arg = space < 0 ? "" : unescape(line.substring(space + 1));
+                switch (op) {
+                    case "prefill":
+                        steps.add(new Step(Kind.PREFILL, null, Integer.parseInt(arg.trim())));
+                        break;
+                    case "type":
+                        steps.add(new Step(Kind.TYPE, arg, 0));
+                        break;
+                    case "compose":
+                        steps.add(new Step(Kind.COMPOSE, arg.trim(), 0));
+                        break;
+                    case "delete":
+                        steps.add(new Step(Kind.DELETE, null, Integer.parseInt(arg.trim())));
+                        break;
+                    case "paste":
+                        steps.add(new Step(Kind.PASTE, arg, 0));
+                        break;
+                    case "burst":
+                        steps.add(new Step(Kind.BURST, arg, 0));
+                        break;
+                    case "move":
+                        steps.add(new Step(Kind.MOVE, null, Integer.parseInt(arg.trim())));
+                        break;
+                    default:
+                        throw new IOException(path + ":" + lineNo + ": unknown step '" + op + "'");
+                }
+            }
+        }
+        return new KeystrokeTrace(name, steps);
+    }
+
+    /** Deterministic filler for {@code prefill}: sentences wrapped into lines. */
+    static String filler(int length) {
+        String[] words = { "the", "meeting", "notes", "from", "monday", "cover", "budget", "review",
+                "and", "next", "steps", "for", "launch", "with", "several", "open", "questions" };
+        StringBuilder sb = new StringBuilder(length + 16);
+        int lineLen = 0;
+        for (int i = 0; sb.length() < length; i++) {
+            String w = words[(i * 7 + i / words.length) % words.length];
+            sb.append(w);
+            lineLen += w.length();
+            if (lineLen > 72) {
+                sb.append(".\n");
+                lineLen = 0;
+            } else {
+                sb.append(' ');
+                lineLen++;
+            }
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        return s.replace("\\n", "\n").replace("\\t", "\t");
+    }
+}
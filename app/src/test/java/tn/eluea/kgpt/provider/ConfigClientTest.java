@@ -0,0 +1,297 @@
+package tn.eluea.kgpt.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ConfigClient against a stand-in provider: which reads are served from the snapshot, and
+ * which change notifications, probes and writes make it query the provider again.
+ *
+ * The push channel is left unregistered (the stand-in answers the registration with nothing),
+ * so these are the ContentObserver and generation-probe paths.
+ */
+public class ConfigClientTest {
+
+    // The stand-in provider
+    private final Map<String, String> stored = new LinkedHashMap<>();
+    private long generation = 5;
+    private int snapshotLoads = 0;
+    private int keyQueries = 0;
+    private int generationQueries = 0;
+
+    private long now = 10_000;
+
+    private ContentResolver resolver;
+    private ContentObserver observer;
+    private ConfigClient client;
+
+    private MockedStatic<Uri> mockedUri;
+    private MockedStatic<Looper> mockedLooper;
+    private MockedStatic<SystemClock> mockedClock;
+    private MockedStatic<Log> mockedLog;
+    private MockedConstruction<Handler> handlers;
+    private MockedConstruction<HandlerThread> threads;
+    private MockedConstruction<Bundle> bundles;
+    private MockedConstruction<ContentValues> contentValues;
+
+    @BeforeClass
+    public static void initProviderConstants() throws Exception {
+        // ConfigProvider's static Uris and UriMatcher are android.net stubs; give them mocks
+        try (MockedStatic<Uri> uris = Mockito.mockStatic(Uri.class);
+                MockedConstruction<UriMatcher> matchers = Mockito.mockConstruction(UriMatcher.class)) {
+            uris.when(() -> Uri.parse(anyString())).thenAnswer(inv -> uri(inv.getArgument(0), -1, -1));
+            Class.forName(ConfigProvider.class.getName(), true, ConfigClientTest.class.getClassLoader());
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mockedUri = Mockito.mockStatic(Uri.class);
+        mockedUri.when(() -> Uri.withAppendedPath(any(Uri.class), anyString()))
+                .thenAnswer(inv -> uri("config/" + inv.getArgument(1), -1, -1));
+        mockedLooper = Mockito.mockStatic(Looper.class);
+        mockedClock = Mockito.mockStatic(SystemClock.class);
+        mockedClock.when(SystemClock::uptimeMillis).thenAnswer(inv -> now);
+        mockedLog = Mockito.mockStatic(Log.class);
+        // Listeners are posted to the main thread; run them right away
+        handlers = Mockito.mockConstruction(Handler.class, (mock, context) ->
+                when(mock.post(any(Runnable.class))).thenAnswer(inv -> {
+                    ((Runnable) inv.getArgument(0)).run();
+                    return true;
+                }));
+        threads = Mockito.mockConstruction(HandlerThread.class);
+        bundles = Mockito.mockConstruction(Bundle.class);
+        contentValues = Mockito.mockConstruction(ContentValues.class);
+
+        resolver = mock(ContentResolver.class);
+        when(resolver.query(any(Uri.class), any(), any(), any(), any())).thenAnswer(inv -> {
+            Uri uri = inv.getArgument(0);
+            if (uri == ConfigProvider.SNAPSHOT_URI) {
+                snapshotLoads++;
+                List<String[]> rows = new ArrayList<>();
+                rows.add(new String[] { ConfigProvider.GENERATION_ROW, String.valueOf(generation) });
+                for (Map.Entry<String, String> e : stored.entrySet()) {
+                    rows.add(new String[] { e.getKey(), e.getValue() });
+                }
+                return cursor(rows);
+            }
+            keyQueries++;
+            String key = uri.getLastPathSegment();
+            List<String[]> rows = new ArrayList<>();
+            if (stored.containsKey(key)) rows.add(new String[] { key, stored.get(key) });
+            return cursor(rows);
+        });
+        when(resolver.call(any(Uri.class), anyString(), any(), any())).thenAnswer(inv -> {
+            if (!ConfigProvider.METHOD_GET_GENERATION.equals(inv.getArgument(1))) {
+                // No push channel
+                return null;
+            }
+            generationQueries++;
+            Bundle result = mock(Bundle.class);
+            when(result.getLong(eq(ConfigProvider.EXTRA_GENERATION), anyLong())).thenReturn(generation);
+            return result;
+        });
+
+        Context context = mock(Context.class);
+        when(context.getContentResolver()).thenReturn(resolver);
+        client = new ConfigClient(context);
+
+        ArgumentCaptor<ContentObserver> captor = ArgumentCaptor.forClass(ContentObserver.class);
+        verify(resolver).registerContentObserver(any(Uri.class), eq(true), captor.capture());
+        observer = captor.getValue();
+
+        stored.put("a", "1");
+        stored.put("b", "2");
+    }
+
+    @After
+    public void tearDown() {
+        contentValues.close();
+        bundles.close();
+        threads.close();
+        handlers.close();
+        mockedLog.close();
+        mockedClock.close();
+        mockedLooper.close();
+        mockedUri.close();
+    }
+
+    /** A Uri as the provider builds them: a path and the generation/since parameters. */
+    private static Uri uri(String path, long generation, long since, String... keys) {
+        Uri uri = mock(Uri.class);
+        Map<String, String> params = new HashMap<>();
+        if (generation >= 0) params.put(ConfigProvider.PARAM_GENERATION, String.valueOf(generation));
+        if (since >= 0) params.put(ConfigProvider.PARAM_SINCE, String.valueOf(since));
+        when(uri.getQueryParameter(anyString())).thenAnswer(inv -> params.get(inv.getArgument(0)));
+        when(uri.getQueryParameters(ConfigProvider.PARAM_KEY)).thenReturn(Arrays.asList(keys));
+        when(uri.getLastPathSegment()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(uri.toString()).thenReturn("content://" + ConfigProvider.AUTHORITY + "/" + path);
+        return uri;
+    }
+
+    /** Rows of (key, value). */
+    private static Cursor cursor(List<String[]> rows) {
+        Cursor cursor = mock(Cursor.class);
+        int[] position = { -1 };
+        when(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_KEY)).thenReturn(0);
+        when(cursor.getColumnIndexOrThrow(ConfigProvider.COLUMN_VALUE)).thenReturn(1);
+        when(cursor.moveToNext()).thenAnswer(inv -> ++position[0] < rows.size());
+        when(cursor.moveToFirst()).thenAnswer(inv -> {
+            position[0] = 0;
+            return !rows.isEmpty();
+        });
+        when(cursor.getString(anyInt())).thenAnswer(inv -> rows.get(position[0])[inv.<Integer>getArgument(0)]);
+        return cursor;
+    }
+
+    /** The provider changes {@code key} on its own, as another process writing would. */
+    private void changeInProvider(String key, String value) {
+        stored.put(key, value);
+        generation++;
+    }
+
+    @Test
+    public void readsAreServedFromOneSnapshot() {
+        assertEquals("1", client.getString("a", null));
+        assertEquals("2", client.getString("b", null));
+        assertEquals("none", client.getString("missing", "none"));
+        assertEquals(1, snapshotLoads);
+        assertEquals(0, keyQueries);
+        // Inside the revalidation interval nothing asks for the generation
+        assertEquals(0, generationQueries);
+    }
+
+    @Test
+    public void snapshotIsRevalidatedByGeneration() {
+        client.getString("a", null);
+        now += 2000;
+        assertEquals("1", client.getString("a", null));
+        assertEquals(1, generationQueries);
+        assertEquals(1, snapshotLoads);
+
+        changeInProvider("a", "3");
+        now += 2000;
+        assertEquals("3", client.getString("a", null));
+        assertEquals(2, snapshotLoads);
+    }
+
+    @Test
+    public void probeReloadsOnlyWhenTheGenerationMoved() {
+        client.getString("a", null);
+        assertEquals(false, client.getBooleanNoCache("flag", false));
+        assertEquals(1, generationQueries);
+        assertEquals(1, snapshotLoads);
+
+        changeInProvider("flag", "true");
+        assertEquals(true, client.getBooleanNoCache("flag", false));
+        assertEquals(2, generationQueries);
+        assertEquals(2, snapshotLoads);
+    }
+
+    @Test
+    public void notificationForTheNextGenerationQueriesOnlyItsKeys() {
+        List<Object> heard = new ArrayList<>();
+        client.registerListener("a", (key, value) -> heard.add(value));
+        client.getString("a", null);
+
+        changeInProvider("a", "9");
+        observer.onChange(false, uri("config/a", generation, -1));
+
+        assertEquals(1, keyQueries);
+        assertEquals("9", client.getString("a", null));
+        assertEquals("2", client.getString("b", null));
+        assertEquals(1, snapshotLoads);
+        assertEquals(Arrays.<Object>asList("9"), heard);
+    }
+
+    @Test
+    public void notificationAlreadyInTheSnapshotIsIgnored() {
+        client.getString("a", null);
+        observer.onChange(false, uri("config/a", generation, -1));
+        assertEquals(0, keyQueries);
+        assertEquals("1", client.getString("a", null));
+        assertEquals(1, snapshotLoads);
+    }
+
+    @Test
+    public void notificationAfterAGapReloadsTheSnapshot() {
+        client.getString("a", null);
+        changeInProvider("b", "7");
+        changeInProvider("a", "8");
+        // Names only the last change; the one before it was missed
+        observer.onChange(false, uri("config", generation, generation - 1, "a"));
+
+        assertEquals(0, keyQueries);
+        assertEquals("8", client.getString("a", null));
+        assertEquals("7", client.getString("b", null));
+        assertEquals(2, snapshotLoads);
+    }
+
+    @Test
+    public void ownWriteAdvancesTheSnapshotInPlace() {
+        when(resolver.insert(any(Uri.class), any(ContentValues.class))).thenAnswer(inv -> {
+            stored.put("a", "x");
+            return uri("config/a", ++generation, -1);
+        });
+        client.getString("a", null);
+        client.putString("a", "x");
+
+        assertEquals("x", client.getString("a", null));
+        assertEquals(false, client.getBooleanNoCache("flag", false));
+        assertEquals(1, snapshotLoads);
+    }
+
+    @Test
+    public void ownWriteRacingAnotherWriterReloads() {
+        when(resolver.insert(any(Uri.class), any(ContentValues.class))).thenAnswer(inv -> {
+            // Another process wrote in between
+            stored.put("b", "other");
+            generation++;
+            stored.put("a", "x");
+            return uri("config/a", ++generation, -1);
+        });
+        client.getString("a", null);
+        client.putString("a", "x");
+
+        assertEquals("x", client.getString("a", null));
+        assertEquals("other", client.getString("b", null));
+        assertEquals(2, snapshotLoads);
+    }
+}
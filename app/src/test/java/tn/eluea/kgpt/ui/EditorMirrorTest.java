@@ -0,0 +1,200 @@
+package tn.eluea.kgpt.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EditorMirrorTest {
+
+    private static EditorMirror mirror(String before, String after, int absCursor) {
+        EditorMirror m = new EditorMirror();
+        m.load(before, after, absCursor, absCursor == before.length(), true);
+        return m;
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(c);
+        return sb.toString();
+    }
+
+    @Test
+    public void commitTextInsertsAtTheCursor() {
+        EditorMirror m = new EditorMirror();
+        m.load("hello ", " world", 100, false, false);
+        assertEquals(94, m.origin());
+        m.commitText("big", 1);
+        assertEquals("hello big world", m.toString());
+        assertEquals(9, m.cursor());
+        assertEquals(103, m.absoluteCursor());
+        assertTrue(m.matchesSelection(103, 103));
+        assertTrue(m.matchesTextBeforeCursor("o big", 5));
+    }
+
+    @Test
+    public void newCursorPositionIsRelativeToTheText() {
+        EditorMirror m = mirror("ab", "cd", 2);
+        m.commitText("XY", 0);
+        assertEquals("abXYcd", m.toString());
+        assertEquals(2, m.cursor());
+        m.commitText("Z", 2);
+        assertEquals("abZXYcd", m.toString());
+        assertEquals(4, m.cursor());
+        // Past the end of the text: the mirror can't tell where the editor put the cursor
+        m.commitText("!", 10);
+        assertFalse(m.isValid());
+    }
+
+    @Test
+    public void composingTextIsReplacedUntilCommitted() {
+        EditorMirror m = mirror("say ", "", 4);
+        m.setComposingText("n", 1);
+        m.setComposingText("ni", 1);
+        assertEquals("say ni", m.toString());
+        m.commitText("你", 1);
+        assertEquals("say 你", m.toString());
+        assertEquals(5, m.cursor());
+        // Committed: the next composing text starts after it
+        m.setComposingText("h", 1);
+        m.finishComposingText();
+        m.commitText("!", 1);
+        assertEquals("say 你h!", m.toString());
+    }
+
+    @Test
+    public void deletionsBeforeTheComposingSpanShiftIt() {
+        EditorMirror m = mirror("xx", "", 2);
+        // Composing "ab" with the cursor moved to the start of the field
+        m.setComposingText("ab", -2);
+        assertEquals(0, m.cursor());
+        m.deleteSurroundingText(0, 1);
+        assertEquals("xab", m.toString());
+        m.setComposingText("abc", 1);
+        assertEquals("xabc", m.toString());
+        assertEquals(4, m.cursor());
+    }
+
+    @Test
+    public void deletionsOverlappingTheComposingSpanDropIt() {
+        EditorMirror m = mirror("xx", "", 2);
+        m.setComposingText("ab", -2);
+        m.deleteSurroundingText(0, 3);
+        assertEquals("b", m.toString());
+        // No composing span left, so this is a plain insert at the cursor
+        m.commitText("Z", 1);
+        assertEquals("Zb", m.toString());
+    }
+
+    @Test
+    public void deleteSurroundingTextAroundTheCursor() {
+        EditorMirror m = mirror("abcdef", "ghi", 6);
+        m.deleteSurroundingText(2, 1);
+        assertEquals("abcdhi", m.toString());
+        assertEquals(4, m.cursor());
+        // Clamped at the start and end of the document
+        m.deleteSurroundingText(10, 10);
+        assertEquals("", m.toString());
+        assertTrue(m.isValid());
+    }
+
+    @Test
+    public void deletionsPastTheWindowInvalidate() {
+        EditorMirror before = new EditorMirror();
+        before.load("abc", "", 500, false, true);
+        before.deleteSurroundingText(4, 0);
+        assertFalse(before.isValid());
+
+        EditorMirror after = new EditorMirror();
+        after.load("abc", "de", 3, true, false);
+        after.deleteSurroundingText(0, 3);
+        assertFalse(after.isValid());
+    }
+
+    @Test
+    public void codePointDeletionsKeepSurrogatePairsWhole() {
+        String face = new String(Character.toChars(0x1F600));
+        EditorMirror m = mirror("a" + face, face + "b", 3);
+        m.deleteSurroundingTextInCodePoints(1, 1);
+        assertEquals("ab", m.toString());
+        assertEquals(1, m.cursor());
+
+        // A lone surrogate counts as one code point
+        EditorMirror lone = mirror("a\uD83D", "", 2);
+        lone.deleteSurroundingTextInCodePoints(1, 0);
+        assertEquals("a", lone.toString());
+    }
+
+    @Test
+    public void codePointDeletionsPastTheWindowInvalidate() {
+        String face = new String(Character.toChars(0x1F600));
+        EditorMirror m = new EditorMirror();
+        m.load(face, "", 50, false, true);
+        // Two chars held, but only one of the two code points asked for
+        m.deleteSurroundingTextInCodePoints(2, 0);
+        assertFalse(m.isValid());
+
+        EditorMirror after = new EditorMirror();
+        after.load("", face, 0, true, false);
+        after.deleteSurroundingTextInCodePoints(0, 2);
+        assertFalse(after.isValid());
+    }
+
+    @Test
+    public void replaceTextUsesAbsoluteOffsets() {
+        EditorMirror m = new EditorMirror();
+        m.load("hello world", "", 111, false, true);
+        m.replaceText(106, 111, "there", 1);
+        assertEquals("hello there", m.toString());
+        assertEquals(111, m.absoluteCursor());
+        // Reversed bounds are the same range
+        m.replaceText(111, 106, "you", 1);
+        assertEquals("hello you", m.toString());
+
+        m.replaceText(50, 60, "x", 1);
+        assertFalse(m.isValid());
+    }
+
+    @Test
+    public void replaceTextNeedsAKnownOrigin() {
+        EditorMirror m = new EditorMirror();
+        m.load("abc", "", EditorMirror.UNKNOWN, false, true);
+        m.replaceText(0, 1, "x", 1);
+        assertFalse(m.isValid());
+    }
+
+    @Test
+    public void trimKeepsTheWindowAroundTheCursor() {
+        String before = repeat('a', 20000);
+        EditorMirror m = new EditorMirror();
+        m.load(before, "", 20000, true, true);
+        m.commitText("b", 1);
+        // Cut back to the window once twice its size; the absolute position is kept
+        assertEquals(8192, m.cursor());
+        assertEquals(20001, m.absoluteCursor());
+        assertFalse(m.isAtDocStart());
+        assertTrue(m.toString().endsWith("ab"));
+
+        String after = repeat('z', 5000);
+        EditorMirror tail = mirror("", after, 0);
+        tail.commitText("x", 1);
+        assertEquals(1 + 2048, tail.length());
+        assertFalse(tail.isAtDocEnd());
+        assertEquals("x" + repeat('z', 2048), tail.toString());
+    }
+
+    @Test
+    public void trimMovesTheComposingSpanWithTheText() {
+        String before = repeat('a', 20000);
+        EditorMirror m = new EditorMirror();
+        m.load(before, "", 20000, true, true);
+        m.setComposingText("ni", 1);
+        m.setComposingText("nih", 1);
+        assertEquals(8193, m.length());
+        assertTrue(m.toString().endsWith("anih"));
+        m.commitText("你", 1);
+        assertTrue(m.toString().endsWith("a你"));
+        assertEquals(20001, m.absoluteCursor());
+    }
+}
@@ -0,0 +1,66 @@
+package tn.eluea.kgpt.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.roles.RoleManager;
+
+/**
+ * Reading the stored roles blob: a first read of the JSON and the binary form (each call
+ * gets a value the decode cache hasn't seen), and the repeat read the cache serves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConfigBlobBenchmark {
+
+    // More distinct values than the codec caches, so the cycling reads always miss
+    private static final int VARIANTS = 32;
+
+    @Param({ "4", "64" })
+    public int roles;
+
+    private final String[] json = new String[VARIANTS];
+    private final String[] binary = new String[VARIANTS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int v = 0; v < VARIANTS; v++) {
+            List<RoleManager.Role> list = new ArrayList<>();
+            for (int i = 0; i < roles; i++) {
+                list.add(new RoleManager.Role("role_" + i, "Role " + i + "/" + v,
+                        "You are assistant number " + i + ". " + Texts.prose(200)));
+            }
+            binary[v] = RoleManager.serializeCustomRoles(list);
+            json[v] = RoleManager.CODEC.toJson(binary[v]);
+        }
+    }
+
+    @Benchmark
+    public List<RoleManager.Role> firstReadJson() {
+        next = (next + 1) % VARIANTS;
+        return RoleManager.CODEC.decode(json[next]);
+    }
+
+    @Benchmark
+    public List<RoleManager.Role> firstReadBinary() {
+        next = (next + 1) % VARIANTS;
+        return RoleManager.CODEC.decode(binary[next]);
+    }
+
+    @Benchmark
+    public List<RoleManager.Role> repeatRead() {
+        return RoleManager.CODEC.decode(binary[0]);
+    }
+}
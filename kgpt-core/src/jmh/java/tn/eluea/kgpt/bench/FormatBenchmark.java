@@ -0,0 +1,69 @@
+package tn.eluea.kgpt.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.text.transform.format.ConversionMethod;
+import tn.eluea.kgpt.text.transform.format.ExternalFormattingReader;
+import tn.eluea.kgpt.text.transform.format.TextUnicodeConverter;
+
+/**
+ * The bold / italic / crossout / underline formatters and a user style file, on a
+ * sentence-sized and a paragraph-sized text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    @Param({ "64", "1024" })
+    public int length;
+
+    private String text;
+    private ConversionMethod userStyle;
+
+    @Setup
+    public void setUp() {
+        text = Texts.prose(length);
+        StringBuilder style = new StringBuilder("@delimiter ^\n@reverse true\n");
+        String from = "abcdefghijklmnopqrstuvwxyz";
+        String to = "ɐqɔpǝɟƃɥᴉɾʞlɯuodbɹsʇnʌʍxʎz";
+        for (int i = 0; i < from.length(); i++) {
+            style.append(from.charAt(i)).append(' ').append(to.charAt(i)).append('\n');
+        }
+        userStyle = ExternalFormattingReader.read(style.toString()).get(0).method;
+    }
+
+    @Benchmark
+    public String bold() {
+        return TextUnicodeConverter.convert(text, ConversionMethod.BOLD);
+    }
+
+    @Benchmark
+    public String italic() {
+        return TextUnicodeConverter.convert(text, ConversionMethod.ITALIC);
+    }
+
+    @Benchmark
+    public String crossout() {
+        return TextUnicodeConverter.convert(text, ConversionMethod.CROSSOUT);
+    }
+
+    @Benchmark
+    public String underline() {
+        return TextUnicodeConverter.convert(text, ConversionMethod.UNDERLINE);
+    }
+
+    @Benchmark
+    public String userStyle() {
+        return TextUnicodeConverter.convert(text, userStyle);
+    }
+}
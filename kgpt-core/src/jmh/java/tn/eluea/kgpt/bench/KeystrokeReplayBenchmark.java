@@ -0,0 +1,90 @@
+package tn.eluea.kgpt.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.TriggerAutomaton;
+import tn.eluea.kgpt.text.parse.result.AIParseResultFactory;
+
+/**
+ * Per-keystroke cost of trigger detection over a typing session: a reply typed one char at a
+ * time at the end of a long note and ending in the AI trigger. Each key takes the window of
+ * text before the cursor, as IMSController hands it to the parser, and runs the automaton and
+ * the directives it lets through.
+ *
+ * The keystroke replay in the app's unit tests drives the same traces through the whole IME
+ * path and checks what gets read and dispatched; this is the timed part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeystrokeReplayBenchmark {
+
+    private static final int PREFILL = 20000;
+    private static final String REPLY = "\nHi Sam,\nThanks for the notes from yesterday. I went through the"
+            + " draft and left a few comments on the second section.\n"
+            + "Could you rewrite this paragraph so it sounds more formal $";
+    // REPLY.length(), spelled out for @OperationsPerInvocation
+    private static final int KEYS = 177;
+
+    /** Chars before the cursor handed to the parser on each keystroke. */
+    @Param({ "256", "8192" })
+    public int window;
+
+    private TriggerAutomaton automaton;
+    private final List<ParseDirective> directives = new ArrayList<>();
+    private String note;
+    private StringBuilder doc;
+
+    @Setup
+    public void setUp() {
+        if (REPLY.length() != KEYS) {
+            throw new IllegalStateException("KEYS is " + KEYS + ", REPLY has " + REPLY.length());
+        }
+        TriggerAutomaton.Builder builder = new TriggerAutomaton.Builder();
+        PatternType[] types = PatternType.values();
+        for (int i = 0; i < types.length; i++) {
+            ParseDirective directive = new ParseDirective(Pattern.compile(types[i].defaultPattern),
+                    new AIParseResultFactory());
+            directives.add(directive);
+            builder.add(directive.getRequiredSuffix(), i);
+        }
+        automaton = builder.build();
+
+        note = Texts.prose(PREFILL);
+        doc = new StringBuilder(PREFILL + REPLY.length());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void typing(Blackhole bh) {
+        doc.setLength(0);
+        doc.append(note);
+        for (int i = 0; i < REPLY.length(); i++) {
+            doc.append(REPLY.charAt(i));
+            int cursor = doc.length();
+            String text = doc.substring(Math.max(0, cursor - window), cursor);
+            long groups = automaton.match(text, text.length());
+            for (int g = 0; g < directives.size(); g++) {
+                if ((groups & (1L << g)) != 0) {
+                    bh.consume(directives.get(g).parse(text));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package tn.eluea.kgpt.bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.llm.codec.ChatCompletionCodec;
+
+/**
+ * Decoding of chat completion responses: a whole non-streamed body, and the same answer
+ * as a server-sent event stream, one line per token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseDecodingBenchmark {
+
+    @Param({ "256", "4096" })
+    public int answerLength;
+
+    private String completion;
+    private final List<String> streamLines = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        String answer = Texts.prose(answerLength);
+        completion = new JSONObject()
+                .put("id", "chatcmpl-1")
+                .put("object", "chat.completion")
+                .put("choices", new JSONArray().put(new JSONObject()
+                        .put("index", 0)
+                        .put("finish_reason", "stop")
+                        .put("message", new JSONObject()
+                                .put("role", "assistant")
+                                .put("content", answer))))
+                .toString();
+
+        for (String token : answer.split("(?<= )")) {
+            streamLines.add("data: " + new JSONObject()
+                    .put("id", "chatcmpl-1")
+                    .put("object", "chat.completion.chunk")
+                    .put("choices", new JSONArray().put(new JSONObject()
+                            .put("index", 0)
+                            .put("delta", new JSONObject().put("content", token))))
+                    .toString());
+            streamLines.add("");
+        }
+        streamLines.add("data: [DONE]");
+    }
+
+    @Benchmark
+    public String completion() throws Exception {
+        return ChatCompletionCodec.parseCompletion(completion);
+    }
+
+    @Benchmark
+    public void stream(Blackhole bh) throws Exception {
+        for (int i = 0; i < streamLines.size(); i++) {
+            bh.consume(ChatCompletionCodec.parseStreamLine(streamLines.get(i)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tn.eluea.kgpt.bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.roles.RoleManager;
+
+/**
+ * Role lookups done for every request: the system message resolved from the stored roles
+ * JSON, and the full role list the switcher loads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoleResolutionBenchmark {
+
+    @Param({ "4", "64" })
+    public int roles;
+
+    private String rolesJson;
+    private String lastRoleId;
+
+    @Setup
+    public void setUp() throws Exception {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < roles; i++) {
+            arr.put(new JSONObject()
+                    .put("id", "role_" + i)
+                    .put("name", "Role " + i)
+                    .put("prompt", "You are assistant number " + i + ". " + Texts.prose(200)));
+        }
+        rolesJson = arr.toString();
+        lastRoleId = "role_" + (roles - 1);
+    }
+
+    @Benchmark
+    public String resolveDefault() {
+        return RoleManager.resolveSystemMessage(RoleManager.DEFAULT_ROLE_ID, rolesJson, "Fix the grammar.");
+    }
+
+    @Benchmark
+    public String resolveCustom() {
+        return RoleManager.resolveSystemMessage(lastRoleId, rolesJson, "Fix the grammar.");
+    }
+
+    @Benchmark
+    public List<RoleManager.Role> loadRoles() {
+        return RoleManager.loadRoles(rolesJson);
+    }
+}
@@ -0,0 +1,32 @@
+package tn.eluea.kgpt.bench;
+
+/** Deterministic input text for the benchmarks. */
+final class Texts {
+
+    private static final String[] WORDS = { "the", "meeting", "notes", "from", "monday", "cover",
+            "budget", "review", "and", "next", "steps", "for", "launch", "with", "several", "open",
+            "questions", "café", "naïve" };
+
+    private Texts() {
+    }
+
+    /** Words and line breaks, {@code length} chars long. */
+    static String prose(int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        int lineLen = 0;
+        for (int i = 0; sb.length() < length; i++) {
+            String w = WORDS[(i * 7 + i / WORDS.length) % WORDS.length];
+            sb.append(w);
+            lineLen += w.length();
+            if (lineLen > 72) {
+                sb.append(".\n");
+                lineLen = 0;
+            } else {
+                sb.append(' ');
+                lineLen++;
+            }
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
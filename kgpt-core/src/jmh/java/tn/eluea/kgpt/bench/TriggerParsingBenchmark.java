@@ -0,0 +1,85 @@
+package tn.eluea.kgpt.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.TriggerAutomaton;
+import tn.eluea.kgpt.text.parse.result.AIParseResultFactory;
+
+/**
+ * Trigger detection on a keystroke: the suffix automaton that decides which directives
+ * are worth running, and the regex match of the directives themselves, with the default
+ * patterns and a text that does or does not end in a trigger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TriggerParsingBenchmark {
+
+    @Param({ "256", "8192" })
+    public int length;
+
+    private TriggerAutomaton automaton;
+    private final List<ParseDirective> directives = new ArrayList<>();
+    private String plain;
+    private String triggered;
+
+    @Setup
+    public void setUp() {
+        TriggerAutomaton.Builder builder = new TriggerAutomaton.Builder();
+        PatternType[] types = PatternType.values();
+        for (int i = 0; i < types.length; i++) {
+            ParseDirective directive = new ParseDirective(Pattern.compile(types[i].defaultPattern),
+                    new AIParseResultFactory());
+            directives.add(directive);
+            builder.add(directive.getRequiredSuffix(), i);
+        }
+        automaton = builder.build();
+
+        plain = Texts.prose(length);
+        triggered = plain.substring(0, length - 1) + "$";
+    }
+
+    @Benchmark
+    public long automatonMiss() {
+        return automaton.match(plain, plain.length());
+    }
+
+    @Benchmark
+    public long automatonHit() {
+        return automaton.match(triggered, triggered.length());
+    }
+
+    @Benchmark
+    public void directivesMiss(Blackhole bh) {
+        parseAll(plain, bh);
+    }
+
+    @Benchmark
+    public void directivesHit(Blackhole bh) {
+        parseAll(triggered, bh);
+    }
+
+    private void parseAll(String text, Blackhole bh) {
+        long groups = automaton.match(text, text.length());
+        for (int i = 0; i < directives.size(); i++) {
+            if ((groups & (1L << i)) != 0) {
+                bh.consume(directives.get(i).parse(text));
+            }
+        }
+    }
+}
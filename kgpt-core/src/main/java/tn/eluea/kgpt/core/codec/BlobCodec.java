@@ -0,0 +1,246 @@
+package tn.eluea.kgpt.core.codec;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import tn.eluea.kgpt.core.platform.CoreLog;
+
+/**
+ * Versioned binary encoding for the structured values kept as config strings (parse
+ * patterns, roles, commands, app triggers, QuickJump entries, cached model lists).
+ *
+ * A stored value is {@link #PREFIX} followed by Base64 of:
+ * <pre>
+ * byte    schema id, one of the SCHEMA_ constants
+ * varint  schema version
+ *         body, written by {@link #write} for that version
+ * </pre>
+ * Base64 keeps the value a plain string, so it still fits the provider's string type and the
+ * exported XML that other processes read.
+ *
+ * Values written before this encoding, intents built by older code and backups are JSON.
+ * {@link #decode} accepts both forms; {@link #toJson} and {@link #fromJson} convert at the
+ * backup boundary so backup files stay readable and portable.
+ *
+ * Decoded values are cached by their stored text (its hash, then equals), so each blob is
+ * parsed once per change rather than on every read. The cache holds its own copy and every
+ * caller gets a fresh one from {@link #copy}, since most of these types are mutable.
+ *
+ * A stored value that doesn't parse is reported, never cached: {@link #decode} throws
+ * {@link DecodeException}, so code that would write the value back can leave it alone.
+ * Readers that only display or use the value take {@link #decodeOrEmpty}.
+ */
+public abstract class BlobCodec<T> {
+
+    public static final String PREFIX = "kb1:";
+
+    // One id per stored structure; never reuse a retired one
+    public static final int SCHEMA_PARSE_PATTERNS = 1;
+    public static final int SCHEMA_ROLES = 2;
+    public static final int SCHEMA_COMMANDS = 3;
+    public static final int SCHEMA_APP_TRIGGERS = 4;
+    public static final int SCHEMA_QUICK_JUMP = 5;
+    public static final int SCHEMA_MODEL_LIST = 6;
+
+    // Distinct live values per codec; the model lists are one per provider
+    private static final int CACHE_SIZE = 8;
+
+    // Every codec, for clearCaches()
+    private static final List<BlobCodec<?>> sCodecs = new CopyOnWriteArrayList<>();
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private final int mSchema;
+    private final int mVersion;
+    private final String mTag;
+    private final Map<String, T> mCache = new LinkedHashMap<String, T>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /** A stored value that doesn't parse; the value should be left as it is. */
+    public static final class DecodeException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        DecodeException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    protected BlobCodec(int schema, int version, String name) {
+        mSchema = schema;
+        mVersion = version;
+        mTag = "KGPT_BlobCodec_" + name;
+        sCodecs.add(this);
+    }
+
+    /** Drop every codec's decoded values, e.g. when the host process is short on memory. */
+    public static void clearCaches() {
+        for (BlobCodec<?> codec : sCodecs) {
+            synchronized (codec.mCache) {
+                codec.mCache.clear();
+            }
+        }
+    }
+
+    /** Writes the body of {@code value} in the current version. */
+    protected abstract void write(BlobWriter out, T value);
+
+    /** Reads a body written in {@code version}, which is at most the current one. */
+    protected abstract T read(BlobReader in, int version) throws IOException;
+
+    /**
+     * Parses the JSON form (or any older text form). {@code null} means nothing usable was
+     * stored and should give the type's empty value.
+     */
+    protected abstract T parseJson(String text);
+
+    protected abstract String formatJson(T value);
+
+    /** A copy the caller may modify without touching the cached value. */
+    protected abstract T copy(T value);
+
+    public static boolean isBinary(String raw) {
+        return raw != null && raw.startsWith(PREFIX);
+    }
+
+    public final String encode(T value) {
+        BlobWriter out = new BlobWriter();
+        out.writeByte(mSchema);
+        out.writeVarint(mVersion);
+        write(out, value);
+        return PREFIX + base64Encode(out.toByteArray());
+    }
+
+    /**
+     * The value stored as {@code raw}, or the type's empty value for null.
+     *
+     * @throws DecodeException if {@code raw} doesn't parse
+     */
+    public final T decode(String raw) {
+        if (raw == null) return parseJson(null);
+        T cached;
+        synchronized (mCache) {
+            cached = mCache.get(raw);
+        }
+        if (cached == null) {
+            cached = isBinary(raw) ? readBinary(raw) : readJson(raw);
+            synchronized (mCache) {
+                mCache.put(raw, cached);
+            }
+        }
+        return copy(cached);
+    }
+
+    /** Like {@link #decode}, but a value that doesn't parse reads as the empty value. */
+    public final T decodeOrEmpty(String raw) {
+        try {
+            return decode(raw);
+        } catch (DecodeException e) {
+            return parseJson(null);
+        }
+    }
+
+    /**
+     * The JSON form of a stored value, whichever form it is stored in. A binary value that
+     * doesn't parse is returned as it is rather than as an empty list.
+     */
+    public final String toJson(String raw) {
+        if (raw == null || !isBinary(raw)) return raw;
+        try {
+            return formatJson(decode(raw));
+        } catch (DecodeException e) {
+            return raw;
+        }
+    }
+
+    /**
+     * The stored form of a JSON (or already binary) value. Text that doesn't parse is kept as
+     * it is, so the reader reports it the way it always has.
+     */
+    public final String fromJson(String text) {
+        if (text == null || isBinary(text)) return text;
+        try {
+            return encode(decode(text));
+        } catch (RuntimeException e) {
+            CoreLog.w(mTag, "Keeping unparsable value as text: " + e);
+            return text;
+        }
+    }
+
+    private T readBinary(String raw) {
+        try {
+            byte[] bytes = base64Decode(raw, PREFIX.length());
+            BlobReader in = new BlobReader(bytes, 0);
+            int schema = in.readByte();
+            int version = in.readVarint();
+            if (schema != mSchema) throw new IOException("Schema " + schema + ", expected " + mSchema);
+            if (version < 1 || version > mVersion) throw new IOException("Unsupported version " + version);
+            return read(in, version);
+        } catch (IOException | IllegalArgumentException e) {
+            CoreLog.e(mTag, "Error decoding blob", e);
+            throw new DecodeException("Unreadable " + mTag + " blob", e);
+        }
+    }
+
+    private T readJson(String raw) {
+        try {
+            return parseJson(raw);
+        } catch (RuntimeException e) {
+            CoreLog.e(mTag, "Error parsing JSON value", e);
+            throw new DecodeException("Unreadable " + mTag + " JSON", e);
+        }
+    }
+
+    private static String base64Encode(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int n = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+            sb.append(BASE64[n >>> 18]).append(BASE64[(n >>> 12) & 0x3F])
+                    .append(BASE64[(n >>> 6) & 0x3F]).append(BASE64[n & 0x3F]);
+        }
+        int rest = data.length - i;
+        if (rest > 0) {
+            int n = (data[i] & 0xFF) << 16 | (rest == 2 ? (data[i + 1] & 0xFF) << 8 : 0);
+            sb.append(BASE64[n >>> 18]).append(BASE64[(n >>> 12) & 0x3F]);
+            sb.append(rest == 2 ? BASE64[(n >>> 6) & 0x3F] : '=').append('=');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] base64Decode(String s, int start) {
+        int end = s.length();
+        while (end > start && s.charAt(end - 1) == '=') end--;
+        int chars = end - start;
+        if (chars % 4 == 1) throw new IllegalArgumentException("Truncated Base64");
+        byte[] out = new byte[chars * 3 / 4];
+        int o = 0;
+        int acc = 0;
+        int bits = 0;
+        for (int i = start; i < end; i++) {
+            acc = acc << 6 | sextet(s.charAt(i));
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[o++] = (byte) (acc >>> bits);
+            }
+        }
+        return out;
+    }
+
+    private static int sextet(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '+') return 62;
+        if (c == '/') return 63;
+        throw new IllegalArgumentException("Bad Base64 character " + c);
+    }
+}
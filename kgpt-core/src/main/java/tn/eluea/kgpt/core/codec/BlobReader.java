@@ -0,0 +1,67 @@
+package tn.eluea.kgpt.core.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads what {@link BlobWriter} wrote. Running past the end or a length that doesn't fit
+ * throws, so a truncated or foreign blob is rejected instead of half-read.
+ */
+public final class BlobReader {
+
+    private final byte[] mBuf;
+    private int mPos;
+
+    BlobReader(byte[] buf, int pos) {
+        mBuf = buf;
+        mPos = pos;
+    }
+
+    public int readByte() throws IOException {
+        if (mPos >= mBuf.length) throw new EOFException();
+        return mBuf[mPos++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /** Reads a count or length, rejecting anything the remaining bytes couldn't hold. */
+    public int readLength() throws IOException {
+        int n = readVarint();
+        if (n < 0 || n > mBuf.length - mPos + 1) throw new IOException("Bad length " + n);
+        return n;
+    }
+
+    public String readString() throws IOException {
+        int n = readLength();
+        if (n == 0) return null;
+        int len = n - 1;
+        String s = new String(mBuf, mPos, len, StandardCharsets.UTF_8);
+        mPos += len;
+        return s;
+    }
+
+    public Map<String, String> readStringMap() throws IOException {
+        int n = readLength();
+        if (n == 0) return null;
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < n - 1; i++) {
+            map.put(readString(), readString());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,71 @@
+package tn.eluea.kgpt.core.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Growable byte buffer for {@link BlobCodec} bodies. Integers are unsigned LEB128 varints;
+ * strings are a varint of (UTF-8 length + 1) followed by the bytes, with 0 meaning null.
+ */
+public final class BlobWriter {
+
+    private byte[] mBuf = new byte[256];
+    private int mSize;
+
+    BlobWriter() {
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        mBuf[mSize++] = (byte) b;
+    }
+
+    public void writeBoolean(boolean b) {
+        writeByte(b ? 1 : 0);
+    }
+
+    public void writeVarint(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            mBuf[mSize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mBuf[mSize++] = (byte) value;
+    }
+
+    public void writeString(String s) {
+        if (s == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, mBuf, mSize, bytes.length);
+        mSize += bytes.length;
+    }
+
+    /** Size + 1 followed by the key/value pairs; 0 for a null map, as with strings. */
+    public void writeStringMap(Map<String, String> map) {
+        if (map == null) {
+            writeVarint(0);
+            return;
+        }
+        writeVarint(map.size() + 1);
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(e.getKey());
+            writeString(e.getValue());
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(mBuf, mSize);
+    }
+
+    private void ensure(int n) {
+        if (mSize + n > mBuf.length) {
+            mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mSize + n));
+        }
+    }
+}
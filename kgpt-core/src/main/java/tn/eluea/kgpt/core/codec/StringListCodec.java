@@ -0,0 +1,66 @@
+package tn.eluea.kgpt.core.codec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of non-blank, trimmed strings, such as the model ids cached per provider. The JSON
+ * form is a plain array of strings.
+ */
+public final class StringListCodec extends BlobCodec<List<String>> {
+
+    public StringListCodec(int schema, String name) {
+        super(schema, 1, name);
+    }
+
+    @Override
+    protected void write(BlobWriter out, List<String> value) {
+        out.writeVarint(value.size());
+        for (String s : value) {
+            out.writeString(s);
+        }
+    }
+
+    @Override
+    protected List<String> read(BlobReader in, int version) throws IOException {
+        int n = in.readLength();
+        List<String> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            add(out, in.readString());
+        }
+        return out;
+    }
+
+    @Override
+    protected List<String> parseJson(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null || text.trim().isEmpty()) return out;
+        try {
+            JSONArray arr = new JSONArray(text);
+            for (int i = 0; i < arr.length(); i++) {
+                add(out, arr.optString(i, ""));
+            }
+        } catch (JSONException ignored) {}
+        return out;
+    }
+
+    @Override
+    protected String formatJson(List<String> value) {
+        return new JSONArray(value).toString();
+    }
+
+    @Override
+    protected List<String> copy(List<String> value) {
+        return new ArrayList<>(value);
+    }
+
+    private static void add(List<String> out, String s) {
+        if (s == null) return;
+        String v = s.trim();
+        if (!v.isEmpty()) out.add(v);
+    }
+}
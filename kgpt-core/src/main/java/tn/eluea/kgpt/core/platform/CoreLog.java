@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024-2025 Amr Aldeeb @Eluea
+ *
+ * This file is part of KGPT - a fork of KeyboardGPT.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ */
+package tn.eluea.kgpt.core.platform;
+
+/**
+ * Logging for the platform-independent code in kgpt-core.
+ *
+ * kgpt-core cannot see android.util.Log or the Xposed bridge, so it logs through a
+ * {@link Sink} that the app installs at startup. Until one is installed (unit tests,
+ * JMH) warnings and errors go to stderr and the rest is dropped.
+ */
+public final class CoreLog {
+
+    // Same values as android.util.Log
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public interface Sink {
+        void log(int priority, String tag, String message, Throwable t);
+    }
+
+    private static final Sink STDERR = (priority, tag, message, t) -> {
+        if (priority < WARN) return;
+        System.err.println(tag + ": " + message);
+        if (t != null) t.printStackTrace();
+    };
+
+    private static volatile Sink sink = STDERR;
+
+    private CoreLog() {
+    }
+
+    public static void setSink(Sink s) {
+        sink = s != null ? s : STDERR;
+    }
+
+    public static void d(String tag, String message) {
+        sink.log(DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        sink.log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        sink.log(WARN, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable t) {
+        sink.log(ERROR, tag, message, t);
+    }
+}
@@ -0,0 +1,538 @@
+package tn.eluea.kgpt.core.store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+import tn.eluea.kgpt.core.platform.CoreLog;
+
+/**
+ * An append-only, checksummed key-value log with per-key random access.
+ *
+ * Every write appends its records and forces them to disk once; nothing is rewritten in
+ * place, so a crash loses at most the write in flight. On open the log is replayed up to the
+ * first record whose length or CRC doesn't check out (a torn write) and cut back to the last
+ * good one. A multi-key {@link #write} flags all its records but the last as "more follows",
+ * and replay drops a batch that never saw its last record, so batches land whole or not at all.
+ *
+ * Record layout, big-endian:
+ * <pre>
+ * int   payload length
+ * int   CRC32 of the payload
+ * byte  op (put / remove), plus FLAG_MORE inside a batch
+ * byte  type length, then the type in ASCII
+ * int   key length, then the key in UTF-8
+ *       value in UTF-8, the rest of the payload
+ * </pre>
+ *
+ * The index keeps, per key, where its latest record sits. Values up to
+ * {@link #MAX_CACHED_BYTES} stay in memory; larger ones (clipboard history, model lists) are
+ * read back from their offset when asked for. Once superseded records outweigh the live
+ * ones, the live records are copied to a fresh file on the compaction executor and swapped
+ * in with an atomic rename.
+ *
+ * Types are opaque to the store; callers use them to remember how to parse a value.
+ */
+public final class KvLogStore implements Closeable {
+
+    private static final String TAG = "KGPT_KvLogStore";
+
+    public static final int MAX_CACHED_BYTES = 4 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_MASK = 0x0F;
+    // Set on every record of a batch except its last
+    private static final byte FLAG_MORE = 0x10;
+    private static final int HEADER_BYTES = 8;
+    // op + type length + key length
+    private static final int MIN_PAYLOAD = 1 + 1 + 4;
+    // Anything longer is a corrupt length field, not a value
+    private static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+    // Below this much garbage a compaction isn't worth the copy
+    private static final long MIN_COMPACT_GARBAGE = 256 * 1024;
+
+    private static final class Entry {
+        final String type;
+        final long offset;
+        final int recordBytes;
+        final int valueBytes;
+        final String cached;
+
+        Entry(String type, long offset, int recordBytes, int valueBytes, String cached) {
+            this.type = type;
+            this.offset = offset;
+            this.recordBytes = recordBytes;
+            this.valueBytes = valueBytes;
+            this.cached = cached;
+        }
+
+        long valueOffset() {
+            return offset + recordBytes - valueBytes;
+        }
+
+        Entry movedTo(long newOffset) {
+            return new Entry(type, newOffset, recordBytes, valueBytes, cached);
+        }
+    }
+
+    /** A key's type and value, as returned by {@link #read} and taken by {@link #write}. */
+    public static final class Value {
+        public final String type;
+        public final String value;
+
+        public Value(String type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private final File mFile;
+    private final Executor mCompactor;
+    private final Map<String, Entry> mIndex = new HashMap<>();
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    private long mFileBytes;
+    private long mLiveBytes;
+    private boolean mCompacting;
+
+    /**
+     * Open (or create) the log at {@code file}, replaying it into the index.
+     * {@code compactor} runs compactions; it should not be the caller's thread.
+     */
+    public KvLogStore(File file, Executor compactor) throws IOException {
+        mFile = file;
+        mCompactor = compactor;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        // A compaction interrupted before its rename left nothing we need
+        new File(file.getPath() + ".compact").delete();
+        openChannel();
+        replay();
+    }
+
+    public synchronized boolean contains(String key) {
+        return mIndex.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return mIndex.size();
+    }
+
+    public synchronized List<String> keys() {
+        return new ArrayList<>(mIndex.keySet());
+    }
+
+    /** Type of {@code key}, or null if it isn't set. */
+    public synchronized String typeOf(String key) {
+        Entry e = mIndex.get(key);
+        return e != null ? e.type : null;
+    }
+
+    /** UTF-8 length of the value of {@code key}, or -1 if it isn't set. */
+    public synchronized int valueBytes(String key) {
+        Entry e = mIndex.get(key);
+        return e != null ? e.valueBytes : -1;
+    }
+
+    /** Value of {@code key}, or null if it isn't set or can't be read back. */
+    public synchronized String get(String key) {
+        Entry e = mIndex.get(key);
+        return e != null ? valueOf(key, e) : null;
+    }
+
+    /** Type and value of {@code key}, or null if it isn't set or can't be read back. */
+    public synchronized Value read(String key) {
+        Entry e = mIndex.get(key);
+        if (e == null) return null;
+        String value = valueOf(key, e);
+        return value != null ? new Value(e.type, value) : null;
+    }
+
+    /**
+     * Set {@code key} to {@code value}. Returns false without touching the file if it already
+     * holds exactly that.
+     */
+    public synchronized boolean put(String key, String type, String value) throws IOException {
+        return !write(Collections.singletonMap(key, new Value(type, value))).isEmpty();
+    }
+
+    /** Remove {@code key}. Returns false if it wasn't set. */
+    public synchronized boolean remove(String key) throws IOException {
+        return !write(Collections.<String, Value>singletonMap(key, null)).isEmpty();
+    }
+
+    /**
+     * Apply {@code changes} (a null value removes the key) as one atomic append with a single
+     * force. Changes that wouldn't change anything are dropped; returns the keys that did.
+     */
+    public synchronized List<String> write(Map<String, Value> changes) throws IOException {
+        List<String> keys = new ArrayList<>(changes.size());
+        List<Value> values = new ArrayList<>(changes.size());
+        for (Map.Entry<String, Value> c : changes.entrySet()) {
+            Entry old = mIndex.get(c.getKey());
+            Value v = c.getValue();
+            if (v == null ? old == null
+                    : old != null && old.type.equals(v.type) && v.value.equals(valueOf(c.getKey(), old))) {
+                continue;
+            }
+            keys.add(c.getKey());
+            values.add(v);
+        }
+        if (keys.isEmpty()) return keys;
+
+        int n = keys.size();
+        ByteBuffer[] records = new ByteBuffer[n];
+        int[] recordBytes = new int[n];
+        int[] valueBytes = new int[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            Value v = values.get(i);
+            byte op = v != null ? OP_PUT : OP_REMOVE;
+            if (i < n - 1) op |= FLAG_MORE;
+            byte[] bytes = v != null ? v.value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            records[i] = encode(op, v != null ? v.type : "", keys.get(i), bytes);
+            recordBytes[i] = records[i].remaining();
+            valueBytes[i] = bytes.length;
+            total += recordBytes[i];
+        }
+        ByteBuffer batch;
+        if (n == 1) {
+            batch = records[0];
+        } else {
+            batch = ByteBuffer.allocate(total);
+            for (ByteBuffer r : records) batch.put(r);
+            batch.flip();
+        }
+
+        long offset = append(batch);
+        for (int i = 0; i < n; i++) {
+            String key = keys.get(i);
+            Value v = values.get(i);
+            Entry old;
+            if (v != null) {
+                Entry e = new Entry(v.type, offset, recordBytes[i], valueBytes[i],
+                        valueBytes[i] <= MAX_CACHED_BYTES ? v.value : null);
+                old = mIndex.put(key, e);
+                mLiveBytes += e.recordBytes;
+            } else {
+                old = mIndex.remove(key);
+            }
+            if (old != null) mLiveBytes -= old.recordBytes;
+            offset += recordBytes[i];
+        }
+        maybeCompact();
+        return keys;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mIndex.clear();
+        mChannel.close();
+        mRaf.close();
+    }
+
+    private String valueOf(String key, Entry e) {
+        if (e.cached != null) return e.cached;
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(e.valueBytes);
+            readFully(buf, e.valueOffset());
+            return new String(buf.array(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            CoreLog.e(TAG, "Failed to read " + key, ex);
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(byte op, String type, String key, byte[] value) {
+        byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        if (t.length > 255) throw new IllegalArgumentException("type too long: " + type);
+        int payload = MIN_PAYLOAD + t.length + k.length + value.length;
+        if (payload > MAX_PAYLOAD) throw new IllegalArgumentException("value too large for " + key);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + payload);
+        buf.putInt(payload);
+        buf.putInt(0);
+        buf.put(op);
+        buf.put((byte) t.length);
+        buf.put(t);
+        buf.putInt(k.length);
+        buf.put(k);
+        buf.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), HEADER_BYTES, payload);
+        buf.putInt(4, (int) crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    /** Write {@code record} at the end of the log and force it out; returns its offset. */
+    private long append(ByteBuffer record) throws IOException {
+        long offset = mFileBytes;
+        long pos = offset;
+        try {
+            while (record.hasRemaining()) {
+                pos += mChannel.write(record, pos);
+            }
+            mChannel.force(false);
+        } catch (IOException e) {
+            // Leave no half record for the next append to land behind
+            try {
+                mChannel.truncate(offset);
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+        mFileBytes = pos;
+        return offset;
+    }
+
+    private void openChannel() throws IOException {
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mChannel = mRaf.getChannel();
+    }
+
+    private void replay() throws IOException {
+        long size = mChannel.size();
+        long pos = 0;
+        // Records of a batch whose last record hasn't been seen yet
+        List<byte[]> pending = new ArrayList<>();
+        long pendingStart = -1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, pos);
+            int payload = header.getInt(0);
+            int expected = header.getInt(4);
+            if (payload < MIN_PAYLOAD || payload > MAX_PAYLOAD || pos + HEADER_BYTES + payload > size) break;
+
+            byte[] bytes = new byte[payload];
+            readFully(ByteBuffer.wrap(bytes), pos + HEADER_BYTES);
+            crc.reset();
+            crc.update(bytes, 0, payload);
+            if ((int) crc.getValue() != expected) break;
+            if (pendingStart < 0) pendingStart = pos;
+            pending.add(bytes);
+            pos += HEADER_BYTES + payload;
+            if ((bytes[0] & FLAG_MORE) != 0) continue;
+
+            long offset = pendingStart;
+            boolean ok = true;
+            for (byte[] record : pending) {
+                if (!apply(record, offset)) {
+                    ok = false;
+                    break;
+                }
+                offset += HEADER_BYTES + record.length;
+            }
+            if (!ok) {
+                pos = offset;
+                pendingStart = -1;
+                break;
+            }
+            pending.clear();
+            pendingStart = -1;
+        }
+        if (pendingStart >= 0) {
+            // Torn inside a batch: none of it happened
+            pos = pendingStart;
+        }
+        if (pos < size) {
+            CoreLog.w(TAG, "Dropping " + (size - pos) + " bytes of torn log at offset " + pos);
+            mChannel.truncate(pos);
+            mChannel.force(true);
+        }
+        mFileBytes = pos;
+    }
+
+    /** Apply one replayed record to the index; false if it doesn't parse. */
+    private boolean apply(byte[] payload, long offset) {
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        byte op = (byte) (buf.get() & OP_MASK);
+        int typeLen = buf.get() & 0xFF;
+        if (buf.remaining() < typeLen + 4) return false;
+        String type = new String(payload, buf.position(), typeLen, StandardCharsets.US_ASCII);
+        buf.position(buf.position() + typeLen);
+        int keyLen = buf.getInt();
+        if (keyLen < 0 || buf.remaining() < keyLen) return false;
+        String key = new String(payload, buf.position(), keyLen, StandardCharsets.UTF_8);
+        buf.position(buf.position() + keyLen);
+        int valueLen = buf.remaining();
+
+        Entry old;
+        if (op == OP_PUT) {
+            String cached = valueLen <= MAX_CACHED_BYTES
+                    ? new String(payload, buf.position(), valueLen, StandardCharsets.UTF_8)
+                    : null;
+            Entry e = new Entry(type, offset, HEADER_BYTES + payload.length, valueLen, cached);
+            old = mIndex.put(key, e);
+            mLiveBytes += e.recordBytes;
+        } else if (op == OP_REMOVE) {
+            old = mIndex.remove(key);
+        } else {
+            return false;
+        }
+        if (old != null) mLiveBytes -= old.recordBytes;
+        return true;
+    }
+
+    private void maybeCompact() {
+        long garbage = mFileBytes - mLiveBytes;
+        if (mCompacting || garbage < MIN_COMPACT_GARBAGE || garbage < mLiveBytes) return;
+        mCompacting = true;
+        mCompactor.execute(() -> {
+            try {
+                runCompaction();
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Compaction failed", e);
+            } finally {
+                synchronized (KvLogStore.this) {
+                    mCompacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Copy the live records to a new file and rename it over the log. Each live record is
+     * written as a batch of its own: the superseded records of its original batch are gone,
+     * so a "more follows" flag it carried is cleared (and its checksum redone), or replay
+     * would take it for a torn batch.
+     *
+     * The copy runs without the store lock, from a snapshot of the index: records below the
+     * snapshot's end never change, since writes only append. Reads and writes carry on
+     * meanwhile. Only the final step takes the lock, to append what was written since the
+     * snapshot (whole batches, as they are) and swap the file in.
+     */
+    void compact() throws IOException {
+        synchronized (this) {
+            if (mCompacting) return;
+            mCompacting = true;
+        }
+        try {
+            runCompaction();
+        } finally {
+            synchronized (this) {
+                mCompacting = false;
+            }
+        }
+    }
+
+    /** The compaction itself; the caller holds the mCompacting claim. */
+    private void runCompaction() throws IOException {
+        Map<String, Entry> snapshot;
+        FileChannel source;
+        long snapshotEnd;
+        synchronized (this) {
+            if (!mChannel.isOpen()) return;
+            snapshot = new HashMap<>(mIndex);
+            source = mChannel;
+            snapshotEnd = mFileBytes;
+        }
+
+        File tmp = new File(mFile.getPath() + ".compact");
+        Map<String, Entry> moved = new HashMap<>();
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            FileChannel target = out.getChannel();
+            target.truncate(0);
+            long pos = 0;
+            CRC32 crc = new CRC32();
+            for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                Entry entry = e.getValue();
+                ByteBuffer record = ByteBuffer.allocate(entry.recordBytes);
+                readFully(source, record, entry.offset);
+                byte[] bytes = record.array();
+                if ((bytes[HEADER_BYTES] & FLAG_MORE) != 0) {
+                    bytes[HEADER_BYTES] &= ~FLAG_MORE;
+                    crc.reset();
+                    crc.update(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+                    record.putInt(4, (int) crc.getValue());
+                }
+                record.flip();
+                writeFully(target, record, pos);
+                moved.put(e.getKey(), entry.movedTo(pos));
+                pos += entry.recordBytes;
+            }
+            target.force(false);
+
+            synchronized (this) {
+                if (mChannel != source || !mChannel.isOpen()) {
+                    tmp.delete();
+                    return;
+                }
+                // Whatever was appended since the snapshot, moved down by the bytes saved
+                long copied = pos;
+                long tail = mFileBytes - snapshotEnd;
+                ByteBuffer buf = ByteBuffer.allocate((int) Math.min(tail, 64 * 1024));
+                for (long done = 0; done < tail; ) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(), tail - done));
+                    readFully(source, buf, snapshotEnd + done);
+                    buf.flip();
+                    writeFully(target, buf, copied + done);
+                    done += buf.limit();
+                }
+                target.force(true);
+
+                Map<String, Entry> index = new HashMap<>();
+                long live = 0;
+                for (Map.Entry<String, Entry> e : mIndex.entrySet()) {
+                    Entry entry = e.getValue();
+                    Entry at = entry.offset >= snapshotEnd
+                            ? entry.movedTo(entry.offset - snapshotEnd + copied)
+                            : moved.get(e.getKey());
+                    index.put(e.getKey(), at);
+                    live += at.recordBytes;
+                }
+                if (!tmp.renameTo(mFile)) {
+                    tmp.delete();
+                    throw new IOException("Cannot rename " + tmp + " to " + mFile);
+                }
+                CoreLog.d(TAG, "Compacted " + mFileBytes + " -> " + (copied + tail) + " bytes");
+
+                mChannel.close();
+                mRaf.close();
+                openChannel();
+                mIndex.clear();
+                mIndex.putAll(index);
+                mFileBytes = copied + tail;
+                mLiveBytes = live;
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        readFully(mChannel, buf, pos);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) throw new EOFException();
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+}
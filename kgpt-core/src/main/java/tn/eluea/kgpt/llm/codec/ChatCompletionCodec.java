@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.codec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decoding of OpenAI-style chat completion responses, shared by the clients that speak
+ * that wire format (ChatGPT, Mistral, local servers).
+ */
+public final class ChatCompletionCodec {
+
+    private ChatCompletionCodec() {
+    }
+
+    /**
+     * Content of a non-streamed completion: the assistant's message if one of the choices
+     * has that role, the first choice otherwise.
+     */
+    public static String parseCompletion(String response) throws JSONException {
+        JSONObject responseJson = new JSONObject(response);
+        if (!responseJson.has("choices")) {
+            throw new JSONException("no \"choices\" attribute found");
+        }
+        JSONArray choices = responseJson.getJSONArray("choices");
+        for (int i = 0; i < choices.length(); i++) {
+            JSONObject choice = choices.getJSONObject(i).getJSONObject("message");
+            if (choice.has("role") && "assistant".equals(choice.getString("role"))) {
+                return choice.getString("content");
+            }
+        }
+        if (choices.length() == 0) {
+            throw new JSONException("choices has length 0");
+        }
+        return choices.getJSONObject(0).getJSONObject("message").getString("content");
+    }
+
+    /**
+     * Extract the text of one streamed line. Returns null for keep-alive comments, empty
+     * lines, the [DONE] marker and chunks without content.
+     */
+    public static String parseStreamLine(String line) throws JSONException {
+        if (line == null) return null;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith(":")) return null;
+        if (line.startsWith("data:")) {
+            line = line.substring("data:".length()).trim();
+        }
+        if (line.isEmpty() || "[DONE]".equals(line)) return null;
+
+        JSONObject json = new JSONObject(line);
+        JSONArray choices = json.optJSONArray("choices");
+        if (choices == null || choices.length() == 0) return null;
+        JSONObject choice = choices.getJSONObject(0);
+        JSONObject message = choice.optJSONObject("delta");
+        if (message == null) message = choice.optJSONObject("message");
+        if (message == null || !message.has("content") || message.isNull("content")) return null;
+        String content = message.getString("content");
+        return content.isEmpty() ? null : content;
+    }
+
+    /** The message of an error body, or the body itself when it has none. */
+    public static String parseError(String response) {
+        try {
+            JSONObject json = new JSONObject(response);
+            Object error = json.opt("error");
+            if (error instanceof JSONObject) {
+                return ((JSONObject) error).optString("message", response);
+            } else if (error != null) {
+                // Ollama: {"error":"model 'x' not found"}
+                return String.valueOf(error);
+            }
+        } catch (Throwable ignored) {}
+        return response;
+    }
+}
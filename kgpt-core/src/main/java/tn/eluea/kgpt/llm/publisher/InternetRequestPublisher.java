@@ -23,8 +23,8 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
-import android.util.Log;
 
+import tn.eluea.kgpt.core.platform.CoreLog;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
 public class InternetRequestPublisher implements
@@ -34,7 +34,8 @@ public class InternetRequestPublisher implements
     private final Object mLock = new Object();
     private final Callback mOnStatusCodeSuccess;
     private final Callback mOnStatusCodeError;
-    private InputStream mInputStream = null;
+    private volatile InputStream mInputStream = null;
+    private volatile boolean mCancelled = false;
 
     public InternetRequestPublisher(Callback onStatusCodeSuccess,
                                     Callback onStatusCodeError) {
@@ -43,7 +44,30 @@ public class InternetRequestPublisher implements
     }
 
     @Override
-    public void subscribe(Subscriber<? super String> subscriber) {
+    public void subscribe(Subscriber<? super String> downstream) {
+        // Drops signals once cancelled, so a cancelled stream never reaches its listener
+        final Subscriber<? super String> subscriber = new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                downstream.onSubscribe(s);
+            }
+
+            @Override
+            public void onNext(String s) {
+                if (!mCancelled) downstream.onNext(s);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (!mCancelled) downstream.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                if (!mCancelled) downstream.onComplete();
+            }
+        };
+
         subscriber.onSubscribe(new Subscription() {
             @Override
             public void request(long n) {
@@ -53,8 +77,8 @@ public class InternetRequestPublisher implements
                 }
 
                 synchronized (mLock) {
-                    while (mStatusCode.get() == -1) {
-                        Log.d(TAG, "Waiting for status code");
+                    while (mStatusCode.get() == -1 && !mCancelled) {
+                        CoreLog.d(TAG, "Waiting for status code");
                         try {
                             mLock.wait();
                         } catch (InterruptedException e) {
@@ -62,7 +86,9 @@ public class InternetRequestPublisher implements
                     }
                 }
 
-                Log.d(TAG, "Received status code " + mStatusCode);
+                if (mCancelled) return;
+
+                CoreLog.d(TAG, "Received status code " + mStatusCode);
                 boolean hasError = false;
                 try {
                     BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream));
@@ -74,7 +100,7 @@ public class InternetRequestPublisher implements
                     reader.close();
                     mInputStream.close();
                 } catch (Throwable t) {
-                    Log.e(TAG, "Error", t);
+                    CoreLog.e(TAG, "Error", t);
                     hasError = true;
                     subscriber.onError(t);
                 }
@@ -86,6 +112,7 @@ public class InternetRequestPublisher implements
 
             @Override
             public void cancel() {
+                InternetRequestPublisher.this.cancel();
             }
         });
     }
@@ -103,6 +130,28 @@ public class InternetRequestPublisher implements
 
     }
 
+    /**
+     * Stop delivering to the subscriber and close the response stream, which unblocks a
+     * reader waiting on the network.
+     */
+    public void cancel() {
+        mCancelled = true;
+        synchronized (mLock) {
+            mLock.notifyAll();
+        }
+        InputStream in = mInputStream;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
     public void setInputStream(InputStream inputStream) {
         mInputStream = inputStream;
     }
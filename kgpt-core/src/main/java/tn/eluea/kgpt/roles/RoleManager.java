@@ -0,0 +1,200 @@
+package tn.eluea.kgpt.roles;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.BlobReader;
+import tn.eluea.kgpt.core.codec.BlobWriter;
+
+/**
+ * Simple role (persona) manager stored in preferences.
+ *
+ * Roles are stored through {@link #CODEC}; their JSON form is an array of objects:
+ * [{ "id": "...", "name": "...", "prompt": "...", "trigger": "..." }, ...]
+ *
+ * Active role id is stored separately.
+ */
+public final class RoleManager {
+
+    public static final String DEFAULT_ROLE_ID = "default";
+    public static final String DEFAULT_ROLE_NAME = "默认";
+    public static final String DEFAULT_ROLE_PROMPT = "You are a helpful assistant integrated inside a keyboard.";
+
+    // Preference keys (stored via SPManager / ConfigProvider)
+    public static final String PREF_ROLES_JSON = "roles_json_v1";
+    public static final String PREF_ACTIVE_ROLE_ID = "active_role_id_v1";
+
+    private RoleManager() {}
+
+    public static class Role {
+        public final String id;
+        public final String name;
+        public final String prompt;
+        /**
+         * Optional custom trigger keyword for this role.
+         *
+         * If blank, the role inherits the global AI trigger keyword.
+         */
+        public final String trigger;
+
+        public Role(String id, String name, String prompt) {
+            this(id, name, prompt, "");
+        }
+
+        public Role(String id, String name, String prompt, String trigger) {
+            this.id = id;
+            this.name = name;
+            this.prompt = prompt;
+            this.trigger = trigger == null ? "" : trigger;
+        }
+    }
+
+    /**
+     * Stored form of the custom roles (the default role is implicit). Older builds stored
+     * the JSON array described above, which is also what backups and imports carry.
+     */
+    public static final BlobCodec<List<Role>> CODEC =
+            new BlobCodec<List<Role>>(BlobCodec.SCHEMA_ROLES, 1, "Roles") {
+                @Override
+                protected void write(BlobWriter out, List<Role> roles) {
+                    out.writeVarint(roles.size());
+                    for (Role r : roles) {
+                        out.writeString(r.id);
+                        out.writeString(r.name);
+                        out.writeString(r.prompt);
+                        out.writeString(r.trigger);
+                    }
+                }
+
+                @Override
+                protected List<Role> read(BlobReader in, int version) throws IOException {
+                    int n = in.readLength();
+                    List<Role> roles = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        addRole(roles, in.readString(), in.readString(), in.readString(), in.readString());
+                    }
+                    return roles;
+                }
+
+                @Override
+                protected List<Role> parseJson(String text) {
+                    List<Role> roles = new ArrayList<>();
+                    if (text == null || text.trim().isEmpty()) return roles;
+                    try {
+                        JSONArray arr = new JSONArray(text);
+                        for (int i = 0; i < arr.length(); i++) {
+                            JSONObject o = arr.optJSONObject(i);
+                            if (o == null) continue;
+                            addRole(roles, o.optString("id", ""), o.optString("name", ""),
+                                    o.optString("prompt", ""), o.optString("trigger", ""));
+                        }
+                    } catch (Exception ignored) {}
+                    return roles;
+                }
+
+                @Override
+                protected String formatJson(List<Role> roles) {
+                    JSONArray arr = new JSONArray();
+                    for (Role r : roles) {
+                        try {
+                            JSONObject o = new JSONObject();
+                            o.put("id", r.id);
+                            o.put("name", r.name);
+                            o.put("prompt", r.prompt);
+                            // Store trigger even if empty (backward compatible)
+                            o.put("trigger", r.trigger == null ? "" : r.trigger);
+                            arr.put(o);
+                        } catch (Exception ignored) {}
+                    }
+                    return arr.toString();
+                }
+
+                @Override
+                protected List<Role> copy(List<Role> roles) {
+                    // Role is immutable
+                    return new ArrayList<>(roles);
+                }
+            };
+
+    private static void addRole(List<Role> roles, String id, String name, String prompt, String trigger) {
+        id = id == null ? "" : id.trim();
+        name = name == null ? "" : name.trim();
+        prompt = prompt == null ? "" : prompt.trim();
+        trigger = trigger == null ? "" : trigger.trim();
+        if (id.isEmpty() || name.isEmpty() || prompt.isEmpty()) return;
+        if (DEFAULT_ROLE_ID.equals(id)) return;
+        roles.add(new Role(id, name, prompt, trigger));
+    }
+
+    /**
+     * The default role followed by the stored custom roles. {@code rolesJson} is the stored
+     * value, in either form {@link #CODEC} reads.
+     */
+    public static List<Role> loadRoles(String rolesJson) {
+        List<Role> roles = new ArrayList<>();
+        // Always include default role first
+        roles.add(new Role(DEFAULT_ROLE_ID, DEFAULT_ROLE_NAME, DEFAULT_ROLE_PROMPT, ""));
+        roles.addAll(CODEC.decodeOrEmpty(rolesJson));
+        return roles;
+    }
+
+    public static String serializeCustomRoles(List<Role> roles) {
+        List<Role> custom = new ArrayList<>();
+        if (roles != null) {
+            for (Role r : roles) {
+                if (r == null) continue;
+                if (DEFAULT_ROLE_ID.equals(r.id)) continue;
+                custom.add(r);
+            }
+        }
+        return CODEC.encode(custom);
+    }
+
+    /**
+     * Returns a system message to use.
+     *
+     * - If the active role is default: returns the providedSystemMessage unchanged (trimmed).
+     * - If a custom role is active and providedSystemMessage is null/blank: returns only the role prompt.
+     * - If both exist: merges as "rolePrompt\n\n### Task\nprovided".
+     */
+    public static String resolveSystemMessage(String activeRoleId, String rolesJson, String providedSystemMessage) {
+        String provided = providedSystemMessage;
+        if (provided != null) provided = provided.trim();
+        if (provided != null && provided.isEmpty()) provided = null;
+
+        // Default role: keep the feature-specific system message
+        if (activeRoleId == null || activeRoleId.trim().isEmpty() || DEFAULT_ROLE_ID.equals(activeRoleId.trim())) {
+            return provided;
+        }
+
+        String rolePrompt = getActiveRolePrompt(activeRoleId.trim(), rolesJson);
+        if (rolePrompt == null || rolePrompt.trim().isEmpty()) {
+            return provided;
+        }
+        rolePrompt = rolePrompt.trim();
+
+        // No task instruction: only role prompt
+        if (provided == null) return rolePrompt;
+
+        // Merge role persona + task instruction, instead of overriding
+        return rolePrompt + "\n\n" + "### Task\n" + provided;
+    }
+
+    private static String getActiveRolePrompt(String activeRoleId, String rolesJson) {
+        if (activeRoleId == null) return null;
+        String id = activeRoleId.trim();
+        if (id.isEmpty() || DEFAULT_ROLE_ID.equals(id)) return null;
+        if (rolesJson == null || rolesJson.trim().isEmpty()) return null;
+
+        for (Role r : CODEC.decodeOrEmpty(rolesJson)) {
+            if (id.equals(r.id)) return r.prompt;
+        }
+
+        return null;
+    }
+}
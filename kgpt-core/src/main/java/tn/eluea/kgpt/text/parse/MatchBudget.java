@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse;
+
+/**
+ * A CharSequence that aborts regex matching once a deadline passes.
+ *
+ * java.util.regex can't be interrupted, but the JVM matcher reads the input through
+ * {@link #charAt}; checking the clock there every few hundred reads turns a runaway match
+ * into an {@link Exceeded} thrown on the calling thread. Android's ICU-backed Matcher copies
+ * the input into a String first, so there the overrun is only noticed once the match returns
+ * (see ParseDirective).
+ */
+public final class MatchBudget implements CharSequence {
+
+    private static final int CHECK_EVERY = 256;
+
+    /** Thrown out of Matcher calls when the budget is used up. */
+    public static final class Exceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public final long budgetMs;
+
+        Exceeded(long budgetMs) {
+            super("regex match exceeded " + budgetMs + "ms", null, false, false);
+            this.budgetMs = budgetMs;
+        }
+    }
+
+    private final CharSequence text;
+    private final long deadlineNanos;
+    private final long budgetMs;
+    private int reads = 0;
+
+    private MatchBudget(CharSequence text, long deadlineNanos, long budgetMs) {
+        this.text = text;
+        this.deadlineNanos = deadlineNanos;
+        this.budgetMs = budgetMs;
+    }
+
+    public static MatchBudget wrap(CharSequence text, long budgetMs) {
+        return new MatchBudget(text, System.nanoTime() + budgetMs * 1_000_000L, budgetMs);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++reads >= CHECK_EVERY) {
+            reads = 0;
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new Exceeded(budgetMs);
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        // Group extraction after a successful match; no need to keep counting
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
+
+public class ParseDirective {
+    // Matching starts in this many chars before the cursor and only widens while the match
+    // reaches the window start (a prefix group such as ([\s\S]+) that wants more text).
+    static final int MATCH_WINDOW_CHARS = 4096;
+    // Per match. A directive over budget this many times in a row is a runaway; one slow
+    // match (a GC pause, a cold start) is not.
+    public static final long MATCH_BUDGET_MS = 20;
+    static final int MAX_OVERRUNS = 3;
+
+    private final Pattern pattern;
+
+    private final ParseResultFactory factory;
+
+    // Literal the pattern must end with (null if unknown); lets TextParser skip the regex
+    private final String requiredSuffix;
+
+    // Consecutive matches over MATCH_BUDGET_MS; only touched from the parsing thread
+    private int overruns = 0;
+
+    public ParseDirective(Pattern pattern, ParseResultFactory factory) {
+        this.pattern = pattern;
+        this.factory = factory;
+        this.requiredSuffix = pattern.flags() == 0 ? TriggerAutomaton.literalSuffix(pattern.pattern()) : null;
+    }
+
+    public String getRequiredSuffix() {
+        return requiredSuffix;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /** True once the directive overran its budget often enough that it should be disabled. */
+    public boolean isOverBudget() {
+        return overruns >= MAX_OVERRUNS;
+    }
+
+    /**
+     * Find the match ending at the cursor inside a region anchored there. Bounds are
+     * transparent (lookbehind sees the whole text) and non-anchoring ({@code ^} still means
+     * the start of the text). A match that starts exactly at the region start may extend
+     * further left, so the region is widened until it doesn't or it covers the whole text.
+     *
+     * A match running past {@link #MATCH_BUDGET_MS} is aborted where the engine reads the
+     * input through {@link MatchBudget}, and counted as an overrun either way.
+     */
+    private Matcher find(String text) {
+        long startNanos = System.nanoTime();
+        int len = text.length();
+        boolean aborted = false;
+        try {
+            Matcher matcher = pattern.matcher(MatchBudget.wrap(text, MATCH_BUDGET_MS));
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            int window = MATCH_WINDOW_CHARS;
+            while (true) {
+                int from = Math.max(0, len - window);
+                matcher.region(from, len);
+                if (!matcher.find()) return null;
+                if (from == 0 || matcher.start() > from) return matcher;
+                window = window >= len / 4 ? len : window * 4;
+            }
+        } catch (MatchBudget.Exceeded e) {
+            // One overrun like any other slow match, not an instant disable
+            aborted = true;
+            return null;
+        } finally {
+            if (overruns < MAX_OVERRUNS) {
+                long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000L;
+                overruns = aborted || elapsedMs > MATCH_BUDGET_MS ? overruns + 1 : 0;
+            }
+        }
+    }
+
+    public ParseResult parse(String text) {
+        Matcher matcher = find(text);
+        if (matcher != null) {
+            List<String> groups = new ArrayList<>();
+            for (int i = 0; i < matcher.groupCount() + 1; i++) {
+                groups.add(matcher.group(i));
+            }
+            return factory.getParseResult(groups, matcher.start(), matcher.end());
+        }
+        return null;
+    }
+
+    /**
+     * Parse with a forced start index for the result.
+     * Used when the trigger applies to a substring, but the command (e.g. /ask)
+     * preceeding it should also be consumed/replaced.
+     *
+     * @param text          The text to match against (usually a suffix)
+     * @param offset        The offset of 'text' within the original full buffer
+     * @param startOverride The absolute index to use as the start of the
+     *                      ParseResult
+     */
+    public ParseResult parseWithStartOverride(String text, int offset, int startOverride) {
+        Matcher matcher = find(text);
+        if (matcher != null) {
+            List<String> groups = new ArrayList<>();
+            for (int i = 0; i < matcher.groupCount() + 1; i++) {
+                groups.add(matcher.group(i));
+            }
+            // Use startOverride for start, and calculated absolute end
+            return factory.getParseResult(groups, startOverride, matcher.end() + offset);
+        }
+        return null;
+    }
+}
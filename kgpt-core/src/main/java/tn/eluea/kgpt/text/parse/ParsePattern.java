@@ -15,6 +15,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -22,7 +23,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import tn.eluea.kgpt.MainHook;
+import tn.eluea.kgpt.core.codec.BlobCodec;
+import tn.eluea.kgpt.core.codec.BlobReader;
+import tn.eluea.kgpt.core.codec.BlobWriter;
+import tn.eluea.kgpt.core.platform.CoreLog;
 
 public class ParsePattern {
     private static final String EXTRA_ENABLED = "_enabled";
@@ -41,6 +45,13 @@ public class ParsePattern {
         mExtras = extras;
     }
 
+    // Shares the compiled regex, which is immutable; the extras are the copy's own
+    private ParsePattern(ParsePattern other) {
+        mType = other.mType;
+        mPattern = other.mPattern;
+        mExtras = other.mExtras != null ? new HashMap<>(other.mExtras) : null;
+    }
+
     public void putExtra(String key, String value) {
         if (mExtras == null) {
             mExtras = new HashMap<>();
@@ -89,7 +100,67 @@ public class ParsePattern {
         return mPattern;
     }
 
+    /**
+     * Stored form of a pattern list: per pattern its type name, regex and extras. Lists
+     * stored as JSON by older builds go through the legacy migrations in {@link #parseJson}.
+     */
+    public static final BlobCodec<List<ParsePattern>> CODEC =
+            new BlobCodec<List<ParsePattern>>(BlobCodec.SCHEMA_PARSE_PATTERNS, 1, "ParsePattern") {
+                @Override
+                protected void write(BlobWriter out, List<ParsePattern> patterns) {
+                    out.writeVarint(patterns.size());
+                    for (ParsePattern p : patterns) {
+                        out.writeString(p.getType().name());
+                        out.writeString(p.getPattern().pattern());
+                        out.writeStringMap(p.getExtras());
+                    }
+                }
+
+                @Override
+                protected List<ParsePattern> read(BlobReader in, int version) throws IOException {
+                    int n = in.readLength();
+                    List<ParsePattern> patterns = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        String name = in.readString();
+                        String patternStr = in.readString();
+                        Map<String, String> extras = in.readStringMap();
+                        addPattern(patterns, name, patternStr, extras);
+                    }
+                    return addMissingTypes(patterns);
+                }
+
+                @Override
+                protected List<ParsePattern> parseJson(String text) {
+                    return text == null ? getDefaultList() : ParsePattern.parseJson(text);
+                }
+
+                @Override
+                protected String formatJson(List<ParsePattern> patterns) {
+                    return ParsePattern.formatJson(patterns);
+                }
+
+                @Override
+                protected List<ParsePattern> copy(List<ParsePattern> patterns) {
+                    List<ParsePattern> out = new ArrayList<>(patterns.size());
+                    for (ParsePattern p : patterns) {
+                        out.add(new ParsePattern(p));
+                    }
+                    return out;
+                }
+            };
+
     public static String encode(List<ParsePattern> patterns) {
+        return CODEC.encode(patterns);
+    }
+
+    public static List<ParsePattern> decode(String encodedPatterns) {
+        if (encodedPatterns == null) {
+            return getDefaultList();
+        }
+        return CODEC.decodeOrEmpty(encodedPatterns);
+    }
+
+    private static String formatJson(List<ParsePattern> patterns) {
         JSONArray patternsJson = new JSONArray();
         for (ParsePattern parsePattern : patterns) {
             JSONObject patternJson = new JSONObject();
@@ -101,20 +172,15 @@ public class ParsePattern {
                     patternJson.put("extras", new JSONObject(extras));
                 }
             } catch (JSONException e) {
-                MainHook.log(e);
+                CoreLog.e("ParsePattern", "Error encoding pattern", e);
             }
             patternsJson.put(patternJson);
         }
         return patternsJson.toString();
     }
 
-    public static List<ParsePattern> decode(String encodedPatterns) {
-        if (encodedPatterns == null) {
-            return getDefaultList();
-        }
-
+    private static List<ParsePattern> parseJson(String encodedPatterns) {
         List<ParsePattern> patterns = new ArrayList<>();
-        java.util.Set<PatternType> foundTypes = new java.util.HashSet<>();
 
         try {
             JSONArray patternsJson = new JSONArray(encodedPatterns);
@@ -153,27 +219,39 @@ public class ParsePattern {
                     }
                 }
 
-                try {
-                    PatternType type = PatternType.valueOf(name);
-                    ParsePattern parsePattern = new ParsePattern(type, patternStr, extras);
-                    patterns.add(parsePattern);
-                    foundTypes.add(type);
-                } catch (IllegalArgumentException e) {
-                    // Pattern type no longer exists, skip it
-                    android.util.Log.w("ParsePattern", "Skipping unknown pattern type: " + name);
-                }
+                addPattern(patterns, name, patternStr, extras);
             }
         } catch (JSONException e) {
-            android.util.Log.e("ParsePattern", "Error decoding patterns", e);
+            CoreLog.e("ParsePattern", "Error decoding patterns", e);
+        }
+
+        return addMissingTypes(patterns);
+    }
+
+    private static void addPattern(List<ParsePattern> patterns, String name, String patternStr,
+            Map<String, String> extras) {
+        try {
+            PatternType type = PatternType.valueOf(name);
+            patterns.add(new ParsePattern(type, patternStr, extras));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            // Pattern type no longer exists, skip it
+            CoreLog.w("ParsePattern", "Skipping unknown pattern type: " + name);
+        }
+    }
+
+    private static List<ParsePattern> addMissingTypes(List<ParsePattern> patterns) {
+        java.util.Set<PatternType> foundTypes = new java.util.HashSet<>();
+        for (ParsePattern p : patterns) {
+            foundTypes.add(p.getType());
         }
 
         // Add any missing pattern types (for migration when new types are added)
         for (PatternType type : PatternType.values()) {
             if (!foundTypes.contains(type)) {
                 ParsePattern np = new ParsePattern(type, type.defaultPattern);
-                np.setEnabled(true);
+                np.setEnabled(type.enabledByDefault);
                 patterns.add(np);
-                android.util.Log.i("ParsePattern", "Added missing pattern type: " + type.name());
+                CoreLog.i("ParsePattern", "Added missing pattern type: " + type.name());
             }
         }
 
@@ -184,7 +262,7 @@ public class ParsePattern {
         List<ParsePattern> patterns = new ArrayList<>();
         for (PatternType type : PatternType.values()) {
             ParsePattern pattern = new ParsePattern(type, type.defaultPattern);
-            pattern.setEnabled(true); // Enable by default
+            pattern.setEnabled(type.enabledByDefault);
             patterns.add(pattern);
         }
         return patterns;
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Static checks for trigger regexes before they reach the keystroke path.
+ *
+ * Patterns with a nested unbounded quantifier ({@code (a+)+}, {@code (\s*x*)*}...) backtrack
+ * exponentially on a near miss and are rejected. A negated class directly followed by one of
+ * the characters it excludes ({@code ([^%]+)%}) can never give characters back, so its
+ * quantifier is made possessive; the match is the same, the failed attempts are linear.
+ */
+public final class PatternAnalyzer {
+
+    private PatternAnalyzer() {
+    }
+
+    public static final class Verdict {
+        /** The regex to compile; equals the input unless it was rewritten. */
+        public final String regex;
+        /** Why the pattern must not be used, or null. */
+        public final String rejectReason;
+
+        private Verdict(String regex, String rejectReason) {
+            this.regex = regex;
+            this.rejectReason = rejectReason;
+        }
+
+        public boolean isRejected() {
+            return rejectReason != null;
+        }
+    }
+
+    public static Verdict analyze(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return new Verdict(regex, "empty pattern");
+        }
+        try {
+            Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            return new Verdict(regex, "invalid pattern: " + e.getDescription());
+        }
+        String nested = findNestedQuantifier(regex);
+        if (nested != null) {
+            return new Verdict(regex, "nested repetition " + nested);
+        }
+        String rewritten = possessiveNegatedClasses(regex);
+        try {
+            Pattern.compile(rewritten);
+        } catch (PatternSyntaxException e) {
+            rewritten = regex;
+        }
+        return new Verdict(rewritten, null);
+    }
+
+    /** Convenience for the editors: null when {@code regex} is safe to save. */
+    public static String rejectionReason(String regex) {
+        return analyze(regex).rejectReason;
+    }
+
+    /**
+     * Returns the offending group (as written) when an unbounded quantifier is applied to a
+     * group that itself contains one, else null.
+     */
+    static String findNestedQuantifier(String regex) {
+        // Per open group: start index and whether an unbounded quantifier occurs inside
+        Deque<int[]> groups = new ArrayDeque<>();
+        boolean inClass = false;
+        int n = regex.length();
+        for (int i = 0; i < n; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < n && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? n : end + 1;
+                    continue;
+                }
+                i++;
+                if (!inClass && isUnbounded(regex, i + 1)) markInner(groups);
+                continue;
+            }
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    if (isUnbounded(regex, i + 1)) markInner(groups);
+                }
+                continue;
+            }
+            switch (c) {
+                case '[':
+                    inClass = true;
+                    // A leading ']' (or "^]") is a literal member of the class
+                    if (i + 1 < n && regex.charAt(i + 1) == '^') i++;
+                    if (i + 1 < n && regex.charAt(i + 1) == ']') i++;
+                    break;
+                case '(':
+                    groups.push(new int[] { i, 0 });
+                    break;
+                case ')': {
+                    int[] g = groups.isEmpty() ? null : groups.pop();
+                    boolean repeated = isUnbounded(regex, i + 1);
+                    if (g != null && g[1] != 0 && repeated) {
+                        return regex.substring(g[0], quantifierEnd(regex, i + 1));
+                    }
+                    // The group as a whole is an unbounded element of its parent
+                    if (g != null && (g[1] != 0 || repeated)) markInner(groups);
+                    break;
+                }
+                default:
+                    if (isUnbounded(regex, i + 1)) markInner(groups);
+            }
+        }
+        return null;
+    }
+
+    private static void markInner(Deque<int[]> groups) {
+        int[] top = groups.peek();
+        if (top != null) top[1] = 1;
+    }
+
+    /** Whether the quantifier starting at {@code at} (if any) has no upper bound. */
+    private static boolean isUnbounded(String regex, int at) {
+        if (at >= regex.length()) return false;
+        char q = regex.charAt(at);
+        if (q == '*' || q == '+') return true;
+        if (q != '{') return false;
+        int close = regex.indexOf('}', at);
+        if (close < 0) return false;
+        String body = regex.substring(at + 1, close);
+        return body.endsWith(",");
+    }
+
+    private static int quantifierEnd(String regex, int at) {
+        if (regex.charAt(at) == '{') return regex.indexOf('}', at) + 1;
+        return at + 1;
+    }
+
+    /**
+     * {@code [^abc]+x} with x one of a, b, c becomes {@code [^abc]++x}. Only plain negated
+     * classes (literals and escaped punctuation) are considered.
+     */
+    static String possessiveNegatedClasses(String regex) {
+        StringBuilder out = new StringBuilder(regex.length() + 4);
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                out.append(c);
+                if (i + 1 < n) out.append(regex.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            if (c != '[' || i + 1 >= n || regex.charAt(i + 1) != '^') {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            int open = i;
+            int close = classEnd(regex, open);
+            if (close < 0) {
+                out.append(regex, open, n);
+                break;
+            }
+            out.append(regex, open, close + 1);
+            i = close + 1;
+
+            String members = plainMembers(regex.substring(open + 2, close));
+            if (members == null || i >= n) continue;
+
+            char q = regex.charAt(i);
+            if (q != '+' && q != '*') continue;
+            if (i + 1 < n && (regex.charAt(i + 1) == '+' || regex.charAt(i + 1) == '?')) continue;
+
+            // The next atom may sit after the closing paren of the capturing group
+            int next = i + 1;
+            while (next < n && regex.charAt(next) == ')') next++;
+            if (next >= n) continue;
+            char following = regex.charAt(next);
+            if (following == '\\' && next + 1 < n && !Character.isLetterOrDigit(regex.charAt(next + 1))) {
+                following = regex.charAt(next + 1);
+            } else if ("\\^$.|?*+()[]{}".indexOf(following) >= 0) {
+                continue;
+            }
+            if (members.indexOf(following) < 0) continue;
+
+            out.append(q).append('+');
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static int classEnd(String regex, int open) {
+        int i = open + 2;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The literal members of a class body, or null if it has ranges, escapes like \s, etc. */
+    private static String plainMembers(String body) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= body.length() || Character.isLetterOrDigit(body.charAt(i + 1))) return null;
+                sb.append(body.charAt(++i));
+            } else if (c == '-' && i > 0 && i < body.length() - 1) {
+                return null;
+            } else if (c == '&' || c == '[') {
+                return null;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
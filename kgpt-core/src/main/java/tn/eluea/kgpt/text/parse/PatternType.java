@@ -24,6 +24,8 @@ public enum PatternType {
     ModelSwitch("模型切换", 0, "模型切换\\s*$", true, "模型切换", "输入触发词弹出模型选择"),
     AIClipboard("AI剪贴板", 0, "AI剪贴板\\s*$", true, "AI剪贴板", "输入触发词弹出AI剪贴板"),
     QuickJumpMenu("快捷跳转", 0, "快捷跳转\\s*$", true, "快捷跳转", "输入触发词弹出快捷跳转"),
+    // Off until the user turns it on: "&&" also ends plenty of shell snippets
+    CompareModels("多模型对比", 1, "([\\s\\S]+)&&$", true, "&&", "输入文本并在末尾加 && 同时对比多个模型", false),
     ;
 
     public final String title;
@@ -32,15 +34,23 @@ public enum PatternType {
     public final boolean editable;
     public final String defaultSymbol;
     public final String description;
+    // Whether the pattern starts out enabled, in a fresh list or when added to an existing one
+    public final boolean enabledByDefault;
 
     PatternType(String title, int groupCount, String defaultPattern, boolean editable, String defaultSymbol,
             String description) {
+        this(title, groupCount, defaultPattern, editable, defaultSymbol, description, true);
+    }
+
+    PatternType(String title, int groupCount, String defaultPattern, boolean editable, String defaultSymbol,
+            String description, boolean enabledByDefault) {
         this.title = title;
         this.groupCount = groupCount;
         this.defaultPattern = defaultPattern;
         this.editable = editable;
         this.defaultSymbol = defaultSymbol;
         this.description = description;
+        this.enabledByDefault = enabledByDefault;
     }
 
     /**
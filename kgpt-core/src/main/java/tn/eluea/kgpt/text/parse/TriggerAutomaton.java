@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All trigger suffixes compiled into one reversed trie, walked backwards from the cursor.
+ *
+ * Every trigger is anchored at the end of the text, so the failure links of a full
+ * Aho-Corasick automaton are never needed: one backwards walk per anchor visits at most
+ * {@link #maxDepth} characters no matter how long the document is.
+ *
+ * Each literal belongs to a group (0..63). {@link #match} returns the mask of groups that
+ * may match; it is a prefilter, so callers still run their exact matcher for those groups.
+ * Literals are matched case-folded, and three anchors are tried: the end of the text, the
+ * position before a final line terminator (where a regex {@code $} also matches) and the
+ * end with trailing whitespace trimmed.
+ */
+public final class TriggerAutomaton {
+    public static final int MAX_GROUPS = 64;
+
+    public static final TriggerAutomaton EMPTY = new Builder().build();
+
+    // Trie nodes, root = 0. Children are kept as parallel sorted arrays per node.
+    private final char[][] childChars;
+    private final int[][] childNodes;
+    private final long[] nodeGroups;
+    private final int maxDepth;
+
+    // Case-folded final characters of all literals, for the O(1) early exit
+    private final long[] finalChars = new long[1024];
+    private final long alwaysGroups;
+
+    private TriggerAutomaton(char[][] childChars, int[][] childNodes, long[] nodeGroups, int maxDepth,
+            List<String> literals, long alwaysGroups) {
+        this.childChars = childChars;
+        this.childNodes = childNodes;
+        this.nodeGroups = nodeGroups;
+        this.maxDepth = maxDepth;
+        this.alwaysGroups = alwaysGroups;
+        for (String lit : literals) {
+            char c = fold(lit.charAt(lit.length() - 1));
+            finalChars[c >>> 6] |= 1L << (c & 63);
+        }
+    }
+
+    /** Groups that were registered without a literal and therefore always need checking. */
+    public long getAlwaysGroups() {
+        return alwaysGroups;
+    }
+
+    /** Length of the longest literal, i.e. how far back from the cursor a match can start. */
+    public int getLongestLiteral() {
+        return maxDepth;
+    }
+
+    public boolean isEmpty() {
+        return maxDepth == 0 && alwaysGroups == 0;
+    }
+
+    /**
+     * @param text the text before the cursor
+     * @param end  exclusive end of the text to consider
+     * @return mask of groups whose trigger may end at the cursor
+     */
+    public long match(CharSequence text, int end) {
+        long hits = alwaysGroups;
+        if (text == null || end <= 0 || maxDepth == 0) return hits;
+
+        hits |= walkFrom(text, end);
+
+        char last = text.charAt(end - 1);
+        if (last == '\n' || last == '\r' || last == '\u0085' || last == '\u2028' || last == '\u2029') {
+            int beforeTerminator = end - 1;
+            if (last == '\n' && beforeTerminator > 0 && text.charAt(beforeTerminator - 1) == '\r') {
+                beforeTerminator--;
+            }
+            hits |= walkFrom(text, beforeTerminator);
+        }
+
+        if (Character.isWhitespace(last)) {
+            int trimmed = end;
+            while (trimmed > 0 && Character.isWhitespace(text.charAt(trimmed - 1))) trimmed--;
+            hits |= walkFrom(text, trimmed);
+        }
+        return hits;
+    }
+
+    private long walkFrom(CharSequence text, int end) {
+        if (end <= 0) return 0L;
+        char c = fold(text.charAt(end - 1));
+        if ((finalChars[c >>> 6] & (1L << (c & 63))) == 0) return 0L;
+
+        long hits = 0L;
+        int node = 0;
+        int stop = Math.max(0, end - maxDepth);
+        for (int i = end - 1; i >= stop; i--) {
+            node = child(node, fold(text.charAt(i)));
+            if (node < 0) break;
+            hits |= nodeGroups[node];
+        }
+        return hits;
+    }
+
+    private int child(int node, char c) {
+        char[] chars = childChars[node];
+        int lo = 0, hi = chars.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = chars[mid];
+            if (m < c) lo = mid + 1;
+            else if (m > c) hi = mid - 1;
+            else return childNodes[node][mid];
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * The literal text a trigger regex must end with, or null if it can't be derived
+     * (alternation, inline flags, a quantified or class-based tail...). A trailing
+     * {@code \s*} / {@code \s+} is skipped; the trimmed anchor in {@link #match} covers it.
+     */
+    public static String literalSuffix(String regex) {
+        if (regex == null) return null;
+        int end = regex.length();
+        if (end == 0 || regex.charAt(end - 1) != '$' || isEscaped(regex, end - 1)) return null;
+        end--;
+        if (hasTopLevelAlternation(regex) || regex.contains("(?") && hasInlineFlags(regex)) return null;
+
+        // "\s*$" / "\s+$": the literal sits before the whitespace, covered by the trimmed anchor
+        if (end >= 3 && regex.startsWith("\\s", end - 3) && !isEscaped(regex, end - 3)
+                && (regex.charAt(end - 1) == '*' || regex.charAt(end - 1) == '+')) {
+            end -= 3;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int i = end - 1;
+        while (i >= 0) {
+            char c = regex.charAt(i);
+            if (isEscaped(regex, i)) {
+                if (Character.isLetterOrDigit(c)) break;
+                sb.append(c);
+                i -= 2;
+            } else {
+                if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) break;
+                sb.append(c);
+                i--;
+            }
+        }
+        return sb.length() == 0 ? null : sb.reverse().toString();
+    }
+
+    private static boolean isEscaped(String s, int index) {
+        int k = 0;
+        for (int i = index - 1; i >= 0 && s.charAt(i) == '\\'; i--) k++;
+        return (k & 1) == 1;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+                continue;
+            }
+            if (inClass) {
+                if (c == ']') inClass = false;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasInlineFlags(String regex) {
+        int from = 0;
+        int idx;
+        while ((idx = regex.indexOf("(?", from)) >= 0) {
+            if (!isEscaped(regex, idx) && idx + 2 < regex.length() && regex.charAt(idx + 2) != ':') {
+                return true;
+            }
+            from = idx + 2;
+        }
+        return false;
+    }
+
+    public static final class Builder {
+        private final List<String> literals = new ArrayList<>();
+        private final List<Integer> groups = new ArrayList<>();
+        private long alwaysGroups = 0L;
+
+        /** Register {@code literal} for {@code group}; an empty literal means "always check". */
+        public Builder add(String literal, int group) {
+            if (group < 0 || group >= MAX_GROUPS) return this;
+            if (literal == null || literal.isEmpty()) {
+                alwaysGroups |= 1L << group;
+                return this;
+            }
+            literals.add(literal);
+            groups.add(group);
+            return this;
+        }
+
+        public Builder addAlways(int group) {
+            if (group >= 0 && group < MAX_GROUPS) alwaysGroups |= 1L << group;
+            return this;
+        }
+
+        public TriggerAutomaton build() {
+            List<Map<Character, Integer>> children = new ArrayList<>();
+            List<Long> masks = new ArrayList<>();
+            children.add(new HashMap<>());
+            masks.add(0L);
+            int maxDepth = 0;
+
+            for (int n = 0; n < literals.size(); n++) {
+                String lit = literals.get(n);
+                int node = 0;
+                for (int i = lit.length() - 1; i >= 0; i--) {
+                    char c = fold(lit.charAt(i));
+                    Integer next = children.get(node).get(c);
+                    if (next == null) {
+                        next = children.size();
+                        children.add(new HashMap<>());
+                        masks.add(0L);
+                        children.get(node).put(c, next);
+                    }
+                    node = next;
+                }
+                masks.set(node, masks.get(node) | (1L << groups.get(n)));
+                maxDepth = Math.max(maxDepth, lit.length());
+            }
+
+            int size = children.size();
+            char[][] childChars = new char[size][];
+            int[][] childNodes = new int[size][];
+            long[] nodeGroups = new long[size];
+            for (int node = 0; node < size; node++) {
+                Map<Character, Integer> map = children.get(node);
+                char[] keys = new char[map.size()];
+                int k = 0;
+                for (Character c : map.keySet()) keys[k++] = c;
+                java.util.Arrays.sort(keys);
+                int[] targets = new int[keys.length];
+                for (int j = 0; j < keys.length; j++) targets[j] = map.get(keys[j]);
+                childChars[node] = keys;
+                childNodes[node] = targets;
+                nodeGroups[node] = masks.get(node);
+            }
+            return new TriggerAutomaton(childChars, childNodes, nodeGroups, maxDepth, literals, alwaysGroups);
+        }
+    }
+}
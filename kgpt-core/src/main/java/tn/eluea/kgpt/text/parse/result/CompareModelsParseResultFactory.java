@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse.result;
+
+import java.util.List;
+
+public class CompareModelsParseResultFactory implements ParseResultFactory {
+    @Override
+    public ParseResult getParseResult(List<String> groups, int indexStart, int indexEnd) {
+        return new CompareModelsParseResult(groups, indexStart, indexEnd);
+    }
+}
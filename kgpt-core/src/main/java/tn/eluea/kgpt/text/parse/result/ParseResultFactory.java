@@ -39,6 +39,8 @@ public interface ParseResultFactory {
                 return new AIClipboardParseResultFactory();
             case QuickJumpMenu:
                 return new QuickJumpMenuParseResultFactory();
+            case CompareModels:
+                return new CompareModelsParseResultFactory();
             case Settings:
             default:
                 return new SettingsParseResultFactory();
@@ -11,19 +11,9 @@
  */
 package tn.eluea.kgpt.text.transform.format;
 
+/** Appends a combining mark after every non-space character. */
 public class AddConversionMethod extends ConversionMethod {
-    private int mOffset;
-    public AddConversionMethod(int offset) {
-        mOffset = offset;
-    }
-
-    @Override
-    public String doConvert(char c) {
-        if (Character.isSpaceChar(c))
-            return String.valueOf(c);
-        return new StringBuilder()
-                .append(c)
-                .append((char)mOffset)
-                .toString();
+    public AddConversionMethod(int mark) {
+        super(CodePointTable.EMPTY, mark);
     }
 }
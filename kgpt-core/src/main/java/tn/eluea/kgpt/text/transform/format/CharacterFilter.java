@@ -15,5 +15,5 @@ public interface CharacterFilter {
 
     CharacterFilter noCharacterFilter = c -> true;
 
-    boolean filterCharacter(char c);
+    boolean filterCharacter(int codePoint);
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Character replacements read from "{@code <char> <replacement>}" lines. */
+public class CharacterTable {
+    final static Pattern PATTERN_REPLACEMENT = Pattern.compile("([^ ]+) ([^ ]+)");
+
+    private final CodePointTable mTable;
+
+    public CharacterTable(Map<String, String> charMap) {
+        this(new CodePointTable.Builder().putAll(charMap).build());
+    }
+
+    public CharacterTable(CodePointTable table) {
+        mTable = table != null ? table : CodePointTable.EMPTY;
+    }
+
+    public static CharacterTable fromFile(File file) {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return fromReader(reader);
+        } catch (IOException e) {
+            return new CharacterTable(CodePointTable.EMPTY);
+        }
+    }
+
+    public static CharacterTable fromReader(Reader reader) {
+        CodePointTable.Builder builder = new CodePointTable.Builder();
+        Scanner scanner = new Scanner(reader);
+        while (scanner.hasNextLine()) {
+            parseLine(scanner.nextLine(), builder);
+        }
+        return new CharacterTable(builder.build());
+    }
+
+    /** Add one replacement line to {@code builder}; returns false if the line isn't one. */
+    static boolean parseLine(String line, CodePointTable.Builder builder) {
+        Matcher matcher = PATTERN_REPLACEMENT.matcher(line);
+        if (matcher.find()) {
+            builder.put(matcher.group(1), matcher.group(2));
+            return true;
+        }
+        return false;
+    }
+
+    public CodePointTable getTable() {
+        return mTable;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable code point -> replacement sequence table, the compiled form of a style.
+ *
+ * Code points below {@link #DENSE_LIMIT} (Latin, where nearly every style lives) are looked
+ * up by index; the rest by binary search. Replacements are stored back to back in one
+ * {@code int[]}, so a lookup allocates nothing.
+ */
+public final class CodePointTable {
+    public static final CodePointTable EMPTY = new Builder().build();
+
+    static final int DENSE_LIMIT = 0x250;
+
+    // Entry index per code point below dense.length, -1 when unmapped
+    private final int[] dense;
+    private final int[] sparseKeys;
+    private final int[] sparseEntries;
+    // Entry i is values[offsets[i] .. offsets[i + 1])
+    private final int[] offsets;
+    private final int[] values;
+
+    private CodePointTable(int[] dense, int[] sparseKeys, int[] sparseEntries, int[] offsets, int[] values) {
+        this.dense = dense;
+        this.sparseKeys = sparseKeys;
+        this.sparseEntries = sparseEntries;
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    /** Entry for {@code codePoint}, or -1 if the table leaves it unchanged. */
+    public int lookup(int codePoint) {
+        if (codePoint < dense.length) {
+            return codePoint >= 0 ? dense[codePoint] : -1;
+        }
+        int lo = 0;
+        int hi = sparseKeys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int key = sparseKeys[mid];
+            if (key < codePoint) {
+                lo = mid + 1;
+            } else if (key > codePoint) {
+                hi = mid - 1;
+            } else {
+                return sparseEntries[mid];
+            }
+        }
+        return -1;
+    }
+
+    /** Append the replacement of {@code entry} (from {@link #lookup}) to {@code out}. */
+    public void append(int entry, StringBuilder out) {
+        for (int i = offsets[entry]; i < offsets[entry + 1]; i++) {
+            out.appendCodePoint(values[i]);
+        }
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public static final class Builder {
+        private final TreeMap<Integer, int[]> entries = new TreeMap<>();
+
+        public Builder put(int codePoint, int... replacement) {
+            if (codePoint >= 0 && replacement != null) entries.put(codePoint, replacement.clone());
+            return this;
+        }
+
+        /** Map a single code point to a string; keys longer than one code point are ignored. */
+        public Builder put(CharSequence from, CharSequence to) {
+            if (from == null || to == null || from.length() == 0) return this;
+            int cp = Character.codePointAt(from, 0);
+            if (Character.charCount(cp) != from.length()) return this;
+            return put(cp, to.codePoints().toArray());
+        }
+
+        public Builder putAll(Map<String, String> map) {
+            if (map == null) return this;
+            for (Map.Entry<String, String> e : map.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+            return this;
+        }
+
+        public CodePointTable build() {
+            int denseLength = 0;
+            int sparseCount = 0;
+            int valueCount = 0;
+            for (Map.Entry<Integer, int[]> e : entries.entrySet()) {
+                int cp = e.getKey();
+                if (cp < DENSE_LIMIT) {
+                    denseLength = cp + 1;
+                } else {
+                    sparseCount++;
+                }
+                valueCount += e.getValue().length;
+            }
+
+            int[] dense = new int[denseLength];
+            java.util.Arrays.fill(dense, -1);
+            int[] sparseKeys = new int[sparseCount];
+            int[] sparseEntries = new int[sparseCount];
+            int[] offsets = new int[entries.size() + 1];
+            int[] values = new int[valueCount];
+
+            int entry = 0;
+            int sparse = 0;
+            int pos = 0;
+            // TreeMap order keeps sparseKeys sorted for the binary search
+            for (Map.Entry<Integer, int[]> e : entries.entrySet()) {
+                int cp = e.getKey();
+                if (cp < DENSE_LIMIT) {
+                    dense[cp] = entry;
+                } else {
+                    sparseKeys[sparse] = cp;
+                    sparseEntries[sparse] = entry;
+                    sparse++;
+                }
+                offsets[entry] = pos;
+                int[] replacement = e.getValue();
+                System.arraycopy(replacement, 0, values, pos, replacement.length);
+                pos += replacement.length;
+                entry++;
+            }
+            offsets[entry] = pos;
+            return new CodePointTable(dense, sparseKeys, sparseEntries, offsets, values);
+        }
+    }
+}
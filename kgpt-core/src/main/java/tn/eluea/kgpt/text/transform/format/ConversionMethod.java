@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+/**
+ * A text style: a {@link CodePointTable} of replacements, optionally followed by a
+ * combining mark after every non-space code point (strike-through, underline).
+ */
+public abstract class ConversionMethod {
+    public static final ConversionMethod BOLD = new ShiftConversionMethod( 0x1D5EE);
+    public static final ConversionMethod ITALIC = new ShiftConversionMethod( 0x1D622);
+    public static final ConversionMethod CROSSOUT = new AddConversionMethod( 0x336);
+    public static final ConversionMethod UNDERLINE = new AddConversionMethod( 0x35F).withFilter(Character::isLetterOrDigit);
+
+    private final CodePointTable table;
+    // Combining mark appended after each converted code point, 0 for none
+    private final int mark;
+
+    private CharacterFilter filter = null;
+    private boolean reverse = false;
+
+    protected ConversionMethod(CodePointTable table, int mark) {
+        this.table = table != null ? table : CodePointTable.EMPTY;
+        this.mark = mark;
+    }
+
+    public ConversionMethod withFilter(CharacterFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public ConversionMethod reverse(boolean reverse) {
+        this.reverse = reverse;
+        return this;
+    }
+
+    public boolean isReversed() {
+        return reverse;
+    }
+
+    public CodePointTable getTable() {
+        return table;
+    }
+
+    /** Append the styled form of {@code codePoint} to {@code out}. */
+    public final void appendConverted(int codePoint, StringBuilder out) {
+        if (filter != null && !filter.filterCharacter(codePoint)) {
+            out.appendCodePoint(codePoint);
+            return;
+        }
+        int entry = table.lookup(codePoint);
+        if (entry >= 0) {
+            table.append(entry, out);
+        } else {
+            out.appendCodePoint(codePoint);
+        }
+        if (mark != 0 && !Character.isSpaceChar(codePoint)) {
+            out.appendCodePoint(mark);
+        }
+    }
+
+    public final String convert(int codePoint) {
+        StringBuilder sb = new StringBuilder(4);
+        appendConverted(codePoint, sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import tn.eluea.kgpt.core.platform.CoreLog;
+
+/**
+ * User formatting styles. A style file holds one or more styles, each starting with its
+ * trigger delimiter, followed by options and "{@code <char> <replacement>}" lines:
+ * <pre>
+ * # Upside down
+ * &#64;delimiter ^
+ * &#64;reverse true
+ * a ɐ
+ * b q
+ * </pre>
+ * Every style is compiled to a {@link CodePointTable}, like the built-in ones.
+ */
+public final class ExternalFormattingReader {
+    private static final String TAG = "ExternalFormatting";
+
+    // Style files as read by readDirectoryText, published by the app for the keyboard process
+    public static final String PREF_FORMAT_STYLES = "format_styles_v1";
+    public static final String STYLES_DIR = "formatting";
+
+    // The automaton has 64 groups and the built-in triggers use some of them
+    public static final int MAX_STYLES = 16;
+
+    public static final class Style {
+        public final String delimiter;
+        public final ConversionMethod method;
+
+        Style(String delimiter, ConversionMethod method) {
+            this.delimiter = delimiter;
+            this.method = method;
+        }
+    }
+
+    private ExternalFormattingReader() {
+    }
+
+    public static List<Style> read(String text) {
+        if (text == null || text.trim().isEmpty()) return Collections.emptyList();
+        try {
+            return read(new StringReader(text));
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    public static List<Style> read(Reader source) throws IOException {
+        List<Style> styles = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String delimiter = null;
+        boolean reverse = false;
+        CodePointTable.Builder table = null;
+        int lineNo = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            if (trimmed.startsWith("@")) {
+                String[] option = trimmed.substring(1).split("\\s+", 2);
+                String value = option.length > 1 ? option[1].trim() : "";
+                if ("delimiter".equals(option[0])) {
+                    addStyle(styles, delimiter, reverse, table);
+                    delimiter = isDelimiter(value) ? value : null;
+                    if (delimiter == null) CoreLog.w(TAG, "line " + lineNo + ": bad delimiter '" + value + "'");
+                    reverse = false;
+                    table = new CodePointTable.Builder();
+                } else if ("reverse".equals(option[0])) {
+                    reverse = Boolean.parseBoolean(value);
+                } else {
+                    CoreLog.w(TAG, "line " + lineNo + ": unknown option " + option[0]);
+                }
+                continue;
+            }
+            if (table == null || !CharacterTable.parseLine(line, table)) {
+                CoreLog.w(TAG, "line " + lineNo + ": ignored");
+            }
+        }
+        addStyle(styles, delimiter, reverse, table);
+        return styles;
+    }
+
+    /** The files of {@code dir} joined into one text, as {@link #read(String)} accepts it. */
+    public static String readDirectoryText(File dir) {
+        StringBuilder sb = new StringBuilder();
+        File[] files = dir != null ? dir.listFiles(File::isFile) : null;
+        if (files == null) return "";
+        Arrays.sort(files);
+        char[] buf = new char[4096];
+        for (File file : files) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                int n;
+                while ((n = reader.read(buf)) > 0) sb.append(buf, 0, n);
+                sb.append('\n');
+            } catch (IOException e) {
+                CoreLog.w(TAG, "Cannot read " + file + ": " + e.getMessage());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void addStyle(List<Style> styles, String delimiter, boolean reverse, CodePointTable.Builder table) {
+        if (delimiter == null || table == null) return;
+        if (styles.size() >= MAX_STYLES) {
+            CoreLog.w(TAG, "More than " + MAX_STYLES + " styles, ignoring " + delimiter);
+            return;
+        }
+        for (Style s : styles) {
+            if (s.delimiter.equals(delimiter)) {
+                CoreLog.w(TAG, "Duplicate delimiter " + delimiter);
+                return;
+            }
+        }
+        ConversionMethod method = new ReplaceConversionMethod(new CharacterTable(table.build())).reverse(reverse);
+        styles.add(new Style(delimiter, method));
+    }
+
+    /** One visible code point; the trigger regex is built around it. */
+    private static boolean isDelimiter(String value) {
+        if (value.isEmpty()) return false;
+        int cp = value.codePointAt(0);
+        return Character.charCount(cp) == value.length() && !Character.isWhitespace(cp)
+                && !Character.isLetterOrDigit(cp);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+/** Maps ASCII letters onto a Mathematical Alphanumeric block starting at {@code offset} ('a'). */
+public class ShiftConversionMethod extends ConversionMethod {
+
+    public ShiftConversionMethod(int offset) {
+        super(buildTable(offset), 0);
+    }
+
+    private static CodePointTable buildTable(int offset) {
+        CodePointTable.Builder builder = new CodePointTable.Builder();
+        for (char c = 'a'; c <= 'z'; c++) {
+            builder.put(c, (c - 'a') + offset);
+            // Capitals come 26 code points before the small letters
+            builder.put(Character.toUpperCase(c), (c - 'a') + offset - 0x1a);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.transform.format;
+
+import java.text.Normalizer;
+
+/**
+ * Applies a {@link ConversionMethod} to a text in one pass over its code points.
+ *
+ * Accented letters are decomposed on the way (NFD) so the base letter gets styled and the
+ * accent follows it as a combining mark. Nothing below U+00C0 decomposes, and Latin
+ * decompositions come from a table built once, so plain text never goes through
+ * {@link Normalizer}. Other code points go through it once and are then served from a
+ * small cache.
+ */
+public class TextUnicodeConverter {
+
+    private static final int LATIN_DECOMPOSE_START = 0xC0;
+    // NFD of U+00C0 .. CodePointTable.DENSE_LIMIT, null where the code point is already NFD
+    private static final int[][] LATIN_DECOMPOSITIONS = buildLatinDecompositions();
+
+    // Direct-mapped by the low bits: a script's letters sit next to each other, so text in
+    // one or two scripts rarely evicts its own entries
+    private static final int DECOMPOSITION_CACHE_SIZE = 1024;
+    private static final int[] NO_DECOMPOSITION = new int[0];
+    // Racy on purpose: an entry is immutable, and a missed or lost write only costs a
+    // Normalizer call
+    private static final Decomposition[] DECOMPOSITION_CACHE = new Decomposition[DECOMPOSITION_CACHE_SIZE];
+
+    private static final class Decomposition {
+        final int codePoint;
+        // NO_DECOMPOSITION where the code point is already NFD
+        final int[] codePoints;
+
+        Decomposition(int codePoint, int[] codePoints) {
+            this.codePoint = codePoint;
+            this.codePoints = codePoints;
+        }
+    }
+
+    // Buffers larger than this are dropped after use instead of kept per thread
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    public static String convert(String text, ConversionMethod conversionMethod) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        convert(text, conversionMethod, sb);
+        String formattedText = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return formattedText;
+    }
+
+    /** Append the styled form of {@code text} to {@code out}. */
+    public static void convert(CharSequence text, ConversionMethod conversionMethod, StringBuilder out) {
+        int start = out.length();
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int cp = Character.codePointAt(text, i);
+            i += Character.charCount(cp);
+            // Line breaks are never styled
+            if (cp == '\n' || cp == '\r') {
+                out.append((char) cp);
+                continue;
+            }
+            if (cp < LATIN_DECOMPOSE_START) {
+                conversionMethod.appendConverted(cp, out);
+                continue;
+            }
+            int[] decomposed = decompose(cp);
+            if (decomposed == null) {
+                conversionMethod.appendConverted(cp, out);
+            } else {
+                for (int d : decomposed) {
+                    conversionMethod.appendConverted(d, out);
+                }
+            }
+        }
+        if (conversionMethod.isReversed()) {
+            reverse(out, start);
+        }
+    }
+
+    /** NFD of {@code cp}, or null if it doesn't decompose. */
+    private static int[] decompose(int cp) {
+        if (cp < CodePointTable.DENSE_LIMIT) {
+            return LATIN_DECOMPOSITIONS[cp - LATIN_DECOMPOSE_START];
+        }
+        int slot = cp & (DECOMPOSITION_CACHE_SIZE - 1);
+        Decomposition cached = DECOMPOSITION_CACHE[slot];
+        if (cached == null || cached.codePoint != cp) {
+            cached = new Decomposition(cp, normalize(cp));
+            DECOMPOSITION_CACHE[slot] = cached;
+        }
+        return cached.codePoints == NO_DECOMPOSITION ? null : cached.codePoints;
+    }
+
+    private static int[] normalize(int cp) {
+        String s = new String(Character.toChars(cp));
+        if (Normalizer.isNormalized(s, Normalizer.Form.NFD)) return NO_DECOMPOSITION;
+        return Normalizer.normalize(s, Normalizer.Form.NFD).codePoints().toArray();
+    }
+
+    private static int[][] buildLatinDecompositions() {
+        int[][] table = new int[CodePointTable.DENSE_LIMIT - LATIN_DECOMPOSE_START][];
+        for (int cp = LATIN_DECOMPOSE_START; cp < CodePointTable.DENSE_LIMIT; cp++) {
+            String s = String.valueOf((char) cp);
+            String nfd = Normalizer.normalize(s, Normalizer.Form.NFD);
+            if (!nfd.equals(s)) {
+                table[cp - LATIN_DECOMPOSE_START] = nfd.codePoints().toArray();
+            }
+        }
+        return table;
+    }
+
+    /** Reverse {@code sb} from {@code start} on, keeping surrogate pairs in order. */
+    private static void reverse(StringBuilder sb, int start) {
+        if (start == 0) {
+            sb.reverse();
+            return;
+        }
+        String tail = new StringBuilder(sb.subSequence(start, sb.length())).reverse().toString();
+        sb.setLength(start);
+        sb.append(tail);
+    }
+}
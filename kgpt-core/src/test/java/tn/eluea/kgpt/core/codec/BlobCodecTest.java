@@ -0,0 +1,42 @@
+package tn.eluea.kgpt.core.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BlobCodecTest {
+
+    private final StringListCodec codec = new StringListCodec(BlobCodec.SCHEMA_MODEL_LIST, "Test");
+    private final StringListCodec otherSchema = new StringListCodec(BlobCodec.SCHEMA_ROLES, "TestOther");
+
+    @Test
+    public void roundTrips() {
+        List<String> value = Arrays.asList("a", "b");
+        assertEquals(value, codec.decode(codec.encode(value)));
+    }
+
+    @Test
+    public void unreadableBlobIsReportedEveryTime() {
+        String raw = otherSchema.encode(Arrays.asList("kept"));
+        // Twice: a failure cached as the empty value would only throw the first time
+        for (int i = 0; i < 2; i++) {
+            try {
+                codec.decode(raw);
+                fail("decoded a blob of another schema");
+            } catch (BlobCodec.DecodeException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void readersGetEmptyAndBackupsKeepTheStoredForm() {
+        String raw = BlobCodec.PREFIX + "!!!!";
+        assertTrue(codec.decodeOrEmpty(raw).isEmpty());
+        assertEquals(raw, codec.toJson(raw));
+    }
+}
@@ -0,0 +1,114 @@
+package tn.eluea.kgpt.core.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class KvLogStoreTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("kvlog").toFile();
+        file = new File(dir, "config.log");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void batchesSurviveCompactionAndReopen() throws IOException {
+        Map<String, String> expected = new LinkedHashMap<>();
+        try (KvLogStore store = new KvLogStore(file, Runnable::run)) {
+            for (int round = 0; round < 3; round++) {
+                Map<String, KvLogStore.Value> batch = new LinkedHashMap<>();
+                for (int i = 0; i < 20; i++) {
+                    String value = "value " + i + " of round " + round;
+                    batch.put("key_" + i, new KvLogStore.Value("string", value));
+                    expected.put("key_" + i, value);
+                }
+                store.write(batch);
+            }
+            store.put("single", "boolean", "true");
+            expected.put("single", "true");
+            store.remove("key_3");
+            expected.remove("key_3");
+
+            store.compact();
+        }
+
+        try (KvLogStore store = new KvLogStore(file, Runnable::run)) {
+            assertEquals(expected.size(), store.size());
+            for (Map.Entry<String, String> e : expected.entrySet()) {
+                assertEquals(e.getKey(), e.getValue(), store.get(e.getKey()));
+            }
+            assertNull(store.get("key_3"));
+            assertEquals("boolean", store.typeOf("single"));
+        }
+    }
+
+    @Test
+    public void writesDuringCompactionSurviveReopen() throws Exception {
+        Map<String, String> expected = new LinkedHashMap<>();
+        try (KvLogStore store = new KvLogStore(file, Runnable::run)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 200; i++) {
+                    String value = "value " + i + " of round " + round;
+                    store.put("key_" + i, "string", value);
+                    expected.put("key_" + i, value);
+                }
+            }
+
+            // Whatever the interleaving, writes landing while the copy runs end up in the tail
+            Thread compactor = new Thread(() -> {
+                try {
+                    store.compact();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            compactor.start();
+            for (int i = 0; i < 200; i++) {
+                if (i % 7 == 0) {
+                    store.remove("key_" + i);
+                    expected.remove("key_" + i);
+                } else {
+                    store.put("key_" + i, "string", "late " + i);
+                    expected.put("key_" + i, "late " + i);
+                }
+                store.put("new_" + i, "string", "new " + i);
+                expected.put("new_" + i, "new " + i);
+            }
+            compactor.join();
+
+            assertEquals(expected.size(), store.size());
+            for (Map.Entry<String, String> e : expected.entrySet()) {
+                assertEquals(e.getKey(), e.getValue(), store.get(e.getKey()));
+            }
+        }
+
+        try (KvLogStore store = new KvLogStore(file, Runnable::run)) {
+            assertEquals(expected.size(), store.size());
+            for (Map.Entry<String, String> e : expected.entrySet()) {
+                assertEquals(e.getKey(), e.getValue(), store.get(e.getKey()));
+            }
+        }
+    }
+}
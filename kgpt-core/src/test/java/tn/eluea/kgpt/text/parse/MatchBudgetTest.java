@@ -0,0 +1,40 @@
+package tn.eluea.kgpt.text.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class MatchBudgetTest {
+
+    @Test
+    public void readsThroughToTheText() {
+        MatchBudget budget = MatchBudget.wrap("hello $", 1000);
+        assertEquals(7, budget.length());
+        assertEquals('$', budget.charAt(6));
+        assertEquals("hello", budget.subSequence(0, 5).toString());
+        assertEquals("hello $", budget.toString());
+        assertEquals("hello", firstGroup(Pattern.compile("(\\w+) \\$$"), budget));
+    }
+
+    @Test
+    public void spentBudgetStopsTheMatch() throws InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append('a');
+        MatchBudget budget = MatchBudget.wrap(sb, 0);
+        Thread.sleep(2);
+        try {
+            Pattern.compile("a*b").matcher(budget).find();
+            fail("matched past the deadline");
+        } catch (MatchBudget.Exceeded e) {
+            assertEquals(0, e.budgetMs);
+        }
+    }
+
+    private static String firstGroup(Pattern pattern, CharSequence text) {
+        java.util.regex.Matcher m = pattern.matcher(text);
+        return m.find() ? m.group(1) : null;
+    }
+}
@@ -0,0 +1,78 @@
+package tn.eluea.kgpt.text.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PatternAnalyzerTest {
+
+    private static void assertAccepted(String regex, String expected) {
+        PatternAnalyzer.Verdict verdict = PatternAnalyzer.analyze(regex);
+        assertFalse(regex + ": " + verdict.rejectReason, verdict.isRejected());
+        assertEquals(expected, verdict.regex);
+    }
+
+    @Test
+    public void rejectsEmptyAndInvalidPatterns() {
+        assertEquals("empty pattern", PatternAnalyzer.rejectionReason(""));
+        assertEquals("empty pattern", PatternAnalyzer.rejectionReason(null));
+        assertTrue(PatternAnalyzer.rejectionReason("(ask").startsWith("invalid pattern: "));
+    }
+
+    @Test
+    public void rejectsNestedUnboundedRepetition() {
+        assertEquals("nested repetition (a+)+", PatternAnalyzer.rejectionReason("(a+)+$"));
+        assertEquals("nested repetition (\\s*x*)*", PatternAnalyzer.rejectionReason("^(\\s*x*)*y$"));
+        assertEquals("nested repetition ((ab)*c){1,}", PatternAnalyzer.rejectionReason("((ab)*c){1,}$"));
+        assertEquals("nested repetition (?:[a-z]+\\s)+", PatternAnalyzer.rejectionReason("(?:[a-z]+\\s)+end$"));
+    }
+
+    @Test
+    public void acceptsBoundedOrFlatRepetition() {
+        assertNull(PatternAnalyzer.rejectionReason("(a+){2}$"));
+        assertNull(PatternAnalyzer.rejectionReason("(ab)+$"));
+        assertNull(PatternAnalyzer.rejectionReason("(.*)\\$$"));
+        // Quantifier characters inside a class or a quote are literals
+        assertNull(PatternAnalyzer.rejectionReason("([a+*])+$"));
+        assertNull(PatternAnalyzer.rejectionReason("\\Q(a+)+\\E$"));
+    }
+
+    @Test
+    public void negatedClassBeforeAnExcludedCharBecomesPossessive() {
+        assertAccepted("%([^%]+)%$", "%([^%]++)%$");
+        assertAccepted("([^,]*),x$", "([^,]*+),x$");
+        assertAccepted("\\(([^.]+)\\.$", "\\(([^.]++)\\.$");
+    }
+
+    @Test
+    public void otherClassesAreLeftAlone() {
+        // The next char is not excluded by the class
+        assertAccepted("%([^%]+)x$", "%([^%]+)x$");
+        // Ranges, lazy or already possessive quantifiers
+        assertAccepted("([^a-z]+)a$", "([^a-z]+)a$");
+        assertAccepted("%([^%]+?)%$", "%([^%]+?)%$");
+        assertAccepted("%([^%]++)%$", "%([^%]++)%$");
+    }
+
+    @Test
+    public void rewrittenPatternMatchesTheSame() {
+        String regex = "%([^%]+)%$";
+        Pattern original = Pattern.compile(regex);
+        Pattern rewritten = Pattern.compile(PatternAnalyzer.analyze(regex).regex);
+        for (String text : new String[] { "say %hello%", "%a%b%", "no %match", "%%" }) {
+            Matcher a = original.matcher(text);
+            Matcher b = rewritten.matcher(text);
+            boolean found = a.find();
+            assertEquals(text, found, b.find());
+            if (found) {
+                assertEquals(text, a.group(1), b.group(1));
+            }
+        }
+    }
+}
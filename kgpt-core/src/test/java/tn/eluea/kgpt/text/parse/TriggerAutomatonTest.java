@@ -0,0 +1,113 @@
+package tn.eluea.kgpt.text.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TriggerAutomatonTest {
+
+    private static long bit(int group) {
+        return 1L << group;
+    }
+
+    @Test
+    public void matchesOnlyLiteralsEndingAtTheCursor() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder()
+                .add("$", 0)
+                .add("/ask", 1)
+                .build();
+        assertEquals(bit(0), automaton.match("hello $", 7));
+        assertEquals(bit(1), automaton.match("please /ask", 11));
+        assertEquals(0L, automaton.match("$ and /ask later", 16));
+        // Only the text before end counts
+        assertEquals(bit(0), automaton.match("hello $ world", 7));
+    }
+
+    @Test
+    public void sharedSuffixesReportEveryGroup() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder()
+                .add("ask", 0)
+                .add("k", 1)
+                .add("task", 2)
+                .build();
+        assertEquals(bit(0) | bit(1) | bit(2), automaton.match("my task", 7));
+        assertEquals(bit(0) | bit(1), automaton.match("flask", 5));
+        assertEquals(0L, automaton.match("tas", 3));
+        assertEquals(4, automaton.getLongestLiteral());
+    }
+
+    @Test
+    public void literalsMatchCaseFolded() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder().add("AI", 3).build();
+        assertEquals(bit(3), automaton.match("hey ai", 6));
+        assertEquals(bit(3), automaton.match("hey Ai", 6));
+    }
+
+    @Test
+    public void lineTerminatorAndTrailingWhitespaceAnchors() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder().add("$", 0).build();
+        assertEquals(bit(0), automaton.match("text $\n", 7));
+        assertEquals(bit(0), automaton.match("text $\r\n", 8));
+        assertEquals(bit(0), automaton.match("text $  \t", 9));
+        assertEquals(0L, automaton.match("text $ x", 8));
+    }
+
+    @Test
+    public void alwaysGroupsAreReportedWithoutText() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder()
+                .add("", 5)
+                .addAlways(6)
+                .add("$", 0)
+                .build();
+        assertEquals(bit(5) | bit(6), automaton.getAlwaysGroups());
+        assertEquals(bit(5) | bit(6), automaton.match(null, 0));
+        assertEquals(bit(5) | bit(6), automaton.match("plain", 5));
+        assertEquals(bit(0) | bit(5) | bit(6), automaton.match("plain $", 7));
+    }
+
+    @Test
+    public void groupsPastTheMaskAreIgnored() {
+        TriggerAutomaton automaton = new TriggerAutomaton.Builder()
+                .add("$", TriggerAutomaton.MAX_GROUPS)
+                .add("", -1)
+                .addAlways(TriggerAutomaton.MAX_GROUPS)
+                .build();
+        assertTrue(automaton.isEmpty());
+        assertEquals(0L, automaton.match("hello $", 7));
+        assertTrue(TriggerAutomaton.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void literalSuffixOfPlainTriggers() {
+        assertEquals("/ask", TriggerAutomaton.literalSuffix("/ask$"));
+        assertEquals("$", TriggerAutomaton.literalSuffix("(.*)\\$$"));
+        assertEquals("gpt", TriggerAutomaton.literalSuffix("^(.+?)gpt$"));
+        // Escaped punctuation is part of the literal
+        assertEquals("?!", TriggerAutomaton.literalSuffix("(.*)\\?!$"));
+    }
+
+    @Test
+    public void literalSuffixSkipsTrailingWhitespace() {
+        assertEquals("hello", TriggerAutomaton.literalSuffix("hello\\s*$"));
+        assertEquals("hello", TriggerAutomaton.literalSuffix("hello\\s+$"));
+    }
+
+    @Test
+    public void literalSuffixGivesUpWhenTheTailIsNotLiteral() {
+        assertNull(TriggerAutomaton.literalSuffix(null));
+        assertNull(TriggerAutomaton.literalSuffix(""));
+        // Not anchored, or the anchor is an escaped dollar
+        assertNull(TriggerAutomaton.literalSuffix("/ask"));
+        assertNull(TriggerAutomaton.literalSuffix("ask\\$"));
+        // Alternation and inline flags change what the tail means
+        assertNull(TriggerAutomaton.literalSuffix("foo|bar$"));
+        assertNull(TriggerAutomaton.literalSuffix("(?i)ask$"));
+        // Class, group, quantifier or escape class right before the anchor
+        assertNull(TriggerAutomaton.literalSuffix("[ab]$"));
+        assertNull(TriggerAutomaton.literalSuffix("(?:ask)$"));
+        assertNull(TriggerAutomaton.literalSuffix("as+$"));
+        assertNull(TriggerAutomaton.literalSuffix("\\d$"));
+    }
+}
@@ -0,0 +1,75 @@
+package tn.eluea.kgpt.text.transform.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CodePointTableTest {
+
+    private static final int GRINNING = 0x1F600;
+
+    private static String replacement(CodePointTable table, int codePoint) {
+        int entry = table.lookup(codePoint);
+        if (entry < 0) return null;
+        StringBuilder sb = new StringBuilder();
+        table.append(entry, sb);
+        return sb.toString();
+    }
+
+    @Test
+    public void denseAndSparseLookups() {
+        CodePointTable table = new CodePointTable.Builder()
+                .put('a', 'X')
+                .put(0x3B1, 'A')
+                .put(GRINNING, ':', ')')
+                .build();
+        assertEquals(3, table.size());
+        assertEquals("X", replacement(table, 'a'));
+        assertEquals("A", replacement(table, 0x3B1));
+        assertEquals(":)", replacement(table, GRINNING));
+        assertEquals(-1, table.lookup('b'));
+        assertEquals(-1, table.lookup(0x3B2));
+        assertEquals(-1, table.lookup(GRINNING + 1));
+        assertEquals(-1, table.lookup(-1));
+    }
+
+    @Test
+    public void replacementsMayHoldSupplementaryCodePoints() {
+        CodePointTable table = new CodePointTable.Builder().put('b', 0x1D5EF, 0x336).build();
+        assertEquals(new String(Character.toChars(0x1D5EF)) + "\u0336", replacement(table, 'b'));
+    }
+
+    @Test
+    public void stringKeysMustBeOneCodePoint() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put(new String(Character.toChars(GRINNING)), "smile");
+        map.put("ab", "ignored");
+        map.put("", "ignored");
+        map.put("\uD83D", "lone");
+        CodePointTable table = new CodePointTable.Builder().putAll(map).build();
+        assertEquals(2, table.size());
+        assertEquals("smile", replacement(table, GRINNING));
+        // A lone high surrogate is a code point of its own
+        assertEquals("lone", replacement(table, 0xD83D));
+        assertEquals(-1, table.lookup('a'));
+    }
+
+    @Test
+    public void laterPutsWinAndInputIsCopied() {
+        int[] to = { 'x' };
+        CodePointTable.Builder builder = new CodePointTable.Builder().put('a', 'y').put('a', to);
+        to[0] = 'z';
+        assertEquals("x", replacement(builder.build(), 'a'));
+    }
+
+    @Test
+    public void emptyTableLeavesEverythingAlone() {
+        assertTrue(CodePointTable.EMPTY.isEmpty());
+        assertEquals(-1, CodePointTable.EMPTY.lookup('a'));
+        assertEquals(-1, CodePointTable.EMPTY.lookup(GRINNING));
+    }
+}
@@ -0,0 +1,81 @@
+package tn.eluea.kgpt.text.transform.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+
+public class TextUnicodeConverterTest {
+
+    private static String codePoints(int... cps) {
+        StringBuilder sb = new StringBuilder();
+        for (int cp : cps) sb.appendCodePoint(cp);
+        return sb.toString();
+    }
+
+    private static ConversionMethod identity() {
+        return new ReplaceConversionMethod(new CharacterTable(CodePointTable.EMPTY));
+    }
+
+    @Test
+    public void stylesLettersIntoSupplementaryCodePoints() {
+        assertEquals(codePoints(0x1D5EE, 0x1D5EF, ' ', 0x1D5D4),
+                TextUnicodeConverter.convert("ab A", new ShiftConversionMethod(0x1D5EE)));
+    }
+
+    @Test
+    public void supplementaryInputIsReadAsOneCodePoint() {
+        String grinning = codePoints(0x1F600);
+        ConversionMethod method = new ReplaceConversionMethod(new CharacterTable(
+                new CodePointTable.Builder().put(0x1F600, ':', ')').build()));
+        assertEquals("a:)b", TextUnicodeConverter.convert("a" + grinning + "b", method));
+        // The combining mark follows the whole pair, not each half
+        assertEquals(grinning + "\u0336", TextUnicodeConverter.convert(grinning, new AddConversionMethod(0x336)));
+    }
+
+    @Test
+    public void reversingKeepsSurrogatePairsInOrder() {
+        ConversionMethod method = new ShiftConversionMethod(0x1D5EE).reverse(true);
+        String reversed = TextUnicodeConverter.convert("ab", method);
+        assertEquals(codePoints(0x1D5EF, 0x1D5EE), reversed);
+
+        // Appending after existing text only reverses the new part
+        StringBuilder out = new StringBuilder("x");
+        TextUnicodeConverter.convert("ab", method, out);
+        assertEquals("x" + codePoints(0x1D5EF, 0x1D5EE), out.toString());
+    }
+
+    @Test
+    public void accentsAreDecomposedAndFollowTheirLetter() {
+        assertEquals("e\u0336\u0301\u0336", TextUnicodeConverter.convert("\u00E9", new AddConversionMethod(0x336)));
+        assertEquals(codePoints(0x1D5F2, 0x301), TextUnicodeConverter.convert("\u00E9", new ShiftConversionMethod(0x1D5EE)));
+    }
+
+    @Test
+    public void decompositionMatchesNormalizerPastTheLatinTable() {
+        // Greek, Cyrillic, Hangul (two syllables that share a cache slot) and an emoji
+        String text = "ώ й 한템한 " + codePoints(0x1F600) + " ɐ";
+        String expected = Normalizer.normalize(text, Normalizer.Form.NFD);
+        assertEquals(expected, TextUnicodeConverter.convert(text, identity()));
+        // Again, now from the cache
+        assertEquals(expected, TextUnicodeConverter.convert(text, identity()));
+    }
+
+    @Test
+    public void lineBreaksAreNeverStyled() {
+        assertEquals("a\u0336\nb\u0336\r\n", TextUnicodeConverter.convert("a\nb\r\n", new AddConversionMethod(0x336)));
+    }
+
+    @Test
+    public void largeInputsAreConvertedWhole() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) sb.append('a');
+        String converted = TextUnicodeConverter.convert(sb.toString(), new ShiftConversionMethod(0x1D5EE));
+        assertEquals(40000, converted.length());
+        assertTrue(converted.codePoints().allMatch(cp -> cp == 0x1D5EE));
+        // The per-thread buffer is dropped after a large text; the next call still works
+        assertEquals(codePoints(0x1D5EE), TextUnicodeConverter.convert("a", new ShiftConversionMethod(0x1D5EE)));
+    }
+}